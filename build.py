@@ -286,6 +286,7 @@ CTX.INPUT['executors'] = """
  deleteexecutor.cpp
  executorfactory.cpp
  executorutil.cpp
+ hashjoinexecutor.cpp
  indexcountexecutor.cpp
  indexscanexecutor.cpp
  insertexecutor.cpp
@@ -309,6 +310,7 @@ CTX.INPUT['executors'] = """
 
 CTX.INPUT['expressions'] = """
  abstractexpression.cpp
+ compiledpredicate.cpp
  expressionutil.cpp
  functionexpression.cpp
  geofunctions.cpp
@@ -328,6 +330,7 @@ CTX.INPUT['plannodes'] = """
  abstractscannode.cpp
  aggregatenode.cpp
  deletenode.cpp
+ hashjoinnode.cpp
  indexscannode.cpp
  indexcountnode.cpp
  tablecountnode.cpp
@@ -381,6 +384,7 @@ CTX.INPUT['storage'] = """
  persistenttable.cpp
  PersistentTableStats.cpp
  RecoveryContext.cpp
+ SpillFile.cpp
  streamedtable.cpp
  StreamedTableStats.cpp
  table.cpp
@@ -496,11 +500,15 @@ if whichtests in ("${eetestsuite}", "executors"):
     OptimizedProjectorTest
     MergeReceiveExecutorTest
     PartitionByExecutorTest
+    SpillingExecutorTest
+    HashJoinExecutorTest
+    ScanPredicateBenchmark
     TestGeneratedPlans
     """
 
 if whichtests in ("${eetestsuite}", "expressions"):
     CTX.TESTS['expressions'] = """
+     compiled_predicate_test
      expression_test
      function_test
     """
@@ -522,6 +530,7 @@ if whichtests in ("${eetestsuite}", "storage"):
      DRBinaryLog_test
      DRTupleStream_test
      ExportTupleStream_test
+     MaterializedViewDeltaTest
      PersistentTableMemStatsTest
      StreamedTable_test
      TempTableLimitsTest
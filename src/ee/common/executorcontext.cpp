@@ -21,11 +21,13 @@
 #include "storage/AbstractDRTupleStream.h"
 #include "storage/DRTupleStream.h"
 #include "storage/DRTupleStreamUndoAction.h"
+#include "storage/MaterializedViewTriggerForInsert.h"
 
 #include "boost/foreach.hpp"
 
 #include "expressions/functionexpression.h" // Really for datefunctions and its dependencies.
 
+#include <algorithm>
 #include <pthread.h>
 #ifdef LINUX
 #include <malloc.h>
@@ -89,6 +91,7 @@ ExecutorContext::ExecutorContext(int64_t siteId,
     m_undoQuantum(undoQuantum),
     m_staticParams(params),
     m_executorsMap(),
+    m_deferViewDeltas(false),
     m_drStream(drStream),
     m_drReplicatedStream(drReplicatedStream),
     m_engine(engine),
@@ -240,6 +243,22 @@ bool ExecutorContext::allOutputTempTablesAreEmpty() const {
     return true;
 }
 
+void ExecutorContext::removeViewWithDeltas(MaterializedViewTriggerForInsert* view) {
+    std::vector<MaterializedViewTriggerForInsert*>::iterator it =
+        std::find(m_viewsWithDeltas.begin(), m_viewsWithDeltas.end(), view);
+    if (it != m_viewsWithDeltas.end()) {
+        m_viewsWithDeltas.erase(it);
+    }
+}
+
+void ExecutorContext::applyViewDeltas() {
+    // Each view takes itself off the list before it applies its deltas,
+    // so an error from one of them can't make us loop on it.
+    while ( ! m_viewsWithDeltas.empty()) {
+        m_viewsWithDeltas.back()->applyDeltas();
+    }
+}
+
 void ExecutorContext::setDrStream(AbstractDRTupleStream *drStream) {
     assert (m_drStream != NULL);
     assert (drStream != NULL);
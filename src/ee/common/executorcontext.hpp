@@ -36,6 +36,7 @@ extern const int64_t VOLT_EPOCH_IN_MILLIS;
 
 class AbstractExecutor;
 class AbstractDRTupleStream;
+class MaterializedViewTriggerForInsert;
 class VoltDBEngine;
 
 class TempTable;
@@ -292,6 +293,33 @@ class ExecutorContext {
 
     bool allOutputTempTablesAreEmpty() const;
 
+    /**
+     * While set, materialized views collect the changes from fallible source inserts
+     * into per group deltas instead of updating their rows one insert at a time.
+     * Whoever sets it must call applyViewDeltas while the same undo quantum is current.
+     */
+    void setDeferViewDeltas(bool defer) {
+        m_deferViewDeltas = defer;
+    }
+
+    bool deferViewDeltas() const {
+        return m_deferViewDeltas;
+    }
+
+    /** Views holding deltas that have not been applied yet */
+    const std::vector<MaterializedViewTriggerForInsert*>& viewsWithDeltas() const {
+        return m_viewsWithDeltas;
+    }
+
+    void addViewWithDeltas(MaterializedViewTriggerForInsert* view) {
+        m_viewsWithDeltas.push_back(view);
+    }
+
+    void removeViewWithDeltas(MaterializedViewTriggerForInsert* view);
+
+    /** Apply the deferred deltas of every view to its table. */
+    void applyViewDeltas();
+
     void checkTransactionForDR();
 
   private:
@@ -305,6 +333,8 @@ class ExecutorContext {
     // The value is the pointer to the executor stack for that statement
     std::map<int, std::vector<AbstractExecutor*>* >* m_executorsMap;
     std::map<int, SubqueryContext> m_subqueryContextMap;
+    bool m_deferViewDeltas;
+    std::vector<MaterializedViewTriggerForInsert*> m_viewsWithDeltas;
 
     AbstractDRTupleStream *m_drStream;
     AbstractDRTupleStream *m_drReplicatedStream;
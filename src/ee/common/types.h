@@ -191,6 +191,7 @@ enum PlanNodeType {
     //
     PLAN_NODE_TYPE_NESTLOOP         = 20,
     PLAN_NODE_TYPE_NESTLOOPINDEX    = 21,
+    PLAN_NODE_TYPE_HASHJOIN         = 22,
 
     //
     // Operator Nodes
@@ -401,6 +402,10 @@ enum TableStreamType {
     // that tableStreamTypeHasPredicates() doesn't have to change.
     TABLE_STREAM_RECOVERY,
 
+    // Snapshot stream that only scans the tuple blocks changed since a
+    // previous incremental snapshot. Uses snapshot predicates.
+    TABLE_STREAM_INCREMENTAL_SNAPSHOT,
+
     // Table stream type provided when no stream is active.
     TABLE_STREAM_NONE = -1
 };
@@ -417,14 +422,23 @@ enum TableStreamSerializationError {
 inline bool tableStreamTypeHasPredicates(TableStreamType streamType) {
     return streamType == TABLE_STREAM_SNAPSHOT
         || streamType == TABLE_STREAM_ELASTIC_INDEX
-        || streamType == TABLE_STREAM_ELASTIC_INDEX_READ;
+        || streamType == TABLE_STREAM_ELASTIC_INDEX_READ
+        || streamType == TABLE_STREAM_INCREMENTAL_SNAPSHOT;
 }
 
 /**
  * Return true if the table stream type is performing a snapshot.
  */
 inline bool tableStreamTypeIsSnapshot(TableStreamType streamType) {
-    return streamType == TABLE_STREAM_SNAPSHOT;
+    return streamType == TABLE_STREAM_SNAPSHOT
+        || streamType == TABLE_STREAM_INCREMENTAL_SNAPSHOT;
+}
+
+/**
+ * Return true if the table stream type is an incremental snapshot.
+ */
+inline bool tableStreamTypeIsIncrementalSnapshot(TableStreamType streamType) {
+    return streamType == TABLE_STREAM_INCREMENTAL_SNAPSHOT;
 }
 
 /**
@@ -50,6 +50,7 @@
 #include "executors/abstractexecutor.h"
 #include "plannodes/abstractplannode.h"
 #include "plannodes/abstractplannode.h"
+#include "plannodes/abstractscannode.h"
 #include "executors/executorfactory.h"
 
 #include "boost/foreach.hpp"
@@ -106,6 +107,7 @@ boost::shared_ptr<ExecutorVector> ExecutorVector::fromJsonPlan(VoltDBEngine* eng
     boost::shared_ptr<ExecutorVector> ev(new ExecutorVector(fragId,
                                                             tempTableLogLimit,
                                                             tempTableMemoryLimit,
+                                                            engine->tempTableSpillDirectory(),
                                                             pnf));
     ev->init(engine);
     return ev;
@@ -158,6 +160,11 @@ void ExecutorVector::initPlanNode(VoltDBEngine* engine, AbstractPlanNode* node)
     }
     node->setExecutor(executor);
 
+    AbstractScanPlanNode* scanNode = dynamic_cast<AbstractScanPlanNode*>(node);
+    if (scanNode && ! scanNode->isSubQuery()) {
+        m_scannedTableNames.insert(scanNode->getTargetTableName());
+    }
+
     // If this PlanNode has an internal PlanNode (e.g.,
     // AbstractScanPlanNode can have internal Projections), set
     // that internal node's executor as well.
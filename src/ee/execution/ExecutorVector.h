@@ -52,6 +52,8 @@
 #include "boost/shared_ptr.hpp"
 #include <vector>
 #include <map>
+#include <set>
+#include <string>
 
 namespace catalog {
 class Statement;
@@ -100,6 +102,14 @@ public:
 
     void getRidOfSendExecutor(int planId = 0);
 
+    /**
+     * Does any scan in this plan, including inlined scans and subqueries,
+     * read the named persistent table?
+     */
+    bool scansTable(const std::string& tableName) const {
+        return m_scannedTableNames.find(tableName) != m_scannedTableNames.end();
+    }
+
     ~ExecutorVector();
 
 private:
@@ -121,9 +131,10 @@ private:
     ExecutorVector(int64_t fragmentId,
                    int64_t logThreshold,
                    int64_t memoryLimit,
+                   const std::string& spillDirectory,
                    PlanNodeFragment* fragment)
         : m_fragId(fragmentId)
-        , m_limits(memoryLimit, logThreshold)
+        , m_limits(memoryLimit, logThreshold, spillDirectory)
         , m_fragment(fragment)
     { }
 
@@ -133,6 +144,7 @@ private:
     std::map<int, std::vector<AbstractExecutor*>* > m_subplanExecListMap;
     TempTableLimits m_limits;
     boost::scoped_ptr<PlanNodeFragment> m_fragment;
+    std::set<std::string> m_scannedTableNames;
 };
 
 } // namespace voltdb
@@ -148,6 +148,7 @@ VoltDBEngine::VoltDBEngine(Topend *topend, LogProxy *logProxy)
       m_currentUndoQuantum(NULL),
       m_partitionId(-1),
       m_hashinator(NULL),
+      m_viewDeltaBatching(false),
       m_isActiveActiveDREnabled(false),
       m_staticParams(MAX_PARAM_COUNT),
       m_currentInputDepId(-1),
@@ -384,6 +385,7 @@ int VoltDBEngine::executePlanFragments(int32_t numFragments,
                                              uniqueId);
 
     m_executorContext->checkTransactionForDR();
+    m_executorContext->setDeferViewDeltas(m_viewDeltaBatching);
 
     // reset these at the start of each batch
     m_tuplesProcessedInBatch = 0;
@@ -425,9 +427,46 @@ int VoltDBEngine::executePlanFragments(int32_t numFragments,
 
     m_currentIndexInBatch = -1;
 
+    return applyViewDeltasForBatch(failures);
+}
+
+/*
+ * Apply the view deltas deferred by a batch while its undo quantum is still current.
+ * After a failure they are still applied, as far as possible, so that the views match
+ * the source rows left behind, but the batch reports its first error.
+ */
+int VoltDBEngine::applyViewDeltasForBatch(int failures)
+{
+    m_executorContext->setDeferViewDeltas(false);
+    while ( ! m_executorContext->viewsWithDeltas().empty()) {
+        try {
+            m_executorContext->applyViewDeltas();
+        }
+        catch (const SerializableEEException &e) {
+            if (failures == 0) {
+                serializeException(e);
+                ++failures;
+            }
+        }
+    }
     return failures;
 }
 
+/*
+ * A fragment that reads a view has to see the inserts deferred by the earlier
+ * fragments of its batch.
+ */
+void VoltDBEngine::applyViewDeltasScannedBy(const ExecutorVector& executorVector)
+{
+    // Copied, as applying a view's deltas takes it off the context's list
+    std::vector<MaterializedViewTriggerForInsert*> views = m_executorContext->viewsWithDeltas();
+    BOOST_FOREACH (MaterializedViewTriggerForInsert* view, views) {
+        if (executorVector.scansTable(view->targetTable()->name())) {
+            view->applyDeltas();
+        }
+    }
+}
+
 int VoltDBEngine::executePlanFragment(int64_t planfragmentId,
                                       int64_t inputDependencyId,
                                       int64_t txnId,
@@ -473,6 +512,10 @@ int VoltDBEngine::executePlanFragment(int64_t planfragmentId,
         setExecutorVectorForFragmentId(planfragmentId);
         assert(m_currExecutorVec);
 
+        if ( ! m_executorContext->viewsWithDeltas().empty()) {
+            applyViewDeltasScannedBy(*m_currExecutorVec);
+        }
+
         executePlanFragment(m_currExecutorVec, &tuplesModified);
     }
     catch (const SerializableEEException &e) {
@@ -1177,10 +1220,14 @@ VoltDBEngine::loadTable(int32_t tableId,
         return false;
     }
 
+    m_executorContext->setDeferViewDeltas(m_viewDeltaBatching);
     try {
         table->loadTuplesFrom(serializeIn, NULL, returnUniqueViolations ? &m_resultOutput : NULL, shouldDRStream);
+        m_executorContext->setDeferViewDeltas(false);
+        m_executorContext->applyViewDeltas();
     }
     catch (const SerializableEEException &e) {
+        m_executorContext->setDeferViewDeltas(false);
         throwFatalException("%s", e.message().c_str());
     }
     return true;
@@ -1664,6 +1711,17 @@ bool VoltDBEngine::activateTableStream(
         m_snapshottingTables[tableId] = table;
     }
 
+    // Tell the caller whether the incremental snapshot is a delta, the
+    // spHandle it is taken at, and for a delta the keys deleted since its base.
+    if (tableStreamTypeIsIncrementalSnapshot(streamType)) {
+        resetReusedResultOutputBuffer();
+        m_resultOutput.writeBool(table->isIncrementalSnapshotDelta());
+        m_resultOutput.writeLong(table->incrementalSnapshotSpHandle());
+        if (table->isIncrementalSnapshotDelta()) {
+            table->incrementalSnapshotDeletes()->serializeTo(m_resultOutput);
+        }
+    }
+
     return true;
 }
 
@@ -276,6 +276,9 @@ class __attribute__((visibility("default"))) VoltDBEngine {
          */
         int getResultsSize() const;
 
+        /** Returns the start of the results, which may be in a fallback buffer. */
+        const char* getResultOutputBuffer() const { return m_resultOutput.data(); }
+
         /** Returns the buffer for receiving result tables from EE. */
         char* getReusedResultBuffer() const { return m_reusedResultBuffer; }
         /** Returns the size of buffer for receiving result tables from EE. */
@@ -463,6 +466,29 @@ class __attribute__((visibility("default"))) VoltDBEngine {
             return (m_tempTableMemoryLimit * 3) / 4;
         }
 
+        /**
+         * Set the per-site scratch directory that temp tables may spill to
+         * when a fragment reaches the temp table memory limit.
+         * An empty directory disables spilling.
+         */
+        void setTempTableSpillDirectory(const std::string& directory) {
+            m_tempTableSpillDirectory = directory;
+        }
+
+        const std::string& tempTableSpillDirectory() const {
+            return m_tempTableSpillDirectory;
+        }
+
+        /**
+         * When enabled, single table materialized views fold the inserts of a batch
+         * (or of a loadTable call) into per group deltas and apply them once at its
+         * end, or earlier if a fragment of the batch reads the view or the source
+         * table deletes, updates or truncates rows.
+         */
+        void setViewDeltaBatching(bool enabled) {
+            m_viewDeltaBatching = enabled;
+        }
+
         int32_t getPartitionId() const {
             return m_partitionId;
         }
@@ -515,6 +541,8 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         void setExecutorVectorForFragmentId(int64_t fragId);
 
         bool checkTempTableCleanup(ExecutorVector * execsForFrag);
+        void applyViewDeltasScannedBy(const ExecutorVector& executorVector);
+        int applyViewDeltasForBatch(int failures);
         void resetExecutionMetadata(ExecutorVector* executorVector);
 
         // -------------------------------------------------
@@ -539,6 +567,8 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         boost::scoped_ptr<TheHashinator> m_hashinator;
         size_t m_startOfResultBuffer;
         int64_t m_tempTableMemoryLimit;
+        std::string m_tempTableSpillDirectory;
+        bool m_viewDeltaBatching;
 
         /*
          * Catalog delegates hashed by path.
@@ -52,8 +52,10 @@
 #include "expressions/abstractexpression.h"
 #include "plannodes/aggregatenode.h"
 #include "plannodes/limitnode.h"
+#include "storage/tablefactory.h"
 #include "storage/temptable.h"
 #include "storage/tableiterator.h"
+#include "storage/TempTableLimits.h"
 #include "executors/partitionbyexecutor.h"
 
 #include "boost/foreach.hpp"
@@ -855,6 +857,19 @@ void AggregateExecutorBase::p_execute_finish()
 
 AggregateHashExecutor::~AggregateHashExecutor() {}
 
+// The groups in the hash table may use this fraction of the temp table
+// memory limit before the rows of new groups are spilled to partitions.
+static const int64_t HASH_AGGREGATE_MEMORY_FRACTION = 4;
+static const int HASH_AGGREGATE_SPILL_PARTITIONS = 16;
+// Past this many rounds of repartitioning, aggregate whatever is left in memory.
+static const int HASH_AGGREGATE_MAX_SPILL_DEPTH = 4;
+
+bool AggregateHashExecutor::p_init(AbstractPlanNode* abstract_node, TempTableLimits* limits)
+{
+    m_limits = limits;
+    return AggregateExecutorBase::p_init(abstract_node, limits);
+}
+
 TableTuple AggregateHashExecutor::p_execute_init(const NValueArray& params,
                                                  ProgressMonitorProxy* pmp,
                                                  const TupleSchema * schema,
@@ -863,6 +878,8 @@ TableTuple AggregateHashExecutor::p_execute_init(const NValueArray& params,
 {
     VOLT_TRACE("hash aggregate executor init..");
     m_hash.clear();
+    m_spillPartitions.clear();
+    m_spillDepth = 0;
 
     return AggregateExecutorBase::p_execute_init(params, pmp, schema, newTempTable, parentPostfilter);
 }
@@ -902,6 +919,15 @@ void AggregateHashExecutor::p_execute_tuple(const TableTuple& nextTuple) {
 
     // Group not found. Make a new entry in the hash for this new group.
     if (keyIter == m_hash.end()) {
+        if (spillNewGroups()) {
+            // Hash the group by key with a seed that differs from the previous
+            // round so that a partition being reprocessed splits up evenly.
+            size_t partition = nextGroupByKeyTuple.hashCode(m_spillDepth + 1) % m_spillPartitions.size();
+            TableTuple spilledTuple(nextTuple);
+            m_spillPartitions[partition]->insertTempTuple(spilledTuple);
+            return;
+        }
+
         VOLT_TRACE("hash aggregate: new group..");
         aggregateRow = new (m_memoryPool, m_aggTypes.size()) AggregateRow();
         m_hash.insert(HashAggregateMapType::value_type(nextGroupByKeyTuple, aggregateRow));
@@ -928,8 +954,36 @@ void AggregateHashExecutor::p_execute_tuple(const TableTuple& nextTuple) {
     advanceAggs(aggregateRow, nextTuple);
 }
 
-void AggregateHashExecutor::p_execute_finish() {
-    VOLT_TRACE("finalizing..");
+bool AggregateHashExecutor::spillNewGroups() {
+    if ( ! m_spillPartitions.empty()) {
+        return true;
+    }
+    if (m_limits == NULL || ! m_limits->canSpill() ||
+        m_spillDepth >= HASH_AGGREGATE_MAX_SPILL_DEPTH ||
+        m_memoryPool.getAllocatedMemory() < m_limits->getMemoryLimit() / HASH_AGGREGATE_MEMORY_FRACTION) {
+        return false;
+    }
+
+    VOLT_DEBUG("hash aggregate: spilling new groups at depth %d after %d groups",
+               m_spillDepth, (int)m_hash.size());
+    std::vector<std::string> columnNames(m_inputSchema->columnCount());
+    for (int ii = 0; ii < HASH_AGGREGATE_SPILL_PARTITIONS; ++ii) {
+        TempTable* partition = TableFactory::buildTempTable("HASH_AGGREGATE_SPILL",
+                                                            TupleSchema::createTupleSchema(m_inputSchema),
+                                                            columnNames,
+                                                            m_limits);
+        partition->setSpillable(true);
+        m_spillPartitions.push_back(boost::shared_ptr<TempTable>(partition));
+    }
+    return true;
+}
+
+void AggregateHashExecutor::outputGroups() {
+    // The output can't spill, so leave it the memory of the spilled
+    // partitions. They are read back a block at a time.
+    BOOST_FOREACH (const boost::shared_ptr<TempTable>& partition, m_spillPartitions) {
+        partition->spillResidentBlocks();
+    }
 
     // If there is no aggregation, results are already inserted already
     if (m_aggTypes.size() != 0) {
@@ -944,6 +998,44 @@ void AggregateHashExecutor::p_execute_finish() {
 
     // Clean up
     m_hash.clear();
+}
+
+void AggregateHashExecutor::p_execute_finish() {
+    VOLT_TRACE("finalizing..");
+    outputGroups();
+
+    // Aggregate the spilled partitions one at a time, reusing the memory
+    // of the groups that have already been output.
+    std::vector<std::pair<boost::shared_ptr<TempTable>, int> > pendingPartitions;
+    while (true) {
+        BOOST_FOREACH (const boost::shared_ptr<TempTable>& partition, m_spillPartitions) {
+            if ( ! partition->isTempTableEmpty()) {
+                pendingPartitions.push_back(std::make_pair(partition, m_spillDepth + 1));
+            }
+        }
+        m_spillPartitions.clear();
+        if (pendingPartitions.empty() || ! m_postfilter.isUnderLimit()) {
+            break;
+        }
+
+        boost::shared_ptr<TempTable> partition = pendingPartitions.back().first;
+        m_spillDepth = pendingPartitions.back().second;
+        pendingPartitions.pop_back();
+
+        TableTuple& nextGroupByKeyTuple = m_nextGroupByKeyStorage;
+        nextGroupByKeyTuple.move(NULL);
+        m_memoryPool.purge();
+
+        TableIterator& it = partition->iteratorDeletingAsWeGo();
+        TableTuple spilledTuple(partition->schema());
+        while (it.next(spilledTuple)) {
+            p_execute_tuple(spilledTuple);
+        }
+        partition->deleteAllTempTuples();
+        outputGroups();
+    }
+
+    m_spillDepth = 0;
     AggregateExecutorBase::p_execute_finish();
 }
 
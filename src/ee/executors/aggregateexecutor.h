@@ -56,6 +56,10 @@
 #include "execution/ProgressMonitorProxy.h"
 #include "executors/executorutil.h"
 
+#include "boost/shared_ptr.hpp"
+
+#include <vector>
+
 namespace voltdb {
 
 /*
@@ -296,7 +300,7 @@ class AggregateHashExecutor : public AggregateExecutorBase
 {
 public:
     AggregateHashExecutor(VoltDBEngine* engine, AbstractPlanNode* abstract_node) :
-        AggregateExecutorBase(engine, abstract_node) { }
+        AggregateExecutorBase(engine, abstract_node), m_limits(NULL), m_spillDepth(0) { }
 
     // empty destructor defined in .cpp file because of it is called virtually (not inline)
     // same reason for serial and partial
@@ -309,8 +313,31 @@ public:
     void p_execute_finish();
 
 private:
+    virtual bool p_init(AbstractPlanNode*, TempTableLimits* limits);
     virtual bool p_execute(const NValueArray& params);
+
+    /// Output the groups aggregated in the hash table and clear it.
+    void outputGroups();
+
+    /**
+     * Return true if input rows for groups that are not already in the hash
+     * table must be spilled, starting to spill if the groups have used up
+     * their share of the temp table memory limit.
+     */
+    bool spillNewGroups();
+
     HashAggregateMapType m_hash;
+
+    /*
+     * Partitioned hash aggregation.  Once spilling starts, the rows of new
+     * groups go to spillable temp tables picked by a hash of the group by key,
+     * so every group lives entirely in memory or entirely in one partition.
+     * The partitions are aggregated one at a time after the in-memory groups
+     * have been output, spilling again with a new hash seed if still too big.
+     */
+    TempTableLimits* m_limits;
+    std::vector<boost::shared_ptr<TempTable> > m_spillPartitions;
+    int m_spillDepth;
 };
 
 /**
@@ -51,6 +51,7 @@ CountingPostfilter::CountingPostfilter(const TempTable* table, const AbstractExp
     CountingPostfilter* parentPostfilter) :
     m_table(table),
     m_postPredicate(postPredicate),
+    m_compiledPredicate(NULL),
     m_parentPostfilter(parentPostfilter),
     m_limit(limit),
     m_offset(offset),
@@ -62,6 +63,7 @@ CountingPostfilter::CountingPostfilter(const TempTable* table, const AbstractExp
 CountingPostfilter::CountingPostfilter() :
     m_table(NULL),
     m_postPredicate(NULL),
+    m_compiledPredicate(NULL),
     m_parentPostfilter(NULL),
     m_limit(NO_LIMIT),
     m_offset(NO_OFFSET),
@@ -48,6 +48,7 @@
 
 #include "common/tabletuple.h"
 #include "expressions/abstractexpression.h"
+#include "expressions/compiledpredicate.h"
 #include "storage/temptable.h"
 
 #include <cstddef> // for NULL !
@@ -74,6 +75,12 @@ struct CountingPostfilter {
         return m_under_limit;
     }
 
+    // Evaluate the predicate through its compiled form, which must be bound for this execution.
+    // Only for single table scans, the compiled predicate ignores the inner tuple.
+    void useCompiledPredicate(const CompiledPredicate* compiledPredicate) {
+        m_compiledPredicate = compiledPredicate;
+    }
+
     // Returns true if predicate evaluates to true and LIMIT/OFFSET conditions are satisfied.
     bool eval(const TableTuple* outer_tuple, const TableTuple* inner_tuple);
 
@@ -87,6 +94,7 @@ struct CountingPostfilter {
 
     const TempTable *m_table;
     const AbstractExpression *m_postPredicate;
+    const CompiledPredicate *m_compiledPredicate;
     CountingPostfilter* m_parentPostfilter;
 
     int m_limit;
@@ -98,7 +106,15 @@ struct CountingPostfilter {
 
 inline
 bool CountingPostfilter::eval(const TableTuple* outer_tuple, const TableTuple* inner_tuple) {
-    if (m_postPredicate == NULL || m_postPredicate->eval(outer_tuple, inner_tuple).isTrue()) {
+    bool passed;
+    if (m_compiledPredicate != NULL) {
+        assert(inner_tuple == NULL);
+        passed = m_compiledPredicate->eval(outer_tuple);
+    }
+    else {
+        passed = m_postPredicate == NULL || m_postPredicate->eval(outer_tuple, inner_tuple).isTrue();
+    }
+    if (passed) {
         // Check if we have to skip this tuple because of offset
         if (m_tuple_skipped < m_offset) {
             m_tuple_skipped++;
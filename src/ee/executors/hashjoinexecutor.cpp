@@ -0,0 +1,317 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+#include "hashjoinexecutor.h"
+
+#include "common/debuglog.h"
+#include "common/tabletuple.h"
+#include "common/TupleSchema.h"
+#include "executors/aggregateexecutor.h"
+#include "executors/executorutil.h"
+#include "execution/ProgressMonitorProxy.h"
+#include "expressions/abstractexpression.h"
+#include "plannodes/hashjoinnode.h"
+#include "plannodes/limitnode.h"
+#include "storage/table.h"
+#include "storage/temptable.h"
+#include "storage/tableiterator.h"
+#include "storage/tabletuplefilter.h"
+#include "storage/TempTableLimits.h"
+
+#include <vector>
+
+using namespace std;
+using namespace voltdb;
+
+const static int8_t UNMATCHED_TUPLE(TableTupleFilter::ACTIVE_TUPLE);
+const static int8_t MATCHED_TUPLE(TableTupleFilter::ACTIVE_TUPLE + 1);
+
+// Rough per-entry bookkeeping cost of the unordered_multimap:
+// the node itself plus its bucket pointer.
+const static int HASH_ENTRY_OVERHEAD = static_cast<int>(sizeof(HashJoinMapType::value_type) + 2 * sizeof(void*));
+
+HashJoinExecutor::~HashJoinExecutor()
+{
+    clearHashTable();
+    // NULL safe operation
+    TupleSchema::freeTupleSchema(m_keySchema);
+}
+
+bool HashJoinExecutor::p_init(AbstractPlanNode* abstractNode,
+                              TempTableLimits* limits)
+{
+    VOLT_TRACE("init HashJoin Executor");
+    assert(limits);
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(m_abstractNode);
+    assert(node);
+
+    // Init parent first
+    if (!AbstractJoinExecutor::p_init(abstractNode, limits)) {
+        return false;
+    }
+
+    // NULL tuples for left and full joins
+    p_init_null_tuples(node->getInputTable(), node->getInputTable(1));
+
+    m_tempLimits = limits;
+
+    // The key schema is shared by the build (inner) and probe (outer) sides.
+    // The planner only pairs expressions of the same type. Variable length keys
+    // are kept out-of-line at the maximum width so that values from either side fit.
+    const std::vector<AbstractExpression*>& innerKeys = node->getInnerHashExpressions();
+    std::vector<ValueType> keyColumnTypes;
+    std::vector<int32_t> keyColumnSizes;
+    std::vector<bool> keyColumnAllowNull;
+    std::vector<bool> keyColumnInBytes;
+    for (int ii = 0; ii < innerKeys.size(); ii++) {
+        ValueType keyType = innerKeys[ii]->getValueType();
+        assert(keyType == node->getOuterHashExpressions()[ii]->getValueType());
+        keyColumnTypes.push_back(keyType);
+        if (isVariableLengthType(keyType)) {
+            keyColumnSizes.push_back(TupleSchema::COLUMN_MAX_VALUE_LENGTH);
+            keyColumnInBytes.push_back(true);
+        } else {
+            keyColumnSizes.push_back(innerKeys[ii]->getValueSize());
+            keyColumnInBytes.push_back(false);
+        }
+        keyColumnAllowNull.push_back(true);
+    }
+    TupleSchema::freeTupleSchema(m_keySchema);
+    m_keySchema = TupleSchema::createTupleSchema(keyColumnTypes,
+                                                 keyColumnSizes,
+                                                 keyColumnAllowNull,
+                                                 keyColumnInBytes);
+    return true;
+}
+
+inline bool HashJoinExecutor::initKeyTuple(TableTuple& keyTuple,
+                                           const std::vector<AbstractExpression*>& keyExpressions,
+                                           const std::vector<bool>& nullSafeKeys,
+                                           const TableTuple& tuple)
+{
+    for (int ii = 0; ii < keyExpressions.size(); ii++) {
+        NValue value = keyExpressions[ii]->eval(&tuple, NULL);
+        if (value.isNull() && ! nullSafeKeys[ii]) {
+            return false;
+        }
+        keyTuple.setNValue(ii, value);
+    }
+    return true;
+}
+
+void HashJoinExecutor::clearHashTable()
+{
+    m_hash.clear();
+    m_memoryPool.purge();
+    if (m_hashTableMemory > 0) {
+        assert(m_tempLimits);
+        m_tempLimits->reduceAllocated(static_cast<int>(m_hashTableMemory));
+    }
+    m_hashTableMemory = 0;
+}
+
+bool HashJoinExecutor::p_execute(const NValueArray &params) {
+    VOLT_DEBUG("executing HashJoin...");
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(m_abstractNode);
+    assert(node);
+    assert(node->getInputTableCount() == 2);
+
+    // output table must be a temp table
+    assert(m_tmpOutputTable);
+
+    Table* outer_table = node->getInputTable();
+    assert(outer_table);
+
+    Table* inner_table = node->getInputTable(1);
+    assert(inner_table);
+
+    VOLT_TRACE ("input table left:\n %s", outer_table->debug().c_str());
+    VOLT_TRACE ("input table right:\n %s", inner_table->debug().c_str());
+
+    AbstractExpression *preJoinPredicate = node->getPreJoinPredicate();
+    AbstractExpression *joinPredicate = node->getJoinPredicate();
+    AbstractExpression *wherePredicate = node->getWherePredicate();
+
+    const std::vector<AbstractExpression*>& outerKeys = node->getOuterHashExpressions();
+    const std::vector<AbstractExpression*>& innerKeys = node->getInnerHashExpressions();
+    const std::vector<bool>& nullSafeKeys = node->getNullSafeHashKeys();
+
+    // Release anything left behind by an execution that was aborted mid-way.
+    clearHashTable();
+
+    // The table filter to keep track of inner tuples that don't match any of outer tuples for FULL joins
+    TableTupleFilter innerTableFilter;
+    if (m_joinType == JOIN_TYPE_FULL) {
+        // Prepopulate the view with all inner tuples
+        innerTableFilter.init(inner_table);
+    }
+
+    LimitPlanNode* limit_node = dynamic_cast<LimitPlanNode*>(node->getInlinePlanNode(PLAN_NODE_TYPE_LIMIT));
+    int limit = CountingPostfilter::NO_LIMIT;
+    int offset = CountingPostfilter::NO_OFFSET;
+    if (limit_node) {
+        limit_node->getLimitAndOffsetByReference(params, limit, offset);
+    }
+
+    ProgressMonitorProxy pmp(m_engine, this);
+
+    //
+    // Build phase: hash every inner tuple whose key can match some outer key.
+    //
+    PoolBackedTupleStorage keyStorage;
+    keyStorage.init(m_keySchema, &m_memoryPool);
+    TableTuple& keyTuple = keyStorage;
+    keyTuple.move(NULL);
+    const int keyTupleMemory = m_keySchema->tupleLength() + TUPLE_HEADER_SIZE;
+
+    TableTuple inner_tuple(inner_table->schema());
+    TableIterator iterator1 = inner_table->iterator();
+    while (iterator1.next(inner_tuple)) {
+        pmp.countdownProgress();
+        if (keyTuple.isNullTuple()) {
+            keyStorage.allocateActiveTuple();
+        }
+        if ( ! initKeyTuple(keyTuple, innerKeys, nullSafeKeys, inner_tuple)) {
+            continue;
+        }
+        int entryMemory = HASH_ENTRY_OVERHEAD;
+        HashJoinMapType::const_iterator keyIter = m_hash.find(keyTuple);
+        if (keyIter == m_hash.end()) {
+            // The map is referencing the current key tuple for use by the new key,
+            // so force a new tuple allocation to hold the next candidate key.
+            m_hash.insert(HashJoinMapType::value_type(keyTuple, inner_tuple));
+            keyTuple.move(NULL);
+            entryMemory += keyTupleMemory;
+        } else {
+            // Share the key tuple already stored for this key.
+            m_hash.insert(HashJoinMapType::value_type(keyIter->first, inner_tuple));
+        }
+        m_hashTableMemory += entryMemory;
+        m_tempLimits->increaseAllocated(entryMemory);
+    }
+    VOLT_TRACE("hash join built %d entries", (int)m_hash.size());
+
+    //
+    // Probe phase: a single pass over the outer table.
+    //
+    int outer_cols = outer_table->columnCount();
+    int inner_cols = inner_table->columnCount();
+    TableTuple outer_tuple(outer_table->schema());
+    const TableTuple& null_inner_tuple = m_null_inner_tuple.tuple();
+
+    // The probe key only needs storage for the lifetime of a single lookup.
+    keyStorage.allocateActiveTuple();
+
+    TableIterator iterator0 = outer_table->iteratorDeletingAsWeGo();
+    // Init the postfilter
+    CountingPostfilter postfilter(m_tmpOutputTable, wherePredicate, limit, offset);
+
+    TableTuple join_tuple;
+    if (m_aggExec != NULL) {
+        VOLT_TRACE("Init inline aggregate...");
+        const TupleSchema * aggInputSchema = node->getTupleSchemaPreAgg();
+        join_tuple = m_aggExec->p_execute_init(params, &pmp, aggInputSchema, m_tmpOutputTable, &postfilter);
+    } else {
+        join_tuple = m_tmpOutputTable->tempTuple();
+    }
+
+    while (postfilter.isUnderLimit() && iterator0.next(outer_tuple)) {
+        pmp.countdownProgress();
+
+        // populate output table's temp tuple with outer table's values
+        join_tuple.setNValues(0, outer_tuple, 0, outer_cols);
+
+        // did this loop body find at least one match for this tuple?
+        bool outerMatch = false;
+        // For outer joins if outer tuple fails pre-join predicate
+        // (join expression based on the outer table only)
+        // it can't match any of inner tuples
+        if ((preJoinPredicate == NULL || preJoinPredicate->eval(&outer_tuple, NULL).isTrue()) &&
+                initKeyTuple(keyTuple, outerKeys, nullSafeKeys, outer_tuple)) {
+            std::pair<HashJoinMapType::const_iterator, HashJoinMapType::const_iterator> range =
+                m_hash.equal_range(keyTuple);
+            for (HashJoinMapType::const_iterator matchIter = range.first;
+                    postfilter.isUnderLimit() && matchIter != range.second; ++matchIter) {
+                pmp.countdownProgress();
+                inner_tuple = matchIter->second;
+                // The remainder of the join predicate still has to hold
+                if (joinPredicate == NULL || joinPredicate->eval(&outer_tuple, &inner_tuple).isTrue()) {
+                    outerMatch = true;
+                    // The inner tuple passed the join predicate
+                    if (m_joinType == JOIN_TYPE_FULL) {
+                        // Mark it as matched
+                        innerTableFilter.updateTuple(inner_tuple, MATCHED_TUPLE);
+                    }
+                    // Filter the joined tuple
+                    if (postfilter.eval(&outer_tuple, &inner_tuple)) {
+                        // Matched! Complete the joined tuple with the inner column values.
+                        join_tuple.setNValues(outer_cols, inner_tuple, 0, inner_cols);
+                        outputTuple(postfilter, join_tuple, pmp);
+                    }
+                }
+            }
+        }
+
+        //
+        // Left Outer Join
+        //
+        if (m_joinType != JOIN_TYPE_INNER && !outerMatch && postfilter.isUnderLimit()) {
+            // Still needs to pass the filter
+            if (postfilter.eval(&outer_tuple, &null_inner_tuple)) {
+                // Matched! Complete the joined tuple with the inner column values.
+                join_tuple.setNValues(outer_cols, null_inner_tuple, 0, inner_cols);
+                outputTuple(postfilter, join_tuple, pmp);
+            }
+        }
+    }
+
+    //
+    // FULL Outer Join. Iterate over the unmatched inner tuples
+    //
+    if (m_joinType == JOIN_TYPE_FULL && postfilter.isUnderLimit()) {
+        // Preset outer columns to null
+        const TableTuple& null_outer_tuple = m_null_outer_tuple.tuple();
+        join_tuple.setNValues(0, null_outer_tuple, 0, outer_cols);
+
+        TableTupleFilter_iter<UNMATCHED_TUPLE> endItr = innerTableFilter.end<UNMATCHED_TUPLE>();
+        for (TableTupleFilter_iter<UNMATCHED_TUPLE> itr = innerTableFilter.begin<UNMATCHED_TUPLE>();
+                itr != endItr && postfilter.isUnderLimit(); ++itr) {
+            // Restore the tuple value
+            uint64_t tupleAddr = innerTableFilter.getTupleAddress(*itr);
+            inner_tuple.move((char *)tupleAddr);
+            // Still needs to pass the filter
+            assert(inner_tuple.isActive());
+            if (postfilter.eval(&null_outer_tuple, &inner_tuple)) {
+                // Passed! Complete the joined tuple with the inner column values.
+                join_tuple.setNValues(outer_cols, inner_tuple, 0, inner_cols);
+                outputTuple(postfilter, join_tuple, pmp);
+            }
+        }
+    }
+
+    if (m_aggExec != NULL) {
+        m_aggExec->p_execute_finish();
+    }
+
+    clearHashTable();
+
+    cleanupInputTempTable(inner_table);
+    cleanupInputTempTable(outer_table);
+
+    return (true);
+}
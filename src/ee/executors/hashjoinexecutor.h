@@ -0,0 +1,85 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef HSTOREHASHJOINEXECUTOR_H
+#define HSTOREHASHJOINEXECUTOR_H
+
+#include "common/common.h"
+#include "common/Pool.hpp"
+#include "common/tabletuple.h"
+#include "executors/abstractjoinexecutor.h"
+
+#include "boost/unordered_map.hpp"
+
+namespace voltdb {
+
+class TupleSchema;
+
+/**
+ * Hash table from an inner join key tuple to the inner tuples carrying that key.
+ * Uses the same hashing and equality machinery as HashAggregateMapType.
+ */
+typedef boost::unordered_multimap<TableTuple,
+                                  TableTuple,
+                                  TableTupleHasher,
+                                  TableTupleEqualityChecker> HashJoinMapType;
+
+/**
+ * The concrete executor class for PLAN_NODE_TYPE_HASHJOIN.
+ * Builds a hash table over the inner input on the join keys, then makes a
+ * single pass over the outer input probing it. Memory held by the hash table
+ * is charged against the fragment's TempTableLimits.
+ */
+class HashJoinExecutor : public AbstractJoinExecutor {
+    public:
+        HashJoinExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node) :
+            AbstractJoinExecutor(engine, abstract_node),
+            m_keySchema(NULL),
+            m_tempLimits(NULL),
+            m_hashTableMemory(0) { }
+        ~HashJoinExecutor();
+
+        void cleanupMemoryPool() {
+            clearHashTable();
+        }
+
+    private:
+        bool p_init(AbstractPlanNode*, TempTableLimits* limits);
+        bool p_execute(const NValueArray &params);
+
+        /**
+         * Evaluate the key expressions against the tuple into the key tuple.
+         * Returns false if any key compared with = is NULL -- such a tuple can never
+         * satisfy the equi-join. NULL keys compared with IS NOT DISTINCT FROM are kept.
+         */
+        bool initKeyTuple(TableTuple& keyTuple,
+                          const std::vector<AbstractExpression*>& keyExpressions,
+                          const std::vector<bool>& nullSafeKeys,
+                          const TableTuple& tuple);
+
+        void clearHashTable();
+
+        TupleSchema* m_keySchema;
+        TempTableLimits* m_tempLimits;
+        int64_t m_hashTableMemory;
+        Pool m_memoryPool;
+        HashJoinMapType m_hash;
+};
+
+}
+
+#endif
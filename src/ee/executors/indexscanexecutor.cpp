@@ -98,6 +98,9 @@ bool IndexScanExecutor::p_init(AbstractPlanNode *abstractNode,
                              m_node->getTargetTable()->schema());
     }
 
+    m_compiledPredicate.reset(CompiledPredicate::compile(m_node->getPredicate(),
+                                                         m_node->getTargetTable()->schema()));
+
     // Inline aggregation can be serial, partial or hash
     m_aggExec = voltdb::getInlineAggregateExecutor(m_abstractNode);
 
@@ -189,6 +192,9 @@ bool IndexScanExecutor::p_execute(const NValueArray &params)
 
     // Initialize the postfilter
     CountingPostfilter postfilter(m_outputTable, post_expression, limit, offset);
+    if (m_compiledPredicate && m_compiledPredicate->bind()) {
+        postfilter.useCompiledPredicate(m_compiledPredicate.get());
+    }
 
     TableTuple temp_tuple;
     ProgressMonitorProxy pmp(m_engine, this);
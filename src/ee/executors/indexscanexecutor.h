@@ -49,8 +49,10 @@
 #include "common/tabletuple.h"
 #include "executors/abstractexecutor.h"
 #include "executors/OptimizedProjector.hpp"
+#include "expressions/compiledpredicate.h"
 #include "indexes/tableindex.h"
 
+#include "boost/scoped_ptr.hpp"
 #include "boost/shared_array.hpp"
 
 namespace voltdb {
@@ -124,6 +126,9 @@ private:
     ProjectionPlanNode* m_projectionNode;
     OptimizedProjector m_projector;
 
+    // The post predicate compiled against the target table, NULL if nothing compiled
+    boost::scoped_ptr<CompiledPredicate> m_compiledPredicate;
+
     // Search key
     AbstractExpression** m_searchKeyArray;
 
@@ -56,12 +56,97 @@
 #include "storage/tableiterator.h"
 #include "storage/tablefactory.h"
 
+#include <boost/scoped_ptr.hpp>
+#include <boost/shared_ptr.hpp>
+
 #include <algorithm>
 #include <vector>
 
 using namespace voltdb;
 using namespace std;
 
+namespace {
+
+// Each run of an external sort is sized to this fraction of the temp table
+// memory limit, bounding the tuples sorted at once.
+const int64_t RUN_MEMORY_FRACTION = 4;
+
+// The most runs merged in one pass. Every open run keeps one block in memory.
+const size_t MAX_MERGE_FAN_IN = 64;
+
+typedef boost::shared_ptr<TempTable> TempTablePtr;
+
+struct RunCursor {
+    RunCursor(TableIterator* iterator, const TupleSchema* schema) :
+        m_iterator(iterator), m_tuple(schema)
+    {}
+
+    TableIterator* m_iterator;
+    TableTuple m_tuple;
+};
+
+// Reverses the sort order so that the heap functions keep the run
+// with the smallest current tuple on top.
+struct RunCursorComparer {
+    RunCursorComparer(const AbstractExecutor::TupleComparer& comp) :
+        m_comp(comp)
+    {}
+
+    bool operator()(const RunCursor& ca, const RunCursor& cb) const {
+        return m_comp(cb.m_tuple, ca.m_tuple);
+    }
+
+    AbstractExecutor::TupleComparer m_comp;
+};
+
+TempTable* buildRunTable(TempTable* input_table, TempTableLimits* limits) {
+    TempTable* run = TableFactory::buildCopiedTempTable(input_table->name(), input_table, limits);
+    run->setSpillable(true);
+    return run;
+}
+
+// Merge the sorted runs in [begin, end) into dest, skipping the first offset
+// tuples and stopping after limit tuples when limit is not negative.
+void mergeRuns(const vector<TempTablePtr>& runs, size_t begin, size_t end,
+               const AbstractExecutor::TupleComparer& comp, TempTable* dest,
+               int limit, int offset, ProgressMonitorProxy& pmp) {
+    vector<RunCursor> heap;
+    heap.reserve(end - begin);
+    for (size_t ii = begin; ii < end; ++ii) {
+        RunCursor cursor(&runs[ii]->iteratorDeletingAsWeGo(), runs[ii]->schema());
+        if (cursor.m_iterator->next(cursor.m_tuple)) {
+            heap.push_back(cursor);
+        }
+    }
+
+    RunCursorComparer heapComp(comp);
+    make_heap(heap.begin(), heap.end(), heapComp);
+
+    int tuple_ctr = 0;
+    int tuple_skipped = 0;
+    while ( ! heap.empty() && (limit < 0 || tuple_ctr < limit)) {
+        pop_heap(heap.begin(), heap.end(), heapComp);
+        RunCursor& cursor = heap.back();
+        if (tuple_skipped < offset) {
+            tuple_skipped++;
+        } else {
+            // Copy the tuple before advancing the run, which may
+            // release the spilled block it lives in.
+            dest->insertTempTuple(cursor.m_tuple);
+            pmp.countdownProgress();
+            tuple_ctr += 1;
+        }
+
+        if (cursor.m_iterator->next(cursor.m_tuple)) {
+            push_heap(heap.begin(), heap.end(), heapComp);
+        } else {
+            heap.pop_back();
+        }
+    }
+}
+
+}
+
 bool
 OrderByExecutor::p_init(AbstractPlanNode* abstract_node,
                         TempTableLimits* limits)
@@ -86,6 +171,7 @@ OrderByExecutor::p_init(AbstractPlanNode* abstract_node,
         limit_node =
             dynamic_cast<LimitPlanNode*>(node->
                                      getInlinePlanNode(PLAN_NODE_TYPE_LIMIT));
+        m_limits = limits;
     } else {
         assert(node->getChildren().empty());
         assert(node->getInlinePlanNode(PLAN_NODE_TYPE_LIMIT) == NULL);
@@ -126,14 +212,19 @@ OrderByExecutor::p_execute(const NValueArray &params)
 
     VOLT_TRACE("Running OrderBy '%s'", m_abstractNode->debug().c_str());
     VOLT_TRACE("Input Table:\n '%s'", input_table->debug().c_str());
-    TableIterator iterator = input_table->iterator();
-    TableTuple tuple(input_table->schema());
+    TempTable* temp_input_table = dynamic_cast<TempTable*>(input_table);
 
     // If limit == 0 we have no work here.  There's no need to sort anything,
     // or to fetch the vector of tuples from the input.  If limit < 0 we
     // need to do the loop below, though.  The only case where we can skip
     // is if limit == 0.
-    if (limit != 0) {
+    if (limit != 0 && temp_input_table != NULL && needsExternalSort(temp_input_table, limit)) {
+        ProgressMonitorProxy pmp(m_engine, this);
+        externalSort(temp_input_table, output_table, limit, offset, pmp);
+    }
+    else if (limit != 0) {
+        TableIterator iterator = input_table->iterator();
+        TableTuple tuple(input_table->schema());
         vector<TableTuple> xs;
         ProgressMonitorProxy pmp(m_engine, this);
         while (iterator.next(tuple))
@@ -187,5 +278,95 @@ OrderByExecutor::p_execute(const NValueArray &params)
     return true;
 }
 
+bool
+OrderByExecutor::needsExternalSort(TempTable* input_table, int limit) const
+{
+    if (m_limits == NULL || ! m_limits->canSpill()) {
+        return false;
+    }
+    // An in-memory sort copies up to limit tuples of the input, which stays
+    // resident, into the output table.
+    int64_t outputTuples = input_table->tempTableTupleCount();
+    if (limit >= 0) {
+        outputTuples = min(outputTuples, static_cast<int64_t>(limit));
+    }
+    int64_t outputBytes = outputTuples * input_table->getTupleLength();
+    return m_limits->getAllocated() + outputBytes > m_limits->getMemoryLimit();
+}
+
+void
+OrderByExecutor::externalSort(TempTable* input_table, TempTable* output_table,
+                              int limit, int offset, ProgressMonitorProxy& pmp)
+{
+    OrderByPlanNode* node = dynamic_cast<OrderByPlanNode*>(m_abstractNode);
+    assert(node);
+    assert(m_limits);
+    AbstractExecutor::TupleComparer comp(node->getSortExpressions(), node->getSortDirections());
+
+    // With a limit no run needs to keep more than limit + offset tuples.
+    int keep = (limit >= 0) ? limit + offset : -1;
+    int64_t runCapacity = max(static_cast<int64_t>(input_table->getTuplesPerBlock()),
+                              m_limits->getMemoryLimit() / RUN_MEMORY_FRACTION /
+                              input_table->getTupleLength());
+    VOLT_DEBUG("External sort of %jd tuples in runs of %jd",
+               (intmax_t)input_table->tempTableTupleCount(), (intmax_t)runCapacity);
+
+    // The input is the resident output of the child, so its tuples can be
+    // sorted in place. Each run is written out as soon as it is complete to
+    // leave the memory to the next run and then to the output.
+    vector<TempTablePtr> runs;
+    vector<TableTuple> xs;
+    TableIterator iterator = input_table->iterator();
+    TableTuple tuple(input_table->schema());
+    bool more = true;
+    while (more) {
+        more = iterator.next(tuple);
+        if (more) {
+            pmp.countdownProgress();
+            xs.push_back(tuple);
+            if (static_cast<int64_t>(xs.size()) < runCapacity) {
+                continue;
+            }
+        }
+        else if (xs.empty()) {
+            break;
+        }
+
+        vector<TableTuple>::iterator run_end = xs.end();
+        if (keep >= 0 && xs.begin() + keep < xs.end()) {
+            run_end = xs.begin() + keep;
+            partial_sort(xs.begin(), run_end, xs.end(), comp);
+        } else {
+            sort(xs.begin(), xs.end(), comp);
+        }
+
+        TempTablePtr run(buildRunTable(input_table, m_limits));
+        for (vector<TableTuple>::iterator it = xs.begin(); it != run_end; ++it) {
+            run->insertTempTuple(*it);
+        }
+        run->spillResidentBlocks();
+        runs.push_back(run);
+        xs.clear();
+    }
+    input_table->deleteAllTempTuples();
+
+    // Merge groups of runs until one pass can merge the rest into the output.
+    while (runs.size() > MAX_MERGE_FAN_IN) {
+        vector<TempTablePtr> merged_runs;
+        for (size_t begin = 0; begin < runs.size(); begin += MAX_MERGE_FAN_IN) {
+            size_t end = min(begin + MAX_MERGE_FAN_IN, runs.size());
+            TempTablePtr merged(buildRunTable(input_table, m_limits));
+            mergeRuns(runs, begin, end, comp, merged.get(), keep, 0, pmp);
+            merged->spillResidentBlocks();
+            merged_runs.push_back(merged);
+            for (size_t ii = begin; ii < end; ++ii) {
+                runs[ii]->deleteAllTempTuples();
+            }
+        }
+        runs.swap(merged_runs);
+    }
+    mergeRuns(runs, 0, runs.size(), comp, output_table, limit, offset, pmp);
+}
+
 OrderByExecutor::~OrderByExecutor() {
 }
@@ -55,6 +55,8 @@ namespace voltdb {
     class UndoLog;
     class ReadWriteSet;
     class LimitPlanNode;
+    class ProgressMonitorProxy;
+    class TempTable;
 
     /**
      *
@@ -62,7 +64,7 @@ namespace voltdb {
     class OrderByExecutor : public AbstractExecutor {
     public:
         OrderByExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node)
-            : AbstractExecutor(engine, abstract_node), limit_node(NULL)
+            : AbstractExecutor(engine, abstract_node), limit_node(NULL), m_limits(NULL)
             { }
         ~OrderByExecutor();
 
@@ -72,7 +74,22 @@ namespace voltdb {
         bool p_execute(const NValueArray &params);
 
     private:
+        /**
+         * Return true if copying the sorted input into the output table
+         * would take the fragment past its temp table memory limit.
+         */
+        bool needsExternalSort(TempTable* input_table, int limit) const;
+
+        /**
+         * Sort an input table that is too big to copy in memory: write it out
+         * in sorted runs to spillable temp tables owned by this executor,
+         * release it and merge the runs into the output.
+         */
+        void externalSort(TempTable* input_table, TempTable* output_table,
+                          int limit, int offset, ProgressMonitorProxy& pmp);
+
         LimitPlanNode *limit_node;
+        TempTableLimits* m_limits;
     };
 
 }
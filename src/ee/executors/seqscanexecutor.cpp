@@ -44,6 +44,9 @@
  */
 
 #include "seqscanexecutor.h"
+
+#include <cstring>
+
 #include "common/debuglog.h"
 #include "common/common.h"
 #include "common/tabletuple.h"
@@ -57,6 +60,7 @@
 #include "plannodes/projectionnode.h"
 #include "plannodes/limitnode.h"
 #include "storage/table.h"
+#include "storage/persistenttable.h"
 #include "storage/temptable.h"
 #include "storage/tablefactory.h"
 #include "storage/tableiterator.h"
@@ -100,6 +104,21 @@ bool SeqScanExecutor::p_init(AbstractPlanNode* abstract_node,
                              node->getTargetTable());
     }
 
+    const TupleSchema* input_schema = isSubquery ?
+            node->getChildren()[0]->getOutputTable()->schema() :
+            node->getTargetTable()->schema();
+
+    // Flatten the predicate into native column tests once per plan
+    m_compiledPredicate.reset(CompiledPredicate::compile(node->getPredicate(), input_schema));
+
+    // Replace tuple value expressions of the inline projection with mem copies
+    ProjectionPlanNode* projection_node =
+        dynamic_cast<ProjectionPlanNode*>(node->getInlinePlanNode(PLAN_NODE_TYPE_PROJECTION));
+    if (projection_node != NULL) {
+        m_projector = OptimizedProjector(projection_node->getOutputColumnExpressions());
+        m_projector.optimize(projection_node->getOutputTable()->schema(), input_schema);
+    }
+
     // Inline aggregation can be serial, partial or hash
     m_aggExec = voltdb::getInlineAggregateExecutor(node);
 
@@ -140,11 +159,7 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
     // change any nodes in our expression tree to be ready for the
     // projection operations in execute
     //
-    int num_of_columns = -1;
     ProjectionPlanNode* projection_node = dynamic_cast<ProjectionPlanNode*>(node->getInlinePlanNode(PLAN_NODE_TYPE_PROJECTION));
-    if (projection_node != NULL) {
-        num_of_columns = static_cast<int> (projection_node->getOutputColumnExpressions().size());
-    }
     //
     // OPTIMIZATION: NESTED LIMIT
     // How nice! We can also cut off our scanning with a nested limit!
@@ -181,8 +196,21 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
         if (limit_node) {
             limit_node->getLimitAndOffsetByReference(params, limit, offset);
         }
+        bool compiled = m_compiledPredicate && m_compiledPredicate->bind();
+        //
+        // OPTIMIZATION: BATCHED PREDICATE
+        //
+        // Persistent tables are scanned a run of tuple slots at a time, with the
+        // compiled column tests applied to the whole run before any tuple is
+        // looked at. The postfilter then only applies LIMIT/OFFSET.
+        //
+        bool batched = compiled && dynamic_cast<PersistentTable*>(input_table) != NULL;
+
         // Initialize the postfilter
-        CountingPostfilter postfilter(m_tmpOutputTable, predicate, limit, offset);
+        CountingPostfilter postfilter(m_tmpOutputTable, batched ? NULL : predicate, limit, offset);
+        if (compiled && ! batched) {
+            postfilter.useCompiledPredicate(m_compiledPredicate.get());
+        }
 
         ProgressMonitorProxy pmp(m_engine, this);
         TableTuple temp_tuple;
@@ -198,6 +226,11 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
             temp_tuple = m_tmpOutputTable->tempTuple();
         }
 
+        if (batched) {
+            // Consumes the whole iterator, leaving nothing for the loop below
+            scanInRuns(iterator, tuple, temp_tuple, postfilter, pmp, projection_node != NULL);
+        }
+
         while (postfilter.isUnderLimit() && iterator.next(tuple))
         {
 #if   defined(VOLT_TRACE_ENABLED)
@@ -221,10 +254,7 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
                 if (projection_node != NULL)
                 {
                     VOLT_TRACE("inline projection...");
-                    for (int ctr = 0; ctr < num_of_columns; ctr++) {
-                        NValue value = projection_node->getOutputColumnExpressions()[ctr]->eval(&tuple, NULL);
-                        temp_tuple.setNValue(ctr, value);
-                    }
+                    m_projector.exec(temp_tuple, tuple);
                     outputTuple(postfilter, temp_tuple);
                 }
                 else
@@ -248,6 +278,41 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
     return true;
 }
 
+void SeqScanExecutor::scanInRuns(TableIterator& iterator, TableTuple& tuple, TableTuple& temp_tuple,
+                                 CountingPostfilter& postfilter, ProgressMonitorProxy& pmp,
+                                 bool project) {
+    uint8_t selection[SCAN_RUN_SIZE];
+    const uint32_t tupleLength = tuple.tupleLength();
+    char* run;
+    uint32_t slots;
+    while (postfilter.isUnderLimit() && (slots = iterator.nextRun(run, SCAN_RUN_SIZE)) > 0) {
+        ::memset(selection, 1, slots);
+        m_compiledPredicate->evalBatch(run, tupleLength, slots, selection);
+
+        for (uint32_t ii = 0; ii < slots && postfilter.isUnderLimit(); ++ii) {
+            // The run has the slots next() would skip, they aren't tuples to count
+            tuple.move(run + ii * tupleLength);
+            if ( ! tuple.isActive() || tuple.isPendingDelete() || tuple.isPendingDeleteOnUndoRelease()) {
+                continue;
+            }
+            pmp.countdownProgress();
+            if ( ! selection[ii]) {
+                continue;
+            }
+            if (m_compiledPredicate->evalResidual(&tuple) && postfilter.eval(&tuple, NULL)) {
+                if (project) {
+                    m_projector.exec(temp_tuple, tuple);
+                    outputTuple(postfilter, temp_tuple);
+                }
+                else {
+                    outputTuple(postfilter, tuple);
+                }
+                pmp.countdownProgress();
+            }
+        }
+    }
+}
+
 void SeqScanExecutor::outputTuple(CountingPostfilter& postfilter, TableTuple& tuple) {
     if (m_aggExec != NULL) {
         m_aggExec->p_execute_tuple(tuple);
@@ -49,17 +49,24 @@
 #include "common/common.h"
 #include "common/valuevector.h"
 #include "executors/abstractexecutor.h"
+#include "executors/OptimizedProjector.hpp"
 #include "execution/VoltDBEngine.h"
+#include "expressions/compiledpredicate.h"
+
+#include "boost/scoped_ptr.hpp"
 
 namespace voltdb
 {
     class AggregateExecutorBase;
+    class ProgressMonitorProxy;
+    class TableIterator;
     struct CountingPostfilter;
 
     class SeqScanExecutor : public AbstractExecutor {
     public:
         SeqScanExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node)
             : AbstractExecutor(engine, abstract_node)
+            , m_projector()
             , m_aggExec(NULL)
         {}
     protected:
@@ -71,6 +78,18 @@ namespace voltdb
 
         void outputTuple(CountingPostfilter& postfilter, TableTuple& tuple);
 
+        // Scan a persistent table in runs of slots filtered by the compiled predicate
+        void scanInRuns(TableIterator& iterator, TableTuple& tuple, TableTuple& temp_tuple,
+                        CountingPostfilter& postfilter, ProgressMonitorProxy& pmp, bool project);
+
+        // Most tuple slots the compiled predicate is applied to at once
+        static const uint32_t SCAN_RUN_SIZE = 1024;
+
+        // Inline projection
+        OptimizedProjector m_projector;
+        // The predicate compiled against the scanned schema, NULL if nothing compiled
+        boost::scoped_ptr<CompiledPredicate> m_compiledPredicate;
+
         AggregateExecutorBase* m_aggExec;
     };
 }
@@ -0,0 +1,296 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB Inc. are licensed under the following
+ * terms and conditions:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include "expressions/compiledpredicate.h"
+
+#include "common/debuglog.h"
+#include "common/NValue.hpp"
+#include "common/TupleSchema.h"
+#include "common/ValuePeeker.hpp"
+#include "expressions/constantvalueexpression.h"
+#include "expressions/parametervalueexpression.h"
+#include "expressions/tuplevalueexpression.h"
+
+#include <algorithm>
+
+namespace voltdb {
+
+namespace {
+
+template<typename T> struct NullCheck {
+    static bool isNull(T value);
+};
+template<> bool NullCheck<int8_t>::isNull(int8_t value) { return value == INT8_NULL; }
+template<> bool NullCheck<int16_t>::isNull(int16_t value) { return value == INT16_NULL; }
+template<> bool NullCheck<int32_t>::isNull(int32_t value) { return value == INT32_NULL; }
+template<> bool NullCheck<int64_t>::isNull(int64_t value) { return value == INT64_NULL; }
+template<> bool NullCheck<double>::isNull(double value) { return value <= DOUBLE_NULL; }
+
+struct RawEqual        { template<typename T> static bool compare(T l, T r) { return l == r; } };
+struct RawNotEqual     { template<typename T> static bool compare(T l, T r) { return l != r; } };
+struct RawLessThan     { template<typename T> static bool compare(T l, T r) { return l < r; } };
+struct RawLessEqual    { template<typename T> static bool compare(T l, T r) { return l <= r; } };
+struct RawGreaterThan  { template<typename T> static bool compare(T l, T r) { return l > r; } };
+struct RawGreaterEqual { template<typename T> static bool compare(T l, T r) { return l >= r; } };
+
+// Integral values compare as they are. Doubles compare as in
+// NValue::compareDoubleValue, where NaN equals NaN and is less than any
+// other value, by turning the pair into -1, 0 or 1 and comparing that with 0.
+// When either side is NaN the ordered comparisons are all false, so only the
+// NaN term contributes, and the whole thing stays free of branches.
+template<typename Wide, typename Cmp> struct WideCompare {
+    static bool compare(Wide l, Wide r) { return Cmp::compare(l, r); }
+};
+template<typename Cmp> struct WideCompare<double, Cmp> {
+    static bool compare(double l, double r) {
+        const int lNaN = l != l;
+        const int rNaN = r != r;
+        const int order = (static_cast<int>(l > r) - static_cast<int>(l < r)) + (rNaN - lNaN);
+        return Cmp::compare(order, 0);
+    }
+};
+
+template<typename Wide> struct Operand;
+template<> struct Operand<int64_t> {
+    static int64_t get(const CompiledPredicate::Test& test) { return test.m_bigintOperand; }
+};
+template<> struct Operand<double> {
+    static double get(const CompiledPredicate::Test& test) { return test.m_doubleOperand; }
+};
+
+// Column values of type T are widened to Wide, int64_t or double, to compare.
+// A null column never satisfies a comparison, as in the interpreted predicate,
+// where the comparison is null and the conjunction can't be true.
+template<typename T, typename Wide, typename Cmp>
+struct ColumnTest {
+    static bool test(const char* field, const CompiledPredicate::Test& test) {
+        const T value = *reinterpret_cast<const T*>(field);
+        return ! NullCheck<T>::isNull(value) &&
+               WideCompare<Wide, Cmp>::compare(static_cast<Wide>(value), Operand<Wide>::get(test));
+    }
+
+    // Kept free of branches so that the compiler can vectorize the loop
+    static void batch(const char* field, uint32_t stride, uint32_t count,
+                      const CompiledPredicate::Test& test, uint8_t* selection) {
+        const Wide operand = Operand<Wide>::get(test);
+        for (uint32_t ii = 0; ii < count; ++ii) {
+            const T value = *reinterpret_cast<const T*>(field + ii * stride);
+            selection[ii] &= static_cast<uint8_t>(( ! NullCheck<T>::isNull(value)) &
+                                                  WideCompare<Wide, Cmp>::compare(static_cast<Wide>(value), operand));
+        }
+    }
+};
+
+template<typename Kernel>
+bool assignFunctions(CompiledPredicate::Test& test) {
+    test.m_function = Kernel::test;
+    test.m_batchFunction = Kernel::batch;
+    return true;
+}
+
+template<typename Cmp>
+bool assignFunctions(ValueType columnType, CompiledPredicate::Test& test) {
+    switch (columnType) {
+    case VALUE_TYPE_TINYINT:
+        return assignFunctions<ColumnTest<int8_t, int64_t, Cmp> >(test);
+    case VALUE_TYPE_SMALLINT:
+        return assignFunctions<ColumnTest<int16_t, int64_t, Cmp> >(test);
+    case VALUE_TYPE_INTEGER:
+        return assignFunctions<ColumnTest<int32_t, int64_t, Cmp> >(test);
+    case VALUE_TYPE_BIGINT:
+    case VALUE_TYPE_TIMESTAMP:
+        return assignFunctions<ColumnTest<int64_t, int64_t, Cmp> >(test);
+    case VALUE_TYPE_DOUBLE:
+        return assignFunctions<ColumnTest<double, double, Cmp> >(test);
+    default:
+        return false;
+    }
+}
+
+bool assignFunctions(ValueType columnType, ExpressionType comparison, CompiledPredicate::Test& test) {
+    switch (comparison) {
+    case EXPRESSION_TYPE_COMPARE_EQUAL:
+        return assignFunctions<RawEqual>(columnType, test);
+    case EXPRESSION_TYPE_COMPARE_NOTEQUAL:
+        return assignFunctions<RawNotEqual>(columnType, test);
+    case EXPRESSION_TYPE_COMPARE_LESSTHAN:
+        return assignFunctions<RawLessThan>(columnType, test);
+    case EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO:
+        return assignFunctions<RawLessEqual>(columnType, test);
+    case EXPRESSION_TYPE_COMPARE_GREATERTHAN:
+        return assignFunctions<RawGreaterThan>(columnType, test);
+    case EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO:
+        return assignFunctions<RawGreaterEqual>(columnType, test);
+    default:
+        return false;
+    }
+}
+
+/** The comparison to use when the operands trade places */
+ExpressionType reverseComparison(ExpressionType comparison) {
+    switch (comparison) {
+    case EXPRESSION_TYPE_COMPARE_LESSTHAN:
+        return EXPRESSION_TYPE_COMPARE_GREATERTHAN;
+    case EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO:
+        return EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO;
+    case EXPRESSION_TYPE_COMPARE_GREATERTHAN:
+        return EXPRESSION_TYPE_COMPARE_LESSTHAN;
+    case EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO:
+        return EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO;
+    default:
+        return comparison;
+    }
+}
+
+bool isIntegral(ValueType type) {
+    return type == VALUE_TYPE_TINYINT || type == VALUE_TYPE_SMALLINT ||
+           type == VALUE_TYPE_INTEGER || type == VALUE_TYPE_BIGINT;
+}
+
+/**
+ * Whether a value of the operand type compares with the column exactly as
+ * NValue::compare would when both are widened to int64_t or double.
+ */
+bool isNativelyComparable(ValueType columnType, ValueType operandType) {
+    switch (columnType) {
+    case VALUE_TYPE_TINYINT:
+    case VALUE_TYPE_SMALLINT:
+    case VALUE_TYPE_INTEGER:
+    case VALUE_TYPE_BIGINT:
+        return isIntegral(operandType);
+    case VALUE_TYPE_TIMESTAMP:
+        return operandType == VALUE_TYPE_TIMESTAMP;
+    case VALUE_TYPE_DOUBLE:
+        return operandType == VALUE_TYPE_DOUBLE || isIntegral(operandType);
+    default:
+        return false;
+    }
+}
+
+void collectConjuncts(const AbstractExpression* expr, std::vector<const AbstractExpression*>& conjuncts) {
+    if (expr->getExpressionType() == EXPRESSION_TYPE_CONJUNCTION_AND) {
+        collectConjuncts(expr->getLeft(), conjuncts);
+        collectConjuncts(expr->getRight(), conjuncts);
+    }
+    else {
+        conjuncts.push_back(expr);
+    }
+}
+
+}
+
+CompiledPredicate* CompiledPredicate::compile(const AbstractExpression* predicate, const TupleSchema* schema) {
+    if (predicate == NULL) {
+        return NULL;
+    }
+    std::vector<const AbstractExpression*> conjuncts;
+    collectConjuncts(predicate, conjuncts);
+
+    CompiledPredicate* compiled = new CompiledPredicate();
+    for (std::vector<const AbstractExpression*>::const_iterator it = conjuncts.begin();
+         it != conjuncts.end(); ++it) {
+        if ( ! compiled->compileConjunct(*it, schema)) {
+            compiled->m_residual.push_back(*it);
+        }
+    }
+    if (compiled->m_tests.empty()) {
+        delete compiled;
+        return NULL;
+    }
+    VOLT_DEBUG("Compiled %d of %d predicate conjuncts",
+               (int)compiled->m_tests.size(), (int)conjuncts.size());
+    return compiled;
+}
+
+bool CompiledPredicate::compileConjunct(const AbstractExpression* conjunct, const TupleSchema* schema) {
+    ExpressionType comparison = conjunct->getExpressionType();
+    const AbstractExpression* column = conjunct->getLeft();
+    const AbstractExpression* operand = conjunct->getRight();
+    if (column == NULL || operand == NULL) {
+        return false;
+    }
+    if (dynamic_cast<const TupleValueExpression*>(column) == NULL) {
+        std::swap(column, operand);
+        comparison = reverseComparison(comparison);
+    }
+
+    const TupleValueExpression* tve = dynamic_cast<const TupleValueExpression*>(column);
+    if (tve == NULL || tve->getTupleId() != 0 || tve->getColumnId() >= schema->columnCount()) {
+        return false;
+    }
+    const TupleSchema::ColumnInfo* columnInfo = schema->getColumnInfo(tve->getColumnId());
+    const ValueType columnType = columnInfo->getVoltType();
+    Test test;
+    if ( ! assignFunctions(columnType, comparison, test)) {
+        return false;
+    }
+
+    if (dynamic_cast<const ConstantValueExpression*>(operand) != NULL) {
+        // A constant that can never be bound is left to the expression
+        const NValue value = operand->eval(NULL, NULL);
+        if (value.isNull() || ! isNativelyComparable(columnType, ValuePeeker::peekValueType(value))) {
+            return false;
+        }
+    }
+    else if (dynamic_cast<const ParameterValueExpression*>(operand) == NULL) {
+        return false;
+    }
+
+    test.m_offset = columnInfo->offset;
+    test.m_columnType = columnType;
+    test.m_operand = operand;
+    test.m_bigintOperand = 0;
+    test.m_doubleOperand = 0.0;
+    m_tests.push_back(test);
+    return true;
+}
+
+void CompiledPredicate::evalBatch(const char* runStart, uint32_t tupleLength, uint32_t slots,
+                                  uint8_t* selection) const {
+    const char* data = runStart + TUPLE_HEADER_SIZE;
+    for (std::vector<Test>::const_iterator it = m_tests.begin(); it != m_tests.end(); ++it) {
+        it->m_batchFunction(data + it->m_offset, tupleLength, slots, *it, selection);
+    }
+}
+
+bool CompiledPredicate::bind() {
+    for (std::vector<Test>::iterator it = m_tests.begin(); it != m_tests.end(); ++it) {
+        const NValue value = it->m_operand->eval(NULL, NULL);
+        if (value.isNull()) {
+            return false;
+        }
+        const ValueType operandType = ValuePeeker::peekValueType(value);
+        if ( ! isNativelyComparable(it->m_columnType, operandType)) {
+            return false;
+        }
+        if (it->m_columnType == VALUE_TYPE_DOUBLE) {
+            it->m_doubleOperand = operandType == VALUE_TYPE_DOUBLE ?
+                    ValuePeeker::peekDouble(value) :
+                    static_cast<double>(ValuePeeker::peekAsRawInt64(value));
+        }
+        else {
+            it->m_bigintOperand = ValuePeeker::peekAsRawInt64(value);
+        }
+    }
+    return true;
+}
+
+} // namespace voltdb
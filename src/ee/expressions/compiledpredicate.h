@@ -0,0 +1,130 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB Inc. are licensed under the following
+ * terms and conditions:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef EXPRESSIONS_COMPILED_PREDICATE_H
+#define EXPRESSIONS_COMPILED_PREDICATE_H
+
+#include <vector>
+
+#include "common/tabletuple.h"
+#include "expressions/abstractexpression.h"
+
+namespace voltdb {
+
+class TupleSchema;
+
+/**
+ * A scan predicate flattened, once per plan, into a list of type specialized
+ * tests. The top level conjuncts that compare a fixed width column of the
+ * scanned tuple with a constant or a parameter (<, <=, =, <>, >=, >) each
+ * become a test that reads the column straight out of the tuple storage and
+ * compares native values, without building NValues or walking the expression
+ * tree. The other conjuncts are kept as expressions and evaluated after the
+ * compiled tests pass.
+ *
+ * The compiled tests are only valid for a given set of parameters: call bind()
+ * once per execution, and evaluate the original predicate instead when it
+ * returns false (a null or differently typed parameter).
+ */
+class CompiledPredicate {
+public:
+    /**
+     * Compile the predicate for tuples of the given schema. Returns NULL when
+     * no conjunct of the predicate can be compiled, in which case there is
+     * nothing to gain over the expression tree.
+     */
+    static CompiledPredicate* compile(const AbstractExpression* predicate, const TupleSchema* schema);
+
+    /**
+     * Resolve the constant and parameter operands of the compiled tests for
+     * this execution. Returns false if one of them can't be compared natively.
+     */
+    bool bind();
+
+    /** Evaluate the predicate on a tuple. bind() must have returned true. */
+    bool eval(const TableTuple* tuple) const {
+        const char* data = tuple->address() + TUPLE_HEADER_SIZE;
+        for (std::vector<Test>::const_iterator it = m_tests.begin(); it != m_tests.end(); ++it) {
+            if ( ! it->m_function(data + it->m_offset, *it)) {
+                return false;
+            }
+        }
+        return evalResidual(tuple);
+    }
+
+    /**
+     * Apply the compiled tests to a run of tuple slots, tupleLength bytes apart,
+     * clearing the selection byte of every slot that fails one of them. The
+     * residual expressions are left to evalResidual(). bind() must have returned true.
+     */
+    void evalBatch(const char* runStart, uint32_t tupleLength, uint32_t slots, uint8_t* selection) const;
+
+    /** Evaluate only the conjuncts that were not compiled */
+    bool evalResidual(const TableTuple* tuple) const {
+        for (std::vector<const AbstractExpression*>::const_iterator it = m_residual.begin();
+             it != m_residual.end(); ++it) {
+            if ( ! (*it)->eval(tuple, NULL).isTrue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The number of conjuncts evaluated as compiled tests */
+    std::size_t numCompiledTests() const {
+        return m_tests.size();
+    }
+
+    /** The number of conjuncts still evaluated as expressions */
+    std::size_t numResidualExpressions() const {
+        return m_residual.size();
+    }
+
+    struct Test;
+    typedef bool (*TestFunction)(const char* field, const Test& test);
+    typedef void (*BatchFunction)(const char* field, uint32_t stride, uint32_t count,
+                                  const Test& test, uint8_t* selection);
+
+    struct Test {
+        TestFunction m_function;
+        BatchFunction m_batchFunction;
+        // Offset of the column in the tuple data
+        uint32_t m_offset;
+        ValueType m_columnType;
+        // The constant or parameter the column is compared with
+        const AbstractExpression* m_operand;
+        // The operand as of the last bind()
+        int64_t m_bigintOperand;
+        double m_doubleOperand;
+    };
+
+private:
+    CompiledPredicate() {}
+
+    bool compileConjunct(const AbstractExpression* conjunct, const TupleSchema* schema);
+
+    std::vector<Test> m_tests;
+    std::vector<const AbstractExpression*> m_residual;
+};
+
+} // namespace voltdb
+
+#endif // EXPRESSIONS_COMPILED_PREDICATE_H
@@ -0,0 +1,62 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef HSTOREHASHJOINNODE_H
+#define HSTOREHASHJOINNODE_H
+
+#include "abstractjoinnode.h"
+
+namespace voltdb {
+
+/**
+ * Plan node for an equi-join that builds a hash table over the inner input
+ * keyed by the inner hash expressions and probes it with the outer hash
+ * expressions. The i-th outer expression is paired with the i-th inner one.
+ * The full join predicate is still evaluated against every candidate pair.
+ */
+class HashJoinPlanNode : public AbstractJoinPlanNode
+{
+public:
+    HashJoinPlanNode() { }
+    ~HashJoinPlanNode();
+    PlanNodeType getPlanNodeType() const;
+    std::string debugInfo(const std::string& spacer) const;
+
+    const std::vector<AbstractExpression*>& getOuterHashExpressions() const
+    { return m_outerHashExpressions; }
+
+    const std::vector<AbstractExpression*>& getInnerHashExpressions() const
+    { return m_innerHashExpressions; }
+
+    const std::vector<bool>& getNullSafeHashKeys() const
+    { return m_nullSafeHashKeys; }
+
+protected:
+    void loadFromJSONObject(PlannerDomValue obj);
+
+private:
+    // Expressions evaluated against an outer tuple to probe the hash table
+    OwningExpressionVector m_outerHashExpressions;
+    // Expressions evaluated against an inner tuple to build the hash table
+    OwningExpressionVector m_innerHashExpressions;
+    // Whether a NULL key matches a NULL key (IS NOT DISTINCT FROM) or nothing (=)
+    std::vector<bool> m_nullSafeHashKeys;
+};
+
+} // namespace voltdb
+
+#endif
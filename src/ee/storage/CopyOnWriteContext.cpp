@@ -37,13 +37,15 @@ CopyOnWriteContext::CopyOnWriteContext(
         PersistentTableSurgeon &surgeon,
         int32_t partitionId,
         const std::vector<std::string> &predicateStrings,
-        int64_t totalTuples) :
+        int64_t totalTuples,
+        int64_t modifiedSince) :
              TableStreamerContext(table, surgeon, partitionId, predicateStrings),
              m_backedUpTuples(TableFactory::buildCopiedTempTable("COW of " + table.name(),
                                                                  &table, NULL)),
              m_pool(2097152, 320),
              m_tuple(table.schema()),
              m_finishedTableScan(false),
+             m_modifiedSince(modifiedSince),
              m_totalTuples(totalTuples),
              m_tuplesRemaining(totalTuples),
              m_blocksCompacted(0),
@@ -68,7 +70,7 @@ TableStreamerContext::ActivationReturnCode
 CopyOnWriteContext::handleActivation(TableStreamType streamType)
 {
     // Only support snapshot streams.
-    if (streamType != TABLE_STREAM_SNAPSHOT) {
+    if (!tableStreamTypeIsSnapshot(streamType)) {
         return ACTIVATION_UNSUPPORTED;
     }
 
@@ -80,7 +82,14 @@ CopyOnWriteContext::handleActivation(TableStreamType streamType)
 
     m_surgeon.activateSnapshot();
 
-    m_iterator.reset(new CopyOnWriteIterator(&getTable(), &m_surgeon));
+    CopyOnWriteIterator *iter = new CopyOnWriteIterator(&getTable(), &m_surgeon, m_modifiedSince);
+    m_iterator.reset(iter);
+
+    // Unchanged blocks skipped by an incremental snapshot are not streamed.
+    if (m_totalTuples > 0) {
+        m_totalTuples -= iter->skippedTuples();
+        m_tuplesRemaining = m_totalTuples;
+    }
 
     return ACTIVATION_SUCCEEDED;
 }
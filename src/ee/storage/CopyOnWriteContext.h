@@ -91,12 +91,14 @@ private:
      * Construct a copy on write context for the specified table that will
      * serialize tuples using the provided serializer.
      * Private so that only TableStreamer::activateStream() can call.
+     * A non-negative modifiedSince only scans blocks changed after that spHandle.
      */
     CopyOnWriteContext(PersistentTable &table,
                        PersistentTableSurgeon &surgeon,
                        int32_t partitionId,
                        const std::vector<std::string> &predicateStrings,
-                       int64_t totalTuples);
+                       int64_t totalTuples,
+                       int64_t modifiedSince = -1);
 
     /**
      * Temp table for copies of tuples that were dirtied.
@@ -118,6 +120,8 @@ private:
 
     bool m_finishedTableScan;
 
+    int64_t m_modifiedSince;
+
     int64_t m_totalTuples;
     int64_t m_tuplesRemaining;
     int64_t m_blocksCompacted;
@@ -21,7 +21,8 @@
 namespace voltdb {
 CopyOnWriteIterator::CopyOnWriteIterator(
         PersistentTable *table,
-        PersistentTableSurgeon *surgeon) :
+        PersistentTableSurgeon *surgeon,
+        int64_t modifiedSince) :
         m_table(table), m_surgeon(surgeon), m_blocks(m_surgeon->getData()),
         m_blockIterator(m_blocks.begin()), m_end(m_blocks.end()),
         m_tupleLength(table->getTupleLength()),
@@ -29,6 +30,7 @@ CopyOnWriteIterator::CopyOnWriteIterator(
         m_blockOffset(0),
         m_currentBlock(NULL),
         m_tableEmpty(false),
+        m_skippedTuples(0),
         m_skippedDirtyRows(0),
         m_skippedInactiveRows(0) {
 
@@ -41,6 +43,29 @@ CopyOnWriteIterator::CopyOnWriteIterator(
         return;
     }
 
+    if (modifiedSince >= 0) {
+        // Incremental snapshot: hand unchanged blocks straight back to the
+        // table so they behave as if they had already been scanned.
+        TBMapI iter = m_blocks.begin();
+        while (iter != m_blocks.end()) {
+            TBPtr block = iter.data();
+            if (block->lastModifiedSpHandle() > modifiedSince) {
+                iter++;
+                continue;
+            }
+            m_skippedTuples += block->activeTuples();
+            m_surgeon->snapshotFinishedScanningBlock(block, block);
+            m_blocks.erase(block->address());
+            iter = m_blocks.upper_bound(block->address());
+        }
+        m_blockIterator = m_blocks.begin();
+        m_end = m_blocks.end();
+        if (m_blockIterator == m_end) {
+            m_tableEmpty = true;
+            return;
+        }
+    }
+
     //Prime the pump
     if (m_blockIterator != m_end) {
         m_surgeon->snapshotFinishedScanningBlock(m_currentBlock, m_blockIterator.data());
@@ -31,9 +31,14 @@ class CopyOnWriteIterator : public TupleIterator {
 
 public:
 
+    /**
+     * When modifiedSince is not negative, blocks whose last change is at or
+     * before that spHandle are released up front and never scanned.
+     */
     CopyOnWriteIterator(
         PersistentTable *table,
-        PersistentTableSurgeon *surgeon);
+        PersistentTableSurgeon *surgeon,
+        int64_t modifiedSince = -1);
 
     bool needToDirtyTuple(char *tupleAddress);
 
@@ -75,6 +80,13 @@ public:
 
     int64_t countRemaining() const;
 
+    /**
+     * Active tuples in the blocks skipped because they had not changed.
+     */
+    int64_t skippedTuples() const {
+        return m_skippedTuples;
+    }
+
 private:
     /**
      * Table being iterated over
@@ -110,6 +122,7 @@ private:
     TBPtr m_currentBlock;
     // flag to track if the snapshot was activated when the table was empty
     bool m_tableEmpty;
+    int64_t m_skippedTuples;
 public:
     int32_t m_skippedDirtyRows;
     int32_t m_skippedInactiveRows;
@@ -88,7 +88,8 @@ ElasticContext::handleActivation(TableStreamType streamType)
     // Create the index?
     if (streamType == TABLE_STREAM_ELASTIC_INDEX) {
         // Can't activate an indexing stream during a snapshot.
-        if (m_surgeon.hasStreamType(TABLE_STREAM_SNAPSHOT)) {
+        if (m_surgeon.hasStreamType(TABLE_STREAM_SNAPSHOT) ||
+                m_surgeon.hasStreamType(TABLE_STREAM_INCREMENTAL_SNAPSHOT)) {
             LogManager::getThreadLogger(LOGGERID_HOST)->log(LOGLEVEL_WARN,
                 "Elastic context activation is not allowed while a snapshot is in progress.");
             return ACTIVATION_FAILED;
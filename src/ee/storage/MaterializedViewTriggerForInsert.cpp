@@ -22,6 +22,7 @@
 #include "catalog/column.h"
 #include "catalog/columnref.h"
 #include "catalog/table.h"
+#include "common/executorcontext.hpp"
 #include "expressions/expressionutil.h"
 #include "indexes/tableindex.h"
 
@@ -39,6 +40,8 @@ MaterializedViewTriggerForInsert::MaterializedViewTriggerForInsert(PersistentTab
     , m_groupByColumnCount(parseGroupBy(mvInfo)) // also loads m_groupByExprs/Columns as needed
     , m_searchKeyValue(m_groupByColumnCount)
     , m_aggColumnCount(parseAggregation(mvInfo))
+    , m_hasDeltas(false)
+    , m_ungroupedDelta(NULL)
 {
     VOLT_TRACE("Construct MaterializedViewTriggerForInsert...");
 
@@ -67,6 +70,12 @@ MaterializedViewTriggerForInsert::~MaterializedViewTriggerForInsert() {
     for (int ii = 0; ii < m_aggExprs.size(); ++ii) {
         delete m_aggExprs[ii];
     }
+    if (m_hasDeltas) {
+        ExecutorContext* ec = ExecutorContext::getExecutorContext();
+        if (ec) {
+            ec->removeViewWithDeltas(this);
+        }
+    }
     m_target->decrementRefcount();
 }
 
@@ -105,6 +114,10 @@ void MaterializedViewTriggerForInsert::processTupleInsert(const TableTuple &newT
     if (failsPredicate(newTuple)) {
         return;
     }
+    if (fallible && ExecutorContext::getExecutorContext()->deferViewDeltas()) {
+        deferTupleInsert(newTuple);
+        return;
+    }
     bool exists = findExistingTuple(newTuple);
     if (!exists) {
         // create a blank tuple
@@ -197,6 +210,170 @@ void MaterializedViewTriggerForInsert::processTupleInsert(const TableTuple &newT
     }
 }
 
+void MaterializedViewTriggerForInsert::deferTupleInsert(const TableTuple &newTuple) {
+    TableTuple delta = findOrCreateDelta(newTuple);
+    // The source row is a delta of its own: a count(*) of 1, a COUNT of 0 or 1
+    // and its input value for SUM, MIN and MAX.
+    delta.setNValue((int)m_groupByColumnCount,
+                    delta.getNValue((int)m_groupByColumnCount).op_increment());
+    int aggOffset = (int)m_groupByColumnCount + 1;
+    for (int aggIndex = 0; aggIndex < m_aggColumnCount; aggIndex++) {
+        NValue newValue = getAggInputFromSrcTuple(aggIndex, newTuple);
+        if (m_aggTypes[aggIndex] == EXPRESSION_TYPE_AGGREGATE_COUNT) {
+            newValue = ValueFactory::getBigIntValue(newValue.isNull() ? 0 : 1);
+        }
+        NValue combined = combineAggregate(m_aggTypes[aggIndex],
+                                           delta.getNValue(aggOffset+aggIndex), newValue);
+        delta.setNValueAllocateForObjectCopies(aggOffset+aggIndex, combined, m_deltaPool.get());
+    }
+}
+
+TableTuple MaterializedViewTriggerForInsert::findOrCreateDelta(const TableTuple &newTuple) {
+    if ( ! m_hasDeltas) {
+        if ( ! m_deltaPool) {
+            m_deltaPool.reset(new Pool(64 * 1024, 1));
+        }
+        ExecutorContext::getExecutorContext()->addViewWithDeltas(this);
+        m_hasDeltas = true;
+    }
+
+    if (m_groupByColumnCount == 0) {
+        if (m_ungroupedDelta == NULL) {
+            m_ungroupedDelta = allocateDelta().address();
+        }
+        return TableTuple(m_ungroupedDelta, m_target->schema());
+    }
+
+    for (int colindex = 0; colindex < m_groupByColumnCount; colindex++) {
+        NValue value = getGroupByValueFromSrcTuple(colindex, newTuple);
+        m_searchKeyValue[colindex] = value;
+        m_searchKeyTuple.setNValue(colindex, value);
+    }
+    DeltaMap::const_iterator it = m_deltas.find(m_searchKeyTuple);
+    if (it != m_deltas.end()) {
+        return TableTuple(it->second, m_target->schema());
+    }
+
+    // The search key's out-of-line values are in the temp string pool,
+    // which won't outlive the fragment, so keep a copy in the delta pool.
+    const TupleSchema* keySchema = m_index->getKeySchema();
+    TableTuple key(keySchema);
+    key.move(m_deltaPool->allocateZeroes(keySchema->tupleLength() + TUPLE_HEADER_SIZE));
+    TableTuple delta = allocateDelta();
+    for (int colindex = 0; colindex < m_groupByColumnCount; colindex++) {
+        key.setNValueAllocateForObjectCopies(colindex, m_searchKeyValue[colindex], m_deltaPool.get());
+        delta.setNValueAllocateForObjectCopies(colindex, m_searchKeyValue[colindex], m_deltaPool.get());
+    }
+    m_deltas.insert(std::make_pair(key, delta.address()));
+    return delta;
+}
+
+TableTuple MaterializedViewTriggerForInsert::allocateDelta() {
+    // An empty group: a count(*) and COUNTs of 0, nulls for the other aggregates.
+    TableTuple delta(m_target->schema());
+    delta.move(m_deltaPool->allocateZeroes(m_target->getTupleLength()));
+    delta.setNValue((int)m_groupByColumnCount, ValueFactory::getBigIntValue(0));
+    int aggOffset = (int)m_groupByColumnCount + 1;
+    for (int aggIndex = 0; aggIndex < m_aggColumnCount; aggIndex++) {
+        if (m_aggTypes[aggIndex] == EXPRESSION_TYPE_AGGREGATE_COUNT) {
+            delta.setNValue(aggOffset+aggIndex, ValueFactory::getBigIntValue(0));
+        }
+        else {
+            delta.setNValue(aggOffset+aggIndex,
+                            NValue::getNullValue(delta.getSchema()->columnType(aggOffset+aggIndex)));
+        }
+    }
+    return delta;
+}
+
+NValue MaterializedViewTriggerForInsert::combineAggregate(ExpressionType aggType,
+                                                          const NValue &existing,
+                                                          const NValue &delta) {
+    if (delta.isNull()) {
+        return existing;
+    }
+    if (existing.isNull()) {
+        return delta;
+    }
+    switch(aggType) {
+    case EXPRESSION_TYPE_AGGREGATE_SUM:
+    case EXPRESSION_TYPE_AGGREGATE_COUNT:
+        return existing.op_add(delta);
+    case EXPRESSION_TYPE_AGGREGATE_MIN:
+        // ignore any new value that is not strictly an improvement
+        return delta.compare(existing) < 0 ? delta : existing;
+    case EXPRESSION_TYPE_AGGREGATE_MAX:
+        return delta.compare(existing) > 0 ? delta : existing;
+    default:
+        assert(false); // Should have been caught when the matview was loaded.
+        return existing;
+    }
+}
+
+void MaterializedViewTriggerForInsert::applyDeltas() {
+    if ( ! m_hasDeltas) {
+        return;
+    }
+    ExecutorContext::getExecutorContext()->removeViewWithDeltas(this);
+    m_hasDeltas = false;
+    // Take the deltas out before applying any, so that an error part way
+    // through drops the rest rather than applying some of them twice.
+    DeltaMap deltas;
+    deltas.swap(m_deltas);
+    char* ungroupedDelta = m_ungroupedDelta;
+    m_ungroupedDelta = NULL;
+    try {
+        if (ungroupedDelta != NULL) {
+            applyDelta(TableTuple(), TableTuple(ungroupedDelta, m_target->schema()));
+        }
+        BOOST_FOREACH (const DeltaMap::value_type& entry, deltas) {
+            applyDelta(entry.first, TableTuple(entry.second, m_target->schema()));
+        }
+    }
+    catch (...) {
+        m_deltaPool->purge();
+        throw;
+    }
+    m_deltaPool->purge();
+}
+
+void MaterializedViewTriggerForInsert::applyDelta(const TableTuple &key, const TableTuple &delta) {
+    if (m_groupByColumnCount == 0) {
+        TableIterator iterator = m_target->iterator();
+        iterator.next(m_existingTuple);
+        assert( ! m_existingTuple.isNullTuple());
+    }
+    else {
+        IndexCursor indexCursor(m_index->getTupleSchema());
+        m_index->moveToKey(&key, indexCursor);
+        m_existingTuple = m_index->nextValueAtKey(indexCursor);
+        if (m_existingTuple.isNullTuple()) {
+            // The delta is the new group row.
+            TableTuple newRow(delta);
+            m_target->insertPersistentTuple(newRow, true);
+            return;
+        }
+    }
+
+    memset(m_updatedTuple.address(), 0, m_target->getTupleLength());
+    for (int colindex = 0; colindex < m_groupByColumnCount; colindex++) {
+        // as in processTupleInsert, take the group values from the existing tuple
+        m_updatedTuple.setNValue(colindex, m_existingTuple.getNValue(colindex));
+    }
+    m_updatedTuple.setNValue((int)m_groupByColumnCount,
+                             m_existingTuple.getNValue((int)m_groupByColumnCount)
+                                 .op_add(delta.getNValue((int)m_groupByColumnCount)));
+    int aggOffset = (int)m_groupByColumnCount + 1;
+    for (int aggIndex = 0; aggIndex < m_aggColumnCount; aggIndex++) {
+        m_updatedTuple.setNValue(aggOffset+aggIndex,
+                                 combineAggregate(m_aggTypes[aggIndex],
+                                                  m_existingTuple.getNValue(aggOffset+aggIndex),
+                                                  delta.getNValue(aggOffset+aggIndex)));
+    }
+    m_target->updateTupleWithSpecificIndexes(m_existingTuple, m_updatedTuple,
+                                             m_updatableIndexList, true);
+}
+
 void MaterializedViewTriggerForInsert::setTargetTable(PersistentTable * target) {
     PersistentTable * oldTarget = m_target;
     m_target = target;
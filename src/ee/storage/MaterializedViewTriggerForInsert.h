@@ -20,11 +20,14 @@
 
 #include "catalog/catalogmap.h"
 #include "catalog/materializedviewinfo.h"
+#include "common/Pool.hpp"
 #include "common/tabletuple.h"
 #include "expressions/abstractexpression.h"
 
 #include "boost/foreach.hpp"
+#include "boost/scoped_ptr.hpp"
 #include "boost/shared_array.hpp"
+#include "boost/unordered_map.hpp"
 
 #include <string>
 #include <vector>
@@ -55,9 +58,20 @@ public:
     /**
      * Called when the source table is inserting a tuple. This will update the materialized view
      * destination table to reflect this change.
+     * If the executor context is deferring view deltas and the insert is fallible, the change
+     * is only folded into the pending delta for its group until applyDeltas is called.
      */
     void processTupleInsert(const TableTuple &newTuple, bool fallible);
 
+    /**
+     * Apply the deferred deltas to the destination table, one index lookup and one
+     * insert or update per group, and register their undo actions in the current
+     * undo quantum.
+     */
+    void applyDeltas();
+
+    bool hasDeltas() const { return m_hasDeltas; }
+
     PersistentTable * targetTable() const { return m_target; }
 
     catalog::MaterializedViewInfo* getMaterializedViewInfo() const {
@@ -126,6 +140,17 @@ protected:
      */
     bool findExistingTuple(const TableTuple &oldTuple);
 
+    void deferTupleInsert(const TableTuple &newTuple);
+    TableTuple findOrCreateDelta(const TableTuple &newTuple);
+    TableTuple allocateDelta();
+    void applyDelta(const TableTuple &key, const TableTuple &delta);
+
+    /**
+     * Combine two partial aggregates of the same group, either of which may be null
+     * when it has seen no non-null input.
+     */
+    static NValue combineAggregate(ExpressionType aggType, const NValue &existing, const NValue &delta);
+
     // the materialized view table
     PersistentTable *m_target;
 
@@ -180,6 +205,15 @@ protected:
     // aggregated columns, but there might be some other mostly harmless ones in there that are based
     // solely on the immutable primary key (GROUP BY columns).
     std::vector<TableIndex*> m_updatableIndexList;
+
+    typedef boost::unordered_map<TableTuple, char*, TableTupleHasher, TableTupleEqualityChecker> DeltaMap;
+
+    // Deferred changes, keyed by group with tuples laid out like the view rows. The
+    // keys, deltas and their out-of-line values live in m_deltaPool until applied.
+    bool m_hasDeltas;
+    DeltaMap m_deltas;
+    char* m_ungroupedDelta;
+    boost::scoped_ptr<Pool> m_deltaPool;
 };
 
 /**
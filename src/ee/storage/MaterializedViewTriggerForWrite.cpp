@@ -389,6 +389,10 @@ void MaterializedViewTriggerForWrite::processTupleDelete(const TableTuple &oldTu
         return;
     }
 
+    // The view row must reflect every earlier insert before it can be
+    // decremented, and a MIN/MAX fallback may need any group's row.
+    applyDeltas();
+
     if ( ! findExistingTuple(oldTuple)) {
         std::string name = m_target->name();
         throwFatalException("MaterializedViewTriggerForWrite for table %s went"
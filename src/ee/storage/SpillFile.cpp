@@ -0,0 +1,99 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include "SpillFile.h"
+
+#include "common/SerializableEEException.h"
+
+#include <cerrno>
+#include <cstdio>
+#include <cstring>
+#include <unistd.h>
+#include <vector>
+
+namespace voltdb {
+
+SpillFile::SpillFile(const std::string& directory)
+    : m_directory(directory)
+    , m_fd(-1)
+    , m_size(0)
+{
+    std::string path = directory + "/temptable_spill_XXXXXX";
+    std::vector<char> pathTemplate(path.begin(), path.end());
+    pathTemplate.push_back('\0');
+    m_fd = ::mkstemp(&pathTemplate[0]);
+    if (m_fd == -1) {
+        throwIOException("create");
+    }
+    // Nobody else needs to find this file, and unlinking it now
+    // guarantees it is cleaned up however this process exits.
+    ::unlink(&pathTemplate[0]);
+}
+
+SpillFile::~SpillFile()
+{
+    if (m_fd != -1) {
+        ::close(m_fd);
+    }
+}
+
+int64_t SpillFile::append(const char* data, size_t length)
+{
+    const int64_t offset = m_size;
+    size_t written = 0;
+    while (written < length) {
+        ssize_t rc = ::pwrite(m_fd, data + written, length - written, offset + written);
+        if (rc == -1) {
+            if (errno == EINTR) {
+                continue;
+            }
+            throwIOException("write to");
+        }
+        written += rc;
+    }
+    m_size += length;
+    return offset;
+}
+
+void SpillFile::read(int64_t offset, char* data, size_t length) const
+{
+    size_t bytesRead = 0;
+    while (bytesRead < length) {
+        ssize_t rc = ::pread(m_fd, data + bytesRead, length - bytesRead, offset + bytesRead);
+        if (rc == -1) {
+            if (errno == EINTR) {
+                continue;
+            }
+            throwIOException("read from");
+        }
+        if (rc == 0) {
+            errno = EIO;
+            throwIOException("read from");
+        }
+        bytesRead += rc;
+    }
+}
+
+void SpillFile::throwIOException(const char* operation) const
+{
+    char msg[1024];
+    snprintf(msg, sizeof(msg), "Failed to %s temp table spill file in %s: %s",
+             operation, m_directory.c_str(), strerror(errno));
+    throw SerializableEEException(VOLT_EE_EXCEPTION_TYPE_EEEXCEPTION, msg);
+}
+
+} // namespace voltdb
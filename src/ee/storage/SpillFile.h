@@ -0,0 +1,64 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef _EE_STORAGE_SPILLFILE_H_
+#define _EE_STORAGE_SPILLFILE_H_
+
+#include <stdint.h>
+#include <cstddef>
+#include <string>
+
+namespace voltdb {
+
+/**
+ * An anonymous scratch file used to hold temp table blocks that did not fit
+ * within the temp table memory limit.  The file is created in the per-site
+ * spill directory and unlinked immediately, so its space is returned to the
+ * file system as soon as the last block referencing it goes away, even if
+ * the process dies.
+ */
+class SpillFile {
+public:
+    explicit SpillFile(const std::string& directory);
+    ~SpillFile();
+
+    /**
+     * Append length bytes to the end of the file.
+     * Return the offset at which they were written.
+     */
+    int64_t append(const char* data, size_t length);
+
+    /** Read back length bytes previously appended at the given offset. */
+    void read(int64_t offset, char* data, size_t length) const;
+
+    int64_t size() const { return m_size; }
+
+private:
+    // no copies, no assignment
+    SpillFile(SpillFile const&);
+    SpillFile operator=(SpillFile const&);
+
+    void throwIOException(const char* operation) const;
+
+    const std::string m_directory;
+    int m_fd;
+    int64_t m_size;
+};
+
+} // namespace voltdb
+
+#endif // _EE_STORAGE_SPILLFILE_H_
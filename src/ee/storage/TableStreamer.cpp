@@ -103,6 +103,14 @@ bool TableStreamer::activateStream(PersistentTableSurgeon &surgeon,
                                                predicateStrings, m_table.activeTupleCount()));
                     break;
 
+                case TABLE_STREAM_INCREMENTAL_SNAPSHOT:
+                    context.reset(
+                        new CopyOnWriteContext(m_table, surgeon, m_partitionId,
+                                               predicateStrings, m_table.activeTupleCount(),
+                                               m_table.isIncrementalSnapshotDelta() ?
+                                                   m_table.incrementalSnapshotBase() : -1));
+                    break;
+
                 case TABLE_STREAM_RECOVERY:
                     context.reset(new RecoveryContext(m_table, surgeon, m_partitionId,
                                                       m_tableId));
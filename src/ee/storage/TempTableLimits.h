@@ -19,6 +19,7 @@
 #define _EE_STORAGE_TEMPTABLELIMITS_H_
 
 #include <stdint.h>
+#include <string>
 
 namespace voltdb {
 
@@ -28,12 +29,16 @@ namespace voltdb {
  */
 class TempTableLimits {
 public:
-    TempTableLimits(int64_t memoryLimit = 1024 * 1024 * 100, int64_t logThreshold = -1)
+    TempTableLimits(int64_t memoryLimit = 1024 * 1024 * 100, int64_t logThreshold = -1,
+                    const std::string& spillDirectory = std::string())
         : m_currMemoryInBytes(0)
         , m_peakMemoryInBytes(0)
+        , m_spilledBytes(0)
         , m_logThreshold(logThreshold)
         , m_memoryLimit(memoryLimit)
+        , m_spillDirectory(spillDirectory)
         , m_logLatch(false)
+        , m_spillLogLatch(false)
     { }
 
     /**
@@ -44,9 +49,38 @@ public:
     void increaseAllocated(int bytes);
     void reduceAllocated(int bytes);
 
+    /**
+     * Return true if allocating the given number of additional bytes
+     * would push the temp table memory past the memory limit.
+     */
+    bool wouldExceedLimit(int bytes) const {
+        return m_memoryLimit > 0 && m_currMemoryInBytes + bytes > m_memoryLimit;
+    }
+
+    /**
+     * Spillable temp tables may write full blocks to the spill directory
+     * instead of failing when the memory limit is reached.  Spilling needs
+     * both a directory and a memory limit to trigger it.
+     */
+    bool canSpill() const { return m_memoryLimit > 0 && ! m_spillDirectory.empty(); }
+
+    /**
+     * Track bytes written to spill files.  Log once at INFO level to the SQL
+     * instance the first time this plan fragment spills.
+     */
+    void recordSpill(int bytes);
+
+    int64_t getMemoryLimit() const { return m_memoryLimit; }
+    const std::string& getSpillDirectory() const { return m_spillDirectory; }
+    int64_t getSpilledBytes() const { return m_spilledBytes; }
+
     int64_t getAllocated() const { return m_currMemoryInBytes; }
     int64_t getPeakMemoryInBytes() const { return m_peakMemoryInBytes; }
-    void resetPeakMemory() { m_peakMemoryInBytes = m_currMemoryInBytes; }
+    void resetPeakMemory() {
+        m_peakMemoryInBytes = m_currMemoryInBytes;
+        m_spilledBytes = 0;
+        m_spillLogLatch = false;
+    }
 
 private:
     /// The current amount of memory used by temp tables for this plan fragment.
@@ -54,15 +88,24 @@ private:
     /// The high water amount of memory used by temp tables
     /// during the current execution of this plan fragment.
     int64_t m_peakMemoryInBytes;
+    /// The amount of temp table data written to spill files
+    /// during the current execution of this plan fragment.
+    int64_t m_spilledBytes;
     /// The memory allocation at which a log message will be generated.
     /// A negative value disables this behavior.
     const int64_t m_logThreshold;
     /// The memory allocation at which an exception will be thrown and the execution aborted.
     /// A negative value disables this behavior.
     const int64_t m_memoryLimit;
+    /// The per-site scratch directory for spill files.
+    /// An empty value disables spilling.
+    const std::string m_spillDirectory;
     /// True if we have already generated a log message for
     /// exceeding the log threshold and not yet dropped below it.
     bool m_logLatch;
+    /// True if we have already generated a log message for
+    /// spilling during the current execution of this plan fragment.
+    bool m_spillLogLatch;
 };
 
 } // namespace voltdb
@@ -16,6 +16,7 @@
  */
 #include "storage/TupleBlock.h"
 #include "storage/table.h"
+#include "storage/SpillFile.h"
 #include <sys/mman.h>
 #include <errno.h>
 #include "common/ThreadLocalPool.h"
@@ -33,31 +34,78 @@ TupleBlock::TupleBlock(Table *table, TBBucketPtr bucket) :
         m_nextFreeTuple(0),
         m_lastCompactionOffset(0),
         m_bucket(bucket),
-        m_bucketIndex(0)
+        m_bucketIndex(0),
+#ifdef USE_MMAP
+        m_storageSize(static_cast<size_t> (m_tupleLength * m_tuplesPerBlock)),
+#else
+        m_storageSize(table->m_tableAllocationSize),
+#endif
+        m_lastModifiedSpHandle(0),
+        m_spillOffset(0),
+        m_spillPins(0)
 {
+    allocateStorage();
+    tupleBlocksAllocated++;
+}
+
+TupleBlock::~TupleBlock() {
+    if (m_storage != NULL) {
+        releaseStorage();
+    }
+}
+
+void TupleBlock::allocateStorage() {
 #ifdef USE_MMAP
-    size_t tableAllocationSize = static_cast<size_t> (m_tupleLength * m_tuplesPerBlock);
-    m_storage = static_cast<char*>(::mmap( 0, tableAllocationSize, PROT_READ | PROT_WRITE, MAP_PRIVATE | MAP_ANON, -1, 0 ));
+    m_storage = static_cast<char*>(::mmap( 0, m_storageSize, PROT_READ | PROT_WRITE, MAP_PRIVATE | MAP_ANON, -1, 0 ));
     if (m_storage == MAP_FAILED) {
         std::cout << strerror( errno ) << std::endl;
         throwFatalException("Failed mmap");
     }
 #else
-    m_storage = new char[table->m_tableAllocationSize];
+    m_storage = new char[m_storageSize];
 #endif
-    tupleBlocksAllocated++;
 }
 
-TupleBlock::~TupleBlock() {
+void TupleBlock::releaseStorage() {
 #ifdef USE_MMAP
-    size_t tableAllocationSize = static_cast<size_t> (m_tupleLength * m_tuplesPerBlock);
-    if (::munmap( m_storage, tableAllocationSize) != 0) {
+    if (::munmap( m_storage, m_storageSize) != 0) {
         std::cout << strerror( errno ) << std::endl;
         throwFatalException("Failed munmap");
     }
 #else
     delete []m_storage;
 #endif
+    m_storage = NULL;
+}
+
+void TupleBlock::spill(const boost::shared_ptr<SpillFile>& spillFile) {
+    assert( ! isSpilled());
+    assert(m_freeList.empty());
+    m_spillOffset = spillFile->append(m_storage, m_tupleLength * m_nextFreeTuple);
+    m_spillFile = spillFile;
+    releaseStorage();
+}
+
+void TupleBlock::pinSpilled() {
+    assert(isSpilled());
+    if (m_spillPins == 0) {
+        allocateStorage();
+        try {
+            m_spillFile->read(m_spillOffset, m_storage, m_tupleLength * m_nextFreeTuple);
+        } catch (...) {
+            releaseStorage();
+            throw;
+        }
+    }
+    ++m_spillPins;
+}
+
+void TupleBlock::unpinSpilled() {
+    assert(isSpilled());
+    assert(m_spillPins > 0);
+    if (--m_spillPins == 0) {
+        releaseStorage();
+    }
 }
 
 std::pair<int, int> TupleBlock::merge(Table *table, TBPtr source, TupleMovementListener *listener) {
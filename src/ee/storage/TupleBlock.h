@@ -48,6 +48,7 @@ void intrusive_ptr_release(voltdb::TupleBlock * p);
 namespace voltdb {
 class Table;
 class TupleMovementListener;
+class SpillFile;
 
 class TruncatedInt {
 public:
@@ -218,6 +219,23 @@ public:
         return m_nextFreeTuple;
     }
 
+    /**
+     * Write the tuples of this block to the spill file and release its storage.
+     * Only used for temp table blocks, which never have holes in them.
+     */
+    void spill(const boost::shared_ptr<SpillFile>& spillFile);
+
+    inline bool isSpilled() const {
+        return m_spillFile.get() != NULL;
+    }
+
+    /**
+     * Read a spilled block back into memory so its tuples can be scanned.
+     * Pins nest; the storage is released again when the last pin is removed.
+     */
+    void pinSpilled();
+    void unpinSpilled();
+
     ~TupleBlock();
 
     inline uint32_t lastCompactionOffset() {
@@ -235,6 +253,18 @@ public:
     inline TBBucketPtr currentBucket() {
         return m_bucket;
     }
+
+    /**
+     * SpHandle of the last transaction that changed a tuple in this block
+     * while the owning table was tracking changes for incremental snapshots.
+     */
+    inline int64_t lastModifiedSpHandle() const {
+        return m_lastModifiedSpHandle;
+    }
+
+    inline void lastModifiedSpHandle(int64_t spHandle) {
+        m_lastModifiedSpHandle = spHandle;
+    }
 private:
     char*   m_storage;
     uint32_t m_references;
@@ -255,6 +285,16 @@ private:
 
     TBBucketPtr m_bucket;
     int m_bucketIndex;
+    size_t m_storageSize;
+    int64_t m_lastModifiedSpHandle;
+
+    /// Where this block's tuples live once the block has been spilled
+    boost::shared_ptr<SpillFile> m_spillFile;
+    int64_t m_spillOffset;
+    uint32_t m_spillPins;
+
+    void allocateStorage();
+    void releaseStorage();
 };
 
 /**
@@ -268,6 +308,54 @@ public:
                                      TableTuple &sourceTuple, TableTuple &targetTuple) = 0;
 };
 
+/**
+ * Holds a pin on a spilled block that has been read back into memory.
+ * Every copy holds a pin of its own and the pin is removed when the holder
+ * goes away, so copies of a table iterator in the middle of a spilled block
+ * keep the block readable for as long as any of them is on it.
+ */
+class SpilledBlockPin {
+public:
+    SpilledBlockPin() {}
+
+    SpilledBlockPin(const SpilledBlockPin& other) : m_block(other.m_block) {
+        if (m_block != NULL) {
+            m_block->pinSpilled();
+        }
+    }
+
+    SpilledBlockPin& operator=(const SpilledBlockPin& other) {
+        if (other.m_block != NULL) {
+            other.m_block->pinSpilled();
+        }
+        release();
+        m_block = other.m_block;
+        return *this;
+    }
+
+    ~SpilledBlockPin() {
+        release();
+    }
+
+    /** Read the spilled block back if needed and pin it in place of the held one */
+    void pin(const TBPtr& block) {
+        block->pinSpilled();
+        release();
+        m_block = block;
+    }
+
+    void release() {
+        if (m_block != NULL) {
+            TBPtr block = m_block;
+            m_block = NULL;
+            block->unpinSpilled();
+        }
+    }
+
+private:
+    TBPtr m_block;
+};
+
 }
 
 
@@ -59,9 +59,11 @@
 #include "TableCatalogDelegate.hpp"
 #include "tablefactory.h"
 #include "tableiterator.h"
+#include "temptable.h"
 #include "TupleStreamException.h"
 
 #include "common/debuglog.h"
+#include "common/Pool.hpp"
 #include "common/serializeio.h"
 #include "common/FailureInjection.h"
 #include "common/tabletuple.h"
@@ -96,6 +98,13 @@ TableTuple keyTuple;
 
 #define TABLE_BLOCKSIZE 2097152
 
+// Upper bound on the serialized size of the deleted primary keys kept for
+// incremental snapshots. They are returned in the result buffer when the
+// snapshot is activated, which can't grow past 50MB, so wide keys have to be
+// bounded by bytes rather than by count. Past it the table stops tracking
+// changes and the next incremental snapshot of the table is a full one.
+static const size_t MAX_TRACKED_DELETED_KEY_BYTES = 32 * 1024 * 1024;
+
 class SetAndRestorePendingDeleteFlag
 {
 public:
@@ -133,7 +142,11 @@ PersistentTable::PersistentTable(int partitionColumn, const char * signature, bo
     m_pkeyIndex(NULL),
     m_mvHandler(NULL),
     m_deltaTable(NULL),
-    m_deltaTableActive(false)
+    m_deltaTableActive(false),
+    m_changeTrackingSince(-1),
+    m_incrementalSnapshotBase(-1),
+    m_incrementalSnapshotSpHandle(-1),
+    m_deletedKeysSerializedBytes(0)
 {
     // this happens here because m_data might not be initialized above
     m_iter.reset(m_data.begin());
@@ -248,6 +261,7 @@ void PersistentTable::nextFreeTuple(TableTuple *tuple) {
 
         tuple->move(retval.first);
         ++m_tupleCount;
+        markBlockChanged(block.get());
         if (!block->hasFreeTuples()) {
             m_blocksWithSpace.erase(block);
         }
@@ -286,6 +300,7 @@ void PersistentTable::nextFreeTuple(TableTuple *tuple) {
 
     tuple->move(retval.first);
     ++m_tupleCount;
+    markBlockChanged(block.get());
     if (block->hasFreeTuples()) {
         m_blocksWithSpace.insert(block);
     }
@@ -388,6 +403,12 @@ void PersistentTable::truncateTable(VoltDBEngine* engine, bool fallible) {
         return;
     }
 
+    // Bring the views up to date with any deferred inserts before they
+    // are either emptied row by row or replaced below.
+    BOOST_FOREACH (MaterializedViewTriggerForWrite* view, m_views) {
+        view->applyDeltas();
+    }
+
     // For a materialized view don't optimize truncate,
     // this needs more work - ENG-10323.
     if (m_isMaterialized) {
@@ -739,6 +760,10 @@ void PersistentTable::insertTupleForUndo(char *tuple) {
     --m_tuplesPinnedByUndo;
     --m_invisibleTuplesPendingDeleteCount;
 
+    // The delete being undone already recorded the tuple's key, so make sure
+    // the next incremental snapshot picks the tuple up again.
+    markBlockChanged(tuple);
+
     /*
      * The only thing to do is reinsert the tuple into the indexes. It was never moved,
      * just marked as deleted.
@@ -893,6 +918,13 @@ void PersistentTable::updateTupleWithSpecificIndexes(TableTuple &targetTupleToUp
         sourceTupleWithNewValues.setDirtyFalse();
     }
 
+    if (isTrackingChanges()) {
+        markBlockChanged(targetTupleToUpdate.address());
+        if (m_pkeyIndex->checkForIndexChange(&targetTupleToUpdate, &sourceTupleWithNewValues)) {
+            recordDeletedKey(targetTupleToUpdate);
+        }
+    }
+
     // Either the "before" or "after" object reference values that change will come in handy later,
     // so collect them up.
     std::vector<char*> oldObjects;
@@ -1034,6 +1066,10 @@ void PersistentTable::deleteTuple(TableTuple &target, bool fallible) {
         }
     }
 
+    if (isTrackingChanges()) {
+        recordDeletedKey(target);
+    }
+
     // Just like insert, we want to remove this tuple from all of our indexes
     deleteFromAllIndexes(&target);
 
@@ -1168,6 +1204,10 @@ void PersistentTable::deleteTupleForUndo(char* tupleData, bool skipLookup) {
     // Make sure that they are not trying to delete the same tuple twice
     assert(target.isActive());
 
+    if (isTrackingChanges()) {
+        recordDeletedKey(target);
+    }
+
     deleteFromAllIndexes(&target);
     deleteTupleFinalize(target); // also frees object columns
 }
@@ -1415,9 +1455,125 @@ bool PersistentTable::activateStream(
         }
     }
 
+    // Incremental snapshots follow the predicates with the spHandle
+    // of the snapshot they are relative to, -1 if there is none.
+    if (tableStreamTypeIsIncrementalSnapshot(streamType)) {
+        prepareIncrementalSnapshot(serializeIn.readLong());
+    }
+
     return m_tableStreamer->activateStream(m_surgeon, streamType, predicateStrings);
 }
 
+/**
+ * Decide whether an incremental snapshot relative to baseSpHandle can be a delta.
+ * That needs a primary key and change tracking that started no later than the
+ * base. A delta only needs the deleted keys newer than the base, so the older
+ * ones are dropped. Otherwise the snapshot is a full one and tracking restarts
+ * from here so that the next incremental snapshot can be a delta.
+ */
+void PersistentTable::prepareIncrementalSnapshot(int64_t baseSpHandle) {
+    const int64_t spHandle = ExecutorContext::getExecutorContext()->currentSpHandle();
+    m_incrementalSnapshotSpHandle = spHandle;
+
+    if (isTrackingChanges() && baseSpHandle >= m_changeTrackingSince) {
+        m_incrementalSnapshotBase = baseSpHandle;
+
+        // SpHandles only go up, so the keys to drop are a prefix.
+        size_t obsolete = std::upper_bound(m_deletedKeySpHandles.begin(),
+                                           m_deletedKeySpHandles.end(),
+                                           baseSpHandle) - m_deletedKeySpHandles.begin();
+        if (obsolete == 0) {
+            return;
+        }
+        assert(m_deletedKeys.get() != NULL);
+        boost::scoped_ptr<TempTable> oldKeys(
+                TableFactory::buildTempTable(m_deletedKeys->name(),
+                                             TupleSchema::createTupleSchema(m_deletedKeys->schema()),
+                                             m_deletedKeys->getColumnNames(),
+                                             NULL));
+        oldKeys.swap(m_deletedKeys);
+        boost::scoped_ptr<Pool> oldPool(new Pool());
+        oldPool.swap(m_deletedKeysPool);
+
+        TableTuple key(oldKeys->schema());
+        TableIterator &iter = oldKeys->iterator();
+        size_t position = 0;
+        m_deletedKeysSerializedBytes = 0;
+        while (iter.next(key)) {
+            if (position++ >= obsolete) {
+                m_deletedKeys->insertTempTupleDeepCopy(key, m_deletedKeysPool.get());
+                m_deletedKeysSerializedBytes += key.serializationSize();
+            }
+        }
+        m_deletedKeySpHandles.erase(m_deletedKeySpHandles.begin(),
+                                    m_deletedKeySpHandles.begin() + obsolete);
+        return;
+    }
+
+    m_incrementalSnapshotBase = -1;
+    stopTrackingChanges();
+    if (m_pkeyIndex != NULL) {
+        startTrackingChanges(spHandle);
+    }
+}
+
+Table* PersistentTable::incrementalSnapshotDeletes() const {
+    return m_deletedKeys.get();
+}
+
+void PersistentTable::startTrackingChanges(int64_t spHandle) {
+    assert(m_pkeyIndex != NULL);
+    const std::vector<int> &keyColumns = m_pkeyIndex->getColumnIndices();
+    std::vector<uint16_t> keyColumnSet;
+    std::vector<std::string> keyColumnNames;
+    BOOST_FOREACH(int column, keyColumns) {
+        keyColumnSet.push_back(static_cast<uint16_t>(column));
+        keyColumnNames.push_back(m_columnNames[column]);
+    }
+    m_deletedKeys.reset(TableFactory::buildTempTable("Deleted keys of " + m_name,
+                                                     TupleSchema::createTupleSchema(m_schema, keyColumnSet),
+                                                     keyColumnNames,
+                                                     NULL));
+    m_deletedKeysPool.reset(new Pool());
+    m_deletedKeySpHandles.clear();
+    m_deletedKeysSerializedBytes = 0;
+    m_changeTrackingSince = spHandle;
+}
+
+void PersistentTable::stopTrackingChanges() {
+    m_changeTrackingSince = -1;
+    m_deletedKeys.reset();
+    m_deletedKeysPool.reset();
+    m_deletedKeySpHandles.clear();
+    m_deletedKeysSerializedBytes = 0;
+}
+
+void PersistentTable::markBlockChanged(char *tupleAddress) {
+    if (isTrackingChanges()) {
+        TBPtr block = findBlock(tupleAddress, m_data, m_tableAllocationSize);
+        if (block.get() != NULL) {
+            markBlockChanged(block.get());
+        }
+    }
+}
+
+void PersistentTable::recordDeletedKey(const TableTuple &tuple) {
+    assert(isTrackingChanges());
+    TableTuple &key = m_deletedKeys->tempTuple();
+    const std::vector<int> &keyColumns = m_pkeyIndex->getColumnIndices();
+    for (int i = 0; i < keyColumns.size(); i++) {
+        key.setNValue(i, tuple.getNValue(keyColumns[i]));
+    }
+    const size_t keyBytes = key.serializationSize();
+    if (m_deletedKeysSerializedBytes + keyBytes > MAX_TRACKED_DELETED_KEY_BYTES) {
+        stopTrackingChanges();
+        return;
+    }
+    m_deletedKeys->insertTempTupleDeepCopy(key, m_deletedKeysPool.get());
+    m_deletedKeysSerializedBytes += keyBytes;
+    m_deletedKeySpHandles.push_back(ExecutorContext::getExecutorContext()->currentSpHandle());
+}
+
 /**
  * Prepare table for streaming from serialized data (internal for tests).
  * Use custom TableStreamer provided.
@@ -1605,6 +1761,11 @@ bool PersistentTable::doCompactionWithinSubset(TBBucketPtrVector *bucketVector)
         }
 
         std::pair<int, int> bucketChanges = fullest->merge(this, lightest, this);
+        // Rows changed since the last incremental snapshot may have moved
+        // into the fullest block, so it inherits the newer change stamp.
+        if (lightest->lastModifiedSpHandle() > fullest->lastModifiedSpHandle()) {
+            fullest->lastModifiedSpHandle(lightest->lastModifiedSpHandle());
+        }
         int tempFullestBucketChange = bucketChanges.first;
         if (tempFullestBucketChange != NO_NEW_BUCKET_INDEX) {
             fullestBucketChange = tempFullestBucketChange;
@@ -1951,6 +2112,7 @@ void PersistentTable::removeIndex(TableIndex *index) {
     }
     if (m_pkeyIndex == index) {
         m_pkeyIndex = NULL;
+        stopTrackingChanges();
     }
 
     // this should free any memory used by the index
@@ -1966,6 +2128,8 @@ void PersistentTable::setPrimaryKeyIndex(TableIndex *index) {
     assert(activeTupleCount() == 0);
     assert(isExistingTableIndex(m_indexes, index));
 
+    // Deleted keys already recorded no longer match the key columns.
+    stopTrackingChanges();
     m_pkeyIndex = index;
 }
 
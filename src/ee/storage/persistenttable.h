@@ -83,6 +83,8 @@ class CoveringCellIndexTest_TableCompaction;
 class MaterializedViewTriggerForWrite;
 class MaterializedViewHandler;
 class TableIndex;
+class TempTable;
+class Pool;
 
 /**
  * Interface used by contexts, scanners, iterators, and undo actions to access
@@ -393,6 +395,18 @@ public:
                        TableStreamType streamType,
                        std::vector<int> &retPositions);
 
+    /**
+     * Outcome of the last incremental snapshot activation. A delta only scans the
+     * blocks changed after incrementalSnapshotBase() and reports the primary keys
+     * deleted since then through incrementalSnapshotDeletes(). Otherwise the
+     * stream is a full scan. incrementalSnapshotSpHandle() is the point the
+     * activation happened at, to be passed as the base of the next one.
+     */
+    bool isIncrementalSnapshotDelta() const { return m_incrementalSnapshotBase >= 0; }
+    int64_t incrementalSnapshotBase() const { return m_incrementalSnapshotBase; }
+    int64_t incrementalSnapshotSpHandle() const { return m_incrementalSnapshotSpHandle; }
+    Table* incrementalSnapshotDeletes() const;
+
     /**
      * Process the updates from a recovery message
      */
@@ -580,6 +594,19 @@ private:
 
     void nextFreeTuple(TableTuple *tuple);
     bool doCompactionWithinSubset(TBBucketPtrVector *bucketVector);
+
+    // Incremental snapshot change tracking.
+    bool isTrackingChanges() const { return m_changeTrackingSince >= 0; }
+    void markBlockChanged(TupleBlock *block) {
+        if (isTrackingChanges()) {
+            block->lastModifiedSpHandle(ExecutorContext::getExecutorContext()->currentSpHandle());
+        }
+    }
+    void markBlockChanged(char *tupleAddress);
+    void recordDeletedKey(const TableTuple &tuple);
+    void startTrackingChanges(int64_t spHandle);
+    void stopTrackingChanges();
+    void prepareIncrementalSnapshot(int64_t baseSpHandle);
     bool doForcedCompaction();  // Returns true if a compaction was performed
 
     void insertIntoAllIndexes(TableTuple *tuple);
@@ -742,6 +769,20 @@ private:
     // (currently defined in MaterializedViewHandler.h) instead.
     PersistentTable *m_deltaTable;
     bool m_deltaTableActive;
+
+    // Change tracking for incremental snapshots. Starts at the first incremental
+    // snapshot of a table with a primary key. While it is on, every block that
+    // gets a tuple inserted or updated is stamped with the current spHandle and
+    // the primary key of every deleted tuple is kept, along with the spHandle of
+    // the delete, until a later incremental snapshot no longer needs it.
+    int64_t m_changeTrackingSince;
+    int64_t m_incrementalSnapshotBase;
+    int64_t m_incrementalSnapshotSpHandle;
+    boost::scoped_ptr<TempTable> m_deletedKeys;
+    boost::scoped_ptr<Pool> m_deletedKeysPool;
+    std::vector<int64_t> m_deletedKeySpHandles;
+    // Serialized size of the rows of m_deletedKeys
+    size_t m_deletedKeysSerializedBytes;
 };
 
 inline PersistentTableSurgeon::PersistentTableSurgeon(PersistentTable &table) :
@@ -46,6 +46,7 @@
 #ifndef HSTORETABLEITERATOR_H
 #define HSTORETABLEITERATOR_H
 
+#include <algorithm>
 #include <cassert>
 #include "boost/shared_ptr.hpp"
 #include "common/tabletuple.h"
@@ -61,6 +62,7 @@ class PersistentTable;
  * Iterator for table which neglects deleted tuples.
  * TableIterator is a small and copiable object.
  * You can copy it, not passing a pointer of it.
+ * A copy positioned on a spilled temp table block holds its own pin on it.
  *
  * This class should be a virtual interface or should
  * be templated on the underlying table data iterator.
@@ -81,6 +83,17 @@ public:
      * @return true if succeeded. false if no more active tuple is there.
     */
     bool next(TableTuple &out);
+
+    /**
+     * Hand out the slots from the current position to the end of the current
+     * block, or of the next block, at most maxSlots of them, for evaluating a
+     * batch of tuples at once. The slots are m_tupleLength bytes apart starting
+     * at runStart. Unlike next(), the run includes slots that are not active or
+     * are pending delete, the caller must skip those.
+     * @return the number of slots in the run, 0 at the end of the table.
+     * Only for persistent tables.
+     */
+    uint32_t nextRun(char*& runStart, uint32_t maxSlots);
     bool hasNext();
     int getLocation() const;
 
@@ -124,6 +137,8 @@ protected:
     uint32_t m_tupleLength;
     uint32_t m_tuplesPerBlock;
     TBPtr m_currentBlock;
+    // the pin on m_currentBlock when it is a spilled temp table block
+    SpilledBlockPin m_spillPin;
     std::vector<TBPtr>::iterator m_tempBlockIterator;
     bool m_tempTableIterator;
     bool m_tempTableDeleteAsGo;
@@ -177,6 +192,7 @@ inline TableIterator::TableIterator(Table *parent)
 
 
 inline void TableIterator::reset(std::vector<TBPtr>::iterator start) {
+    m_spillPin.release();
     m_tempBlockIterator = start;
     m_dataPtr= NULL;
     m_location = 0;
@@ -257,6 +273,40 @@ inline bool TableIterator::persistentNext(TableTuple &out) {
     return false;
 }
 
+inline uint32_t TableIterator::nextRun(char*& runStart, uint32_t maxSlots) {
+    assert( ! m_tempTableIterator);
+    if (m_foundTuples >= m_activeTuples) {
+        return 0;
+    }
+    if (m_currentBlock != NULL &&
+        m_blockOffset < m_currentBlock->unusedTupleBoundry()) {
+        runStart = m_dataPtr + m_tupleLength;
+    } else {
+        do {
+            m_dataPtr = m_blockIterator.key();
+            m_currentBlock = m_blockIterator.data();
+            m_blockOffset = 0;
+            m_blockIterator++;
+        } while (m_currentBlock->unusedTupleBoundry() == 0);
+        runStart = m_dataPtr;
+    }
+    const uint32_t slots = std::min(maxSlots, m_currentBlock->unusedTupleBoundry() - m_blockOffset);
+    assert(slots > 0);
+
+    // Count the active tuples handed out so that the scan stops where next() would
+    TableTuple tuple(m_table->schema());
+    for (uint32_t ii = 0; ii < slots; ++ii) {
+        tuple.move(runStart + ii * m_tupleLength);
+        if (tuple.isActive()) {
+            ++m_foundTuples;
+        }
+    }
+    m_dataPtr = runStart + (slots - 1) * m_tupleLength;
+    m_location += slots;
+    m_blockOffset += slots;
+    return slots;
+}
+
 inline bool TableIterator::tempNext(TableTuple &out) {
     if (m_foundTuples < m_activeTuples) {
         if (m_currentBlock == NULL ||
@@ -267,7 +317,14 @@ inline bool TableIterator::tempNext(TableTuple &out) {
                 m_table->freeLastScanedBlock(m_tempBlockIterator);
             }
 
+            // read a spilled block back for this scan, releasing the last one
             m_currentBlock = *m_tempBlockIterator;
+            if (m_currentBlock->isSpilled()) {
+                m_spillPin.pin(m_currentBlock);
+            }
+            else {
+                m_spillPin.release();
+            }
             m_dataPtr = m_currentBlock->address();
             m_blockOffset = 0;
             m_tempBlockIterator++;
@@ -291,6 +348,10 @@ inline bool TableIterator::tempNext(TableTuple &out) {
         return true;
     }
 
+    if (m_currentBlock != NULL && m_currentBlock->isSpilled()) {
+        m_spillPin.release();
+        m_currentBlock = NULL;
+    }
     return false;
 }
 
@@ -44,6 +44,7 @@
  */
 
 #include "temptable.h"
+#include "SpillFile.h"
 #include "common/debuglog.h"
 
 #define TABLE_BLOCKSIZE 131072
@@ -53,13 +54,25 @@ namespace voltdb {
 TempTable::TempTable()
   : Table(TABLE_BLOCKSIZE),
     m_iter(this),
-    m_limits(NULL)
+    m_limits(NULL),
+    m_spillable(false),
+    m_spilledBlockCount(0)
 {
     // this happens here because m_data might not be initialized above
     m_iter.reset(m_data.begin());
 }
 
-TempTable::~TempTable() {}
+TempTable::~TempTable() {
+    // Scratch temp tables may be dropped while their fragment is still
+    // executing, so give back the memory of the blocks still resident.
+    if (m_limits) {
+        for (std::vector<TBPtr>::const_iterator iter = m_data.begin(); iter != m_data.end(); ++iter) {
+            if (*iter && ! (*iter)->isSpilled()) {
+                m_limits->reduceAllocated(m_tableAllocationSize);
+            }
+        }
+    }
+}
 
 // ------------------------------------------------------------------
 // OPERATIONS
@@ -88,6 +101,25 @@ bool TempTable::insertTuple(TableTuple &source) {
     return true;
 }
 
+void TempTable::spillResidentBlocks() {
+    assert(m_spillable && m_limits && m_limits->canSpill());
+    // Temp table blocks never have holes, so whole blocks can go.
+    // A partly filled last block is no longer filled once it is spilled.
+    for (std::vector<TBPtr>::iterator iter = m_data.begin(); iter != m_data.end(); ++iter) {
+        TBPtr block = *iter;
+        if (block.get() == NULL || block->isSpilled()) {
+            continue;
+        }
+        if (m_spillFile.get() == NULL) {
+            m_spillFile.reset(new SpillFile(m_limits->getSpillDirectory()));
+        }
+        block->spill(m_spillFile);
+        ++m_spilledBlockCount;
+        m_limits->reduceAllocated(m_tableAllocationSize);
+        m_limits->recordSpill(block->unusedTupleBoundry() * m_tupleLength);
+    }
+}
+
 std::string TempTable::tableType() const { return "TempTable"; }
 
 voltdb::TableStats* TempTable::getTableStats() { return NULL; }
@@ -55,6 +55,7 @@
 
 namespace voltdb {
 
+class SpillFile;
 class TableColumn;
 class TableFactory;
 class TableStats;
@@ -67,6 +68,13 @@ class TableStats;
  * in TempTable to make it faster, use deleteAllTuples instead.  As
  * there is no deleteTuple, there is no freelist; TempTable does a
  * efficient thing for iterating and deleteAllTuples.
+ *
+ * A TempTable marked spillable writes its full blocks to a scratch file
+ * in the site's spill directory when a new block would take the fragment
+ * past its temp table memory limit.  Spilled blocks are read back one at a
+ * time by TableIterator, so a spillable table must only be accessed through
+ * its iterators and its tuples are only valid until the iterator moves on
+ * to the next block.
  */
 class TempTable : public Table {
     friend class TableFactory;
@@ -127,6 +135,20 @@ class TempTable : public Table {
 
     int64_t tempTableTupleCount() const { return m_tupleCount; }
 
+    /**
+     * Allow this table to spill blocks to disk rather than fail when
+     * the temp table memory limit is reached.
+     */
+    void setSpillable(bool spillable) { m_spillable = spillable; }
+
+    bool hasSpilledBlocks() const { return m_spilledBlockCount > 0; }
+
+    /**
+     * Write the resident blocks of a spillable table out now and give
+     * their memory back, for scratch tables that won't be read for a while.
+     */
+    void spillResidentBlocks();
+
     // ------------------------------------------------------------------
     // INDEXES
     // ------------------------------------------------------------------
@@ -168,6 +190,11 @@ class TempTable : public Table {
 
     // ptr to global integer tracking temp table memory allocated per frag
     TempTableLimits* m_limits;
+
+    bool m_spillable;
+    int64_t m_spilledBlockCount;
+    // created on first spill, shared with the spilled blocks
+    boost::shared_ptr<SpillFile> m_spillFile;
 };
 
 inline void TempTable::insertTempTupleDeepCopy(const TableTuple &source, Pool *pool) {
@@ -218,18 +245,32 @@ inline void TempTable::deleteAllTempTuples() {
         m_data.pop_back();
         // These temp table blocks may have been cleaned up
         // and set null already by the delete as we go feature.
-        if (m_limits && blockPtr) {
+        // Spilled blocks no longer count against the limit.
+        if (m_limits && blockPtr && ! blockPtr->isSpilled()) {
             m_limits->reduceAllocated(m_tableAllocationSize);
         }
     }
 
     // cheap clear of the preserved first block
     if (remaining) {
-        m_data[0]->reset();
+        if (m_data[0]->isSpilled()) {
+            m_data.clear();
+        }
+        else {
+            m_data[0]->reset();
+        }
     }
+
+    m_spilledBlockCount = 0;
+    m_spillFile.reset();
 }
 
 inline TBPtr TempTable::allocateNextBlock() {
+    if (m_spillable && m_limits && m_limits->canSpill() &&
+        m_limits->wouldExceedLimit(m_tableAllocationSize)) {
+        spillResidentBlocks();
+    }
+
     TBPtr block(new TupleBlock(this, TBBucketPtr()));
     m_data.push_back(block);
 
@@ -247,7 +288,7 @@ inline void TempTable::nextFreeTuple(TableTuple *tuple) {
     }
 
     TBPtr block = m_data.back();
-    if (!block->hasFreeTuples()) {
+    if (!block->hasFreeTuples() || block->isSpilled()) {
         block = allocateNextBlock();
     }
 
@@ -262,10 +303,10 @@ inline void TempTable::freeLastScanedBlock(std::vector<TBPtr>::iterator nextBloc
         nextBlockIterator--;
         // somehow we preserve the first block
         if (m_data.begin() != nextBlockIterator) {
-            *nextBlockIterator = NULL;
-            if (m_limits) {
+            if (m_limits && ! (*nextBlockIterator)->isSpilled()) {
                 m_limits->reduceAllocated(m_tableAllocationSize);
             }
+            *nextBlockIterator = NULL;
         }
     }
 }
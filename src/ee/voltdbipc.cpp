@@ -162,6 +162,10 @@ private:
 
     int8_t setLogLevels(struct ipc_command *cmd);
 
+    int8_t setTempTableSpillDirectory(struct ipc_command *cmd);
+
+    int8_t setViewDeltaBatching(struct ipc_command *cmd);
+
     void executePlanFragments(struct ipc_command *cmd);
 
     void getStats(struct ipc_command *cmd);
@@ -502,6 +506,12 @@ bool VoltDBIPC::execute(struct ipc_command *cmd) {
           applyBinaryLog(cmd);
           result = kErrorCode_None;
           break;
+      case 30:
+          result = setTempTableSpillDirectory(cmd);
+          break;
+      case 31:
+          result = setViewDeltaBatching(cmd);
+          break;
       default:
         result = stub(cmd);
     }
@@ -868,6 +878,32 @@ int8_t VoltDBIPC::setLogLevels(struct ipc_command *cmd) {
     return kErrorCode_Success;
 }
 
+int8_t VoltDBIPC::setTempTableSpillDirectory(struct ipc_command *cmd) {
+    struct spill_directory {
+        struct ipc_command cmd;
+        int32_t directoryLength;
+        char data[0];
+    }__attribute__((packed));
+    struct spill_directory *cs = (struct spill_directory*) cmd;
+    std::string directory(cs->data, ntohl(cs->directoryLength));
+    try {
+        m_engine->setTempTableSpillDirectory(directory);
+    } catch (const FatalException &e) {
+        crashVoltDB(e);
+    }
+    return kErrorCode_Success;
+}
+
+int8_t VoltDBIPC::setViewDeltaBatching(struct ipc_command *cmd) {
+    struct view_delta_batching {
+        struct ipc_command cmd;
+        int8_t enabled;
+    }__attribute__((packed));
+    struct view_delta_batching *cs = (struct view_delta_batching*) cmd;
+    m_engine->setViewDeltaBatching(cs->enabled != 0);
+    return kErrorCode_Success;
+}
+
 void VoltDBIPC::terminate() {
     m_terminate = true;
 }
@@ -1232,7 +1268,17 @@ int8_t VoltDBIPC::activateTableStream(struct ipc_command *cmd) {
 
     try {
         if (m_engine->activateTableStream(tableId, streamType, undoToken, serialize_in)) {
-            return kErrorCode_Success;
+            if (!voltdb::tableStreamTypeIsIncrementalSnapshot(streamType)) {
+                return kErrorCode_Success;
+            }
+            // Incremental snapshots also send back what the activation decided.
+            const int8_t successResult = kErrorCode_Success;
+            writeOrDie(m_fd, (const unsigned char*)&successResult, sizeof(int8_t));
+            const int32_t size = m_engine->getResultsSize();
+            const int32_t networkSize = htonl(size);
+            writeOrDie(m_fd, (const unsigned char*)&networkSize, sizeof(int32_t));
+            writeOrDie(m_fd, (const unsigned char*)m_engine->getResultOutputBuffer(), size);
+            return kErrorCode_None;
         } else {
             return kErrorCode_Error;
         }
@@ -929,6 +929,48 @@ SHAREDLIB_JNIEXPORT jboolean JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeS
     return false;
 }
 
+/*
+ * Class:     org_voltdb_jni_ExecutionEngine
+ * Method:    nativeSetTempTableSpillDirectory
+ * Signature: (J[B)Z
+ */
+SHAREDLIB_JNIEXPORT jboolean JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeSetTempTableSpillDirectory
+  (JNIEnv *env, jobject obj, jlong engine_ptr, jbyteArray directory) {
+    VOLT_DEBUG("nativeSetTempTableSpillDirectory in C++ called");
+    VoltDBEngine *engine = castToEngine(engine_ptr);
+    Topend *topend = static_cast<JNITopend*>(engine->getTopend())->updateJNIEnv(env);
+    try {
+        updateJNILogProxy(engine); //JNIEnv pointer can change between calls, must be updated
+        if (engine) {
+            jbyte *directoryChars = env->GetByteArrayElements(directory, NULL);
+            std::string directoryString(reinterpret_cast<char*>(directoryChars), env->GetArrayLength(directory));
+            env->ReleaseByteArrayElements(directory, directoryChars, JNI_ABORT);
+            engine->setTempTableSpillDirectory(directoryString);
+            return JNI_TRUE;
+        }
+        return JNI_FALSE;
+    } catch (const FatalException &e) {
+        topend->crashVoltDB(e);
+    }
+    return false;
+}
+
+/*
+ * Class:     org_voltdb_jni_ExecutionEngine
+ * Method:    nativeSetViewDeltaBatching
+ * Signature: (JZ)Z
+ */
+SHAREDLIB_JNIEXPORT jboolean JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeSetViewDeltaBatching
+  (JNIEnv *env, jobject obj, jlong engine_ptr, jboolean enabled) {
+    VOLT_DEBUG("nativeSetViewDeltaBatching in C++ called");
+    VoltDBEngine *engine = castToEngine(engine_ptr);
+    if (engine) {
+        engine->setViewDeltaBatching(enabled == JNI_TRUE);
+        return JNI_TRUE;
+    }
+    return JNI_FALSE;
+}
+
 /*
  * Class:     org_voltdb_jni_ExecutionEngine
  * Method:    nativeActivateTableStream
@@ -23,6 +23,10 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -60,6 +64,17 @@ public class ForeignHost {
     // hold onto the socket so we can kill it
     private final Socket m_socket;
 
+    /*
+     * Connections beyond m_network. Entry i carries messages for destination sites
+     * whose site id modulo the connection count is i + 1. Every other destination,
+     * including the negative system mailbox ids, goes on m_network.
+     */
+    private final OutboundConnection[] m_outbound;
+    // all additional networks, written by this host or by the remote one; guarded by this
+    private final List<PicoNetwork> m_additionalNetworks = new ArrayList<PicoNetwork>();
+    // set once enableRead has started m_network; guarded by this
+    private Set<Long> m_verbotenThreads = null;
+
     // Set the default here for TestMessaging, which currently has no VoltDB instance
     private long m_deadHostTimeout;
     private final AtomicLong m_lastMessageMillis = new AtomicLong(Long.MAX_VALUE);
@@ -130,6 +145,39 @@ public class ForeignHost {
         }
     }
 
+    /**
+     * An additional connection to the remote host that this host writes to. Messages
+     * are held in order until the connection has been established.
+     */
+    private static class OutboundConnection {
+        private volatile PicoNetwork m_network = null;
+        private ArrayDeque<DeferredSerialization> m_pending = new ArrayDeque<DeferredSerialization>();
+
+        void enqueue(DeferredSerialization ds) {
+            final PicoNetwork network = m_network;
+            if (network != null) {
+                network.enqueue(ds);
+                return;
+            }
+            synchronized (this) {
+                if (m_network == null) {
+                    m_pending.add(ds);
+                    return;
+                }
+            }
+            m_network.enqueue(ds);
+        }
+
+        synchronized void attach(PicoNetwork network) {
+            DeferredSerialization ds;
+            while ((ds = m_pending.poll()) != null) {
+                network.enqueue(ds);
+            }
+            m_pending = null;
+            m_network = network;
+        }
+    }
+
     private void setLogRate(long deadHostTimeout) {
         int logRate;
         if (deadHostTimeout < 30 * 1000)
@@ -142,7 +190,7 @@ public class ForeignHost {
 
     /** Create a ForeignHost and install in VoltNetwork */
     ForeignHost(HostMessenger host, int hostId, SocketChannel socket, int deadHostTimeout,
-            InetSocketAddress listeningAddress, PicoNetwork network)
+            InetSocketAddress listeningAddress, PicoNetwork network, int connectionCount)
     throws IOException
     {
         m_hostMessenger = host;
@@ -154,12 +202,65 @@ public class ForeignHost {
         m_deadHostTimeout = deadHostTimeout;
         m_listeningAddress = listeningAddress;
         m_network = network;
+        m_outbound = new OutboundConnection[Math.max(0, connectionCount - 1)];
+        for (int ii = 0; ii < m_outbound.length; ii++) {
+            m_outbound[ii] = new OutboundConnection();
+        }
 
         setLogRate(deadHostTimeout);
     }
 
-    public void enableRead(Set<Long> verbotenThreads) {
+    public synchronized void enableRead(Set<Long> verbotenThreads) {
+        m_verbotenThreads = verbotenThreads;
         m_network.start(m_handler, verbotenThreads);
+        for (PicoNetwork network : m_additionalNetworks) {
+            network.start(new FHInputHandler(), verbotenThreads);
+        }
+    }
+
+    /**
+     * @return the number of connections messages to this host are spread across
+     */
+    int getConnectionCount() {
+        return m_outbound.length + 1;
+    }
+
+    /**
+     * Add a connection the remote host opened to send to this host. Its messages
+     * are read on its own network thread.
+     */
+    void addInboundConnection(SocketChannel socket) {
+        addNetwork(new PicoNetwork(socket));
+    }
+
+    /**
+     * Start sending the messages for the given additional connection on the socket,
+     * or on the primary connection if the socket could not be opened.
+     */
+    void attachOutboundConnection(int connection, SocketChannel socket) {
+        assert(connection > 0 && connection <= m_outbound.length);
+        PicoNetwork network = m_network;
+        if (socket != null) {
+            network = new PicoNetwork(socket);
+            addNetwork(network);
+        }
+        m_outbound[connection - 1].attach(network);
+    }
+
+    private synchronized void addNetwork(PicoNetwork network) {
+        m_additionalNetworks.add(network);
+        if (m_closing) {
+            shutdownNetwork(network);
+        } else if (m_verbotenThreads != null) {
+            network.start(new FHInputHandler(), m_verbotenThreads);
+        }
+    }
+
+    synchronized List<PicoNetwork> getNetworks() {
+        List<PicoNetwork> networks = new ArrayList<PicoNetwork>(m_additionalNetworks.size() + 1);
+        networks.add(m_network);
+        networks.addAll(m_additionalNetworks);
+        return networks;
     }
 
     synchronized void close()
@@ -167,8 +268,15 @@ public class ForeignHost {
         m_isUp = false;
         if (m_closing) return;
         m_closing = true;
+        shutdownNetwork(m_network);
+        for (PicoNetwork network : m_additionalNetworks) {
+            shutdownNetwork(network);
+        }
+    }
+
+    private static void shutdownNetwork(PicoNetwork network) {
         try {
-            m_network.shutdownAsync();
+            network.shutdownAsync();
         } catch (InterruptedException e) {
             Throwables.propagate(e);
         }
@@ -219,42 +327,11 @@ public class ForeignHost {
 
         // if this link is "gone silent" for partition tests, just drop the message on the floor
         if (!m_linkCutForTest.get()) {
-            m_network.enqueue(
-                    new DeferredSerialization() {
-                        @Override
-                        public final void serialize(final ByteBuffer buf) throws IOException {
-                            buf.putInt(buf.capacity() - 4);
-                            buf.putLong(message.m_sourceHSId);
-                            buf.putInt(destinations.length);
-                            for (int ii = 0; ii < destinations.length; ii++) {
-                                buf.putLong(destinations[ii]);
-                            }
-                            message.flattenToBuffer(buf);
-                            buf.flip();
-                        }
-
-                        @Override
-                        public final void cancel() {
-                        /*
-                         * Can this be removed?
-                         */
-                        }
-
-                        @Override
-                        public String toString() {
-                            return message.getClass().getName();
-                        }
-
-                        @Override
-                        public int getSerializedSize() {
-                            final int len = 4            /* length prefix */
-                                    + 8            /* source hsid */
-                                    + 4            /* destinationCount */
-                                    + 8 * destinations.length  /* destination list */
-                                    + message.getSerializedSize();
-                            return len;
-                        }
-                    });
+            if (m_outbound.length == 0) {
+                m_network.enqueue(serialization(destinations, message));
+            } else {
+                sendOnConnections(destinations, message);
+            }
         }
 
         long current_time = EstTime.currentTimeMillis();
@@ -287,6 +364,89 @@ public class ForeignHost {
         }
     }
 
+    private static DeferredSerialization serialization(final long destinations[], final VoltMessage message) {
+        return new DeferredSerialization() {
+            @Override
+            public final void serialize(final ByteBuffer buf) throws IOException {
+                buf.putInt(buf.capacity() - 4);
+                buf.putLong(message.m_sourceHSId);
+                buf.putInt(destinations.length);
+                for (int ii = 0; ii < destinations.length; ii++) {
+                    buf.putLong(destinations[ii]);
+                }
+                message.flattenToBuffer(buf);
+                buf.flip();
+            }
+
+            @Override
+            public final void cancel() {
+            /*
+             * Can this be removed?
+             */
+            }
+
+            @Override
+            public String toString() {
+                return message.getClass().getName();
+            }
+
+            @Override
+            public int getSerializedSize() {
+                final int len = 4            /* length prefix */
+                        + 8            /* source hsid */
+                        + 4            /* destinationCount */
+                        + 8 * destinations.length  /* destination list */
+                        + message.getSerializedSize();
+                return len;
+            }
+        };
+    }
+
+    /*
+     * Route each destination to the connection for its site id, so that every site
+     * sees the messages sent to it in order. A multi-destination message is only
+     * split when its destinations map to different connections.
+     */
+    private void sendOnConnections(final long destinations[], final VoltMessage message) {
+        final int first = connectionFor(destinations[0]);
+        boolean sameConnection = true;
+        for (int ii = 1; ii < destinations.length && sameConnection; ii++) {
+            sameConnection = connectionFor(destinations[ii]) == first;
+        }
+        if (sameConnection) {
+            enqueue(first, serialization(destinations, message));
+            return;
+        }
+
+        final long bucket[] = new long[destinations.length];
+        for (int connection = 0; connection <= m_outbound.length; connection++) {
+            int count = 0;
+            for (long destination : destinations) {
+                if (connectionFor(destination) == connection) {
+                    bucket[count++] = destination;
+                }
+            }
+            if (count > 0) {
+                enqueue(connection, serialization(Arrays.copyOf(bucket, count), message));
+            }
+        }
+    }
+
+    private int connectionFor(long hsId) {
+        final int siteId = CoreUtils.getSiteIdFromHSId(hsId);
+        // system mailboxes, agreement in particular, stay on the primary connection.
+        // It is the only one guaranteed to be up while a host is joining the mesh.
+        return siteId < 0 ? 0 : siteId % (m_outbound.length + 1);
+    }
+
+    private void enqueue(int connection, DeferredSerialization ds) {
+        if (connection == 0) {
+            m_network.enqueue(ds);
+        } else {
+            m_outbound[connection - 1].enqueue(ds);
+        }
+    }
+
 
     String hostnameAndIPAndPort() {
         return m_network.getHostnameAndIPAndPort();
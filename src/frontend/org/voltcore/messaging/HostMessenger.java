@@ -21,6 +21,7 @@ import static com.google_voltpatches.common.base.Preconditions.checkArgument;
 import static com.google_voltpatches.common.base.Predicates.equalTo;
 import static com.google_voltpatches.common.base.Predicates.not;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
@@ -37,9 +38,11 @@ import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -127,6 +130,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         private static final String ZK_INTERFACE = "zkinterface";
         private static final String COORDINATOR_IP = "coordinatorip";
         private static final String GROUP = "group";
+        private static final String CONNECTIONS_PER_HOST = "connectionsPerHost";
 
         public InetSocketAddress coordinatorIp;
         public String zkInterface = "127.0.0.1:7181";
@@ -137,6 +141,11 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         public long backwardsTimeForgivenessWindow = 1000 * 60 * 60 * 24 * 7;
         public VoltMessageFactory factory = new VoltMessageFactory();
         public int networkThreads =  Math.max(2, CoreUtils.availableProcessors() / 4);
+        /*
+         * Number of connections this host sends to each other host on, each with its
+         * own network thread. Messages are spread across them by destination site id.
+         */
+        public int connectionsPerHost = Math.max(1, Integer.getInteger("MESH_CONNECTIONS_PER_HOST", 1));
         public Queue<String> coreBindIds;
         public JoinAcceptor acceptor = null;
 
@@ -224,6 +233,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 js.key(DEAD_HOST_TIMEOUT).value(deadHostTimeout);
                 js.key(BACKWARDS_TIME_FORGIVENESS_WINDOW).value(backwardsTimeForgivenessWindow);
                 js.key(NETWORK_THREADS).value(networkThreads);
+                js.key(CONNECTIONS_PER_HOST).value(connectionsPerHost);
                 js.key(ACCEPTOR).value(acceptor);
                 js.endObject();
 
@@ -308,6 +318,15 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
      */
     volatile ImmutableMap<Integer, ForeignHost> m_foreignHosts = ImmutableMap.of();
 
+    /*
+     * Additional connections from hosts that don't have a foreign host here yet.
+     * Guarded by m_mapLock
+     */
+    private final Map<Integer, List<SocketChannel>> m_pendingConnections = new HashMap<Integer, List<SocketChannel>>();
+
+    // opens the additional connections to other hosts when Config.connectionsPerHost > 1
+    private final ExecutorService m_connector = CoreUtils.getSingleThreadExecutor("Mesh Connector");
+
     /*
      * References to all the local mailboxes
      * Updates via COW
@@ -712,7 +731,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         prepSocketChannel(socket);
         ForeignHost fhost = null;
         try {
-            fhost = new ForeignHost(this, hostId, socket, m_config.deadHostTimeout, listeningAddress, new PicoNetwork(socket));
+            fhost = new ForeignHost(this, hostId, socket, m_config.deadHostTimeout, listeningAddress, new PicoNetwork(socket), m_config.connectionsPerHost);
             putForeignHost(hostId, fhost);
             fhost.enableRead(VERBOTEN_THREADS);
         } catch (java.io.IOException e) {
@@ -742,7 +761,77 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                     .putAll(m_foreignHosts)
                     .put(hostId, fh)
                     .build();
+            List<SocketChannel> pending = m_pendingConnections.remove(hostId);
+            if (pending != null) {
+                for (SocketChannel socket : pending) {
+                    fh.addInboundConnection(socket);
+                }
+            }
+        }
+        connectAdditionalConnections(hostId, fh);
+    }
+
+    /*
+     * Open the connections beyond the first to a foreign host in the background.
+     * Messages for those connections are held by the foreign host until they are up,
+     * and fall back to the first connection if one can't be made.
+     */
+    private void connectAdditionalConnections(final int hostId, final ForeignHost fh) {
+        for (int ii = 1; ii < fh.getConnectionCount(); ii++) {
+            final int connection = ii;
+            m_connector.execute(new Runnable() {
+                @Override
+                public void run() {
+                    SocketChannel socket = null;
+                    try {
+                        socket = m_joiner.connectToHost(fh.m_listeningAddress, getHostId(), new Callable<Boolean>() {
+                            @Override
+                            public Boolean call() {
+                                return fh.isUp();
+                            }
+                        });
+                        if (socket != null) {
+                            prepSocketChannel(socket);
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (Exception e) {
+                        m_networkLog.warn("Unable to open connection " + connection + " to host " + hostId +
+                                ", its messages will use the first connection", e);
+                    }
+                    fh.attachOutboundConnection(connection, socket);
+                }
+            });
+        }
+    }
+
+    /*
+     * Take an additional connection from a host in the mesh and hand it to
+     * the host's foreign host, or hold onto it until that has been created
+     */
+    @Override
+    public void notifyOfConnection(int hostId, SocketChannel socket) {
+        m_networkLog.info(getHostId() + " notified of additional connection from " + hostId);
+        prepSocketChannel(socket);
+        synchronized (m_mapLock) {
+            ForeignHost fh = m_foreignHosts.get(hostId);
+            if (fh != null) {
+                fh.addInboundConnection(socket);
+                return;
+            }
+            if (!m_knownFailedHosts.contains(hostId)) {
+                List<SocketChannel> pending = m_pendingConnections.get(hostId);
+                if (pending == null) {
+                    pending = new ArrayList<SocketChannel>();
+                    m_pendingConnections.put(hostId, pending);
+                }
+                pending.add(socket);
+                return;
+            }
         }
+        try {
+            socket.close();
+        } catch (IOException ignore) {}
     }
 
     static final Predicate<Integer> in(final Set<Integer> set) {
@@ -759,10 +848,19 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
      */
     private void removeForeignHost(int hostId) {
         ForeignHost fh = m_foreignHosts.get(hostId);
+        List<SocketChannel> pending;
         synchronized (m_mapLock) {
             m_foreignHosts = ImmutableMap.<Integer, ForeignHost>builder()
                     .putAll(Maps.filterKeys(m_foreignHosts, not(equalTo(hostId))))
                     .build();
+            pending = m_pendingConnections.remove(hostId);
+        }
+        if (pending != null) {
+            for (SocketChannel socket : pending) {
+                try {
+                    socket.close();
+                } catch (IOException ignore) {}
+            }
         }
         if (fh != null) {
             fh.close();
@@ -824,7 +922,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 /*
                  * Now add the host to the mailbox system
                  */
-                fhost = new ForeignHost(this, hostId, socket, m_config.deadHostTimeout, listeningAddress, new PicoNetwork(socket));
+                fhost = new ForeignHost(this, hostId, socket, m_config.deadHostTimeout, listeningAddress, new PicoNetwork(socket), m_config.connectionsPerHost);
                 putForeignHost(hostId, fhost);
                 fhost.enableRead(VERBOTEN_THREADS);
 
@@ -952,7 +1050,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
             prepSocketChannel(sockets[ii]);
             ForeignHost fhost = null;
             try {
-                fhost = new ForeignHost(this, hosts[ii], sockets[ii], m_config.deadHostTimeout, listeningAddresses[ii], new PicoNetwork(sockets[ii]));
+                fhost = new ForeignHost(this, hosts[ii], sockets[ii], m_config.deadHostTimeout, listeningAddresses[ii], new PicoNetwork(sockets[ii]), m_config.connectionsPerHost);
                 putForeignHost(hosts[ii], fhost);
             } catch (java.io.IOException e) {
                 org.voltdb.VoltDB.crashLocalVoltDB("Failed to instantiate foreign host", true, e);
@@ -1421,6 +1519,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 host.close();
             }
         }
+        m_connector.shutdownNow();
         m_joiner.shutdown();
         m_network.shutdown();
         VERBOTEN_THREADS.clear();
@@ -1522,7 +1621,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         ArrayList<IOStatsIntf> picoNetworks = new ArrayList<IOStatsIntf>(fhosts.size());
 
         for (ForeignHost fh : fhosts.values()) {
-            picoNetworks.add(fh.m_network);
+            picoNetworks.addAll(fh.getNetworks());
         }
 
         return m_network.getIOStats(interval, picoNetworks);
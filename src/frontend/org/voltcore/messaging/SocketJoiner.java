@@ -77,6 +77,7 @@ public class SocketJoiner {
     private static final String TYPE = "type";
     private static final String PUBLISH_HOSTID = "PUBLISH_HOSTID";
     private static final String REQUEST_HOSTID = "REQUEST_HOSTID";
+    private static final String PUBLISH_CONNECTION = "PUBLISH_CONNECTION";
     private static final String HOST_ID = "hostId";
     private static final String PORT = "port";
     private static final String ADDRESS = "address";
@@ -128,6 +129,13 @@ public class SocketJoiner {
                 SocketChannel sockets[],
                 InetSocketAddress listeningAddresses[],
                 Map<Integer, JSONObject> jos) throws Exception;
+
+        /*
+         * An already meshed host opened an additional connection to send on
+         */
+        public void notifyOfConnection(
+                int hostId,
+                SocketChannel socket);
     }
 
     private static final VoltLogger LOG = new VoltLogger("JOINER");
@@ -485,6 +493,8 @@ public class SocketJoiner {
                 m_joinHandler.requestJoin( sc, listeningAddress, jsObj);
             } else if (type.equals(PUBLISH_HOSTID)){
                 m_joinHandler.notifyOfJoin(jsObj.getInt(HOST_ID), sc, listeningAddress, jsObj);
+            } else if (type.equals(PUBLISH_CONNECTION)) {
+                m_joinHandler.notifyOfConnection(jsObj.getInt(HOST_ID), sc);
             } else {
                 throw new RuntimeException("Unexpected message type " + type + " from " + remoteAddress);
             }
@@ -827,6 +837,66 @@ public class SocketJoiner {
         }
     }
 
+    /**
+     * Open an additional connection to a host that is already part of the mesh.
+     * The host's socket joiner may not be listening yet, or may be busy with a joining
+     * node, so keep retrying until it accepts or keepTrying returns false.
+     * @return the connected socket, or null if keepTrying gave up first
+     */
+    SocketChannel connectToHost(InetSocketAddress hostAddr, int localHostId, Callable<Boolean> keepTrying)
+    throws Exception {
+        SocketChannel socket = null;
+        int connectAttempts = 0;
+        while (socket == null) {
+            if (!keepTrying.call()) {
+                return null;
+            }
+            try {
+                socket = SocketChannel.open(hostAddr);
+            }
+            catch (java.net.ConnectException e) {
+                if (++connectAttempts % 40 == 0) {
+                    LOG.warn("Connecting to host " + hostAddr + " failed: " + e.getMessage() + " retrying..");
+                }
+                Thread.sleep(250);
+            }
+        }
+        try {
+            socket.socket().setTcpNoDelay(true);
+            socket.socket().setPerformancePreferences(0, 2, 1);
+            final String remoteAddress = socket.socket().getRemoteSocketAddress().toString();
+
+            // skip the clock skew timestamp, it was checked when the host joined
+            ByteBuffer currentTimeBuf = ByteBuffer.allocate(8);
+            while (currentTimeBuf.hasRemaining()) {
+                if (socket.read(currentTimeBuf) == -1) {
+                    throw new IOException("Host " + remoteAddress + " closed the connection");
+                }
+            }
+
+            JSONObject jsObj = new JSONObject();
+            jsObj.put(TYPE, PUBLISH_CONNECTION);
+            jsObj.put(HOST_ID, localHostId);
+            jsObj.put(PORT, m_internalPort);
+            jsObj.put(VERSION_STRING, m_acceptor.getVersionChecker().getVersionString());
+
+            byte jsBytes[] = jsObj.toString(4).getBytes(StandardCharsets.UTF_8);
+            ByteBuffer publishConnection = ByteBuffer.allocate(4 + jsBytes.length);
+            publishConnection.putInt(jsBytes.length);
+            publishConnection.put(jsBytes).flip();
+            while (publishConnection.hasRemaining()) {
+                socket.write(publishConnection);
+            }
+
+            // versions were reconciled when the host joined, the response only needs draining
+            readJSONObjFromWire(socket, remoteAddress);
+            return socket;
+        } catch (Exception e) {
+            socket.close();
+            throw e;
+        }
+    }
+
     private static void checkClockSkew(List<Long> skews)
     {
         long maxSkew = Collections.max(skews);
@@ -0,0 +1,206 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltcore.utils;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Unbounded multi-producer, single-consumer FIFO queue backed by a linked list of
+ * fixed size arrays.
+ *
+ * Producers claim a slot in the tail chunk with a single fetch-and-add rather than a
+ * CAS retry loop, and only allocate when a chunk fills, instead of once per element.
+ * The consumer reads slots in order without any atomic read-modify-write and can remove
+ * many elements per wakeup with {@link #drainTo(Collection, int)}.
+ *
+ * {@link #poll()}, {@link #peek()}, {@link #take()}, {@link #drainTo(Collection, int)}
+ * and {@link #isEmpty()} may only be called from the single consumer thread. An element
+ * whose slot has been claimed but not yet written is not visible to the consumer, so
+ * those methods may briefly report an empty queue while an offer is in progress.
+ */
+public class MpscChunkedQueue<E> {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private static final class Chunk<E> {
+        final AtomicReferenceArray<E> m_slots;
+        volatile int m_claimed = 0;
+        volatile Chunk<E> m_next = null;
+
+        Chunk(int size) {
+            m_slots = new AtomicReferenceArray<E>(size);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Chunk> s_claimedUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(Chunk.class, "m_claimed");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Chunk, Chunk> s_nextUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(Chunk.class, Chunk.class, "m_next");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MpscChunkedQueue, Chunk> s_tailUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(MpscChunkedQueue.class, Chunk.class, "m_tail");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MpscChunkedQueue, Thread> s_waiterUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(MpscChunkedQueue.class, Thread.class, "m_waiter");
+
+    private final int m_chunkSize;
+
+    // producer side
+    private volatile Chunk<E> m_tail;
+    // set while the consumer is parked in take()
+    private volatile Thread m_waiter = null;
+
+    // consumer side, only touched by the consumer thread
+    private Chunk<E> m_head;
+    private int m_headIndex = 0;
+
+    public MpscChunkedQueue() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public MpscChunkedQueue(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        m_chunkSize = chunkSize;
+        m_head = m_tail = new Chunk<E>(chunkSize);
+    }
+
+    /**
+     * Append an element. Safe to call from any thread; never blocks.
+     * @return always true, the queue is unbounded
+     */
+    @SuppressWarnings("unchecked")
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        for (;;) {
+            final Chunk<E> tail = m_tail;
+            final int index = s_claimedUpdater.getAndIncrement(tail);
+            if (index < m_chunkSize) {
+                // volatile write, so the waiter check below can't be reordered ahead of it
+                tail.m_slots.set(index, e);
+                // only the first producer to see the parked consumer pays for the unpark
+                final Thread waiter = m_waiter;
+                if (waiter != null && s_waiterUpdater.compareAndSet(this, waiter, null)) {
+                    LockSupport.unpark(waiter);
+                }
+                return true;
+            }
+            // The chunk is full. Link a new one if nobody has yet, then help advance the tail.
+            Chunk<E> next = tail.m_next;
+            if (next == null) {
+                final Chunk<E> chunk = new Chunk<E>(m_chunkSize);
+                next = s_nextUpdater.compareAndSet(tail, null, chunk) ? chunk : tail.m_next;
+            }
+            s_tailUpdater.compareAndSet(this, tail, next);
+        }
+    }
+
+    /**
+     * Remove the head element if one is visible. Consumer thread only.
+     */
+    public E poll() {
+        final E e = peek();
+        if (e != null) {
+            // release the reference so a long lived chunk doesn't pin finished tasks
+            m_head.m_slots.lazySet(m_headIndex, null);
+            m_headIndex++;
+        }
+        return e;
+    }
+
+    /**
+     * Return the head element without removing it. Consumer thread only.
+     */
+    public E peek() {
+        if (m_headIndex == m_chunkSize) {
+            final Chunk<E> next = m_head.m_next;
+            if (next == null) {
+                return null;
+            }
+            m_head = next;
+            m_headIndex = 0;
+        }
+        return m_head.m_slots.get(m_headIndex);
+    }
+
+    /**
+     * Remove the head element, spinning for CoreUtils.QUEUE_SPIN_MICROSECONDS and then
+     * parking until one is offered. Consumer thread only.
+     */
+    public E take() throws InterruptedException {
+        E e = poll();
+        if (e != null) {
+            return e;
+        }
+        if (CoreUtils.QUEUE_SPIN_MICROSECONDS > 0) {
+            final long start = System.nanoTime();
+            do {
+                if ((e = poll()) != null) {
+                    return e;
+                }
+            } while (System.nanoTime() - start <= CoreUtils.QUEUE_SPIN_MICROSECONDS);
+        }
+        final Thread current = Thread.currentThread();
+        try {
+            for (;;) {
+                // publish the waiter before the final check so an offer either
+                // sees it or its element is visible to the poll below
+                m_waiter = current;
+                if ((e = poll()) != null) {
+                    return e;
+                }
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            m_waiter = null;
+        }
+    }
+
+    /**
+     * Move up to maxElements visible elements, in order, to the given collection without
+     * blocking. Consumer thread only.
+     * @return the number of elements moved
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        int count = 0;
+        E e;
+        while (count < maxElements && (e = poll()) != null) {
+            c.add(e);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Consumer thread only.
+     */
+    public boolean isEmpty() {
+        return peek() == null;
+    }
+}
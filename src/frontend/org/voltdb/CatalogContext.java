@@ -35,6 +35,7 @@ import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.SnapshotSchedule;
 import org.voltdb.catalog.Table;
 import org.voltdb.compiler.PlannerTool;
+import org.voltdb.compiler.PlannerToolPool;
 import org.voltdb.compiler.deploymentfile.DeploymentType;
 import org.voltdb.settings.ClusterSettings;
 import org.voltdb.settings.DbSettings;
@@ -85,6 +86,12 @@ public class CatalogContext {
      */
     public final PlannerTool m_ptool;
 
+    /*
+     * Pool of planners for concurrent ad hoc planning against this catalog
+     * version. The pool lends out m_ptool first and creates the others lazily.
+     */
+    public final PlannerToolPool m_ptoolPool;
+
     // PRIVATE
     private final InMemoryJarfile m_jarfile;
 
@@ -158,6 +165,7 @@ public class CatalogContext {
 
         m_jdbc = new JdbcDatabaseMetaDataGenerator(catalog, m_defaultProcs, m_jarfile);
         m_ptool = new PlannerTool(cluster, database, catalogHash);
+        m_ptoolPool = new PlannerToolPool(m_ptool, cluster, database, catalogHash, PlannerToolPool.POOL_SIZE);
         catalogVersion = version;
 
         if (procedures != null) {
@@ -77,8 +77,11 @@ import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.SnapshotSchedule;
 import org.voltdb.client.ClientAuthScheme;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureInvocation;
 import org.voltdb.common.Constants;
 import org.voltdb.dtxn.InitiatorStats.InvocationInfo;
+import org.voltdb.dtxn.TransactionStageStats;
+import org.voltdb.dtxn.TransactionStageStats.Stage;
 import org.voltdb.iv2.Cartographer;
 import org.voltdb.iv2.Iv2Trace;
 import org.voltdb.messaging.FastDeserializer;
@@ -765,18 +768,52 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         @Override
         public void handleMessage(ByteBuffer message, Connection c) {
             try {
+                if (message.get(message.position()) == ProcedureInvocation.MULTI_INVOCATION) {
+                    handleMultiInvocation(message, c);
+                    return;
+                }
                 final ClientResponseImpl error = handleRead(message, this, c);
                 if (error != null) {
-                    ByteBuffer buf = ByteBuffer.allocate(error.getSerializedSize() + 4);
-                    buf.putInt(buf.capacity() - 4);
-                    error.flattenToBuffer(buf).flip();
-                    c.writeStream().enqueue(buf);
+                    enqueueError(error, c);
                 }
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
         }
 
+        /*
+         * A batching client coalesced several invocations into this message. Each one
+         * is still framed with its own length, so slice it out and dispatch it exactly
+         * as if it had arrived alone.
+         */
+        private void handleMultiInvocation(ByteBuffer message, Connection c) {
+            message.get();
+            final int count = message.getInt();
+            for (int i = 0; i < count; i++) {
+                final int length = message.remaining() >= 4 ? message.getInt() : -1;
+                if (length <= 0 || length > message.remaining()) {
+                    enqueueError(new ClientResponseImpl(
+                            ClientResponseImpl.UNEXPECTED_FAILURE, new VoltTable[0],
+                            "Malformed multi-invocation message", c.connectionId()), c);
+                    return;
+                }
+                final ByteBuffer invocation = message.slice();
+                invocation.limit(length);
+                message.position(message.position() + length);
+                final ClientResponseImpl error = handleRead(invocation, this, c);
+                if (error != null) {
+                    enqueueError(error, c);
+                }
+            }
+        }
+
+        private void enqueueError(ClientResponseImpl error, Connection c) {
+            ByteBuffer buf = ByteBuffer.allocate(error.getSerializedSize() + 4);
+            buf.putInt(buf.capacity() - 4);
+            error.flattenToBuffer(buf).flip();
+            c.writeStream().enqueue(buf);
+        }
+
         @Override
         public void started(final Connection c) {
             m_connection = c;
@@ -875,6 +912,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         private final InitiateResponseMessage response;
         private final Procedure catProc;
         private ClientResponseImpl clientResponse;
+        private final long m_enqueueTimeNanos = System.nanoTime();
 
         private ClientResponseWork(InitiateResponseMessage response,
                                    ClientInterfaceHandleManager cihm,
@@ -891,6 +929,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         {
             buf.putInt(buf.capacity() - 4);
             clientResponse.flattenToBuffer(buf);
+            TransactionStageStats.recordSince(Stage.RESPONSE_WRITE, m_enqueueTimeNanos);
         }
 
         @Override
@@ -936,6 +975,10 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                     delta,
                     clientResponse.getStatus());
 
+            if (clientData.m_resultCacheTicket != null) {
+                m_dispatcher.getResultCache().put(clientData.m_resultCacheTicket, clientResponse);
+            }
+
             clientResponse.setClientHandle(clientData.m_clientHandle);
             clientResponse.setClusterRoundtrip((int)TimeUnit.NANOSECONDS.toMillis(delta));
             clientResponse.setHash(null); // not part of wire protocol
@@ -1345,6 +1388,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
      * * return True if an error was generated and needs to be returned to the client
      */
     final ClientResponseImpl handleRead(ByteBuffer buf, ClientInputHandler handler, Connection ccxn) {
+        final long decodeStart = System.nanoTime();
         StoredProcedureInvocation task = new StoredProcedureInvocation();
         try {
             task.initFromBuffer(buf);
@@ -1353,6 +1397,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                     ClientResponseImpl.UNEXPECTED_FAILURE,
                     new VoltTable[0], ex.getMessage(), ccxn.connectionId());
         }
+        TransactionStageStats.recordSince(Stage.CLIENT_DECODE, decodeStart);
         AuthUser user =  m_catalogContext.get().authSystem.getUser(handler.getUserName());
         if (user == null) {
             String errorMessage = "User " + handler.getUserName() + " has been removed from the system via a catalog update";
@@ -1360,7 +1405,12 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             return errorResponse(ccxn, task.clientHandle, ClientResponse.UNEXPECTED_FAILURE, errorMessage, null, false);
         }
 
-        return m_dispatcher.dispatch(task, handler, ccxn, user);
+        final long dispatchStart = System.nanoTime();
+        try {
+            return m_dispatcher.dispatch(task, handler, ccxn, user);
+        } finally {
+            TransactionStageStats.recordSince(Stage.DISPATCH, dispatchStart);
+        }
     }
 
     public Procedure getProcedureFromName(String procName, CatalogContext catalogContext) {
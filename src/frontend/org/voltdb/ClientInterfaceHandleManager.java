@@ -109,8 +109,11 @@ public class ClientInterfaceHandleManager
         final long m_creationTimeNanos;
         final String m_procName;
         final long m_initiatorHSId;
+        // set when the response should go into the procedure result cache
+        final ProcedureResultCache.Ticket m_resultCacheTicket;
         Iv2InFlight(long ciHandle, long clientHandle,
-                int messageSize, long creationTimeNanos, String procName, long initiatorHSId)
+                int messageSize, long creationTimeNanos, String procName, long initiatorHSId,
+                ProcedureResultCache.Ticket resultCacheTicket)
         {
             m_ciHandle = ciHandle;
             m_clientHandle = clientHandle;
@@ -118,6 +121,7 @@ public class ClientInterfaceHandleManager
             m_creationTimeNanos = creationTimeNanos;
             m_procName = procName;
             m_initiatorHSId = initiatorHSId;
+            m_resultCacheTicket = resultCacheTicket;
         }
     }
 
@@ -154,9 +158,10 @@ public class ClientInterfaceHandleManager
             @Override
             synchronized long getHandle(boolean isSinglePartition, int partitionId,
                     long clientHandle, int messageSize, long creationTimeNanos, String procName, long initiatorHSId,
-                    boolean readOnly, boolean isShortCircuitRead) {
+                    boolean readOnly, boolean isShortCircuitRead, ProcedureResultCache.Ticket resultCacheTicket) {
                 return super.getHandle(isSinglePartition, partitionId,
-                        clientHandle, messageSize, creationTimeNanos, procName, initiatorHSId, readOnly, isShortCircuitRead);
+                        clientHandle, messageSize, creationTimeNanos, procName, initiatorHSId, readOnly, isShortCircuitRead,
+                        resultCacheTicket);
             }
             @Override
             synchronized Iv2InFlight findHandle(long ciHandle) {
@@ -206,6 +211,22 @@ public class ClientInterfaceHandleManager
             long initiatorHSId,
             boolean readOnly,
             boolean isShortCircuitRead)
+    {
+        return getHandle(isSinglePartition, partitionId, clientHandle, messageSize, creationTimeNanos,
+                procName, initiatorHSId, readOnly, isShortCircuitRead, null);
+    }
+
+    long getHandle(
+            boolean isSinglePartition,
+            int partitionId,
+            long clientHandle,
+            int messageSize,
+            long creationTimeNanos,
+            String procName,
+            long initiatorHSId,
+            boolean readOnly,
+            boolean isShortCircuitRead,
+            ProcedureResultCache.Ticket resultCacheTicket)
     {
         assert(!shouldCheckThreadIdAssertion() || m_expectedThreadId == Thread.currentThread().getId());
         if (!isSinglePartition) {
@@ -224,7 +245,8 @@ public class ClientInterfaceHandleManager
         long ciHandle =
                 isShortCircuitRead ? m_shortCircuitHG.getNextHandle() : partitionStuff.m_generator.getNextHandle();
         Iv2InFlight inFlight =
-                new Iv2InFlight(ciHandle, clientHandle, messageSize, creationTimeNanos, procName, initiatorHSId);
+                new Iv2InFlight(ciHandle, clientHandle, messageSize, creationTimeNanos, procName, initiatorHSId,
+                                resultCacheTicket);
 
         if (isShortCircuitRead) {
             /*
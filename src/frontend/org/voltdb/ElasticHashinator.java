@@ -38,6 +38,7 @@ import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONStringer;
 import org.voltcore.utils.Bits;
 import org.voltcore.utils.Pair;
+import org.voltdb.client.ElasticTokenIndex;
 import org.voltdb.utils.CompressionService;
 
 import sun.misc.Cleaner;
@@ -76,6 +77,9 @@ public class ElasticHashinator extends TheHashinator {
     private final long m_tokens;
     private final int m_tokenCount;
 
+    // Narrows partitionForToken down to a few tokens, null to binary search the ring
+    private final ElasticTokenIndex m_tokenIndex;
+
     // Provide a hook for the GC
     @SuppressWarnings("unused")
     private final Cleaner m_cleaner;
@@ -126,6 +130,7 @@ public class ElasticHashinator extends TheHashinator {
                 : updateRaw(configBytes));
         m_tokens = p.getFirst();
         m_tokenCount = p.getSecond();
+        m_tokenIndex = buildTokenIndex(m_tokens, m_tokenCount);
         m_cleaner = Cleaner.create(this, new Deallocator(m_tokens, m_tokenCount * 8));
         m_configBytes = !cooked ? Suppliers.ofInstance(configBytes) : m_configBytesSupplier;
         m_cookedBytes = cooked ? Suppliers.ofInstance(configBytes) : m_cookedBytesSupplier;
@@ -165,6 +170,7 @@ public class ElasticHashinator extends TheHashinator {
             ii++;
         }
         m_tokenCount = tokens.size();
+        m_tokenIndex = buildTokenIndex(m_tokens, m_tokenCount);
         m_configBytes = m_configBytesSupplier;
         m_cookedBytes = m_cookedBytesSupplier;
     }
@@ -281,10 +287,17 @@ public class ElasticHashinator extends TheHashinator {
      * it wraps around to the last token in the ring closest to Long.MAX_VALUE
      */
     public int partitionForToken(int hash) {
+        if (m_tokenIndex != null) {
+            return m_tokenIndex.partitionForToken(hash);
+        }
         long token = getTokenPtr(hash);
         return Bits.unsafe.getInt(token + 4);
     }
 
+    private static ElasticTokenIndex buildTokenIndex(long tokens, int tokenCount) {
+        return ElasticTokenIndex.ENABLED && tokenCount > 0 ? new ElasticTokenIndex(tokens, tokenCount) : null;
+    }
+
     /**
      * Get all the tokens on the ring.
      */
@@ -40,6 +40,7 @@ import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.EstTime;
 import org.voltcore.utils.RateLimitedLogger;
 import org.voltdb.AuthSystem.AuthUser;
+import org.voltdb.HTTPResponseEncoder.Format;
 import org.voltdb.VoltDB.Configuration;
 import org.voltdb.client.ClientAuthScheme;
 import org.voltdb.client.ClientResponse;
@@ -70,7 +71,7 @@ public class HTTPClientInterface {
     final boolean m_spnegoEnabled;
     final String m_servicePrincipal;
 
-    final String m_timeoutResponse;
+    final ClientResponseImpl m_timeoutResponse;
 
     private final Supplier<InternalConnectionHandler> m_invocationHandler =
             Suppliers.memoize(new Supplier<InternalConnectionHandler>() {
@@ -97,14 +98,12 @@ public class HTTPClientInterface {
 
         final AtomicBoolean m_complete = new AtomicBoolean(false);
         final Continuation m_continuation;
-        final String m_jsonp;
 
-        public JSONProcCallback(Continuation continuation, String jsonp) {
+        public JSONProcCallback(Continuation continuation) {
             assert continuation != null : "given continuation is null";
 
             m_continuation = continuation;
             m_continuation.addContinuationListener(this);
-            m_jsonp = jsonp;
         }
 
         @Override
@@ -119,14 +118,8 @@ public class HTTPClientInterface {
                 }
                 return;
             }
-            ClientResponseImpl rimpl = (ClientResponseImpl) clientResponse;
-            String msg = rimpl.toJSONString();
-
-            // handle jsonp pattern
-            // http://en.wikipedia.org/wiki/JSON#The_Basic_Idea:_Retrieving_JSON_via_Script_Tags
-            msg = asJsonp(m_jsonp, msg);
-
-            m_continuation.setAttribute("result", msg);
+            // encoded straight to the response when the request is resumed
+            m_continuation.setAttribute("result", clientResponse);
             try {
                 m_continuation.resume();
             } catch (IllegalStateException e) {
@@ -153,9 +146,8 @@ public class HTTPClientInterface {
     }
 
     public HTTPClientInterface() {
-        final ClientResponseImpl r = new ClientResponseImpl(ClientResponse.CONNECTION_TIMEOUT,
+        m_timeoutResponse = new ClientResponseImpl(ClientResponse.CONNECTION_TIMEOUT,
                 new VoltTable[0], "Request Timeout");
-        m_timeoutResponse = r.toJSONString();
         m_servicePrincipal = getAuthSystem().getServicePrincipal();
         m_spnegoEnabled = m_servicePrincipal != null && !m_servicePrincipal.isEmpty();
     }
@@ -169,29 +161,37 @@ public class HTTPClientInterface {
         return sb.append(jsonp).append("( ").append(msg).append(" )").toString();
     }
 
-    private final static void simpleJsonResponse(String jsonp, String message, HttpServletResponse rsp, int code) {
+    // handle jsonp pattern
+    // http://en.wikipedia.org/wiki/JSON#The_Basic_Idea:_Retrieving_JSON_via_Script_Tags
+    private final static void writeResponse(ClientResponse response, Format format, String jsonp,
+            HttpServletResponse rsp) throws IOException {
+        if (format == Format.CBOR) {
+            rsp.setContentType(HTTPResponseEncoder.CBOR_CONTENT_TYPE);
+        }
+        HTTPResponseEncoder.write(response, format, jsonp, rsp.getOutputStream());
+        rsp.getOutputStream().flush();
+    }
+
+    private final static void simpleJsonResponse(String jsonp, Format format, String message, HttpServletResponse rsp, int code) {
         ClientResponseImpl rimpl = new ClientResponseImpl(
                 ClientResponse.UNEXPECTED_FAILURE, new VoltTable[0], message);
-        String msg = rimpl.toJSONString();
-        msg = asJsonp(jsonp, msg);
         rsp.setStatus(code);
         try {
-            rsp.getWriter().print(msg);
-            rsp.getWriter().flush();
+            writeResponse(rimpl, format, jsonp, rsp);
         } catch (IOException ignoreThisAsBrowserMustHaveClosed) {
         }
     }
 
-    private final static void badRequest(String jsonp, String message, HttpServletResponse rsp) {
-        simpleJsonResponse(jsonp, message, rsp, HttpServletResponse.SC_BAD_REQUEST);
+    private final static void badRequest(String jsonp, Format format, String message, HttpServletResponse rsp) {
+        simpleJsonResponse(jsonp, format, message, rsp, HttpServletResponse.SC_BAD_REQUEST);
     }
 
-    private final static void unauthorized(String jsonp, String message, HttpServletResponse rsp) {
-        simpleJsonResponse(jsonp, message, rsp, HttpServletResponse.SC_UNAUTHORIZED);
+    private final static void unauthorized(String jsonp, Format format, String message, HttpServletResponse rsp) {
+        simpleJsonResponse(jsonp, format, message, rsp, HttpServletResponse.SC_UNAUTHORIZED);
     }
 
-    private final static void ok(String jsonp, String message, HttpServletResponse rsp) {
-        simpleJsonResponse(jsonp, message, rsp, HttpServletResponse.SC_OK);
+    private final static void ok(String jsonp, Format format, String message, HttpServletResponse rsp) {
+        simpleJsonResponse(jsonp, format, message, rsp, HttpServletResponse.SC_OK);
     }
 
     public void process(Request request, HttpServletResponse response) {
@@ -202,21 +202,29 @@ public class HTTPClientInterface {
         if (jsonp != null && jsonp.trim().isEmpty()) {
             jsonp = null;
         }
+        // the format parameter isn't read until the body is known to be acceptable
+        Format format = HTTPResponseEncoder.formatFor(null, request.getHeader(HttpHeader.ACCEPT.asString()), jsonp);
         String authHeader = request.getHeader(HttpHeader.AUTHORIZATION.asString());
         if (m_spnegoEnabled && (authHeader == null || !authHeader.startsWith(HttpHeader.NEGOTIATE.asString()))) {
             m_log.debug("SpengoAuthenticator: sending challenge");
             response.setHeader(HttpHeader.WWW_AUTHENTICATE.asString(), HttpHeader.NEGOTIATE.asString());
-            unauthorized(jsonp, "must initiate SPNEGO negotiation", response);
+            unauthorized(jsonp, format, "must initiate SPNEGO negotiation", response);
             request.setHandled(true);
             return;
         }
 
         final Continuation continuation = ContinuationSupport.getContinuation(request);
-        String result = (String)continuation.getAttribute("result");
+        ClientResponse result = (ClientResponse)continuation.getAttribute("result");
         if (result != null) {
             try {
+                if (jsonp == null) {
+                    jsonp = (String)request.getAttribute("jsonp");
+                }
+                if (request.getAttribute("format") != null) {
+                    format = (Format)request.getAttribute("format");
+                }
                 response.setStatus(HttpServletResponse.SC_OK);
-                response.getWriter().print(result);
+                writeResponse(result, format, jsonp, response);
                 request.setHandled(true);
             } catch (IllegalStateException | IOException e){
                // Thrown when we shut down the server via the JSON/HTTP (web studio) API
@@ -246,12 +254,12 @@ public class HTTPClientInterface {
                 int queryParamSize = request.getContentLength();
 
                 if (queryParamSize > MAX_QUERY_PARAM_SIZE) {
-                    ok(jsonp, "Query string too large: " + String.valueOf(request.getContentLength()), response);
+                    ok(jsonp, format, "Query string too large: " + String.valueOf(request.getContentLength()), response);
                     request.setHandled(true);
                     return;
                 }
                 if (queryParamSize == 0) {
-                    ok(jsonp, "Received POST with no parameters in the body.", response);
+                    ok(jsonp, format, "Received POST with no parameters in the body.", response);
                     request.setHandled(true);
                     return;
                 }
@@ -259,13 +267,15 @@ public class HTTPClientInterface {
             if (jsonp == null) {
                 jsonp = request.getParameter(JSONP);
             }
+            format = HTTPResponseEncoder.formatFor(request.getParameter(HTTPResponseEncoder.PARAM_FORMAT),
+                    request.getHeader(HttpHeader.ACCEPT.asString()), jsonp);
             String procName = request.getParameter("Procedure");
             String params = request.getParameter("Parameters");
             String timeoutStr = request.getParameter(QUERY_TIMEOUT_PARAM);
 
             // null procs are bad news
             if (procName == null) {
-                badRequest(jsonp, "Procedure parameter is missing", response);
+                badRequest(jsonp, format, "Procedure parameter is missing", response);
                 request.setHandled(true);
                 return;
             }
@@ -278,7 +288,7 @@ public class HTTPClientInterface {
                         throw new NumberFormatException("negative query timeout");
                     }
                 } catch(NumberFormatException e) {
-                    badRequest(jsonp, "invalid query timeout: " + timeoutStr, response);
+                    badRequest(jsonp, format, "invalid query timeout: " + timeoutStr, response);
                     request.setHandled(true);
                     return;
                 }
@@ -286,7 +296,7 @@ public class HTTPClientInterface {
 
             authResult = authenticate(request);
             if (!authResult.isAuthenticated()) {
-                ok(jsonp, authResult.m_message, response);
+                ok(jsonp, format, authResult.m_message, response);
                 request.setHandled(true);
                 return;
             }
@@ -294,7 +304,13 @@ public class HTTPClientInterface {
             continuation.suspend(response);
             suspended = true;
 
-            JSONProcCallback cb = new JSONProcCallback(continuation, jsonp);
+            // read back when the request is resumed with the response
+            if (jsonp != null) {
+                request.setAttribute("jsonp", jsonp);
+            }
+            request.setAttribute("format", format);
+
+            JSONProcCallback cb = new JSONProcCallback(continuation);
             boolean success;
             if (params != null) {
                 ParameterSet paramSet = null;
@@ -303,14 +319,14 @@ public class HTTPClientInterface {
                 }
                 // if decoding params has a fail, then fail
                 catch (Exception e) {
-                    badRequest(jsonp, "failed to parse invocation parameters", response);
+                    badRequest(jsonp, format, "failed to parse invocation parameters", response);
                     request.setHandled(true);
                     continuation.complete();
                     return;
                 }
                 // if the paramset has content, but decodes to null, fail
                 if (paramSet == null) {
-                    badRequest(jsonp, "failed to decode invocation parameters", response);
+                    badRequest(jsonp, format, "failed to decode invocation parameters", response);
                     request.setHandled(true);
                     continuation.complete();
                     return;
@@ -321,19 +337,16 @@ public class HTTPClientInterface {
                 success = callProcedure(authResult, queryTimeout, cb, procName);
             }
             if (!success) {
-                ok(jsonp, "Server is not accepting work at this time.", response);
+                ok(jsonp, format, "Server is not accepting work at this time.", response);
                 request.setHandled(true);
                 continuation.complete();
                 return;
             }
-            if (jsonp != null) {
-                request.setAttribute("jsonp", jsonp);
-            }
             continuation.setAttribute("SQLSUBMITTED", Boolean.TRUE);
         } catch (Exception e) {
             String msg = Throwables.getStackTraceAsString(e);
             m_rate_limited_log.log(EstTime.currentTimeMillis(), Level.WARN, e, "JSON interface exception");
-            ok(jsonp, msg, response);
+            ok(jsonp, format, msg, response);
             if (suspended) {
                 continuation.complete();
             }
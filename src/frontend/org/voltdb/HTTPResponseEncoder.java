@@ -0,0 +1,228 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.voltdb.client.ClientResponse;
+import org.voltdb.types.GeographyPointValue;
+import org.voltdb.types.GeographyValue;
+import org.voltdb.utils.Encoder;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * Writes a procedure response for the HTTP/JSON interface straight to the servlet output
+ * stream, row by row, instead of building the whole document as a string first.
+ *
+ * JSON output has the same layout and values as {@link ClientResponseImpl#toJSONString()}.
+ * CBOR output has the same layout but keeps VARBINARY values as byte strings and
+ * non-finite FLOAT values as doubles instead of text. CBOR is picked with
+ * <code>format=cbor</code> or by accepting <code>application/cbor</code>; JSONP requests
+ * are always answered in JSON.
+ */
+public class HTTPResponseEncoder {
+
+    public static final String PARAM_FORMAT = "format";
+    public static final String CBOR_CONTENT_TYPE = "application/cbor";
+
+    public enum Format {
+        JSON,
+        CBOR
+    }
+
+    private static final JsonFactory s_jsonFactory = new JsonFactory();
+    private static final CBORFactory s_cborFactory = new CBORFactory();
+    static {
+        // the servlet container owns the output stream
+        s_jsonFactory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        s_cborFactory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * Pick the response format from the format request parameter, falling back to the
+     * Accept header.
+     */
+    public static Format formatFor(String formatParam, String accept, String jsonp) {
+        if (jsonp != null) {
+            return Format.JSON;
+        }
+        if (formatParam != null) {
+            return "cbor".equalsIgnoreCase(formatParam.trim()) ? Format.CBOR : Format.JSON;
+        }
+        if (accept != null && accept.toLowerCase().contains(CBOR_CONTENT_TYPE)) {
+            return Format.CBOR;
+        }
+        return Format.JSON;
+    }
+
+    public static void write(ClientResponse response, Format format, String jsonp, OutputStream out)
+            throws IOException {
+        if (format == Format.CBOR) {
+            JsonGenerator gen = s_cborFactory.createGenerator(out);
+            writeResponse(response, gen, true);
+            gen.close();
+            return;
+        }
+
+        if (jsonp != null) {
+            out.write((jsonp + "( ").getBytes(StandardCharsets.UTF_8));
+        }
+        JsonGenerator gen = s_jsonFactory.createGenerator(out, JsonEncoding.UTF8);
+        writeResponse(response, gen, false);
+        gen.close();
+        if (jsonp != null) {
+            out.write(" )".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void writeResponse(ClientResponse response, JsonGenerator gen, boolean binary)
+            throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField(ClientResponseImpl.JSON_STATUS_KEY, response.getStatus());
+        gen.writeNumberField(ClientResponseImpl.JSON_APPSTATUS_KEY, response.getAppStatus());
+        gen.writeStringField(ClientResponseImpl.JSON_STATUSSTRING_KEY, response.getStatusString());
+        gen.writeStringField(ClientResponseImpl.JSON_APPSTATUSSTRING_KEY, response.getAppStatusString());
+        gen.writeArrayFieldStart(ClientResponseImpl.JSON_RESULTS_KEY);
+        for (VoltTable table : response.getResults()) {
+            writeTable(table, gen, binary);
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    private static void writeTable(VoltTable table, JsonGenerator gen, boolean binary) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField(VoltTable.JSON_STATUS_KEY, table.getStatusCode());
+
+        final int columnCount = table.getColumnCount();
+        final VoltType[] types = new VoltType[columnCount];
+        gen.writeArrayFieldStart(VoltTable.JSON_SCHEMA_KEY);
+        for (int i = 0; i < columnCount; i++) {
+            types[i] = table.getColumnType(i);
+            gen.writeStartObject();
+            gen.writeStringField(VoltTable.JSON_NAME_KEY, table.getColumnName(i));
+            gen.writeNumberField(VoltTable.JSON_TYPE_KEY, types[i].getValue());
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+
+        gen.writeArrayFieldStart(VoltTable.JSON_DATA_KEY);
+        VoltTableRow row = table.cloneRow();
+        row.resetRowPosition();
+        while (row.advanceRow()) {
+            gen.writeStartArray();
+            for (int i = 0; i < columnCount; i++) {
+                writeValue(row, i, types[i], gen, binary);
+            }
+            gen.writeEndArray();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    // Same representation as VoltTableRow.putJSONRep() unless binary is set
+    private static void writeValue(VoltTableRow row, int col, VoltType type, JsonGenerator gen, boolean binary)
+            throws IOException {
+        switch (type) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+            final long value = row.getLong(col);
+            if (row.wasNull()) {
+                gen.writeNull();
+            }
+            else {
+                gen.writeNumber(value);
+            }
+            break;
+        case TIMESTAMP:
+            final long micros = row.getTimestampAsLong(col);
+            if (row.wasNull()) {
+                gen.writeNull();
+            }
+            else {
+                gen.writeNumber(micros);
+            }
+            break;
+        case FLOAT:
+            final double dvalue = row.getDouble(col);
+            if (row.wasNull()) {
+                gen.writeNull();
+            }
+            else if (!binary && (Double.isNaN(dvalue) || Double.isInfinite(dvalue))) {
+                gen.writeString(Double.toString(dvalue));
+            }
+            else {
+                gen.writeNumber(dvalue);
+            }
+            break;
+        case STRING:
+            gen.writeString(row.getString(col));
+            break;
+        case VARBINARY:
+            final byte[] bin = row.getVarbinary(col);
+            if (bin == null) {
+                gen.writeNull();
+            }
+            else if (binary) {
+                gen.writeBinary(bin);
+            }
+            else {
+                gen.writeString(Encoder.hexEncode(bin));
+            }
+            break;
+        case DECIMAL:
+            final Object dec = row.getDecimalAsBigDecimal(col);
+            if (row.wasNull()) {
+                gen.writeNull();
+            }
+            else {
+                gen.writeString(dec.toString());
+            }
+            break;
+        case GEOGRAPHY_POINT:
+            final GeographyPointValue pt = row.getGeographyPointValue(col);
+            if (row.wasNull()) {
+                gen.writeNull();
+            }
+            else {
+                gen.writeString(pt.toString());
+            }
+            break;
+        case GEOGRAPHY:
+            final GeographyValue gv = row.getGeographyValue(col);
+            if (row.wasNull()) {
+                gen.writeNull();
+            }
+            else {
+                gen.writeString(gv.toString());
+            }
+            break;
+        default:
+            // VoltType includes a few values that aren't valid column value types
+            break;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * What the EE decided when an {@link TableStreamType#INCREMENTAL_SNAPSHOT} stream was
+ * activated on a table. A delta only streams the blocks changed since the base snapshot
+ * and carries the primary keys deleted since then, a full activation streams everything.
+ */
+public class IncrementalStreamActivation {
+    public final boolean isDelta;
+    /** SpHandle the snapshot was taken at, the base for the next incremental snapshot */
+    public final long spHandle;
+    /** Primary keys of the rows deleted since the base, null unless this is a delta */
+    public final VoltTable deletedKeys;
+
+    public IncrementalStreamActivation(boolean isDelta, long spHandle, VoltTable deletedKeys) {
+        this.isDelta = isDelta;
+        this.spHandle = spHandle;
+        this.deletedKeys = deletedKeys;
+    }
+
+    /**
+     * Read the activation result written by the EE: a boolean delta flag, the snapshot
+     * spHandle and, for a delta, the length prefixed table of deleted keys. The keys are
+     * copied out so the buffer can be reused right away.
+     */
+    public static IncrementalStreamActivation parse(ByteBuffer buf) {
+        final boolean isDelta = buf.get() != 0;
+        final long spHandle = buf.getLong();
+        VoltTable deletedKeys = null;
+        if (isDelta) {
+            final int len = buf.getInt();
+            byte[] bufCopy = new byte[len];
+            buf.get(bufCopy);
+            deletedKeys = PrivateVoltTableFactory.createVoltTableFromBuffer(ByteBuffer.wrap(bufCopy), true);
+        }
+        return new IncrementalStreamActivation(isDelta, spHandle, deletedKeys);
+    }
+}
@@ -82,6 +82,7 @@ import org.voltdb.compiler.CatalogChangeResult;
 import org.voltdb.compiler.CatalogChangeWork;
 import org.voltdb.iv2.Cartographer;
 import org.voltdb.iv2.Iv2Trace;
+import org.voltdb.iv2.MpInitiator;
 import org.voltdb.jni.ExecutionEngine;
 import org.voltdb.messaging.Iv2InitiateTaskMessage;
 import org.voltdb.messaging.MultiPartitionParticipantMessage;
@@ -127,6 +128,13 @@ public final class InvocationDispatcher {
 
     private final boolean m_isConfiguredForNonVoltDBBackend;
 
+    // responses of read-only procedures, null unless enabled
+    private final ProcedureResultCache m_resultCache =
+            ProcedureResultCache.ENABLED ? new ProcedureResultCache(ProcedureResultCache.MAX_BYTES) : null;
+    // the hashinator in use when every partition was found to have a local replica,
+    // null if some don't, multi partition responses are only cached under it
+    private volatile TheHashinator m_allPartitionsLocalHashinator = null;
+
     public final static class Builder {
 
         Cartographer m_cartographer;
@@ -244,15 +252,23 @@ public final class InvocationDispatcher {
                  * if single part reads can be delivered and executed at local replicas
                  */
                 final int thisHostId = CoreUtils.getHostIdFromHSId(m_mailbox.getHSId());
+                final TheHashinator hashinator = TheHashinator.getCurrentHashinator();
                 ImmutableMap.Builder<Integer, Long> localReplicas = ImmutableMap.builder();
+                boolean allPartitionsLocal = true;
                 for (int partition : m_cartographer.getPartitions()) {
+                    boolean isLocal = false;
                     for (Long replica : m_cartographer.getReplicasForPartition(partition)) {
                         if (CoreUtils.getHostIdFromHSId(replica) == thisHostId) {
                             localReplicas.put(partition, replica);
+                            isLocal = true;
                         }
                     }
+                    if (!isLocal && partition != MpInitiator.MP_INIT_PID) {
+                        allPartitionsLocal = false;
+                    }
                 }
                 m_localReplicas.set(localReplicas.build());
+                m_allPartitionsLocalHashinator = allPartitionsLocal ? hashinator : null;
             }
 
         });
@@ -419,6 +435,10 @@ public final class InvocationDispatcher {
                 if (retval != null) {
                     return retval;
                 }
+                retval = SnapshotUtil.checkRestoreIsNotIncremental(task);
+                if (retval != null) {
+                    return retval;
+                }
                 if (m_isInitialRestore.compareAndSet(true, false) && isSchemaEmpty()) {
                     return useSnapshotCatalogToRestoreSnapshotSchema(task, handler, ccxn, user);
                 }
@@ -453,14 +473,31 @@ public final class InvocationDispatcher {
             // unable to hash to a site, return an error
             return getMispartitionedErrorResponse(task, catProc, e);
         }
+
+        ProcedureResultCache.Ticket cacheTicket = null;
+        if (m_resultCache != null && ProcedureResultCache.isCacheable(catProc) &&
+                !task.getAllPartition() && writesAreLocal(partition)) {
+            cacheTicket = m_resultCache.ticketFor(catalogContext.database, catProc, task, partition);
+            if (cacheTicket != null) {
+                ClientResponseImpl cached = m_resultCache.get(cacheTicket, task.clientHandle);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+        }
+
         boolean success = createTransaction(handler.connectionId(),
+                        Iv2InitiateTaskMessage.UNUSED_MP_TXNID,
+                        0, //unused timestammp
                         task,
                         catProc.getReadonly(),
                         catProc.getSinglepartition(),
                         catProc.getEverysite(),
                         partition,
                         task.getSerializedSize(),
-                        nowNanos);
+                        nowNanos,
+                        false,
+                        cacheTicket);
         if (!success) {
             // when VoltDB.crash... is called, we close off the client interface
             // and it might not be possible to create new transactions.
@@ -476,6 +513,21 @@ public final class InvocationDispatcher {
         return null;
     }
 
+    /**
+     * Whether every write to the partition, or to any partition for -1, also executes
+     * on a site of this host, which the result cache relies on to see it.
+     */
+    private final boolean writesAreLocal(int partition) {
+        if (partition == -1) {
+            return m_allPartitionsLocalHashinator == TheHashinator.getCurrentHashinator();
+        }
+        return m_localReplicas.get().containsKey(partition);
+    }
+
+    public ProcedureResultCache getResultCache() {
+        return m_resultCache;
+    }
+
     private final boolean isSchemaEmpty() {
         return m_catalogContext.get().database.getTables().size() == 0;
     }
@@ -1703,7 +1755,6 @@ public final class InvocationDispatcher {
     }
 
     // Wrap API to SimpleDtxnInitiator - mostly for the future
-    @SuppressWarnings("unused")
     public  boolean createTransaction(
             final long connectionId,
             final long txnId,
@@ -1716,6 +1767,25 @@ public final class InvocationDispatcher {
             final int messageSize,
             long nowNanos,
             final boolean isForReplay)
+    {
+        return createTransaction(connectionId, txnId, uniqueId, invocation, isReadOnly, isSinglePartition,
+                isEveryPartition, partition, messageSize, nowNanos, isForReplay, null);
+    }
+
+    @SuppressWarnings("unused")
+    private boolean createTransaction(
+            final long connectionId,
+            final long txnId,
+            final long uniqueId,
+            final StoredProcedureInvocation invocation,
+            final boolean isReadOnly,
+            final boolean isSinglePartition,
+            final boolean isEveryPartition,
+            final int partition,
+            final int messageSize,
+            long nowNanos,
+            final boolean isForReplay,
+            final ProcedureResultCache.Ticket cacheTicket)
     {
         assert(!isSinglePartition || (partition >= 0));
         final ClientInterfaceHandleManager cihm = m_cihm.get(connectionId);
@@ -1766,7 +1836,8 @@ public final class InvocationDispatcher {
         }
 
         long handle = cihm.getHandle(isSinglePartition, partition, invocation.getClientHandle(),
-                messageSize, nowNanos, invocation.getProcName(), initiatorHSId, isReadOnly, isShortCircuitRead);
+                messageSize, nowNanos, invocation.getProcName(), initiatorHSId, isReadOnly, isShortCircuitRead,
+                cacheTicket);
 
         Iv2InitiateTaskMessage workRequest =
             new Iv2InitiateTaskMessage(m_siteId,
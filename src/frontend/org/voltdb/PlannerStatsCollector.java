@@ -96,9 +96,10 @@ public class PlannerStatsCollector extends StatsSource {
     long m_lastCacheMisses = 0;
 
     /**
-     * Time of last planning start
+     * Time of last planning start. Kept per thread because the host-wide
+     * collector is shared by all of the ad hoc planner threads.
      */
-    Long m_currentStartTime = null;
+    final ThreadLocal<Long> m_currentStartTime = new ThreadLocal<Long>();
 
     /**
      * Total amount of planning time
@@ -182,7 +183,7 @@ public class PlannerStatsCollector extends StatsSource {
      */
     public void startStatsCollection() {
         if (getInvocations() % m_collectionFrequency == 0) {
-            m_currentStartTime = System.nanoTime();
+            m_currentStartTime.set(System.nanoTime());
         }
     }
 
@@ -194,9 +195,10 @@ public class PlannerStatsCollector extends StatsSource {
      * @param cacheUse     where the planned statement came from
      * @param partitionId  partition id
      */
-    public void endStatsCollection(long cache1Size, long cache2Size, CacheUse cacheUse, long partitionId) {
-        if (m_currentStartTime != null) {
-            long delta = System.nanoTime() - m_currentStartTime;
+    public synchronized void endStatsCollection(long cache1Size, long cache2Size, CacheUse cacheUse, long partitionId) {
+        Long startTime = m_currentStartTime.get();
+        if (startTime != null) {
+            long delta = System.nanoTime() - startTime;
             if (delta < 0) {
                 if (Math.abs(delta) > 1000000000) {
                     log.info("Planner statistics recorded a negative planning time larger than one second: " +
@@ -210,7 +212,7 @@ public class PlannerStatsCollector extends StatsSource {
                 m_lastMinPlanningTime = Math.min(delta, m_lastMinPlanningTime);
                 m_lastMaxPlanningTime = Math.max(delta, m_lastMaxPlanningTime);
             }
-            m_currentStartTime = null;
+            m_currentStartTime.remove();
         }
 
         m_cache1Level = cache1Size;
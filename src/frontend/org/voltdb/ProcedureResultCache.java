@@ -0,0 +1,468 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.catalog.Table;
+import org.voltdb.client.ClientResponse;
+
+/**
+ * An opt-in cache of the responses of read-only user procedures, keyed by procedure
+ * name and serialized parameters. The {@link InvocationDispatcher} answers a hit
+ * without creating a transaction.
+ *
+ * Entries are invalidated with host wide, per table modification counters. Sites bump
+ * the counters of the tables a procedure may update when they execute its write
+ * fragments, and bump the counter for unknown tables on writes they can't attribute,
+ * like system procedures, ad hoc DML, DR and table loads. The counters of the tables a
+ * procedure reads are captured before it is initiated and kept with its response, which
+ * is only served while none of them moved. A read initiated after a bump is queued
+ * behind the write at the site, so the captured counters never miss a write the
+ * response did not see.
+ *
+ * Only writes executed on this host are counted. Single partition procedures are only
+ * cached when this host has a replica of their partition and multi partition procedures
+ * only when it has a replica of every partition, which makes a hit as current as a read
+ * from a local replica.
+ *
+ * Enable with -DPROCEDURE_RESULT_CACHE_MB. -DPROCEDURE_RESULT_CACHE_PROCEDURES limits it
+ * to a comma separated list of procedures, which should leave out procedures whose
+ * results depend on anything besides their parameters and the tables they read.
+ */
+public class ProcedureResultCache {
+
+    /** Memory for cached responses on this host, the cache is off when 0 */
+    public static final long MAX_BYTES = Long.getLong("PROCEDURE_RESULT_CACHE_MB", 0) * 1024 * 1024;
+    public static final boolean ENABLED = MAX_BYTES > 0;
+
+    // procedures to cache, or null to cache every read-only user procedure
+    private static final Set<String> s_procedures = parseProcedures(System.getProperty("PROCEDURE_RESULT_CACHE_PROCEDURES"));
+
+    // upper bound on the number of independently locked cache stripes
+    static final int MAX_STRIPES = 16;
+    // rough on-heap overhead of an entry beyond its key and result bytes
+    static final int ENTRY_OVERHEAD = 128;
+
+    private static Set<String> parseProcedures(String procedures) {
+        if (procedures == null || procedures.trim().isEmpty()) {
+            return null;
+        }
+        Set<String> names = new HashSet<String>();
+        for (String name : procedures.split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        return names;
+    }
+
+    //////////////////////////////////////////////////////////////////////////
+    // HOST WIDE TABLE MODIFICATION COUNTERS
+    //////////////////////////////////////////////////////////////////////////
+
+    private static final ConcurrentHashMap<String, AtomicLong> s_tableVersions =
+            new ConcurrentHashMap<String, AtomicLong>();
+    // bumped by writes to tables that aren't known
+    private static final AtomicLong s_unknownTablesVersion = new AtomicLong();
+    // bumped by every write, for procedures whose tables aren't known
+    private static final AtomicLong s_anyTableVersion = new AtomicLong();
+
+    private static AtomicLong tableVersion(String tableName) {
+        AtomicLong version = s_tableVersions.get(tableName);
+        if (version == null) {
+            final AtomicLong newVersion = new AtomicLong();
+            version = s_tableVersions.putIfAbsent(tableName, newVersion);
+            if (version == null) {
+                version = newVersion;
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Called by sites before they execute writes to the named tables, or to tables they
+     * can't name when tableNames is null. Safe to call from any thread.
+     */
+    public static void tablesModified(String[] tableNames) {
+        if (tableNames == null) {
+            s_unknownTablesVersion.incrementAndGet();
+        }
+        else {
+            for (String tableName : tableNames) {
+                tableVersion(tableName).incrementAndGet();
+            }
+        }
+        s_anyTableVersion.incrementAndGet();
+    }
+
+    private static void addTableNames(Set<String> tableNames, String csv) {
+        for (String tableName : csv.split(",")) {
+            if (!tableName.isEmpty()) {
+                tableNames.add(tableName);
+            }
+        }
+    }
+
+    /**
+     * The tables a procedure may update, or null if they aren't known.
+     */
+    public static String[] tablesUpdatedBy(Procedure proc) {
+        if (proc == null || proc.getSystemproc()) {
+            return null;
+        }
+        if (proc.getDefaultproc()) {
+            return new String[] { proc.getPartitiontable().getTypeName() };
+        }
+        Set<String> tableNames = new TreeSet<String>();
+        for (Statement stmt : proc.getStatements()) {
+            addTableNames(tableNames, stmt.getTablesupdated());
+        }
+        if (tableNames.isEmpty()) {
+            // it can only be writing with SQL planned at runtime
+            return null;
+        }
+        return tableNames.toArray(new String[tableNames.size()]);
+    }
+
+    /**
+     * The tables a read-only procedure may read, with the source tables of the views
+     * among them, or null if they aren't known.
+     */
+    static String[] tablesReadBy(Procedure proc, Database db) {
+        Set<String> tableNames = new TreeSet<String>();
+        if (proc.getDefaultproc()) {
+            tableNames.add(proc.getPartitiontable().getTypeName());
+        }
+        else {
+            for (Statement stmt : proc.getStatements()) {
+                addTableNames(tableNames, stmt.getTablesread());
+            }
+        }
+        if (tableNames.isEmpty()) {
+            return null;
+        }
+        for (String tableName : tableNames.toArray(new String[tableNames.size()])) {
+            Table table = db.getTables().get(tableName);
+            if (table != null && table.getMaterializer() != null) {
+                tableNames.add(table.getMaterializer().getTypeName());
+            }
+        }
+        return tableNames.toArray(new String[tableNames.size()]);
+    }
+
+    /**
+     * Whether responses of the procedure may be cached at all.
+     */
+    public static boolean isCacheable(Procedure proc) {
+        return ENABLED && proc.getReadonly() && !proc.getSystemproc() && !proc.getEverysite() &&
+               (s_procedures == null || s_procedures.contains(proc.getTypeName()));
+    }
+
+    //////////////////////////////////////////////////////////////////////////
+    // CACHE INSTANCE
+    //////////////////////////////////////////////////////////////////////////
+
+    static final class Key {
+        final String m_procName;
+        final byte[] m_params;
+        private final int m_hash;
+
+        Key(String procName, byte[] params) {
+            m_procName = procName;
+            m_params = params;
+            m_hash = 31 * procName.hashCode() + Arrays.hashCode(params);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return m_hash == other.m_hash && m_procName.equals(other.m_procName) &&
+                   Arrays.equals(m_params, other.m_params);
+        }
+
+        @Override
+        public int hashCode() {
+            return m_hash;
+        }
+    }
+
+    /**
+     * Created before a procedure is initiated and handed back with its response, it
+     * holds the counters of the tables the procedure reads as they were before it ran.
+     */
+    public static final class Ticket {
+        final Database m_database;
+        final Key m_key;
+        final int m_partition;
+        final AtomicLong[] m_counters;
+        final long[] m_versions;
+
+        private Ticket(Database database, Key key, int partition, AtomicLong[] counters) {
+            m_database = database;
+            m_key = key;
+            m_partition = partition;
+            m_counters = counters;
+            m_versions = new long[counters.length];
+            for (int i = 0; i < counters.length; i++) {
+                m_versions[i] = counters[i].get();
+            }
+        }
+
+        boolean isCurrent() {
+            for (int i = 0; i < m_counters.length; i++) {
+                if (m_counters[i].get() != m_versions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Entry {
+        final Ticket m_ticket;
+        final byte m_appStatus;
+        final String m_appStatusString;
+        final ByteBuffer[] m_results;
+        final long m_size;
+
+        Entry(Ticket ticket, ClientResponseImpl response) {
+            m_ticket = ticket;
+            m_appStatus = response.getAppStatus();
+            m_appStatusString = response.getAppStatusString();
+            // Copy the results out so the entry doesn't pin the rest of the buffer they came in
+            VoltTable[] results = response.getResults();
+            m_results = new ByteBuffer[results.length];
+            long size = ENTRY_OVERHEAD + ticket.m_key.m_params.length;
+            for (int i = 0; i < results.length; i++) {
+                ByteBuffer data = PrivateVoltTableFactory.getTableDataReference(results[i]);
+                ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+                copy.put(data);
+                copy.flip();
+                m_results[i] = copy.asReadOnlyBuffer();
+                size += copy.capacity();
+            }
+            m_size = size;
+        }
+    }
+
+    // an LRU map of responses bounded by the bytes they hold
+    private final class Stripe extends LinkedHashMap<Key, Entry> {
+        private static final long serialVersionUID = 1L;
+        private final long m_maxBytes;
+        private long m_bytes = 0;
+
+        Stripe(long maxBytes) {
+            // set accessOrder to true for LRU
+            super(64, .75f, true);
+            m_maxBytes = maxBytes;
+        }
+
+        void putEntry(Key key, Entry entry) {
+            Entry old = put(key, entry);
+            if (old != null) {
+                m_bytes -= old.m_size;
+            }
+            m_bytes += entry.m_size;
+            Iterator<Entry> eldest = values().iterator();
+            while (m_bytes > m_maxBytes && eldest.hasNext()) {
+                m_bytes -= eldest.next().m_size;
+                eldest.remove();
+                m_evictions.incrementAndGet();
+            }
+        }
+
+        void removeEntry(Key key) {
+            Entry old = remove(key);
+            if (old != null) {
+                m_bytes -= old.m_size;
+            }
+        }
+
+        void clearEntries() {
+            clear();
+            m_bytes = 0;
+        }
+    }
+
+    private final Stripe[] m_stripes;
+    private final long m_maxBytesPerStripe;
+
+    // the catalog the entries and the table counters of each procedure belong to
+    private volatile Database m_database = null;
+    private final ConcurrentHashMap<String, AtomicLong[]> m_procedureCounters =
+            new ConcurrentHashMap<String, AtomicLong[]>();
+
+    final AtomicLong m_lookups = new AtomicLong();
+    final AtomicLong m_hits = new AtomicLong();
+    final AtomicLong m_insertions = new AtomicLong();
+    final AtomicLong m_evictions = new AtomicLong();
+    final AtomicLong m_invalidations = new AtomicLong();
+
+    public ProcedureResultCache(long maxBytes) {
+        m_stripes = new Stripe[MAX_STRIPES];
+        m_maxBytesPerStripe = maxBytes / MAX_STRIPES;
+        for (int i = 0; i < MAX_STRIPES; i++) {
+            m_stripes[i] = new Stripe(m_maxBytesPerStripe);
+        }
+    }
+
+    private Stripe stripeFor(Key key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return m_stripes[(h & 0x7fffffff) % m_stripes.length];
+    }
+
+    // Entries of an older catalog may belong to procedures that have since changed
+    private void switchCatalog(Database database) {
+        synchronized (this) {
+            if (m_database == database) {
+                return;
+            }
+            for (Stripe stripe : m_stripes) {
+                synchronized (stripe) {
+                    stripe.clearEntries();
+                }
+            }
+            m_procedureCounters.clear();
+            m_database = database;
+        }
+    }
+
+    private AtomicLong[] countersFor(Procedure proc, Database database) {
+        AtomicLong[] counters = m_procedureCounters.get(proc.getTypeName());
+        if (counters == null) {
+            String[] tableNames = tablesReadBy(proc, database);
+            if (tableNames == null) {
+                counters = new AtomicLong[] { s_anyTableVersion };
+            }
+            else {
+                counters = new AtomicLong[tableNames.length + 1];
+                counters[0] = s_unknownTablesVersion;
+                for (int i = 0; i < tableNames.length; i++) {
+                    counters[i + 1] = tableVersion(tableNames[i]);
+                }
+            }
+            m_procedureCounters.put(proc.getTypeName(), counters);
+        }
+        return counters;
+    }
+
+    /**
+     * Capture the table counters for an invocation of a cacheable procedure of the given
+     * catalog database that runs on the given partition, -1 for multi partition. Must be
+     * called before the invocation is initiated. Returns null if it can't be cached.
+     */
+    public Ticket ticketFor(Database database, Procedure proc, StoredProcedureInvocation task, int partition) {
+        ByteBuffer params = task.getSerializedParams();
+        if (params == null) {
+            // internally generated invocations never carry serialized parameters
+            return null;
+        }
+        if (m_database != database) {
+            switchCatalog(database);
+        }
+        byte[] paramBytes = new byte[params.remaining()];
+        params.get(paramBytes);
+        return new Ticket(database, new Key(proc.getTypeName(), paramBytes), partition, countersFor(proc, database));
+    }
+
+    /**
+     * Return a copy of the cached response for the ticket's invocation with the given
+     * client handle, or null if there is no current one.
+     */
+    public ClientResponseImpl get(Ticket ticket, long clientHandle) {
+        m_lookups.incrementAndGet();
+        Stripe stripe = stripeFor(ticket.m_key);
+        Entry entry;
+        synchronized (stripe) {
+            entry = stripe.get(ticket.m_key);
+            if (entry != null &&
+                (entry.m_ticket.m_partition != ticket.m_partition || !entry.m_ticket.isCurrent())) {
+                stripe.removeEntry(ticket.m_key);
+                m_invalidations.incrementAndGet();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            return null;
+        }
+        m_hits.incrementAndGet();
+
+        VoltTable[] results = new VoltTable[entry.m_results.length];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = PrivateVoltTableFactory.createVoltTableFromBuffer(entry.m_results[i].duplicate(), true);
+        }
+        return new ClientResponseImpl(ClientResponse.SUCCESS, entry.m_appStatus, entry.m_appStatusString,
+                                      results, null, clientHandle);
+    }
+
+    /**
+     * Cache a successful response to the ticket's invocation, unless a table it read
+     * was written since the ticket was taken.
+     */
+    public void put(Ticket ticket, ClientResponseImpl response) {
+        if (response.getStatus() != ClientResponse.SUCCESS ||
+            ticket.m_database != m_database || !ticket.isCurrent()) {
+            return;
+        }
+        Entry entry = new Entry(ticket, response);
+        if (entry.m_size > m_maxBytesPerStripe) {
+            return;
+        }
+        Stripe stripe = stripeFor(ticket.m_key);
+        synchronized (stripe) {
+            stripe.putEntry(ticket.m_key, entry);
+        }
+        m_insertions.incrementAndGet();
+    }
+
+    public int getEntryCount() {
+        int entries = 0;
+        for (Stripe stripe : m_stripes) {
+            synchronized (stripe) {
+                entries += stripe.size();
+            }
+        }
+        return entries;
+    }
+
+    public long getSizeInBytes() {
+        long bytes = 0;
+        for (Stripe stripe : m_stripes) {
+            synchronized (stripe) {
+                bytes += stripe.m_bytes;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,110 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.voltdb.VoltTable.ColumnInfo;
+
+/**
+ * Reports the size and the lookup, hit, insertion, eviction and invalidation counts of
+ * this host's {@link ProcedureResultCache} in a single row. A host with the cache
+ * disabled reports zeros.
+ */
+public class ProcedureResultCacheStats extends StatsSource {
+
+    /**
+     * Whether to return results in intervals since polling or since the beginning
+     */
+    private boolean m_interval = false;
+
+    // counters at the last interval poll
+    private final long[] m_lastValues = new long[5];
+
+    public ProcedureResultCacheStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("ENTRIES", VoltType.INTEGER));
+        columns.add(new ColumnInfo("SIZE_KB", VoltType.BIGINT));
+        columns.add(new ColumnInfo("CAPACITY_KB", VoltType.BIGINT));
+        columns.add(new ColumnInfo("LOOKUPS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("HITS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MISSES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("HIT_RATE", VoltType.FLOAT));
+        columns.add(new ColumnInfo("INSERTIONS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("EVICTIONS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("INVALIDATIONS", VoltType.BIGINT));
+    }
+
+    private static ProcedureResultCache currentCache() {
+        ClientInterface ci = VoltDB.instance().getClientInterface();
+        if (ci == null) {
+            return null;
+        }
+        return ci.getDispatcher().getResultCache();
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        ProcedureResultCache cache = currentCache();
+        int entries = 0;
+        long bytes = 0;
+        long[] values = new long[m_lastValues.length];
+        if (cache != null) {
+            entries = cache.getEntryCount();
+            bytes = cache.getSizeInBytes();
+            values[0] = cache.m_lookups.get();
+            values[1] = cache.m_hits.get();
+            values[2] = cache.m_insertions.get();
+            values[3] = cache.m_evictions.get();
+            values[4] = cache.m_invalidations.get();
+        }
+
+        long[] reported = values.clone();
+        if (m_interval) {
+            for (int i = 0; i < values.length; ++i) {
+                reported[i] = values[i] - m_lastValues[i];
+                m_lastValues[i] = values[i];
+            }
+        }
+
+        rowValues[columnNameToIndex.get("ENTRIES")] = entries;
+        rowValues[columnNameToIndex.get("SIZE_KB")] = bytes / 1024;
+        rowValues[columnNameToIndex.get("CAPACITY_KB")] = ProcedureResultCache.MAX_BYTES / 1024;
+        rowValues[columnNameToIndex.get("LOOKUPS")] = reported[0];
+        rowValues[columnNameToIndex.get("HITS")] = reported[1];
+        rowValues[columnNameToIndex.get("MISSES")] = reported[0] - reported[1];
+        rowValues[columnNameToIndex.get("HIT_RATE")] = reported[0] == 0 ? 0.0 : (double) reported[1] / reported[0];
+        rowValues[columnNameToIndex.get("INSERTIONS")] = reported[2];
+        rowValues[columnNameToIndex.get("EVICTIONS")] = reported[3];
+        rowValues[columnNameToIndex.get("INVALIDATIONS")] = reported[4];
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_interval = interval;
+        return Collections.<Object>singletonList("RESULTCACHE").iterator();
+    }
+}
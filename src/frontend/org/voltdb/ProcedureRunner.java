@@ -50,6 +50,8 @@ import org.voltdb.compiler.AdHocPlannedStmtBatch;
 import org.voltdb.compiler.Language;
 import org.voltdb.compiler.ProcedureCompiler;
 import org.voltdb.dtxn.DtxnConstants;
+import org.voltdb.dtxn.TransactionStageStats;
+import org.voltdb.dtxn.TransactionStageStats.Stage;
 import org.voltdb.dtxn.TransactionState;
 import org.voltdb.exceptions.EEException;
 import org.voltdb.exceptions.SerializableException;
@@ -246,6 +248,7 @@ public class ProcedureRunner {
 
     @SuppressWarnings("finally")
     public ClientResponseImpl call(Object... paramListIn) {
+        final long callStart = System.nanoTime();
         // verify per-txn state has been reset
         assert(m_statusCode == ClientResponse.SUCCESS);
         assert(m_statusString == null);
@@ -438,6 +441,8 @@ public class ProcedureRunner {
             m_seenFinalBatch = false;
 
             m_site.setProcedureName(null);
+
+            TransactionStageStats.recordSince(Stage.PROCEDURE, callStart);
         }
 
         return retval;
@@ -691,6 +696,28 @@ public class ProcedureRunner {
         }
     }
 
+    /**
+     * Plan one statement of ad hoc SQL to run against a single partition, for a
+     * system procedure that executes the plan in its own fragments on every site.
+     * The arguments are only used to type the statement's parameters.
+     */
+    public AdHocPlannedStatement planSinglePartitionSQL(final String sql, Object... args) {
+        try {
+            AdHocPlannedStmtBatch batch = m_csp.plan(sql, args, true).get();
+            if (batch.errorMsg != null) {
+                throw new VoltAbortException("Failed to plan sql '" + sql + "' error: " + batch.errorMsg);
+            }
+            assert(1 == batch.plannedStatements.size());
+            return batch.plannedStatements.get(0);
+        }
+        catch (ExecutionException e) {
+            throw new VoltAbortException(e.getCause());
+        }
+        catch (InterruptedException e) {
+            throw new VoltAbortException(e);
+        }
+    }
+
     public VoltTable[] voltExecuteSQL(boolean isFinalSQL) {
         try {
             if (m_seenFinalBatch) {
@@ -104,6 +104,7 @@ import org.voltdb.catalog.Systemsettings;
 import org.voltdb.common.Constants;
 import org.voltdb.common.NodeState;
 import org.voltdb.compiler.AdHocCompilerCache;
+import org.voltdb.compiler.AdHocCompilerCacheStats;
 import org.voltdb.compiler.AsyncCompilerAgent;
 import org.voltdb.compiler.ClusterConfig;
 import org.voltdb.compiler.deploymentfile.ClusterType;
@@ -117,7 +118,9 @@ import org.voltdb.dtxn.InitiatorStats;
 import org.voltdb.dtxn.LatencyHistogramStats;
 import org.voltdb.dtxn.LatencyStats;
 import org.voltdb.dtxn.SiteTracker;
+import org.voltdb.dtxn.TransactionStageStats;
 import org.voltdb.export.ExportManager;
+import org.voltdb.export.ExportStats;
 import org.voltdb.importer.ImportManager;
 import org.voltdb.iv2.BaseInitiator;
 import org.voltdb.iv2.Cartographer;
@@ -145,7 +148,9 @@ import org.voltdb.settings.DbSettings;
 import org.voltdb.settings.PathSettings;
 import org.voltdb.settings.Settings;
 import org.voltdb.settings.SettingsException;
+import org.voltdb.sysprocs.Analyze;
 import org.voltdb.sysprocs.saverestore.SnapshotPathType;
+import org.voltdb.sysprocs.saverestore.SnapshotRestoreStats;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil.Snapshot;
 import org.voltdb.utils.CLibrary;
@@ -1049,6 +1054,8 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
             m_latencyHistogramStats = new LatencyHistogramStats(m_myHostId);
             getStatsAgent().registerStatsSource(StatsSelector.LATENCY_HISTOGRAM,
                     0, m_latencyHistogramStats);
+            getStatsAgent().registerStatsSource(StatsSelector.TXNSTAGES,
+                    0, new TransactionStageStats());
 
 
             BalancePartitionsStatistics rebalanceStats = new BalancePartitionsStatistics();
@@ -1059,6 +1066,14 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
             m_cpuStats = new CpuStats();
             getStatsAgent().registerStatsSource(StatsSelector.CPU,
                     0, m_cpuStats);
+            getStatsAgent().registerStatsSource(StatsSelector.PLANCACHE,
+                    0, new AdHocCompilerCacheStats());
+            getStatsAgent().registerStatsSource(StatsSelector.RESULTCACHE,
+                    0, new ProcedureResultCacheStats());
+            getStatsAgent().registerStatsSource(StatsSelector.SNAPSHOTRESTORE,
+                    0, new SnapshotRestoreStats());
+            getStatsAgent().registerStatsSource(StatsSelector.EXPORT,
+                    0, new ExportStats());
 
             // ENG-6321
             m_commandLogStats = new CommandLogStats(m_commandLog);
@@ -2419,6 +2434,8 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
         }
 
         VoltZK.createPersistentZKNodes(m_messenger.getZK());
+        // a host joining a running cluster plans with the statistics of its last @Analyze
+        Analyze.restoreStatistics(m_messenger.getZK());
 
         // Use the host messenger's hostId.
         m_myHostId = m_messenger.getHostId();
@@ -54,6 +54,7 @@ import org.voltdb.client.ClientResponse;
 import org.voltdb.common.Constants;
 import org.voltdb.dtxn.TransactionCreator;
 import org.voltdb.jni.ExecutionEngine;
+import org.voltdb.sysprocs.saverestore.IncrementalSnapshotChain;
 import org.voltdb.sysprocs.saverestore.SnapshotPathType;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil.Snapshot;
@@ -853,6 +854,29 @@ SnapshotCompletionInterest, Promotable
             return null;
         }
 
+        // An incremental snapshot can only be rebuilt with every snapshot it depends on
+        try {
+            IncrementalSnapshotChain.checkChains(digest.getParentFile(), s.getNonce());
+        } catch (IOException ioe) {
+            m_snapshotErrLogStr.append("\nRejected snapshot ")
+                            .append(s.getNonce())
+                            .append(" because its incremental snapshot chain is incomplete: ")
+                            .append(ioe.getMessage());
+            return null;
+        }
+
+        // Restore only reads each snapshot's own table files, so rebuilding a table from
+        // the chain of an incremental delta snapshot isn't possible yet
+        try {
+            IncrementalSnapshotChain.checkRestorable(digest.getParentFile(), s.getNonce());
+        } catch (IOException ioe) {
+            m_snapshotErrLogStr.append("\nRejected snapshot ")
+                            .append(s.getNonce())
+                            .append(" because it can't be restored without its incremental snapshot chain: ")
+                            .append(ioe.getMessage());
+            return null;
+        }
+
         SnapshotInfo info =
             new SnapshotInfo(key, digest.getParent(),
                     SnapshotUtil.parseNonceFromDigestFilename(digest.getName()),
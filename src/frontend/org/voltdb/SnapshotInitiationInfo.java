@@ -235,6 +235,10 @@ public class SnapshotInitiationInfo
             throw new Exception("@SnapshotSave format param is a " + m_format +
                     " and should be one of [\"native\" | \"csv\"]");
         }
+        if (m_format == SnapshotFormat.INCREMENTAL) {
+            throw new Exception("@SnapshotSave format param \"incremental\" is not supported " +
+                    "because the delta tables it writes can't be restored");
+        }
         m_data = (String)params[0];
         return checkValidity;
     }
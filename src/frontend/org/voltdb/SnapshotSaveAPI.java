@@ -45,6 +45,7 @@ import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.iv2.TxnEgo;
 import org.voltdb.sysprocs.saverestore.CSVSnapshotWritePlan;
 import org.voltdb.sysprocs.saverestore.HashinatorSnapshotData;
+import org.voltdb.sysprocs.saverestore.IncrementalSnapshotWritePlan;
 import org.voltdb.sysprocs.saverestore.IndexSnapshotWritePlan;
 import org.voltdb.sysprocs.saverestore.NativeSnapshotWritePlan;
 import org.voltdb.sysprocs.saverestore.SnapshotPathType;
@@ -502,6 +503,9 @@ public class SnapshotSaveAPI
         else if (format == SnapshotFormat.INDEX) {
             plan = new IndexSnapshotWritePlan();
         }
+        else if (format == SnapshotFormat.INCREMENTAL) {
+            plan = new IncrementalSnapshotWritePlan();
+        }
         else {
             throw new RuntimeException("BAD BAD BAD");
         }
@@ -54,6 +54,7 @@ import org.voltdb.iv2.MpInitiator;
 import org.voltdb.iv2.SiteTaskerQueue;
 import org.voltdb.iv2.SnapshotTask;
 import org.voltdb.rejoin.StreamSnapshotDataTarget.StreamSnapshotTimeoutException;
+import org.voltdb.sysprocs.saverestore.IncrementalSnapshotWritePlan;
 import org.voltdb.sysprocs.saverestore.SnapshotPredicates;
 import org.voltdb.utils.CatalogUtil;
 import org.voltdb.utils.CompressionService;
@@ -391,12 +392,23 @@ public class SnapshotSiteProcessor {
         // Table doesn't implement hashCode(), so use the table ID as key
         for (Map.Entry<Integer, byte[]> tablePredicates : makeTablesAndPredicatesToSnapshot(tasks).entrySet()) {
             int tableId = tablePredicates.getKey();
+            byte[] predicates = tablePredicates.getValue();
+            String tableName = null;
+            if (format == SnapshotFormat.INCREMENTAL) {
+                tableName = CatalogUtil.getTableNameFromId(context.getDatabase(), tableId);
+                predicates = IncrementalSnapshotWritePlan.appendBaseSpHandle(predicates, tableName,
+                                                                             context.getPartitionId());
+            }
             TableStreamer streamer =
                     new TableStreamer(tableId, format.getStreamType(), m_snapshotTableTasks.get(tableId));
-            if (!streamer.activate(context, tablePredicates.getValue())) {
+            if (!streamer.activate(context, predicates)) {
                 VoltDB.crashLocalVoltDB("Failed to activate snapshot stream on table " +
                                         CatalogUtil.getTableNameFromId(context.getDatabase(), tableId), false, null);
             }
+            if (format == SnapshotFormat.INCREMENTAL) {
+                IncrementalSnapshotWritePlan.recordActivation(tableName, context.getPartitionId(),
+                                                              streamer.getIncrementalActivation());
+            }
             m_streamers.put(tableId, streamer);
         }
 
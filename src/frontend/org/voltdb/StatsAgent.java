@@ -403,6 +403,18 @@ public class StatsAgent extends OpsAgent
         case PLANNER:
             stats = collectStats(StatsSelector.PLANNER, interval);
             break;
+        case PLANCACHE:
+            stats = collectStats(StatsSelector.PLANCACHE, interval);
+            break;
+        case RESULTCACHE:
+            stats = collectStats(StatsSelector.RESULTCACHE, interval);
+            break;
+        case EXPORT:
+            stats = collectStats(StatsSelector.EXPORT, interval);
+            break;
+        case SNAPSHOTRESTORE:
+            stats = collectStats(StatsSelector.SNAPSHOTRESTORE, interval);
+            break;
         case LIVECLIENTS:
             stats = collectStats(StatsSelector.LIVECLIENTS, interval);
             break;
@@ -412,6 +424,9 @@ public class StatsAgent extends OpsAgent
         case LATENCY_HISTOGRAM:
             stats = collectStats(StatsSelector.LATENCY_HISTOGRAM, interval);
             break;
+        case TXNSTAGES:
+            stats = collectStats(StatsSelector.TXNSTAGES, interval);
+            break;
         case MANAGEMENT:
             stats = collectManagementStats(interval);
             break;
@@ -24,14 +24,18 @@ public enum StatsSelector {
     INITIATOR,        // invoked as @stat initiator
     LATENCY,          // invoked as @stat latency
     LATENCY_HISTOGRAM,
+    TXNSTAGES,        // latency histograms for each stage of a transaction
     PARTITIONCOUNT,
     IOSTATS,
     MEMORY,           // info about node's memory usage
     LIVECLIENTS,      // info about the currently connected clients
     PLANNER,          // info about planner and EE performance and cache usage
+    PLANCACHE,        // ad hoc plan cache hits, misses and evictions
+    RESULTCACHE,      // procedure result cache hits, misses and evictions
     MANAGEMENT,       // Returns pretty much everything
     PROCEDUREPROFILE, // performs an aggregation of the procedure statistics
     SNAPSHOTSTATUS,
+    SNAPSHOTRESTORE,  // snapshot data read and decoded for restore on this node
     PROCEDUREINPUT,
     PROCEDUREOUTPUT,
 
@@ -54,5 +58,6 @@ public enum StatsSelector {
     CPU,            // Return CPU Stats
 
     COMMANDLOG,     // return number of outstanding bytes and txns on this node
+    EXPORT,         // queue depth and lag of each export data source's task lane
     IMPORTER
 }
@@ -179,6 +179,7 @@ public class SystemProcedureCatalog {
         builder.put("@ExplainProc",             new Config(null,                                           true,  true,  false, 0,    VoltType.INVALID,   false, false, true,  true,      false,    false));
         builder.put("@SendSentinel",            new Config(null,                                           true,  false, false, 0,    VoltType.INVALID,   true,  false, false, true,      false,    false));
         builder.put("@PrepareShutdown",         new Config("org.voltdb.sysprocs.PrepareShutdown",          false, false, false, 0,    VoltType.INVALID,   false, false, true,  true,      false,    true));
+        builder.put("@Analyze",                 new Config("org.voltdb.sysprocs.Analyze",                  false, false, false, 0,    VoltType.INVALID,   false, false, true,  true,      false,    false));
         builder.put("@Rebalance",               new Config(null,                                           true,  false, false, 0,    VoltType.INVALID,   false, false, true,  true,      false,    false));
         listing = builder.build();
     }
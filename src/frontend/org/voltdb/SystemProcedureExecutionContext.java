@@ -90,6 +90,8 @@ public interface SystemProcedureExecutionContext {
 
     boolean activateTableStream(int tableId, TableStreamType type, boolean undo, byte[] predicates);
 
+    IncrementalStreamActivation activateIncrementalSnapshotStream(int tableId, byte[] predicates);
+
     public void forceAllDRNodeBuffersToDisk(final boolean nofsync);
 
     public DRIdempotencyResult isExpectedApplyBinaryLog(int producerClusterId, int producerPartitionId,
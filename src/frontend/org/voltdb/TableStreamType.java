@@ -48,5 +48,11 @@ public enum TableStreamType {
      * that is actively being modified. The stream starts by transporting all the tuple data
      * and then transports the set of modified and deleted tuples in a separate synchronous phase.
      */
-    RECOVERY
+    RECOVERY,
+    /*
+     * A snapshot stream that only copies the blocks changed since the previous
+     * incremental snapshot, plus the primary keys deleted since then, when the
+     * table has been tracking changes. Otherwise it copies the whole table.
+     */
+    INCREMENTAL_SNAPSHOT
 }
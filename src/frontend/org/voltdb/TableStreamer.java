@@ -51,6 +51,7 @@ public class TableStreamer {
     private final int m_tableId;
     private final TableStreamType m_type;
     private final ImmutableList<SnapshotTableTask> m_tableTasks;
+    private IncrementalStreamActivation m_incrementalActivation = null;
 
     public TableStreamer(int tableId, TableStreamType type, List<SnapshotTableTask> tableTasks)
     {
@@ -79,7 +80,14 @@ public class TableStreamer {
      */
     public boolean activate(SystemProcedureExecutionContext context, boolean undo, byte[] predicates)
     {
-        if (!context.activateTableStream(m_tableId, m_type, undo, predicates)) {
+        final boolean activated;
+        if (m_type == TableStreamType.INCREMENTAL_SNAPSHOT) {
+            m_incrementalActivation = context.activateIncrementalSnapshotStream(m_tableId, predicates);
+            activated = m_incrementalActivation != null;
+        } else {
+            activated = context.activateTableStream(m_tableId, m_type, undo, predicates);
+        }
+        if (!activated) {
             String tableName = CatalogUtil.getTableNameFromId(context.getDatabase(), m_tableId);
             log.debug("Attempted to activate a table stream of type " + m_type +
                       "for table " + tableName + " and failed");
@@ -88,6 +96,15 @@ public class TableStreamer {
         return true;
     }
 
+    /**
+     * @return What the EE decided when an incremental snapshot stream was activated,
+     * null for other stream types.
+     */
+    public IncrementalStreamActivation getIncrementalActivation()
+    {
+        return m_incrementalActivation;
+    }
+
     /**
      * Streams more tuples from the table.
      * @param context          Context
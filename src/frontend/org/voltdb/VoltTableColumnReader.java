@@ -0,0 +1,439 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A read-only, column-at-a-time view over the buffer of an existing {@link VoltTable}.
+ * Where {@link VoltTableRow} recomputes the column offsets of every row it visits and
+ * allocates an object for every <tt>String</tt> it returns, this reader locates every row
+ * once when it is constructed and hands out cursors that read a single column with
+ * absolute buffer accesses and no per-row allocation.</p>
+ *
+ * <p>Columns whose position within a row is the same for every row (no variable length
+ * column precedes them) are read directly from the row offsets. The offsets of any other
+ * column are computed for all rows the first time a cursor over it is requested, and
+ * reused by later cursors.</p>
+ *
+ * <p>The reader does not copy the table. It must not be used after rows are added to or
+ * removed from the underlying table, and like {@link VoltTable} it is not thread safe.</p>
+ */
+public final class VoltTableColumnReader {
+
+    private static final int VARIABLE_POSITION = -1;
+
+    private final ByteBuffer m_buffer;
+    private final VoltType[] m_types;
+    private final int m_rowCount;
+
+    /** Offset of the first column of each row. */
+    private final int[] m_rowOffsets;
+    /** Offset of each column from the start of its row, or VARIABLE_POSITION. */
+    private final int[] m_fixedColumnOffsets;
+    /** Lazily computed absolute offsets, per row, of variable position columns. */
+    private final int[][] m_columnOffsets;
+
+    /**
+     * Create a reader over the rows of a table. This walks the table once to record
+     * the start of every row.
+     * @param table The table to read. Its buffer is shared, not copied.
+     */
+    public VoltTableColumnReader(VoltTable table) {
+        m_buffer = table.m_buffer.asReadOnlyBuffer();
+        m_rowCount = table.getRowCount();
+
+        final int columnCount = table.getColumnCount();
+        m_types = new VoltType[columnCount];
+        m_fixedColumnOffsets = new int[columnCount];
+        m_columnOffsets = new int[columnCount][];
+        int offset = 0;
+        for (int i = 0; i < columnCount; i++) {
+            m_types[i] = table.getColumnType(i);
+            m_fixedColumnOffsets[i] = offset;
+            if (offset != VARIABLE_POSITION) {
+                offset = m_types[i].isVariableLength() ?
+                        VARIABLE_POSITION : offset + m_types[i].getLengthInBytesForFixedTypes();
+            }
+        }
+
+        m_rowOffsets = new int[m_rowCount];
+        int position = table.getRowStart() + VoltTableRow.ROW_COUNT_SIZE;
+        for (int row = 0; row < m_rowCount; row++) {
+            final int rowLength = m_buffer.getInt(position);
+            if (rowLength <= 0) {
+                throw new RuntimeException("Invalid row length.");
+            }
+            position += VoltTableRow.ROW_HEADER_SIZE;
+            m_rowOffsets[row] = position;
+            position += rowLength;
+        }
+        if (position > m_buffer.limit()) {
+            throw new RuntimeException("Row length exceeds table boundary.");
+        }
+    }
+
+    /**
+     * @return The number of rows in the table.
+     */
+    public int getRowCount() {
+        return m_rowCount;
+    }
+
+    /**
+     * @return The number of columns in the table.
+     */
+    public int getColumnCount() {
+        return m_types.length;
+    }
+
+    /**
+     * @param columnIndex Index of the column
+     * @return The {@link VoltType type} of the column.
+     */
+    public VoltType getColumnType(int columnIndex) {
+        validateColumnIndex(columnIndex);
+        return m_types[columnIndex];
+    }
+
+    /**
+     * Get a cursor over an integral column: <tt>TINYINT</tt>, <tt>SMALLINT</tt>,
+     * <tt>INTEGER</tt>, <tt>BIGINT</tt> or <tt>TIMESTAMP</tt> (as microseconds).
+     * @param columnIndex Index of the column
+     * @return A new cursor positioned before the first row.
+     */
+    public LongColumnCursor getLongCursor(int columnIndex) {
+        validateColumnType(columnIndex, VoltType.TINYINT, VoltType.SMALLINT, VoltType.INTEGER,
+                           VoltType.BIGINT, VoltType.TIMESTAMP);
+        return new LongColumnCursor(columnIndex);
+    }
+
+    /**
+     * Get a cursor over a <tt>FLOAT</tt> column.
+     * @param columnIndex Index of the column
+     * @return A new cursor positioned before the first row.
+     */
+    public DoubleColumnCursor getDoubleCursor(int columnIndex) {
+        validateColumnType(columnIndex, VoltType.FLOAT);
+        return new DoubleColumnCursor(columnIndex);
+    }
+
+    /**
+     * Get a cursor over the raw bytes of a <tt>STRING</tt> (UTF-8 encoded) or
+     * <tt>VARBINARY</tt> column.
+     * @param columnIndex Index of the column
+     * @return A new cursor positioned before the first row.
+     */
+    public BytesColumnCursor getBytesCursor(int columnIndex) {
+        validateColumnType(columnIndex, VoltType.STRING, VoltType.VARBINARY);
+        return new BytesColumnCursor(columnIndex);
+    }
+
+    private void validateColumnIndex(int columnIndex) {
+        if ((columnIndex >= m_types.length) || (columnIndex < 0)) {
+            throw new IndexOutOfBoundsException("Column index " + columnIndex + " is greater than the number of columns");
+        }
+    }
+
+    private void validateColumnType(int columnIndex, VoltType... types) {
+        validateColumnIndex(columnIndex);
+        for (VoltType type : types) {
+            if (m_types[columnIndex] == type) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Column index " + columnIndex + " is type " + m_types[columnIndex]);
+    }
+
+    /**
+     * Compute the absolute offset of a variable position column in every row, walking
+     * forward from the closest preceding column whose offsets are already known.
+     */
+    private int[] getColumnOffsets(int columnIndex) {
+        if (m_columnOffsets[columnIndex] != null) {
+            return m_columnOffsets[columnIndex];
+        }
+
+        int known = columnIndex - 1;
+        while (m_fixedColumnOffsets[known] == VARIABLE_POSITION && m_columnOffsets[known] == null) {
+            known--;
+        }
+        final int[] knownOffsets = m_columnOffsets[known];
+        final int knownDelta = knownOffsets == null ? m_fixedColumnOffsets[known] : 0;
+
+        final int[] offsets = new int[m_rowCount];
+        for (int row = 0; row < m_rowCount; row++) {
+            int offset = knownOffsets == null ? m_rowOffsets[row] + knownDelta : knownOffsets[row];
+            for (int i = known; i < columnIndex; i++) {
+                if (m_types[i].isVariableLength()) {
+                    final int len = m_buffer.getInt(offset);
+                    if (len == VoltTable.NULL_STRING_INDICATOR) {
+                        offset += VoltTableRow.STRING_LEN_SIZE;
+                    }
+                    else if (len < 0) {
+                        throw new RuntimeException("Invalid object length for column: " + i);
+                    }
+                    else {
+                        offset += len + VoltTableRow.STRING_LEN_SIZE;
+                    }
+                }
+                else {
+                    offset += m_types[i].getLengthInBytesForFixedTypes();
+                }
+            }
+            offsets[row] = offset;
+        }
+        m_columnOffsets[columnIndex] = offsets;
+        return offsets;
+    }
+
+    /**
+     * Row positioning shared by all cursors. A cursor starts before the first row;
+     * {@link #advanceRow()} must be called before reading a value.
+     */
+    public abstract class ColumnCursor {
+        final int m_columnIndex;
+        final int[] m_offsets;
+        final int m_delta;
+        int m_row = VoltTableRow.INVALID_ROW_INDEX;
+        boolean m_wasNull = false;
+
+        ColumnCursor(int columnIndex) {
+            m_columnIndex = columnIndex;
+            if (m_fixedColumnOffsets[columnIndex] == VARIABLE_POSITION) {
+                m_offsets = getColumnOffsets(columnIndex);
+                m_delta = 0;
+            }
+            else {
+                m_offsets = m_rowOffsets;
+                m_delta = m_fixedColumnOffsets[columnIndex];
+            }
+        }
+
+        /**
+         * @return The index of the column this cursor reads.
+         */
+        public final int getColumnIndex() {
+            return m_columnIndex;
+        }
+
+        /**
+         * Make the next row current.
+         * @return True if a valid row became current. False otherwise.
+         */
+        public final boolean advanceRow() {
+            if (m_row < m_rowCount) {
+                m_row++;
+            }
+            return m_row < m_rowCount;
+        }
+
+        /**
+         * Jump to any row, forwards or backwards. Unlike {@link VoltTableRow#advanceToRow(int)}
+         * this is constant time because every row was located up front.
+         * @param rowIndex The row to make current.
+         * @return True if a valid row became current. False otherwise.
+         */
+        public final boolean advanceToRow(int rowIndex) {
+            if (rowIndex < 0 || rowIndex >= m_rowCount) {
+                m_row = m_rowCount;
+                return false;
+            }
+            m_row = rowIndex;
+            return true;
+        }
+
+        /**
+         * Position the cursor before the first row again.
+         */
+        public final void resetRowPosition() {
+            m_row = VoltTableRow.INVALID_ROW_INDEX;
+        }
+
+        /**
+         * @return The index of the current row, -1 before the first row.
+         */
+        public final int getActiveRowIndex() {
+            return m_row;
+        }
+
+        /**
+         * @return <tt>true</tt> if the last value read was SQL <tt>null</tt>.
+         */
+        public final boolean wasNull() {
+            return m_wasNull;
+        }
+
+        final int offset() {
+            if (m_row < 0 || m_row >= m_rowCount) {
+                throw new RuntimeException("ColumnCursor.advanceRow() must return true before any access.");
+            }
+            return m_offsets[m_row] + m_delta;
+        }
+    }
+
+    /**
+     * Reads an integral or timestamp column as <tt>long</tt>.
+     */
+    public final class LongColumnCursor extends ColumnCursor {
+        private final VoltType m_type;
+
+        LongColumnCursor(int columnIndex) {
+            super(columnIndex);
+            m_type = m_types[columnIndex];
+        }
+
+        /**
+         * Looking at the return value is not a reliable way to check if the value
+         * is <tt>null</tt>. Use {@link #wasNull()} instead.
+         * @return The value in the current row.
+         */
+        public long getLong() {
+            final int offset = offset();
+            switch (m_type) {
+            case TINYINT:
+                final byte value1 = m_buffer.get(offset);
+                m_wasNull = (value1 == VoltType.NULL_TINYINT);
+                return value1;
+            case SMALLINT:
+                final short value2 = m_buffer.getShort(offset);
+                m_wasNull = (value2 == VoltType.NULL_SMALLINT);
+                return value2;
+            case INTEGER:
+                final int value3 = m_buffer.getInt(offset);
+                m_wasNull = (value3 == VoltType.NULL_INTEGER);
+                return value3;
+            default:
+                // BIGINT and TIMESTAMP share the same null representation
+                final long value4 = m_buffer.getLong(offset);
+                m_wasNull = (value4 == VoltType.NULL_BIGINT);
+                return value4;
+            }
+        }
+    }
+
+    /**
+     * Reads a <tt>FLOAT</tt> column as <tt>double</tt>.
+     */
+    public final class DoubleColumnCursor extends ColumnCursor {
+        DoubleColumnCursor(int columnIndex) {
+            super(columnIndex);
+        }
+
+        /**
+         * Looking at the return value is not a reliable way to check if the value
+         * is <tt>null</tt>. Use {@link #wasNull()} instead.
+         * @return The value in the current row.
+         */
+        public double getDouble() {
+            final double value = m_buffer.getDouble(offset());
+            m_wasNull = (value <= VoltType.NULL_FLOAT); // see value.h
+            return value;
+        }
+    }
+
+    /**
+     * Reads the bytes of a <tt>STRING</tt> or <tt>VARBINARY</tt> column in place.
+     * <tt>STRING</tt> values are exposed as their UTF-8 encoding; no <tt>String</tt>
+     * is created unless {@link #getString()} is called.
+     */
+    public final class BytesColumnCursor extends ColumnCursor {
+        private final ByteBuffer m_view = m_buffer.duplicate();
+
+        BytesColumnCursor(int columnIndex) {
+            super(columnIndex);
+        }
+
+        /**
+         * @return The length in bytes of the value in the current row, 0 if it is <tt>null</tt>.
+         */
+        public int getLength() {
+            final int len = m_buffer.getInt(offset());
+            m_wasNull = (len == VoltTable.NULL_STRING_INDICATOR);
+            return m_wasNull ? 0 : len;
+        }
+
+        /**
+         * Get the bytes of the current value without copying them. The returned buffer is
+         * read only, shared by every call on this cursor and only valid until the next call.
+         * @return A buffer whose remaining bytes are the value, or <tt>null</tt> if the value is <tt>null</tt>.
+         */
+        public ByteBuffer getByteBuffer() {
+            final int offset = offset();
+            final int len = m_buffer.getInt(offset);
+            m_wasNull = (len == VoltTable.NULL_STRING_INDICATOR);
+            if (m_wasNull) {
+                return null;
+            }
+            m_view.limit(offset + VoltTableRow.STRING_LEN_SIZE + len);
+            m_view.position(offset + VoltTableRow.STRING_LEN_SIZE);
+            return m_view;
+        }
+
+        /**
+         * Copy the bytes of the current value into a caller supplied array.
+         * @param dst Destination array, which must have room for {@link #getLength()} bytes.
+         * @param dstOffset Position in <tt>dst</tt> of the first byte.
+         * @return The number of bytes copied, 0 if the value is <tt>null</tt>.
+         */
+        public int getBytes(byte[] dst, int dstOffset) {
+            final ByteBuffer value = getByteBuffer();
+            if (value == null) {
+                return 0;
+            }
+            final int len = value.remaining();
+            value.get(dst, dstOffset, len);
+            return len;
+        }
+
+        /**
+         * Compare the current value with a byte string, such as the UTF-8 encoding of a
+         * <tt>String</tt>, without copying or decoding it.
+         * @param bytes The bytes to compare with.
+         * @return <tt>true</tt> if the value is not <tt>null</tt> and equal to <tt>bytes</tt>.
+         */
+        public boolean bytesEqual(byte[] bytes) {
+            final int offset = offset();
+            final int len = m_buffer.getInt(offset);
+            m_wasNull = (len == VoltTable.NULL_STRING_INDICATOR);
+            if (m_wasNull || len != bytes.length) {
+                return false;
+            }
+            final int start = offset + VoltTableRow.STRING_LEN_SIZE;
+            for (int i = 0; i < len; i++) {
+                if (m_buffer.get(start + i) != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Decode the current value. This allocates, and is only provided for the rows
+         * where a <tt>String</tt> is actually needed.
+         * @return The value decoded as UTF-8, or <tt>null</tt> if the value is <tt>null</tt>.
+         */
+        public String getString() {
+            final ByteBuffer value = getByteBuffer();
+            if (value == null) {
+                return null;
+            }
+            return VoltTable.ROWDATA_ENCODING.decode(value).toString();
+        }
+    }
+}
@@ -127,6 +127,9 @@ public class VoltZK {
     // Cluster settings
     public static final String cluster_settings = ZKUtil.joinZKPath(settings_base, "cluster");
 
+    // Table statistics measured by @Analyze
+    public static final String table_statistics = "/db/table_statistics";
+
     // Shutdown save snapshot guard
     public static final String shutdown_save_guard = "/db/shutdown_save_guard";
 
@@ -147,7 +150,8 @@ public class VoltZK {
             settings_base,
             cluster_settings,
             catalogUpdateBlockers,
-            request_truncation_snapshot
+            request_truncation_snapshot,
+            table_statistics
     };
 
     /**
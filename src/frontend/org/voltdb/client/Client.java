@@ -110,6 +110,25 @@ public interface Client {
     public boolean callProcedure(ProcedureCallback callback, String procName, Object... parameters)
     throws IOException, NoConnectionsException;
 
+    /**
+     * <p>Asynchronously invoke a procedure and return a future for its response, for use when calls
+     * need to be composed without blocking a thread on each one. The future completes with the
+     * {@link ClientResponse} on success. If the response status is anything other than success,
+     * or the invocation could not be queued, the future fails with a {@link ProcCallException};
+     * network problems fail it with an {@link IOException} such as {@link NoConnectionsException}.</p>
+     *
+     * <p>The future is completed directly by the thread backing the client instance, so listeners
+     * added with a same-thread executor run without a thread hop, exactly like a
+     * {@link ProcedureCallback}, and are subject to the same caution about slow or blocking work.
+     * Backpressure is handled as for {@link #callProcedure(ProcedureCallback, String, Object...)}:
+     * this call blocks until the invocation is queued unless configureBlocking(false) was invoked.</p>
+     *
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameters vararg list of procedure's parameter values.
+     * @return a {@link ProcedureFuture} that completes with the procedure's response.
+     */
+    public ProcedureFuture callProcedureAsync(String procName, Object... parameters);
+
     /**
      * <p>Synchronously invoke a procedure with timeout. Blocks until a result is available. A {@link ProcCallException}
      * is thrown if the response is anything other then success.</p>
@@ -37,6 +37,7 @@ public class ClientConfig {
     static final long DEFAULT_CONNECTION_TIMOUT_MS = 2 * 60 * 1000; // default timeout is 2 minutes;
     static final long DEFAULT_INITIAL_CONNECTION_RETRY_INTERVAL_MS = 1000; // default initial connection retry interval is 1 second
     static final long DEFAULT_MAX_CONNECTION_RETRY_INTERVAL_MS = 8000; // default max connection retry interval is 8 seconds
+    static final int DEFAULT_MAX_INVOCATION_BATCH_BYTES = 64 * 1024; // default max size of a coalesced invocation frame
 
     final ClientAuthScheme m_hashScheme;
     final String m_username;
@@ -56,6 +57,8 @@ public class ClientConfig {
     long m_initialConnectionRetryIntervalMS = DEFAULT_INITIAL_CONNECTION_RETRY_INTERVAL_MS;
     long m_maxConnectionRetryIntervalMS = DEFAULT_MAX_CONNECTION_RETRY_INTERVAL_MS;
     boolean m_sendReadsToReplicasBytDefaultIfCAEnabled = false;
+    long m_invocationBatchWindowNanos = 0;
+    int m_maxInvocationBatchBytes = DEFAULT_MAX_INVOCATION_BATCH_BYTES;
 
 
     final static String getUserNameFromSubject(Subject subject) {
@@ -342,6 +345,41 @@ public class ClientConfig {
         m_sendReadsToReplicasBytDefaultIfCAEnabled = on;
     }
 
+    /**
+     * <p>Coalesce invocations that are sent to the same server within a short window
+     * into a single network message. This trades up to <code>windowMicros</code> of
+     * added latency for far fewer messages and system calls when an application
+     * issues many small asynchronous calls. Each call keeps its own callback, timeout
+     * and routing.</p>
+     *
+     * <p>The servers must all support multi-invocation messages. Defaults to off.</p>
+     *
+     * @param windowMicros How long an invocation may wait for others to join its message,
+     * in microseconds. Zero disables batching.
+     * @param maxBatchBytes A batched message is sent as soon as it reaches this size in bytes.
+     */
+    public void enableInvocationBatching(long windowMicros, int maxBatchBytes) {
+        if (windowMicros < 0) {
+            throw new IllegalArgumentException("Invocation batching window can't be negative.");
+        }
+        if (maxBatchBytes <= 0) {
+            throw new IllegalArgumentException("Invocation batch size must be positive.");
+        }
+        m_invocationBatchWindowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        m_maxInvocationBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * <p>Same as {@link #enableInvocationBatching(long, int)} with the default maximum
+     * message size of 64KB.</p>
+     *
+     * @param windowMicros How long an invocation may wait for others to join its message,
+     * in microseconds. Zero disables batching.
+     */
+    public void enableInvocationBatching(long windowMicros) {
+        enableInvocationBatching(windowMicros, DEFAULT_MAX_INVOCATION_BATCH_BYTES);
+    }
+
     /**
      * <p>Attempts to reconnect to a node with retry after connection loss. See the {@link ReconnectStatusListener}.</p>
      *
@@ -115,7 +115,9 @@ public final class ClientImpl implements Client {
                 config.m_connectionResponseTimeoutMS,
                 config.m_useClientAffinity,
                 config.m_sendReadsToReplicasBytDefaultIfCAEnabled,
-                config.m_subject);
+                config.m_subject,
+                config.m_invocationBatchWindowNanos,
+                config.m_maxInvocationBatchBytes);
         m_distributer.addClientStatusListener(m_listener);
         String username = config.m_username;
         if (config.m_subject != null) {
@@ -306,6 +308,34 @@ public final class ClientImpl implements Client {
                 Distributer.USE_DEFAULT_CLIENT_TIMEOUT, TimeUnit.NANOSECONDS, parameters);
     }
 
+    /**
+     * Asynchronously invoke a procedure call, returning a future for the response.
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameters vararg list of procedure's parameter values.
+     * @return future completed on the network thread with the procedure's response
+     */
+    @Override
+    public ProcedureFuture callProcedureAsync(String procName, Object... parameters)
+    {
+        final FutureProcedureCallback callback = new FutureProcedureCallback();
+        final ProcedureInvocation invocation = new ProcedureInvocation(m_handle.getAndIncrement(),
+                BatchTimeoutOverrideType.NO_TIMEOUT, false, procName, parameters);
+        try {
+            if (!internalAsyncCallProcedure(callback, Distributer.USE_DEFAULT_CLIENT_TIMEOUT, invocation)) {
+                final ClientResponseImpl r = new ClientResponseImpl(
+                        ClientResponse.GRACEFUL_FAILURE,
+                        ClientResponse.UNINITIALIZED_APP_STATUS_CODE,
+                        "",
+                        new VoltTable[0],
+                        String.format("Unable to queue client request."));
+                callback.m_future.setException(new ProcCallException(r, "Unable to queue client request.", null));
+            }
+        } catch (IOException e) {
+            callback.m_future.setException(e);
+        }
+        return callback.m_future;
+    }
+
     /**
      * Asynchronously invoke a procedure call with timeout.
      * @param callback TransactionCallback that will be invoked with procedure results.
@@ -943,6 +973,24 @@ public final class ClientImpl implements Client {
         }
     }
 
+    /**
+     * Completes a future with the response, on whichever thread delivers it,
+     * so that same-thread listeners run without a thread hop.
+     */
+    private static final class FutureProcedureCallback implements ProcedureCallback {
+        final ProcedureFuture m_future = new ProcedureFuture();
+
+        @Override
+        public void clientCallback(ClientResponse clientResponse) {
+            if (clientResponse.getStatus() == ClientResponse.SUCCESS) {
+                m_future.set(clientResponse);
+            } else {
+                m_future.setException(
+                        new ProcCallException(clientResponse, clientResponse.getStatusString(), null));
+            }
+        }
+    }
+
     /**
      * Procedure call back for async callAllPartitionProcedure
      */
@@ -103,6 +103,11 @@ class Distributer {
     private final boolean m_useClientAffinity;
     private final boolean m_sendReadsToReplicasBytDefaultIfCAEnabled;
 
+    // How long an invocation may wait to be coalesced with others bound for the
+    // same connection, 0 when every invocation is sent in its own message
+    private final long m_invocationBatchWindowNanos;
+    private final int m_maxInvocationBatchBytes;
+
     private static final class Procedure {
         final static int PARAMETER_NONE = -1;
         private final boolean multiPart;
@@ -396,6 +401,11 @@ class Distributer {
         boolean m_outstandingPing = false;
         ClientStatusListenerExt.DisconnectCause m_closeCause = DisconnectCause.CONNECTION_CLOSED;
 
+        // invocations waiting to be sent together, guarded by m_batch
+        private final ArrayList<ByteBuffer> m_batch = new ArrayList<>();
+        private int m_batchBytes = 0;
+        private boolean m_batchFlushScheduled = false;
+
         public NodeConnection(long ids[]) {}
 
         /*
@@ -479,11 +489,59 @@ class Distributer {
                 //for bookkeeping, but it feels dishonest to call this here
                 m_rateLimiter.transactionResponseReceived(nowNanos, -1, ignoreBackpressure);
                 return;
+            } else if (m_invocationBatchWindowNanos > 0) {
+                addToBatch(c);
             } else {
                 m_connection.writeStream().enqueue(c);
             }
         }
 
+        /*
+         * Hold the serialized invocation until the batching window closes or the
+         * batch is large enough, whichever comes first. Callbacks and timeouts were
+         * registered by the caller so they don't care which message carries it.
+         */
+        private void addToBatch(ByteBuffer c) {
+            boolean scheduleFlush = false;
+            synchronized (m_batch) {
+                m_batch.add(c);
+                m_batchBytes += c.remaining();
+                if (m_batchBytes >= m_maxInvocationBatchBytes) {
+                    flushBatch();
+                    return;
+                }
+                if (!m_batchFlushScheduled) {
+                    m_batchFlushScheduled = true;
+                    scheduleFlush = true;
+                }
+            }
+            if (scheduleFlush) {
+                m_ex.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushBatch();
+                    }
+                }, m_invocationBatchWindowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        void flushBatch() {
+            synchronized (m_batch) {
+                m_batchFlushScheduled = false;
+                if (m_batch.isEmpty()) {
+                    return;
+                }
+                if (m_batch.size() == 1) {
+                    m_connection.writeStream().enqueue(m_batch.get(0));
+                } else {
+                    m_connection.writeStream().enqueue(
+                            ProcedureInvocation.flattenMultiInvocation(m_batch, m_batchBytes));
+                }
+                m_batch.clear();
+                m_batchBytes = 0;
+            }
+        }
+
         /*
          * For high precision timeouts, submit a discrete task to a scheduled
          * executor service to time out the transaction. The timeout task
@@ -711,6 +769,11 @@ class Distributer {
         public void stopping(Connection c) {
             super.stopping(c);
             m_isConnected = false;
+            //Batched invocations are failed along with the other outstanding callbacks
+            synchronized (m_batch) {
+                m_batch.clear();
+                m_batchBytes = 0;
+            }
             //Prevent queueing of new work to this connection
             synchronized (Distributer.this) {
                 /*
@@ -909,6 +972,20 @@ class Distributer {
             boolean useClientAffinity,
             boolean sendReadsToReplicasBytDefault,
             Subject subject) {
+        this(useMultipleThreads, procedureCallTimeoutNanos, connectionResponseTimeoutMS,
+                useClientAffinity, sendReadsToReplicasBytDefault, subject,
+                0, ClientConfig.DEFAULT_MAX_INVOCATION_BATCH_BYTES);
+    }
+
+    Distributer(
+            boolean useMultipleThreads,
+            long procedureCallTimeoutNanos,
+            long connectionResponseTimeoutMS,
+            boolean useClientAffinity,
+            boolean sendReadsToReplicasBytDefault,
+            Subject subject,
+            long invocationBatchWindowNanos,
+            int maxInvocationBatchBytes) {
         m_useMultipleThreads = useMultipleThreads;
         m_network = new VoltNetworkPool(
                 m_useMultipleThreads ? Math.max(1, CoreUtils.availableProcessors() / 4 ) : 1,
@@ -918,6 +995,8 @@ class Distributer {
         m_connectionResponseTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(connectionResponseTimeoutMS);
         m_useClientAffinity = useClientAffinity;
         m_sendReadsToReplicasBytDefaultIfCAEnabled = sendReadsToReplicasBytDefault;
+        m_invocationBatchWindowNanos = invocationBatchWindowNanos;
+        m_maxInvocationBatchBytes = maxInvocationBatchBytes;
 
         // schedule the task that looks for timed-out proc calls and connections
         m_timeoutReaperHandle = m_ex.scheduleAtFixedRate(new CallExpiration(), 1, 1, TimeUnit.SECONDS);
@@ -0,0 +1,124 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import org.voltcore.utils.Bits;
+
+/**
+ * Lookup table over the sorted token/partition array of an elastic hashinator
+ * that replaces the binary search of the whole ring with a probe of a few entries.
+ *
+ * The hash space is cut into a power of two number of equal buckets, at least as
+ * many as there are tokens, addressed by the high bits of the hash. For each bucket
+ * the table stores the partition owning its lowest hash and the index of the last
+ * token at or below it. Buckets that no token starts inside of are answered from
+ * the table alone; the rest scan forward over the handful of tokens that start in
+ * the bucket. The tokens themselves are copied on heap next to the table so a
+ * lookup doesn't have to chase the native array.
+ *
+ * Built once per hashinator configuration by both ElasticHashinator and
+ * HashinatorLite. Set ELASTIC_TOKEN_INDEX=false to fall back to the binary search.
+ */
+public final class ElasticTokenIndex {
+
+    public static final boolean ENABLED =
+            Boolean.valueOf(System.getProperty("ELASTIC_TOKEN_INDEX", "true"));
+
+    // never address fewer buckets than this so tiny rings still avoid scans
+    private static final int MIN_BUCKET_BITS = 8;
+    // 2^20 buckets is 8MB of table, more rings than that just scan a bit further
+    private static final int MAX_BUCKET_BITS = 20;
+
+    private final int m_shift;
+    // index of the last token <= the lowest hash of each bucket, plus a sentinel
+    private final int[] m_floor;
+    // partition owning the lowest hash of each bucket
+    private final int[] m_floorPartition;
+    private final int[] m_tokens;
+    private final int[] m_partitions;
+
+    /**
+     * @param tokens     Pointer to the native array of (token, partition) int pairs sorted by token
+     * @param tokenCount Number of pairs in the array, must be positive
+     */
+    public ElasticTokenIndex(long tokens, int tokenCount) {
+        if (tokenCount <= 0) {
+            throw new IllegalArgumentException("Elastic token index requires at least one token");
+        }
+        m_tokens = new int[tokenCount];
+        m_partitions = new int[tokenCount];
+        for (int ii = 0; ii < tokenCount; ii++) {
+            m_tokens[ii] = Bits.unsafe.getInt(tokens + (ii * 8));
+            m_partitions[ii] = Bits.unsafe.getInt(tokens + (ii * 8) + 4);
+        }
+
+        int bits = MIN_BUCKET_BITS;
+        while (bits < MAX_BUCKET_BITS && (1 << bits) < tokenCount) {
+            bits++;
+        }
+        m_shift = 32 - bits;
+        final int buckets = 1 << bits;
+        m_floor = new int[buckets + 1];
+        m_floorPartition = new int[buckets];
+
+        // walk buckets and tokens together, both are in ascending hash order
+        int floor = -1;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            final int low = lowestHash(bucket);
+            while (floor + 1 < tokenCount && m_tokens[floor + 1] <= low) {
+                floor++;
+            }
+            m_floor[bucket] = floor;
+            // a hash below the first token wraps around to the last one
+            m_floorPartition[bucket] = m_partitions[floor < 0 ? tokenCount - 1 : floor];
+        }
+        m_floor[buckets] = tokenCount - 1;
+    }
+
+    private int bucketFor(int hash) {
+        // flip the sign bit so the buckets sort the same way the signed tokens do
+        return (hash ^ Integer.MIN_VALUE) >>> m_shift;
+    }
+
+    private int lowestHash(int bucket) {
+        return (bucket << m_shift) ^ Integer.MIN_VALUE;
+    }
+
+    /**
+     * Partition of the first token <= hash, or of the last token on the ring
+     * if the hash is below all of them.
+     */
+    public int partitionForToken(int hash) {
+        final int bucket = bucketFor(hash);
+        int ii = m_floor[bucket];
+        final int last = m_floor[bucket + 1];
+        if (ii == last) {
+            return m_floorPartition[bucket];
+        }
+        while (ii < last && m_tokens[ii + 1] <= hash) {
+            ii++;
+        }
+        return ii < 0 ? m_partitions[m_partitions.length - 1] : m_partitions[ii];
+    }
+}
@@ -67,6 +67,8 @@ public class HashinatorLite {
      */
     private long m_etokens = 0;
     private int m_etokenCount;
+    // Narrows partitionForToken down to a few tokens, null to binary search the ring
+    private ElasticTokenIndex m_etokenIndex;
 
     private final HashinatorLiteType m_type;
 
@@ -85,6 +87,9 @@ public class HashinatorLite {
             Pair<Long, Integer> p = (cooked ? updateCooked(configBytes) : updateRaw(configBytes));
             m_etokens = p.getFirst();
             m_etokenCount = p.getSecond();
+            if (ElasticTokenIndex.ENABLED && m_etokenCount > 0) {
+                m_etokenIndex = new ElasticTokenIndex(m_etokens, m_etokenCount);
+            }
         }
         else {
             catalogPartitionCount = ByteBuffer.wrap(configBytes).getInt();
@@ -211,6 +216,9 @@ public class HashinatorLite {
      * Long.MAX_VALUE
      */
     public int partitionForToken(int hash) {
+        if (m_etokenIndex != null) {
+            return m_etokenIndex.partitionForToken(hash);
+        }
         long token = getTokenPtr(hash);
         return Bits.unsafe.getInt(token + 4);
     }
@@ -232,8 +240,7 @@ public class HashinatorLite {
         if (m_type.equals(HashinatorLiteType.ELASTIC)) {
             ByteBuffer buf = ByteBuffer.wrap(bytes);
             final int hash = MurmurHash3.hash3_x64_128(buf, 0, bytes.length, 0);
-            long token = getTokenPtr(hash);
-            return Bits.unsafe.getInt(token + 4);
+            return partitionForToken(hash);
         } else {
             int hashCode = 0;
             int offset = 0;
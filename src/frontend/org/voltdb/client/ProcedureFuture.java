@@ -0,0 +1,92 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google_voltpatches.common.util.concurrent.SettableFuture;
+
+/**
+ * <p>The pending response of a procedure invoked with
+ * {@link Client#callProcedureAsync(String, Object...)}. In addition to the
+ * {@link Future} methods, listeners can be registered to run when the response
+ * arrives, so dependent calls can be chained without parking a thread on
+ * {@link #get()}.</p>
+ *
+ * <p>The future completes with the {@link ClientResponse} on success. Any other
+ * response status fails it with a {@link ProcCallException}, which {@link #get()}
+ * reports as the cause of an {@link ExecutionException}.</p>
+ */
+public final class ProcedureFuture implements Future<ClientResponse> {
+
+    private final SettableFuture<ClientResponse> m_future = SettableFuture.create();
+
+    ProcedureFuture() {
+    }
+
+    /**
+     * Register a listener to be run on the given executor once this future is
+     * done. If it is already done the listener is run immediately. A listener
+     * run with a same-thread executor runs on the client's network thread and
+     * must not block, exactly like a {@link ProcedureCallback}.
+     *
+     * @param listener the listener to run when the response arrives.
+     * @param executor the executor to run the listener in.
+     */
+    public void addListener(Runnable listener, Executor executor) {
+        m_future.addListener(listener, executor);
+    }
+
+    boolean set(ClientResponse response) {
+        return m_future.set(response);
+    }
+
+    boolean setException(Throwable t) {
+        return m_future.setException(t);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return m_future.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return m_future.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+        return m_future.isDone();
+    }
+
+    @Override
+    public ClientResponse get() throws InterruptedException, ExecutionException {
+        return m_future.get();
+    }
+
+    @Override
+    public ClientResponse get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return m_future.get(timeout, unit);
+    }
+}
@@ -20,6 +20,7 @@ package org.voltdb.client;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.List;
 
 import org.voltdb.ParameterSet;
 import org.voltdb.utils.SerializationHelper;
@@ -32,6 +33,14 @@ public class ProcedureInvocation {
 
     public static final byte CURRENT_MOST_RECENT_VERSION = ProcedureInvocationType.VERSION2.getValue();
 
+    /**
+     * Leading byte of a frame that carries several invocations instead of one. The
+     * frame is this byte, an int count, then each invocation with its own int length
+     * prefix exactly as it would be framed on its own. Only servers that understand
+     * it may be sent one; see {@link ClientConfig#enableInvocationBatching(long, int)}.
+     */
+    public static final byte MULTI_INVOCATION = (byte) 127;
+
     private final long m_clientHandle;
     private final String m_procName;
     private byte m_procNameBytes[] = null;
@@ -149,4 +158,20 @@ public class ProcedureInvocation {
 
         return buf;
     }
+
+    /**
+     * Coalesce length-prefixed invocations into a single length-prefixed
+     * multi-invocation frame.
+     */
+    static ByteBuffer flattenMultiInvocation(List<ByteBuffer> invocations, int totalBytes) {
+        ByteBuffer buf = ByteBuffer.allocate(4 + 1 + 4 + totalBytes);
+        buf.putInt(buf.capacity() - 4);
+        buf.put(MULTI_INVOCATION);
+        buf.putInt(invocations.size());
+        for (ByteBuffer invocation : invocations) {
+            buf.put(invocation);
+        }
+        buf.flip();
+        return buf;
+    }
 }
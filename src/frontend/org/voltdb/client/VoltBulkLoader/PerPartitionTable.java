@@ -19,20 +19,20 @@ package org.voltdb.client.VoltBulkLoader;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.List;
-import java.util.ListIterator;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.ParameterConverter;
 import org.voltdb.VoltTable;
+import org.voltdb.VoltTableRow;
 import org.voltdb.VoltType;
 import org.voltdb.VoltTypeException;
 import org.voltdb.client.ClientImpl;
@@ -42,26 +42,36 @@ import org.voltdb.client.ProcedureCallback;
 /**
  * Partition specific table potentially shared by multiple VoltBulkLoader instances,
  * provided that they are all inserting to the same table.
+ *
+ * Rows are converted and serialized into the open batch table by the inserting thread,
+ * so nothing but the row handle is kept per row. A full batch is sent right away and
+ * at most BULKLOADER_OUTSTANDING_BATCHES batches per partition are waiting for a
+ * response at any time; inserting into a partition with that many batches in flight
+ * blocks until one of them completes.
  */
 public class PerPartitionTable {
     private static final VoltLogger loaderLog = new VoltLogger("LOADER");
 
+    static final int MAX_OUTSTANDING_BATCHES =
+            Math.max(1, Integer.getInteger("BULKLOADER_OUTSTANDING_BATCHES", 4));
+
     // Client we are tied to
     final ClientImpl m_clientImpl;
     //The index in loader tables and the PartitionProcessor number
     final int m_partitionId;
     final boolean m_isMP;
-    //Queue for processing pending rows for this table
-    LinkedBlockingQueue<VoltBulkLoaderRow> m_partitionRowQueue;
 
+    //Runs flushes and the row by row reinsertion of failed batches
     final ExecutorService m_es;
 
     //Zero based index of the partitioned column in the table
     final int m_partitionedColumnIndex;
     //Partitioned column type
     final VoltType m_partitionColumnType;
-    //Table used to build up requests to the PartitionProcessor
-    VoltTable table;
+    //Batch currently being filled, guarded by this
+    Batch m_batch;
+    //Scratch row used to convert the fields of the row being inserted, guarded by this
+    private final Object[] m_convertedRow;
     //Column information
     final VoltTable.ColumnInfo m_columnInfo[];
     //Column types
@@ -75,25 +85,77 @@ public class PerPartitionTable {
     // Upsert Mode Flag
     final byte m_upsert;
 
-    // Callback for batch submissions to the Client. A failed request submits the entire
-    // batch of rows to m_failedQueue for row by row processing on m_failureProcessor.
+    //Batches sent and not yet answered
+    final Semaphore m_outstandingBatches = new Semaphore(MAX_OUTSTANDING_BATCHES);
+
+    //Load statistics
+    final AtomicLong m_rowsLoaded = new AtomicLong(0);
+    final AtomicLong m_batchesLoaded = new AtomicLong(0);
+    final AtomicLong m_flushLatencyNanos = new AtomicLong(0);
+    final AtomicLong m_maxFlushLatencyNanos = new AtomicLong(0);
+    //When the first row was inserted, 0 until then
+    volatile long m_startNanos = 0;
+
+    // A batch of rows serialized in a table along with the loader and handle of each row.
+    final class Batch {
+        final VoltTable m_table = new VoltTable(m_columnInfo);
+        final ArrayList<VoltBulkLoader> m_loaders = new ArrayList<VoltBulkLoader>(m_minBatchTriggerSize);
+        final ArrayList<Object> m_rowHandles = new ArrayList<Object>(m_minBatchTriggerSize);
+
+        int size() {
+            return m_rowHandles.size();
+        }
+
+        void completed(int firstRow) {
+            VoltBulkLoader loader = null;
+            int count = 0;
+            for (int i = firstRow; i < m_loaders.size(); i++) {
+                if (m_loaders.get(i) != loader) {
+                    if (loader != null) {
+                        loader.rowsCompleted(count);
+                    }
+                    loader = m_loaders.get(i);
+                    count = 0;
+                }
+                count++;
+            }
+            if (loader != null) {
+                loader.rowsCompleted(count);
+            }
+        }
+    }
+
+    // Callback for batch submissions to the Client. A failed request resubmits the
+    // rows of the batch one at a time from m_es.
     class PartitionProcedureCallback implements ProcedureCallback {
-        final List<VoltBulkLoaderRow> m_batchRowList;
+        final Batch m_sentBatch;
+        final long m_sentNanos = System.nanoTime();
 
-        PartitionProcedureCallback(List<VoltBulkLoaderRow> batchRowList) {
-            m_batchRowList = batchRowList;
+        PartitionProcedureCallback(Batch sentBatch) {
+            m_sentBatch = sentBatch;
         }
 
         // Called by Client to inform us of the status of the bulk insert.
         @Override
         public void clientCallback(ClientResponse response) throws InterruptedException {
+            m_outstandingBatches.release();
+            final long latency = System.nanoTime() - m_sentNanos;
+            m_batchesLoaded.incrementAndGet();
+            m_flushLatencyNanos.addAndGet(latency);
+            long max;
+            while (latency > (max = m_maxFlushLatencyNanos.get())) {
+                if (m_maxFlushLatencyNanos.compareAndSet(max, latency)) {
+                    break;
+                }
+            }
+
             if (response.getStatus() != ClientResponse.SUCCESS) {
                 // Queue up all rows for individual processing by originating BulkLoader's FailureProcessor.
                 m_es.execute(new Runnable() {
                     @Override
                     public void run() {
                         try {
-                            reinsertFailed(m_batchRowList);
+                            reinsertFailed(m_sentBatch);
                         } catch (Exception e) {
                             loaderLog.error("Failed to re-insert failed batch", e);
                         }
@@ -101,8 +163,8 @@ public class PerPartitionTable {
                 });
             }
             else {
-                m_batchRowList.get(0).m_loader.m_outstandingRowCount.addAndGet(-1 * m_batchRowList.size());
-                m_batchRowList.get(0).m_loader.m_loaderCompletedCnt.addAndGet(m_batchRowList.size());
+                m_rowsLoaded.addAndGet(m_sentBatch.size());
+                m_sentBatch.completed(0);
             }
         }
     }
@@ -114,7 +176,6 @@ public class PerPartitionTable {
         m_isMP = isMP;
         m_procName = firstLoader.m_procName;
         m_upsert = (byte) (firstLoader.m_upsert ? 1:0);
-        m_partitionRowQueue = new LinkedBlockingQueue<VoltBulkLoaderRow>(minBatchTriggerSize*5);
         m_minBatchTriggerSize = minBatchTriggerSize;
         m_columnInfo = firstLoader.m_colInfo;
         m_partitionedColumnIndex = firstLoader.m_partitionedColumnIndex;
@@ -122,7 +183,8 @@ public class PerPartitionTable {
         m_partitionColumnType = firstLoader.m_partitionColumnType;
         m_tableName = tableName;
 
-        table = new VoltTable(m_columnInfo);
+        m_convertedRow = new Object[m_columnInfo.length];
+        m_batch = new Batch();
 
         m_es = CoreUtils.getSingleThreadExecutor(tableName + "-" + partitionId);
     }
@@ -139,27 +201,46 @@ public class PerPartitionTable {
      }
 
     /**
-     * Synchronized so that when the a single batch is filled up, we only queue one task to
-     * drain the queue. The task will drain the queue until it doesn't contain a single batch.
+     * Convert and append a row to the open batch, sending the batch if it is full.
+     * Synchronized so that rows from several loaders and threads end up in whole batches.
+     *
+     * @throws VoltTypeException if a field can't be converted to the type of its column,
+     *         in which case the row is not added
      */
-    synchronized void insertRowInTable(final VoltBulkLoaderRow nextRow) throws InterruptedException {
-        m_partitionRowQueue.put(nextRow);
-        if (m_partitionRowQueue.size() == m_minBatchTriggerSize) {
-            m_es.execute(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        while (m_partitionRowQueue.size() >= m_minBatchTriggerSize) {
-                            loadTable(buildTable(), table);
-                        }
-                    } catch (Exception e) {
-                        loaderLog.error("Failed to load batch", e);
-                    }
-                }
-            });
+    synchronized void insertRowInTable(VoltBulkLoader loader, Object rowHandle, Object[] rowData)
+            throws InterruptedException {
+        try {
+            for (int i = 0; i < m_convertedRow.length; i++) {
+                m_convertedRow[i] = ParameterConverter.tryToMakeCompatible(m_columnTypes[i].classFromType(),
+                        rowData[i]);
+            }
+            m_batch.m_table.addRow(m_convertedRow);
+        } finally {
+            for (int i = 0; i < m_convertedRow.length; i++) {
+                m_convertedRow[i] = null;
+            }
+        }
+        m_batch.m_loaders.add(loader);
+        m_batch.m_rowHandles.add(rowHandle);
+        if (m_startNanos == 0) {
+            m_startNanos = System.nanoTime();
+        }
+        if (m_batch.size() >= m_minBatchTriggerSize) {
+            sendBatch();
         }
     }
 
+    // Hand the open batch to the client once an outstanding batch slot is free.
+    private synchronized void sendBatch() throws InterruptedException {
+        if (m_batch.size() == 0) {
+            return;
+        }
+        final Batch batch = m_batch;
+        m_batch = new Batch();
+        m_outstandingBatches.acquire();
+        loadTable(new PartitionProcedureCallback(batch), batch.m_table);
+    }
+
     /**
      * Flush all queued rows even if they are smaller than the batch size. This does not
      * guarantee that they will be reinserted if any of them fail. To make sure all rows
@@ -169,7 +250,7 @@ public class PerPartitionTable {
         return m_es.submit(new Callable<Boolean>() {
             @Override
             public Boolean call() throws Exception {
-                loadTable(buildTable(), table);
+                sendBatch();
                 return true;
             }
         });
@@ -183,37 +264,59 @@ public class PerPartitionTable {
         }
         m_es.shutdown();
         m_es.awaitTermination(365, TimeUnit.DAYS);
+        if (loaderLog.isDebugEnabled()) {
+            loaderLog.debug(String.format("Partition %d of %s loaded %d rows in %d batches, %.0f rows/sec, " +
+                    "%.2f ms average batch latency", m_partitionId, m_tableName, m_rowsLoaded.get(),
+                    m_batchesLoaded.get(), getRowsPerSecond(), getAverageFlushLatencyMillis()));
+        }
     }
 
-    private void reinsertFailed(List<VoltBulkLoaderRow> rows) throws Exception {
-        VoltTable tmpTable = new VoltTable(m_columnInfo);
-        for (final VoltBulkLoaderRow row : rows) {
-            // No need to check error here if a correctedLine has come here it was
-            // previously successful.
-            try {
-                Object row_args[] = new Object[row.m_rowData.length];
-                for (int i = 0; i < row_args.length; i++) {
-                    final VoltType type = m_columnTypes[i];
-                    row_args[i] = ParameterConverter.tryToMakeCompatible(type.classFromType(),
-                            row.m_rowData[i]);
-                }
-                tmpTable.addRow(row_args);
-            } catch (VoltTypeException ex) {
-                // Should never happened because the bulk conversion in PerPartitionProcessor
-                // should have caught this
-                continue;
+    double getRowsPerSecond() {
+        final long start = m_startNanos;
+        if (start == 0) {
+            return 0.0;
+        }
+        final long elapsed = System.nanoTime() - start;
+        return elapsed <= 0 ? 0.0 : m_rowsLoaded.get() * TimeUnit.SECONDS.toNanos(1) / (double) elapsed;
+    }
+
+    double getAverageFlushLatencyMillis() {
+        final long batches = m_batchesLoaded.get();
+        return batches == 0 ? 0.0 : m_flushLatencyNanos.get() / (double) batches / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private Object[] rowValues(VoltTableRow row) {
+        Object[] values = new Object[m_columnTypes.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = row.get(i, m_columnTypes[i]);
+            if (row.wasNull()) {
+                values[i] = null;
             }
+        }
+        return values;
+    }
+
+    private void reinsertFailed(Batch batch) throws Exception {
+        for (int i = 0; i < batch.size(); i++) {
+            final VoltBulkLoader loader = batch.m_loaders.get(i);
+            final Object rowHandle = batch.m_rowHandles.get(i);
+            final VoltTableRow row = batch.m_table.fetchRow(i);
+            final VoltTable tmpTable = new VoltTable(m_columnInfo);
+            // No need to check error here, the row was converted when it was inserted.
+            tmpTable.add(row);
 
             ProcedureCallback callback = new ProcedureCallback() {
                 @Override
                 public void clientCallback(ClientResponse response) throws Exception {
-                    row.m_loader.m_outstandingRowCount.decrementAndGet();
-                    row.m_loader.m_loaderCompletedCnt.incrementAndGet();
-
                     //one insert at a time callback
                     if (response.getStatus() != ClientResponse.SUCCESS) {
-                        row.m_loader.m_notificationCallBack.failureCallback(row.m_rowHandle, row.m_rowData, response);
+                        loader.m_notificationCallBack.failureCallback(rowHandle, rowValues(tmpTable.fetchRow(0)),
+                                response);
+                    }
+                    else {
+                        m_rowsLoaded.incrementAndGet();
                     }
+                    loader.rowsCompleted(1);
                 }
             };
 
@@ -221,34 +324,7 @@ public class PerPartitionTable {
         }
     }
 
-    private PartitionProcedureCallback buildTable() {
-        ArrayList<VoltBulkLoaderRow> buf = new ArrayList<VoltBulkLoaderRow>(m_minBatchTriggerSize);
-        m_partitionRowQueue.drainTo(buf, m_minBatchTriggerSize);
-        ListIterator<VoltBulkLoaderRow> it = buf.listIterator();
-        while (it.hasNext()) {
-            VoltBulkLoaderRow currRow = it.next();
-            VoltBulkLoader loader = currRow.m_loader;
-            Object row_args[];
-            row_args = new Object[currRow.m_rowData.length];
-            try {
-                for (int i = 0; i < row_args.length; i++) {
-                    final VoltType type = m_columnTypes[i];
-                    row_args[i] = ParameterConverter.tryToMakeCompatible(type.classFromType(),
-                            currRow.m_rowData[i]);
-                }
-            } catch (VoltTypeException e) {
-                loader.generateError(currRow.m_rowHandle, currRow.m_rowData, e.getMessage());
-                loader.m_outstandingRowCount.decrementAndGet();
-                it.remove();
-                continue;
-            }
-            table.addRow(row_args);
-        }
-
-        return new PartitionProcedureCallback(buf);
-    }
-
-    private void loadTable(ProcedureCallback callback, VoltTable toSend) throws Exception {
+    private void loadTable(ProcedureCallback callback, VoltTable toSend) throws InterruptedException {
         if (toSend.getRowCount() <= 0) {
             return;
         }
@@ -265,8 +341,13 @@ public class PerPartitionTable {
             final ClientResponse r = new ClientResponseImpl(
                     ClientResponse.CONNECTION_LOST, new VoltTable[0],
                     "Connection to database was lost");
-            callback.clientCallback(r);
+            try {
+                callback.clientCallback(r);
+            } catch (InterruptedException ie) {
+                throw ie;
+            } catch (Exception ce) {
+                loaderLog.error("Failed to process lost connection for batch", ce);
+            }
         }
-        toSend.clearRowData();
     }
 }
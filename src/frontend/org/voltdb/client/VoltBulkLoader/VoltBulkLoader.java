@@ -325,21 +325,28 @@ public class VoltBulkLoader {
             generateError(rowHandle, fieldList, errMsg);
             return;
         }
-        VoltBulkLoaderRow newRow = new VoltBulkLoaderRow(this, rowHandle, fieldList);
-        if (m_isMP) {
-            m_partitionTable[m_firstPartitionTable].insertRowInTable(newRow);
-        }
-        else {
-            try {
+        // Count the row before it can be sent so a fast response can't take the count below zero
+        m_outstandingRowCount.incrementAndGet();
+        try {
+            if (m_isMP) {
+                m_partitionTable[m_firstPartitionTable].insertRowInTable(this, rowHandle, fieldList);
+            }
+            else {
                 partitionId = (int)m_clientImpl.getPartitionForParameter(
                         m_partitionColumnType.getValue(), fieldList[m_partitionedColumnIndex]);
-                m_partitionTable[partitionId].insertRowInTable(newRow);
-            } catch (VoltTypeException e) {
-                generateError(rowHandle, fieldList, e.getMessage());
-                return;
+                m_partitionTable[partitionId].insertRowInTable(this, rowHandle, fieldList);
             }
+        } catch (VoltTypeException e) {
+            m_outstandingRowCount.decrementAndGet();
+            generateError(rowHandle, fieldList, e.getMessage());
         }
-        m_outstandingRowCount.incrementAndGet();
+    }
+
+    // Called by the PerPartitionTables once rows inserted through this loader have
+    // been definitively inserted or reported as failed.
+    void rowsCompleted(int count) {
+        m_outstandingRowCount.addAndGet(-count);
+        m_loaderCompletedCnt.addAndGet(count);
     }
 
     /**
@@ -395,7 +402,8 @@ public class VoltBulkLoader {
         // Remove this VoltBulkLoader from the active set.
         synchronized (m_vblGlobals) {
             List<VoltBulkLoader> loaderList = m_vblGlobals.m_TableNameToLoader.get(m_tableName);
-            if (loaderList.size() == 1) {
+            final boolean lastLoader = loaderList.size() == 1;
+            if (lastLoader) {
                 m_vblGlobals.m_TableNameToLoader.remove(m_tableName);
             }
             else
@@ -405,12 +413,16 @@ public class VoltBulkLoader {
             // keep one PerPartitionTable around so we can use it as the poisoned
             // table for the PartitionProcessors
             drain();
-            for (PerPartitionTable ppt : m_partitionTable) {
-                if (ppt != null) {
-                    try {
-                        ppt.shutdown();
-                    } catch (Exception e) {
-                        loaderLog.error("Failed to close processor for partition " + ppt.m_partitionId, e);
+            // The PerPartitionTables are shared by every loader of the table,
+            // the other loaders keep using them until the last one is closed
+            if (lastLoader) {
+                for (PerPartitionTable ppt : m_partitionTable) {
+                    if (ppt != null) {
+                        try {
+                            ppt.shutdown();
+                        } catch (Exception e) {
+                            loaderLog.error("Failed to close processor for partition " + ppt.m_partitionId, e);
+                        }
                     }
                 }
             }
@@ -446,6 +458,37 @@ public class VoltBulkLoader {
         return m_loaderCompletedCnt.get();
     }
 
+    /**
+     * Load statistics of each partition of the table, shared with the other instances of
+     * VoltBulkLoader working on the same table. There is one row per partition with the
+     * number of rows and batches acknowledged so far, the rate at which rows have been
+     * loaded since the first insert, the number of batches waiting for a response and the
+     * average and maximum time it took for a batch to be acknowledged.
+     *
+     * @return A table with one row per partition
+     */
+    public VoltTable getPartitionStatistics() {
+        VoltTable stats = new VoltTable(
+                new VoltTable.ColumnInfo("PARTITION_ID", VoltType.INTEGER),
+                new VoltTable.ColumnInfo("ROWS_LOADED", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("ROWS_PER_SECOND", VoltType.FLOAT),
+                new VoltTable.ColumnInfo("BATCHES", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("OUTSTANDING_BATCHES", VoltType.INTEGER),
+                new VoltTable.ColumnInfo("AVG_FLUSH_LATENCY_MS", VoltType.FLOAT),
+                new VoltTable.ColumnInfo("MAX_FLUSH_LATENCY_MS", VoltType.FLOAT));
+        for (int i = m_firstPartitionTable; i <= m_lastPartitionTable; i++) {
+            PerPartitionTable ppt = m_partitionTable[i];
+            stats.addRow(ppt.m_partitionId,
+                         ppt.m_rowsLoaded.get(),
+                         ppt.getRowsPerSecond(),
+                         ppt.m_batchesLoaded.get(),
+                         PerPartitionTable.MAX_OUTSTANDING_BATCHES - ppt.m_outstandingBatches.availablePermits(),
+                         ppt.getAverageFlushLatencyMillis(),
+                         ppt.m_maxFlushLatencyNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return stats;
+    }
+
     public VoltType[] getColumnTypes() {
         return m_mappedColumnTypes.values().toArray(new VoltType[m_mappedColumnTypes.size()]);
     }
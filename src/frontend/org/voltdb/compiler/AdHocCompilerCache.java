@@ -18,12 +18,13 @@
 package org.voltdb.compiler;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltdb.common.Constants;
 import org.voltdb.planner.BoundPlan;
@@ -59,6 +60,15 @@ public class AdHocCompilerCache implements Serializable {
         m_catalogHashMatch.invalidateAll();
     }
 
+    /**
+     * Drop the cached plans of every catalog, e.g. after the table statistics changed.
+     */
+    public static void clearAllPlans() {
+        for (AdHocCompilerCache cache : m_catalogHashMatch.asMap().values()) {
+            cache.clear();
+        }
+    }
+
     /**
      * Get the global cache for a given hash of the catalog. Note that there can be only
      * one cache per catalogHash at a time.
@@ -77,28 +87,37 @@ public class AdHocCompilerCache implements Serializable {
     // PER-INSTANCE AWESOMEC CACHING CODE
     //////////////////////////////////////////////////////////////////////////
 
+    // upper bound on the number of independently locked cache stripes
+    static final int MAX_STRIPES = 16;
+    // smallest number of entries a stripe should hold before adding another one
+    static final int MIN_ENTRIES_PER_STRIPE = 64;
+
     // cache sizes determined at construction time
     final int MAX_LITERAL_ENTRIES;
     // max cache size for parameterized plans
     final long MAX_LITERAL_MEM  = Long.getLong("ADHOC_COMPILER_CACHE_MAX_LITERAL_MEM_BYTES", 32*1024*1024);
     final int MAX_CORE_ENTRIES;
 
+    // Both cache levels are split into lock stripes so that concurrent ad hoc
+    // planner threads only contend when their statements hash to the same
+    // stripe. Literal stripes are chosen by SQL text and core stripes by
+    // parsed token, and no thread ever holds more than one stripe lock.
+    // Each stripe is an LRU bounded by its share of the total capacity.
     /** cache of literals to full plans */
-    final Map<String, AdHocPlannedStatement> m_literalCache;
+    final AdHocStatementCache[] m_literalCache;
     /** cache of parameterized plan descriptions to one or more core parameterized plans,
      *  each plan optionally has its own requirements for which parameters need to be bound
      *  to what values to enable its specialized (expression-indexed) plan. */
-    final Map<String, List<BoundPlan> > m_coreCache;
-
-    // placeholder stats used during development that may/may not survive
-    long m_literalHits = 0;
-    long m_literalQueries = 0;
-    long m_literalInsertions = 0;
-    long m_literalEvictions = 0;
-    long m_planHits = 0;
-    long m_planQueries = 0;
-    long m_planInsertions = 0;
-    long m_planEvictions = 0;
+    final CoreCache[] m_coreCache;
+
+    final AtomicLong m_literalHits = new AtomicLong();
+    final AtomicLong m_literalQueries = new AtomicLong();
+    final AtomicLong m_literalInsertions = new AtomicLong();
+    final AtomicLong m_literalEvictions = new AtomicLong();
+    final AtomicLong m_planHits = new AtomicLong();
+    final AtomicLong m_planQueries = new AtomicLong();
+    final AtomicLong m_planInsertions = new AtomicLong();
+    final AtomicLong m_planEvictions = new AtomicLong();
 
     /** {@see this#startPeriodicStatsPrinting() } */
     Timer m_statsTimer = null;
@@ -120,24 +139,59 @@ public class AdHocCompilerCache implements Serializable {
         MAX_LITERAL_ENTRIES = maxLiteralEntries;
         MAX_CORE_ENTRIES = maxCoreEntries;
 
-        // an LRU cache map
-        m_literalCache = new AdHocStatementCache(MAX_LITERAL_ENTRIES, MAX_LITERAL_MEM);
+        int literalStripes = stripeCount(MAX_LITERAL_ENTRIES);
+        m_literalCache = new AdHocStatementCache[literalStripes];
+        for (int i = 0; i < literalStripes; ++i) {
+            m_literalCache[i] = new AdHocStatementCache(
+                    stripeShare(MAX_LITERAL_ENTRIES, literalStripes, i),
+                    MAX_LITERAL_MEM / literalStripes);
+        }
 
-        // an LRU cache map
-        m_coreCache = new LinkedHashMap<String, List<BoundPlan> >(MAX_CORE_ENTRIES * 2, .75f, true) {
-            private static final long serialVersionUID = 1L;
+        int coreStripes = stripeCount(MAX_CORE_ENTRIES);
+        m_coreCache = new CoreCache[coreStripes];
+        for (int i = 0; i < coreStripes; ++i) {
+            m_coreCache[i] = new CoreCache(stripeShare(MAX_CORE_ENTRIES, coreStripes, i));
+        }
+    }
 
-            // This method is called just after a new entry has been added
-            @Override
-            public boolean removeEldestEntry(Map.Entry<String, List<BoundPlan> > eldest) {
-                if (size() > MAX_CORE_ENTRIES) {
-                    ++m_planEvictions;
-                    return true;
-                }
-                return false;
-            }
+    private static int stripeCount(int maxEntries) {
+        return Math.max(1, Math.min(MAX_STRIPES, maxEntries / MIN_ENTRIES_PER_STRIPE));
+    }
+
+    // spread the remainder over the first stripes so the shares add up to maxEntries
+    private static int stripeShare(int maxEntries, int stripes, int index) {
+        return maxEntries / stripes + ((index < maxEntries % stripes) ? 1 : 0);
+    }
+
+    private static <T> T stripeFor(T[] stripes, String key) {
+        int h = key.hashCode();
+        // spread the high bits down, as HashMap does
+        h ^= (h >>> 16);
+        return stripes[(h & 0x7fffffff) % stripes.length];
+    }
+
+    // an LRU cache map of parsed tokens to bound plan variants.
+    // The variant lists are copy-on-write so that callers can scan a list
+    // returned by getWithParsedToken while another thread adds to it.
+    class CoreCache extends LinkedHashMap<String, List<BoundPlan> > {
+        private static final long serialVersionUID = 1L;
+        private final int maxEntries;
+
+        CoreCache(final int maxEntries) {
+            // set accessOrder to true for LRU
+            super(maxEntries * 2, .75f, true);
+            this.maxEntries = maxEntries;
+        }
 
-        };
+        // This method is called just after a new entry has been added
+        @Override
+        public boolean removeEldestEntry(Map.Entry<String, List<BoundPlan> > eldest) {
+            if (size() > maxEntries) {
+                m_planEvictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
     }
 
     // define a LinkedHashMap based LRU cache bounds by both entry number and entry value on-heap size
@@ -171,7 +225,7 @@ public class AdHocCompilerCache implements Serializable {
         @Override
         public boolean removeEldestEntry(final Map.Entry<String, AdHocPlannedStatement> eldest) {
             if ((size() > maxEntries) || (this.currentMemory > this.maxMemory))  {
-                ++m_literalEvictions;
+                m_literalEvictions.incrementAndGet();
                 this.currentMemory -= eldest.getValue().getSerializedSize();
                 return true;
             }
@@ -204,37 +258,51 @@ public class AdHocCompilerCache implements Serializable {
      * Stats printing method used during development.
      * Probably shouldn't live past real stats integration.
      */
-    synchronized void printStats() {
+    void printStats() {
+        long literalHits = m_literalHits.getAndSet(0);
+        long literalQueries = m_literalQueries.getAndSet(0);
+        long planHits = m_planHits.getAndSet(0);
+        long planQueries = m_planQueries.getAndSet(0);
         String line1 = String.format("CACHE STATS - Literals: Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_literalHits, m_literalQueries, (m_literalHits * 100.0) / m_literalQueries,
-                m_literalInsertions, m_literalEvictions);
+                literalHits, literalQueries, (literalHits * 100.0) / literalQueries,
+                m_literalInsertions.getAndSet(0), m_literalEvictions.getAndSet(0));
         String line2 = String.format("CACHE STATS - Plans:    Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_planHits, m_planQueries, (m_planHits * 100.0) /m_planQueries,
-                m_planInsertions, m_planEvictions);
+                planHits, planQueries, (planHits * 100.0) / planQueries,
+                m_planInsertions.getAndSet(0), m_planEvictions.getAndSet(0));
 
         System.out.print(line1 + line2);
         System.out.flush();
+    }
 
-        // reset these
-        m_literalHits = 0;
-        m_literalQueries = 0;
-        m_literalInsertions = 0;
-        m_literalEvictions = 0;
-        m_planHits = 0;
-        m_planQueries = 0;
-        m_planInsertions = 0;
-        m_planEvictions = 0;
+    /**
+     * Drop every cached plan, one stripe at a time.
+     */
+    public void clear() {
+        for (AdHocStatementCache stripe : m_literalCache) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        for (CoreCache stripe : m_coreCache) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
     }
 
     /**
      * @param sql SQL literal
      * @return full, ready-to-go plan
      */
-    public synchronized AdHocPlannedStatement getWithSQL(String sql) {
-        ++m_literalQueries;
-        AdHocPlannedStatement retval = m_literalCache.get(sql);
+    public AdHocPlannedStatement getWithSQL(String sql) {
+        m_literalQueries.incrementAndGet();
+        AdHocStatementCache stripe = stripeFor(m_literalCache, sql);
+        AdHocPlannedStatement retval;
+        synchronized (stripe) {
+            retval = stripe.get(sql);
+        }
         if (retval != null) {
-            ++m_literalHits;
+            m_literalHits.incrementAndGet();
         }
         return retval;
     }
@@ -244,11 +312,15 @@ public class AdHocCompilerCache implements Serializable {
      * SQL statement
      * @return A CorePlan that needs parameter values to run.
      */
-    public synchronized List<BoundPlan> getWithParsedToken(String parsedToken) {
-        ++m_planQueries;
-        List<BoundPlan> retval = m_coreCache.get(parsedToken);
+    public List<BoundPlan> getWithParsedToken(String parsedToken) {
+        m_planQueries.incrementAndGet();
+        CoreCache stripe = stripeFor(m_coreCache, parsedToken);
+        List<BoundPlan> retval;
+        synchronized (stripe) {
+            retval = stripe.get(parsedToken);
+        }
         if (retval != null) {
-            ++m_planHits;
+            m_planHits.incrementAndGet();
         }
         return retval;
     }
@@ -271,12 +343,12 @@ public class AdHocCompilerCache implements Serializable {
      * @param hasUserQuestionMarkParameters is user provided parameterized query
      * @param hasAutoParameterizedException is the auto parameterized query has parameter exception
      */
-    public synchronized void put(String sql,
-                                 String parsedToken,
-                                 AdHocPlannedStatement planIn,
-                                 String[] extractedLiterals,
-                                 boolean hasUserQuestionMarkParameters,
-                                 boolean hasAutoParameterizedException)
+    public void put(String sql,
+                    String parsedToken,
+                    AdHocPlannedStatement planIn,
+                    String[] extractedLiterals,
+                    boolean hasUserQuestionMarkParameters,
+                    boolean hasAutoParameterizedException)
     {
         assert(sql != null);
         assert(parsedToken != null);
@@ -295,51 +367,57 @@ public class AdHocCompilerCache implements Serializable {
         if (! hasAutoParameterizedException) {
             BoundPlan matched = null;
             BoundPlan unmatched = new BoundPlan(planIn.core, planIn.parameterBindings(extractedLiterals));
-            // deal with the parameterized plan cache first
-            List<BoundPlan> boundVariants = m_coreCache.get(parsedToken);
-            if (boundVariants == null) {
-                boundVariants = new ArrayList<BoundPlan>();
-                m_coreCache.put(parsedToken, boundVariants);
-                // Note that there is an edge case in which more than one plan is getting counted as one
-                // "plan insertion". This only happens when two different plans arose from the same parameterized
-                // query (token) because one invocation used the correct constants to trigger an expression index and
-                // another invocation did not.  These are not counted separately (which would have to happen below
-                // after each call to boundVariants.add) because they are not evicted separately.
-                // It seems saner to use consistent units when counting insertions vs. evictions.
-                ++m_planInsertions;
-            } else {
-                for (BoundPlan boundPlan : boundVariants) {
-                    if (boundPlan.equals(unmatched)) {
-                        matched = boundPlan;
-                        break;
+            CoreCache stripe = stripeFor(m_coreCache, parsedToken);
+            synchronized (stripe) {
+                // deal with the parameterized plan cache first
+                List<BoundPlan> boundVariants = stripe.get(parsedToken);
+                if (boundVariants == null) {
+                    boundVariants = new CopyOnWriteArrayList<BoundPlan>();
+                    stripe.put(parsedToken, boundVariants);
+                    // Note that there is an edge case in which more than one plan is getting counted as one
+                    // "plan insertion". This only happens when two different plans arose from the same parameterized
+                    // query (token) because one invocation used the correct constants to trigger an expression index and
+                    // another invocation did not.  These are not counted separately (which would have to happen below
+                    // after each call to boundVariants.add) because they are not evicted separately.
+                    // It seems saner to use consistent units when counting insertions vs. evictions.
+                    m_planInsertions.incrementAndGet();
+                } else {
+                    for (BoundPlan boundPlan : boundVariants) {
+                        if (boundPlan.equals(unmatched)) {
+                            matched = boundPlan;
+                            break;
+                        }
                     }
                 }
-                if (matched != null) {
-                    // if a different core is found, reuse it
-                    // this is useful when updating the literal cache
-                    if (unmatched.m_core != matched.m_core) {
-                        plan = new AdHocPlannedStatement(planIn, matched.m_core);
-                        plan.setBoundConstants(matched.m_constants);
-                    }
+                if (matched == null) {
+                    // Don't count insertions (of possibly repeated tokens) here
+                    //  -- see the comment above where only UNIQUE token insertions are being counted, instead.
+                    boundVariants.add(unmatched);
                 }
             }
-            if (matched == null) {
-                // Don't count insertions (of possibly repeated tokens) here
-                //  -- see the comment above where only UNIQUE token insertions are being counted, instead.
-                boundVariants.add(unmatched);
+            if (matched != null) {
+                // if a different core is found, reuse it
+                // this is useful when updating the literal cache
+                if (unmatched.m_core != matched.m_core) {
+                    plan = new AdHocPlannedStatement(planIn, matched.m_core);
+                    plan.setBoundConstants(matched.m_constants);
+                }
             }
         }
 
         // then deal with the L1 cache
         if (! hasUserQuestionMarkParameters) {
-            AdHocPlannedStatement cachedPlan = m_literalCache.get(sql);
-            if (cachedPlan == null) {
-                //* enable to debug */ System.out.println("DEBUG: Caching literal '" + sql + "'");
-                m_literalCache.put(sql, plan);
-                ++m_literalInsertions;
-            }
-            else {
-                assert(cachedPlan.equals(plan));
+            AdHocStatementCache stripe = stripeFor(m_literalCache, sql);
+            synchronized (stripe) {
+                AdHocPlannedStatement cachedPlan = stripe.get(sql);
+                if (cachedPlan == null) {
+                    //* enable to debug */ System.out.println("DEBUG: Caching literal '" + sql + "'");
+                    stripe.put(sql, plan);
+                    m_literalInsertions.incrementAndGet();
+                }
+                else {
+                    assert(cachedPlan.equals(plan));
+                }
             }
         }
     }
@@ -361,18 +439,28 @@ public class AdHocCompilerCache implements Serializable {
     }
 
     /**
-     * Return the number of items in the literal cache.
+     * Return the number of items in the literal cache. The stripes are read
+     * without locking, so the count is approximate while planning is running.
      * @return  literal cache size as a count
      */
     public int getLiteralCacheSize() {
-        return m_literalCache.size();
+        int size = 0;
+        for (AdHocStatementCache stripe : m_literalCache) {
+            size += stripe.size();
+        }
+        return size;
     }
 
     /**
-     * Return the number of items in the core (parameterized) cache.
+     * Return the number of items in the core (parameterized) cache. The stripes
+     * are read without locking, so the count is approximate while planning is running.
      * @return  core cache size as a count
      */
     public int getCoreCacheSize() {
-        return m_coreCache.size();
+        int size = 0;
+        for (CoreCache stripe : m_coreCache) {
+            size += stripe.size();
+        }
+        return size;
     }
 }
@@ -0,0 +1,153 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.voltdb.CatalogContext;
+import org.voltdb.StatsSource;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Reports the hit, miss, insertion and eviction counts of the ad hoc
+ * compiler cache for the current catalog version, one row per cache level.
+ * The counters start over when a catalog update switches to a new cache.
+ */
+public class AdHocCompilerCacheStats extends StatsSource {
+
+    public enum CacheLevel {
+        /// literal SQL text to ready-to-run plans
+        LITERAL,
+        /// parameterized token to bound core plans
+        CORE
+    }
+
+    /**
+     * Whether to return results in intervals since polling or since the beginning
+     */
+    private boolean m_interval = false;
+
+    // the cache the last values below were taken from
+    private AdHocCompilerCache m_lastCache = null;
+    private final long[][] m_lastValues = new long[CacheLevel.values().length][4];
+
+    public AdHocCompilerCacheStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("CACHE_LEVEL", VoltType.STRING));
+        columns.add(new ColumnInfo("ENTRIES", VoltType.INTEGER));
+        columns.add(new ColumnInfo("QUERIES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("HITS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MISSES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("INSERTIONS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("EVICTIONS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("PLANNER_THREADS", VoltType.INTEGER));
+    }
+
+    private static AdHocCompilerCache currentCache() {
+        CatalogContext context = VoltDB.instance().getCatalogContext();
+        if (context == null) {
+            return null;
+        }
+        return AdHocCompilerCache.getCacheForCatalogHash(context.getCatalogHash());
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        CacheLevel level = (CacheLevel) rowKey;
+        AdHocCompilerCache cache = currentCache();
+        if (cache != m_lastCache) {
+            for (long[] last : m_lastValues) {
+                Arrays.fill(last, 0);
+            }
+            m_lastCache = cache;
+        }
+
+        int entries = 0;
+        long[] values = new long[4];
+        if (cache != null) {
+            if (level == CacheLevel.LITERAL) {
+                entries = cache.getLiteralCacheSize();
+                values[0] = cache.m_literalQueries.get();
+                values[1] = cache.m_literalHits.get();
+                values[2] = cache.m_literalInsertions.get();
+                values[3] = cache.m_literalEvictions.get();
+            }
+            else {
+                entries = cache.getCoreCacheSize();
+                values[0] = cache.m_planQueries.get();
+                values[1] = cache.m_planHits.get();
+                values[2] = cache.m_planInsertions.get();
+                values[3] = cache.m_planEvictions.get();
+            }
+        }
+
+        long[] reported = values.clone();
+        if (m_interval) {
+            long[] last = m_lastValues[level.ordinal()];
+            for (int i = 0; i < values.length; ++i) {
+                reported[i] = values[i] - last[i];
+                last[i] = values[i];
+            }
+        }
+
+        rowValues[columnNameToIndex.get("CACHE_LEVEL")] = level.name();
+        rowValues[columnNameToIndex.get("ENTRIES")] = entries;
+        rowValues[columnNameToIndex.get("QUERIES")] = reported[0];
+        rowValues[columnNameToIndex.get("HITS")] = reported[1];
+        rowValues[columnNameToIndex.get("MISSES")] = reported[0] - reported[1];
+        rowValues[columnNameToIndex.get("INSERTIONS")] = reported[2];
+        rowValues[columnNameToIndex.get("EVICTIONS")] = reported[3];
+        rowValues[columnNameToIndex.get("PLANNER_THREADS")] = PlannerToolPool.POOL_SIZE;
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_interval = interval;
+        return new Iterator<Object>() {
+            int m_next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return m_next < CacheLevel.values().length;
+            }
+
+            @Override
+            public Object next() {
+                if (hasNext()) {
+                    return CacheLevel.values()[m_next++];
+                }
+                return null;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,132 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.voltdb.compiler.AsyncCompilerWork.AsyncCompilerWorkCompletionHandler;
+
+/**
+ * Hands ad hoc planner results back in the order the work arrived from each
+ * connection. Ad hoc work from one connection may be planned concurrently on
+ * several planner threads, but the completion handler is what starts the
+ * transaction, so completing out of order would reorder pipelined DML from a
+ * single client. A result that finishes early is held until every earlier
+ * piece of work from the same connection has completed.
+ */
+class AdHocCompletionSequencer {
+
+    /**
+     * One reserved position in a connection's completion order. This is the
+     * completion handler the planner sees; it forwards to the original
+     * handler once all earlier slots have completed.
+     */
+    final class Slot implements AsyncCompilerWorkCompletionHandler {
+        private final ArrayDeque<Slot> m_queue;
+        private final long m_connectionId;
+        private final AsyncCompilerWorkCompletionHandler m_handler;
+        private AsyncCompilerResult m_result = null;
+        private boolean m_completed = false;
+
+        private Slot(ArrayDeque<Slot> queue, long connectionId,
+                     AsyncCompilerWorkCompletionHandler handler) {
+            m_queue = queue;
+            m_connectionId = connectionId;
+            m_handler = handler;
+        }
+
+        @Override
+        public void onCompletion(AsyncCompilerResult result) {
+            synchronized (m_queue) {
+                m_result = result;
+                m_completed = true;
+                drain(m_queue, m_connectionId);
+            }
+        }
+    }
+
+    // guarded by this; the per-connection queues are guarded by themselves
+    private final Map<Long, ArrayDeque<Slot>> m_pending = new HashMap<Long, ArrayDeque<Slot>>();
+
+    /**
+     * Reserve the next completion position for the given work's connection.
+     * The returned slot must either be completed through onCompletion or
+     * released with {@link #cancel(Slot)}.
+     */
+    Slot reserve(AsyncCompilerWork work) {
+        while (true) {
+            ArrayDeque<Slot> queue;
+            synchronized (this) {
+                queue = m_pending.get(work.connectionId);
+                if (queue == null) {
+                    queue = new ArrayDeque<Slot>();
+                    m_pending.put(work.connectionId, queue);
+                }
+            }
+            synchronized (queue) {
+                // the queue may have been drained and retired while we were
+                // not holding its lock, in which case start over
+                synchronized (this) {
+                    if (m_pending.get(work.connectionId) != queue) {
+                        continue;
+                    }
+                }
+                Slot slot = new Slot(queue, work.connectionId, work.completionHandler);
+                queue.addLast(slot);
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Give up a reserved position without producing a result, e.g. when the
+     * work was rejected before it could be queued. Later results that were
+     * only waiting on this slot are released.
+     */
+    void cancel(Slot slot) {
+        synchronized (slot.m_queue) {
+            slot.m_queue.remove(slot);
+            drain(slot.m_queue, slot.m_connectionId);
+        }
+    }
+
+    /**
+     * Number of connections with results outstanding, for tests.
+     */
+    synchronized int pendingConnections() {
+        return m_pending.size();
+    }
+
+    // Called holding the queue's lock, so results from one connection are
+    // handed over one at a time and in order.
+    private void drain(ArrayDeque<Slot> queue, long connectionId) {
+        while (!queue.isEmpty() && queue.peekFirst().m_completed) {
+            Slot head = queue.pollFirst();
+            head.m_handler.onCompletion(head.m_result);
+        }
+        if (queue.isEmpty()) {
+            synchronized (this) {
+                if (m_pending.get(connectionId) == queue) {
+                    m_pending.remove(connectionId);
+                }
+            }
+        }
+    }
+}
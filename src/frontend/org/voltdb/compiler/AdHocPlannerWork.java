@@ -90,6 +90,34 @@ public class AdHocPlannerWork extends AsyncCompilerWork {
                 orig.user);
         }
 
+    /**
+     * A mutated clone method, allowing override of completionHandler while
+     * keeping the catalogContext the work was submitted against
+     */
+    static AdHocPlannerWork withCompletionHandler(AdHocPlannerWork orig,
+            AsyncCompilerWorkCompletionHandler completionHandler) {
+        AdHocPlannerWork work = new AdHocPlannerWork(orig.replySiteId,
+                orig.clientHandle,
+                orig.connectionId,
+                orig.adminConnection,
+                (Connection) orig.clientData,
+                orig.sqlBatchText,
+                orig.sqlStatements,
+                orig.userParamSet,
+                orig.catalogContext,
+                orig.explainMode,
+                orig.inferPartitioning,
+                orig.userPartitionKey,
+                orig.invocationName,
+                orig.m_batchTimeout,
+                orig.onReplica,
+                orig.useAdhocDDL,
+                completionHandler,
+                orig.user);
+        work.setServerInitiated(orig.isServerInitiated());
+        return work;
+    }
+
     /**
      * Special factory of a mostly mocked up instance for calling from inside a stored proc.
      * It's also convenient for simple tests that need to mock up a quick planner request to
@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -66,9 +67,22 @@ public class AsyncCompilerAgent {
     // of Europe, Scandinavia, and the sub-continent.
     final AsyncCompilerAgentHelper m_helper;
 
-    // do work in this executor service
+    // number of threads planning ad hoc DML/DQL concurrently
+    final int m_plannerThreads = PlannerToolPool.POOL_SIZE;
+
+    // plan ad hoc DML/DQL in this executor service. Each thread borrows its
+    // own PlannerTool from the catalog context's pool while planning.
+    final ListeningExecutorService m_plannerEs =
+        CoreUtils.getListeningExecutorService("Ad Hoc Planner", m_plannerThreads,
+                new LinkedBlockingQueue<Runnable>(MAX_QUEUE_DEPTH), null);
+
+    // do catalog change work in this executor service, which keeps ad hoc
+    // DDL, @UpdateApplicationCatalog and @UpdateClasses serialized
     final ListeningExecutorService m_es =
-        CoreUtils.getBoundedSingleThreadExecutor("Ad Hoc Planner", MAX_QUEUE_DEPTH);
+        CoreUtils.getBoundedSingleThreadExecutor("Ad Hoc Catalog Compiler", MAX_QUEUE_DEPTH);
+
+    // hands ad hoc results back in per-connection submission order
+    final AdHocCompletionSequencer m_sequencer = new AdHocCompletionSequencer();
 
     // Enable debug hooks when the "asynccompilerdebug" sys prop is set to "true" or "yes".
     private final static MiscUtils.BooleanSystemProperty DEBUG_MODE =
@@ -82,6 +96,10 @@ public class AsyncCompilerAgent {
     // intended for integration test use. finish planning what's in
     // the queue and terminate the TPE.
     public void shutdown() throws InterruptedException {
+        if (m_plannerEs != null) {
+            m_plannerEs.shutdown();
+            m_plannerEs.awaitTermination(120, TimeUnit.SECONDS);
+        }
         if (m_es != null) {
             m_es.shutdown();
             m_es.awaitTermination(120, TimeUnit.SECONDS);
@@ -99,23 +117,57 @@ public class AsyncCompilerAgent {
 
             @Override
             public void deliver(final VoltMessage message) {
-                try {
-                    m_es.submit(new Runnable() {
-                        @Override
-                        public void run() {
-                            handleMailboxMessage(message);
-                        }
-                    });
-                } catch (RejectedExecutionException rejected) {
-                    final LocalObjectMessage wrapper = (LocalObjectMessage)message;
-                    AsyncCompilerWork work = (AsyncCompilerWork)(wrapper.payload);
-                    generateErrorResult("Ad Hoc Planner task queue is full. Try again.", work);
+                final LocalObjectMessage wrapper = (LocalObjectMessage)message;
+                if (!(wrapper.payload instanceof AdHocPlannerWork)) {
+                    submit(m_es, message, (AsyncCompilerWork)wrapper.payload, null);
+                    return;
                 }
+                // Ad hoc DML/DQL goes to the planner pool, ad hoc DDL straight
+                // to m_es. Either way the result is sequenced behind earlier
+                // ad hoc work from the same connection.
+                final AdHocPlannerWork work = (AdHocPlannerWork)wrapper.payload;
+                final AdHocCompletionSequencer.Slot slot = m_sequencer.reserve(work);
+                final LocalObjectMessage sequenced = new LocalObjectMessage(
+                        AdHocPlannerWork.withCompletionHandler(work, slot));
+                sequenced.m_sourceHSId = message.m_sourceHSId;
+                submit(isDDLBatch(work) ? m_es : m_plannerEs, sequenced, work, slot);
             }
         };
         hostMessenger.createMailbox(hsId, m_mailbox);
     }
 
+    private void submit(ListeningExecutorService es, final VoltMessage message,
+                        AsyncCompilerWork work, AdHocCompletionSequencer.Slot slot) {
+        try {
+            es.submit(new Runnable() {
+                @Override
+                public void run() {
+                    handleMailboxMessage(message);
+                }
+            });
+        } catch (RejectedExecutionException rejected) {
+            // the rejected work never runs, so don't hold later results behind it
+            if (slot != null) {
+                m_sequencer.cancel(slot);
+            }
+            generateErrorResult("Ad Hoc Planner task queue is full. Try again.", work);
+        }
+    }
+
+    /**
+     * Route on the first real statement, the same one handleAdHocPlannerWork
+     * uses to decide between DDL and DML/DQL. Mixed batches are rejected there.
+     */
+    static boolean isDDLBatch(AdHocPlannerWork work) {
+        for (String stmt : work.sqlStatements) {
+            if (SQLLexer.isComment(stmt) || stmt.trim().isEmpty()) {
+                continue;
+            }
+            return SQLLexer.extractDDLToken(stmt) != null;
+        }
+        return false;
+    }
+
     void generateErrorResult(String errorMsg, AsyncCompilerWork work) {
         AsyncCompilerResult retval = new AsyncCompilerResult();
         retval.clientHandle = work.clientHandle;
@@ -274,6 +326,7 @@ public class AsyncCompilerAgent {
                 w.completionHandler.onCompletion(errResult);
                 return;
             }
+            // deliver() routes DDL batches to m_es, so this is already serialized
             final CatalogChangeWork ccw = new CatalogChangeWork(w);
             dispatchCatalogChangeWork(ccw);
         }
@@ -319,7 +372,7 @@ public class AsyncCompilerAgent {
     }
 
     public void compileAdHocPlanForProcedure(final AdHocPlannerWork apw) {
-        m_es.submit(new Runnable() {
+        m_plannerEs.submit(new Runnable() {
             @Override
             public void run(){
                 apw.completionHandler.onCompletion(compileAdHocPlan(apw));
@@ -360,7 +413,17 @@ public class AsyncCompilerAgent {
             context = VoltDB.instance().getCatalogContext();
         }
 
-        final PlannerTool ptool = context.m_ptool;
+        final PlannerToolPool ptoolPool = context.m_ptoolPool;
+        final PlannerTool ptool = ptoolPool.acquire();
+        try {
+            return compileAdHocPlan(work, ptool);
+        }
+        finally {
+            ptoolPool.release(ptool);
+        }
+    }
+
+    private AsyncCompilerResult compileAdHocPlan(AdHocPlannerWork work, PlannerTool ptool) {
 
         List<String> errorMsgs = new ArrayList<String>();
         List<AdHocPlannedStatement> stmts = new ArrayList<AdHocPlannedStatement>();
@@ -19,21 +19,286 @@ package org.voltdb.compiler;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeSet;
 
+import org.json_voltpatches.JSONArray;
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.json_voltpatches.JSONStringer;
+
+/**
+ * Table size and column value estimates used to cost candidate plans.
+ * Without statistics every table gets the same static guess. Tables that
+ * were sampled by @Analyze carry their per-partition row count along with
+ * the distinct value count and an equi-depth histogram of their indexed
+ * columns, see {@link PlannerTool#setAnalyzedEstimates(DatabaseEstimates)}.
+ */
 public class DatabaseEstimates {
 
+    // selectivity assumed for an index key column without statistics
+    public static final double DEFAULT_EQUALITY_SELECTIVITY = 0.10;
+    // a range counts as half a covered column, the same as IndexScanPlanNode's key width
+    public static final double DEFAULT_RANGE_SELECTIVITY = Math.sqrt(DEFAULT_EQUALITY_SELECTIVITY);
+
+    public static class ColumnEstimates {
+        /** Distinct non-null values expected in one partition */
+        public long distinctValues;
+        /**
+         * Equi-depth histogram of the non-null numeric values, the bucket bounds in
+         * ascending order starting with the minimum and ending with the maximum value.
+         * Empty if the column isn't numeric.
+         */
+        public double[] histogram = new double[0];
+
+        /**
+         * Fraction of the values in the histogram that are >= value,
+         * or -1 if there is no histogram.
+         */
+        public double fractionAtOrAbove(double value) {
+            final int buckets = histogram.length - 1;
+            if (buckets < 1) {
+                return -1;
+            }
+            if (value <= histogram[0]) {
+                return 1.0;
+            }
+            if (value > histogram[buckets]) {
+                return 0.0;
+            }
+            for (int ii = 0; ii < buckets; ii++) {
+                final double low = histogram[ii];
+                final double high = histogram[ii + 1];
+                if (value <= high) {
+                    // assume values are spread evenly within a bucket
+                    final double inBucket = high > low ? (high - value) / (high - low) : 1.0;
+                    return (buckets - ii - 1 + inBucket) / buckets;
+                }
+            }
+            return 0.0;
+        }
+
+        /**
+         * Fraction of the values in the histogram that are <= value, assuming
+         * they are spread evenly within each bucket.
+         */
+        private static double fractionAtOrBelow(double[] histogram, double value) {
+            final int buckets = histogram.length - 1;
+            if (value < histogram[0]) {
+                return 0.0;
+            }
+            if (value >= histogram[buckets]) {
+                return 1.0;
+            }
+            for (int ii = 0; ii < buckets; ii++) {
+                final double low = histogram[ii];
+                final double high = histogram[ii + 1];
+                if (value < high) {
+                    return (ii + (value - low) / (high - low)) / buckets;
+                }
+            }
+            return 1.0;
+        }
+
+        /**
+         * Merge the equi-depth histograms of the partitions of a table into one
+         * with the given number of buckets. Each partition's histogram is weighted
+         * by the number of values it was built from.
+         *
+         * @return The merged bucket bounds, or an empty array if there are no values
+         */
+        public static double[] mergeHistograms(List<double[]> histograms, List<Long> valueCounts, int buckets) {
+            assert(histograms.size() == valueCounts.size());
+            long total = 0;
+            TreeSet<Double> bounds = new TreeSet<Double>();
+            for (int ii = 0; ii < histograms.size(); ii++) {
+                if (histograms.get(ii).length == 0 || valueCounts.get(ii) <= 0) {
+                    continue;
+                }
+                total += valueCounts.get(ii);
+                for (double bound : histograms.get(ii)) {
+                    bounds.add(bound);
+                }
+            }
+            if (total == 0) {
+                return new double[0];
+            }
+
+            // The merged distribution at every bound of every partition. It is
+            // linear in between, as it is in each partition's buckets.
+            final double[] values = new double[bounds.size()];
+            final double[] fractions = new double[bounds.size()];
+            int point = 0;
+            for (double value : bounds) {
+                double below = 0;
+                for (int ii = 0; ii < histograms.size(); ii++) {
+                    if (histograms.get(ii).length > 0 && valueCounts.get(ii) > 0) {
+                        below += valueCounts.get(ii) * fractionAtOrBelow(histograms.get(ii), value);
+                    }
+                }
+                values[point] = value;
+                fractions[point] = below / total;
+                point++;
+            }
+
+            final int mergedBuckets = (int) Math.max(1, Math.min(buckets, total));
+            double[] merged = new double[mergedBuckets + 1];
+            merged[0] = values[0];
+            merged[mergedBuckets] = values[values.length - 1];
+            point = 0;
+            for (int ii = 1; ii < mergedBuckets; ii++) {
+                final double target = (double) ii / mergedBuckets;
+                while (fractions[point] < target) {
+                    point++;
+                }
+                if (point == 0 || fractions[point] == fractions[point - 1]) {
+                    merged[ii] = values[point];
+                }
+                else {
+                    merged[ii] = values[point - 1] + (values[point] - values[point - 1]) *
+                            (target - fractions[point - 1]) / (fractions[point] - fractions[point - 1]);
+                }
+            }
+            return merged;
+        }
+    }
+
     public static class TableEstimates {
         public long maxTuples = 1000000;
         public long minTuples = 100000;
         public ArrayList<ScalarValueHints> valueHints = new ArrayList<ScalarValueHints>();
+        /** True if maxTuples and the column estimates were measured by @Analyze */
+        public boolean analyzed = false;
+        public HashMap<String, ColumnEstimates> columnEstimates = new HashMap<String, ColumnEstimates>();
+
+        /**
+         * Fraction of the rows expected to match an equality filter on the column,
+         * or the default guess if the column wasn't analyzed.
+         */
+        public double equalitySelectivity(String columnName) {
+            ColumnEstimates column = columnEstimates.get(columnName);
+            if (column == null || column.distinctValues <= 0) {
+                return DEFAULT_EQUALITY_SELECTIVITY;
+            }
+            return 1.0 / column.distinctValues;
+        }
+
+        /**
+         * Fraction of the rows expected to have a column value at or above (or below)
+         * the bound, or the default range guess if the bound is unknown or the column
+         * has no histogram.
+         */
+        public double rangeSelectivity(String columnName, Double bound, boolean above) {
+            ColumnEstimates column = columnEstimates.get(columnName);
+            if (column == null || bound == null) {
+                return DEFAULT_RANGE_SELECTIVITY;
+            }
+            double fraction = column.fractionAtOrAbove(bound);
+            if (fraction < 0) {
+                return DEFAULT_RANGE_SELECTIVITY;
+            }
+            return above ? fraction : 1.0 - fraction;
+        }
     }
 
     HashMap<String, TableEstimates> tables = new HashMap<String, TableEstimates>();
 
+    public DatabaseEstimates() {
+    }
+
+    /**
+     * Copy of another set of estimates that shares its TableEstimates, so that
+     * planning can fill in defaults for the missing tables without touching the
+     * original.
+     */
+    public DatabaseEstimates(DatabaseEstimates other) {
+        tables.putAll(other.tables);
+    }
+
     public TableEstimates getEstimatesForTable(String tableName) {
         if (tables.containsKey(tableName) == false)
             tables.put(tableName, new TableEstimates());
 
         return tables.get(tableName);
     }
+
+    public void putEstimatesForTable(String tableName, TableEstimates tableEstimates) {
+        tables.put(tableName, tableEstimates);
+    }
+
+    public int getTableCount() {
+        return tables.size();
+    }
+
+    private static final String JSON_TABLES = "tables";
+    private static final String JSON_TUPLES = "tuples";
+    private static final String JSON_MIN_TUPLES = "minTuples";
+    private static final String JSON_COLUMNS = "columns";
+    private static final String JSON_DISTINCT = "distinct";
+    private static final String JSON_HISTOGRAM = "histogram";
+
+    /**
+     * Serialize the analyzed tables, the form @Analyze keeps in ZooKeeper.
+     */
+    public String toJSONString() throws JSONException {
+        JSONStringer stringer = new JSONStringer();
+        stringer.object();
+        stringer.key(JSON_TABLES).object();
+        for (Entry<String, TableEstimates> table : tables.entrySet()) {
+            if (!table.getValue().analyzed) {
+                continue;
+            }
+            stringer.key(table.getKey()).object();
+            stringer.key(JSON_TUPLES).value(table.getValue().maxTuples);
+            stringer.key(JSON_MIN_TUPLES).value(table.getValue().minTuples);
+            stringer.key(JSON_COLUMNS).object();
+            for (Entry<String, ColumnEstimates> column : table.getValue().columnEstimates.entrySet()) {
+                stringer.key(column.getKey()).object();
+                stringer.key(JSON_DISTINCT).value(column.getValue().distinctValues);
+                stringer.key(JSON_HISTOGRAM).array();
+                for (double bound : column.getValue().histogram) {
+                    stringer.value(bound);
+                }
+                stringer.endArray();
+                stringer.endObject();
+            }
+            stringer.endObject();
+            stringer.endObject();
+        }
+        stringer.endObject();
+        stringer.endObject();
+        return stringer.toString();
+    }
+
+    public static DatabaseEstimates fromJSONString(String json) throws JSONException {
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        JSONObject tablesJSON = new JSONObject(json).getJSONObject(JSON_TABLES);
+        Iterator<String> tableNames = tablesJSON.keys();
+        while (tableNames.hasNext()) {
+            String tableName = tableNames.next();
+            JSONObject tableJSON = tablesJSON.getJSONObject(tableName);
+            TableEstimates table = new TableEstimates();
+            table.analyzed = true;
+            table.maxTuples = tableJSON.getLong(JSON_TUPLES);
+            table.minTuples = tableJSON.optLong(JSON_MIN_TUPLES, table.maxTuples);
+            JSONObject columnsJSON = tableJSON.getJSONObject(JSON_COLUMNS);
+            Iterator<String> columnNames = columnsJSON.keys();
+            while (columnNames.hasNext()) {
+                String columnName = columnNames.next();
+                JSONObject columnJSON = columnsJSON.getJSONObject(columnName);
+                ColumnEstimates column = new ColumnEstimates();
+                column.distinctValues = columnJSON.getLong(JSON_DISTINCT);
+                JSONArray histogramJSON = columnJSON.getJSONArray(JSON_HISTOGRAM);
+                column.histogram = new double[histogramJSON.length()];
+                for (int ii = 0; ii < column.histogram.length; ii++) {
+                    column.histogram[ii] = histogramJSON.getDouble(ii);
+                }
+                table.columnEstimates.put(columnName, column);
+            }
+            estimates.tables.put(tableName, table);
+        }
+        return estimates;
+    }
 }
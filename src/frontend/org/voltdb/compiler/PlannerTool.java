@@ -31,12 +31,14 @@ import org.voltdb.VoltDB;
 import org.voltdb.catalog.Cluster;
 import org.voltdb.catalog.Database;
 import org.voltdb.common.Constants;
+import org.voltdb.planner.AbstractCostModel;
 import org.voltdb.planner.BoundPlan;
 import org.voltdb.planner.CompiledPlan;
 import org.voltdb.planner.CorePlan;
 import org.voltdb.planner.PlanningErrorException;
 import org.voltdb.planner.QueryPlanner;
 import org.voltdb.planner.StatementPartitioning;
+import org.voltdb.planner.StatisticsCostModel;
 import org.voltdb.planner.TrivialCostModel;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.utils.Encoder;
@@ -58,6 +60,33 @@ public class PlannerTool {
 
     private static final int AD_HOC_JOINED_TABLE_LIMIT = 5;
 
+    // table statistics measured by @Analyze, null until it has run
+    private static volatile DatabaseEstimates s_analyzedEstimates = null;
+
+    /**
+     * Plan ad hoc queries with the table statistics measured by @Analyze from now on.
+     * Cached ad hoc plans were chosen with the old estimates, so they are dropped.
+     * Stored procedure statements keep the plans they were compiled with in the catalog,
+     * and default procedures are always planned without the measured statistics.
+     */
+    public static void setAnalyzedEstimates(DatabaseEstimates estimates) {
+        s_analyzedEstimates = estimates;
+        AdHocCompilerCache.clearAllPlans();
+    }
+
+    public static DatabaseEstimates getAnalyzedEstimates() {
+        return s_analyzedEstimates;
+    }
+
+    private static DatabaseEstimates newEstimates() {
+        DatabaseEstimates analyzed = s_analyzedEstimates;
+        return analyzed == null ? new DatabaseEstimates() : new DatabaseEstimates(analyzed);
+    }
+
+    private static AbstractCostModel newCostModel() {
+        return s_analyzedEstimates == null ? new TrivialCostModel() : new StatisticsCostModel();
+    }
+
     public PlannerTool(final Cluster cluster, final Database database, byte[] catalogHash)
     {
         assert(cluster != null);
@@ -117,6 +146,8 @@ public class PlannerTool {
      * Stripped down compile that is ONLY used to plan default procedures.
      */
     public synchronized CompiledPlan planSqlCore(String sql, StatementPartitioning partitioning) {
+        // Default procedure plans are cached per site and matched across sites by plan hash,
+        // so they must not depend on when @Analyze last ran.
         TrivialCostModel costModel = new TrivialCostModel();
         DatabaseEstimates estimates = new DatabaseEstimates();
         QueryPlanner planner = new QueryPlanner(
@@ -193,8 +224,8 @@ public class PlannerTool {
             // PLAN THE STMT
             //////////////////////
 
-            TrivialCostModel costModel = new TrivialCostModel();
-            DatabaseEstimates estimates = new DatabaseEstimates();
+            AbstractCostModel costModel = newCostModel();
+            DatabaseEstimates estimates = newEstimates();
             QueryPlanner planner = new QueryPlanner(
                     sql, "PlannerTool", "PlannerToolProc", m_cluster, m_database,
                     partitioning, m_hsql, estimates, !VoltCompiler.DEBUG_MODE,
@@ -0,0 +1,131 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.catalog.Cluster;
+import org.voltdb.catalog.Database;
+
+/**
+ * A bounded pool of PlannerTool instances for one catalog version. Each
+ * PlannerTool owns a private HSQL session and serializes its own planning,
+ * so handing a separate instance to each ad hoc planner thread lets planning
+ * throughput scale with the number of planner threads. All instances share
+ * the same AdHocCompilerCache through the catalog hash.
+ *
+ * The primary PlannerTool is created eagerly by the CatalogContext. Additional
+ * instances are created lazily the first time concurrent planning needs them,
+ * so a catalog version that never sees concurrent ad hoc work only ever pays
+ * for one HSQL instance.
+ */
+public class PlannerToolPool {
+
+    /**
+     * Number of ad hoc planner threads and PlannerTool instances per catalog
+     * version. Defaults to half the available cores, capped at 8.
+     */
+    public static final int POOL_SIZE = Math.max(1, Integer.getInteger("ADHOC_PLANNER_THREADS",
+            Math.min(8, Math.max(1, CoreUtils.availableProcessors() / 2))));
+
+    private final Cluster m_cluster;
+    private final Database m_database;
+    private final byte[] m_catalogHash;
+    private final int m_maxTools;
+
+    private final LinkedBlockingQueue<PlannerTool> m_idleTools = new LinkedBlockingQueue<PlannerTool>();
+    // guarded by this
+    private int m_createdTools;
+
+    public PlannerToolPool(PlannerTool primary, Cluster cluster, Database database,
+                           byte[] catalogHash, int maxTools)
+    {
+        assert(primary != null);
+        m_cluster = cluster;
+        m_database = database;
+        m_catalogHash = catalogHash;
+        m_maxTools = Math.max(1, maxTools);
+        m_createdTools = 1;
+        m_idleTools.offer(primary);
+    }
+
+    /**
+     * Take a PlannerTool for exclusive use by the calling thread, creating a
+     * new one if all existing instances are busy and the pool has not yet
+     * reached its size limit. Blocks if the pool is exhausted.
+     * Every acquired PlannerTool must be given back with {@link #release}.
+     */
+    public PlannerTool acquire() {
+        PlannerTool tool = m_idleTools.poll();
+        if (tool != null) {
+            return tool;
+        }
+
+        boolean create = false;
+        synchronized (this) {
+            if (m_createdTools < m_maxTools) {
+                ++m_createdTools;
+                create = true;
+            }
+        }
+        if (create) {
+            try {
+                return new PlannerTool(m_cluster, m_database, m_catalogHash);
+            }
+            catch (RuntimeException e) {
+                synchronized (this) {
+                    --m_createdTools;
+                }
+                throw e;
+            }
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return m_idleTools.take();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Return a PlannerTool obtained from {@link #acquire} to the pool.
+     */
+    public void release(PlannerTool tool) {
+        assert(tool != null);
+        m_idleTools.offer(tool);
+    }
+
+    /**
+     * @return the number of PlannerTool instances created so far
+     */
+    public synchronized int getCreatedCount() {
+        return m_createdTools;
+    }
+}
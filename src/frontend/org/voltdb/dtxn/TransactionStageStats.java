@@ -0,0 +1,223 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.dtxn;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.HdrHistogram_voltpatches.AbstractHistogram;
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Host wide latency histograms, in microseconds, for the stages a transaction
+ * passes through. Stages are recorded where the work happens and some nest:
+ * PROCEDURE includes the EE_FRAGMENTS time of the procedure's batches.
+ * Reports one row per stage. Interval polls only cover the transactions recorded
+ * since the previous interval poll.
+ *
+ * Each recording thread (site, network, planner) writes to its own non-atomic
+ * histograms so that recording never contends with other threads. Polls merge
+ * the per-thread histograms, folding in and dropping those of threads that have
+ * exited.
+ */
+public class TransactionStageStats extends StatsSource {
+
+    public enum Stage {
+        /// deserializing the invocation off the client connection
+        CLIENT_DECODE,
+        /// InvocationDispatcher permission checks, routing and initiation
+        DISPATCH,
+        /// SpScheduler handling an initiate task message
+        SP_SCHEDULE,
+        /// time a transaction task waits in the SiteTaskerQueue before it runs
+        SITE_QUEUE_WAIT,
+        /// ProcedureRunner.call, including fragment execution
+        PROCEDURE,
+        /// executing a batch of plan fragments in the EE
+        EE_FRAGMENTS,
+        /// from the response reaching the network thread until it is serialized for write
+        RESPONSE_WRITE
+    }
+
+    private static final Stage[] s_stages = Stage.values();
+
+    /**
+     * The histograms of one recording thread. Only the owning thread records
+     * into them; a stage's histogram is created the first time the thread
+     * records that stage, since most threads only see a few stages.
+     */
+    private static final class ThreadHistograms {
+        final WeakReference<Thread> m_owner = new WeakReference<Thread>(Thread.currentThread());
+        final AtomicReferenceArray<AbstractHistogram> m_histograms =
+                new AtomicReferenceArray<AbstractHistogram>(s_stages.length);
+
+        AbstractHistogram get(Stage stage) {
+            AbstractHistogram histogram = m_histograms.get(stage.ordinal());
+            if (histogram == null) {
+                histogram = LatencyStats.constructHistogram(false);
+                m_histograms.set(stage.ordinal(), histogram);
+            }
+            return histogram;
+        }
+
+        boolean isOwnerAlive() {
+            final Thread owner = m_owner.get();
+            return owner != null && owner.isAlive();
+        }
+    }
+
+    private static final ConcurrentLinkedQueue<ThreadHistograms> s_threadHistograms =
+            new ConcurrentLinkedQueue<ThreadHistograms>();
+    private static final ThreadLocal<ThreadHistograms> s_localHistograms = new ThreadLocal<ThreadHistograms>() {
+        @Override
+        protected ThreadHistograms initialValue() {
+            final ThreadHistograms histograms = new ThreadHistograms();
+            s_threadHistograms.add(histograms);
+            return histograms;
+        }
+    };
+    // what threads that have exited recorded, guarded by s_threadHistograms
+    private static final AbstractHistogram[] s_retiredHistograms = new AbstractHistogram[s_stages.length];
+    static {
+        for (int i = 0; i < s_retiredHistograms.length; i++) {
+            s_retiredHistograms[i] = LatencyStats.constructHistogram(false);
+        }
+    }
+    private static final long s_highestTrackableValue = s_retiredHistograms[0].getHighestTrackableValue();
+
+    /**
+     * Record the time elapsed since startNanos, a System.nanoTime() value, for the stage.
+     * Safe to call from any thread.
+     */
+    public static void recordSince(Stage stage, long startNanos) {
+        final long micros = (System.nanoTime() - startNanos) / 1000;
+        s_localHistograms.get().get(stage).recordValue(Math.max(0, Math.min(micros, s_highestTrackableValue)));
+    }
+
+    /**
+     * Merge what every thread has recorded for the stage so far. A thread may be
+     * recording while this reads its histogram, so the merge can miss the values
+     * being recorded at that moment; they show up in the next poll.
+     */
+    static AbstractHistogram mergeHistograms(Stage stage) {
+        final AbstractHistogram merged = LatencyStats.constructHistogram(false);
+        synchronized (s_threadHistograms) {
+            final Iterator<ThreadHistograms> iter = s_threadHistograms.iterator();
+            while (iter.hasNext()) {
+                final ThreadHistograms histograms = iter.next();
+                if (!histograms.isOwnerAlive()) {
+                    for (int i = 0; i < s_stages.length; i++) {
+                        final AbstractHistogram histogram = histograms.m_histograms.get(i);
+                        if (histogram != null) {
+                            s_retiredHistograms[i].add(histogram);
+                        }
+                    }
+                    iter.remove();
+                    continue;
+                }
+                final AbstractHistogram histogram = histograms.m_histograms.get(stage.ordinal());
+                if (histogram != null) {
+                    merged.add(histogram);
+                }
+            }
+            merged.add(s_retiredHistograms[stage.ordinal()]);
+        }
+        return merged;
+    }
+
+    /**
+     * Whether to return results in intervals since polling or since the beginning
+     */
+    private boolean m_interval = false;
+
+    // what each stage's histogram held at the last interval poll
+    private final AbstractHistogram[] m_lastHistograms = new AbstractHistogram[s_stages.length];
+
+    public TransactionStageStats() {
+        super(false);
+        for (int i = 0; i < m_lastHistograms.length; i++) {
+            m_lastHistograms[i] = LatencyStats.constructHistogram(false);
+        }
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("STAGE", VoltType.STRING));
+        columns.add(new ColumnInfo("INVOCATIONS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("AVG", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P50", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P95", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P99", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P99.9", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        final Stage stage = (Stage) rowKey;
+        AbstractHistogram histogram = mergeHistograms(stage);
+        if (m_interval) {
+            final AbstractHistogram current = histogram.copy();
+            histogram.subtract(m_lastHistograms[stage.ordinal()]);
+            m_lastHistograms[stage.ordinal()] = current;
+        }
+
+        final boolean empty = histogram.getTotalCount() == 0;
+        rowValues[columnNameToIndex.get("STAGE")] = stage.name();
+        rowValues[columnNameToIndex.get("INVOCATIONS")] = histogram.getTotalCount();
+        rowValues[columnNameToIndex.get("AVG")] = empty ? 0L : (long) histogram.getMean();
+        rowValues[columnNameToIndex.get("P50")] = empty ? 0L : histogram.getValueAtPercentile(50.0);
+        rowValues[columnNameToIndex.get("P95")] = empty ? 0L : histogram.getValueAtPercentile(95.0);
+        rowValues[columnNameToIndex.get("P99")] = empty ? 0L : histogram.getValueAtPercentile(99.0);
+        rowValues[columnNameToIndex.get("P99.9")] = empty ? 0L : histogram.getValueAtPercentile(99.9);
+        rowValues[columnNameToIndex.get("MAX")] = empty ? 0L : histogram.getMaxValue();
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_interval = interval;
+        return new Iterator<Object>() {
+            int m_next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return m_next < s_stages.length;
+            }
+
+            @Override
+            public Object next() {
+                if (hasNext()) {
+                    return s_stages[m_next++];
+                }
+                return null;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
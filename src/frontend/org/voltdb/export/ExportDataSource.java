@@ -38,7 +38,6 @@ import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.messaging.BinaryPayloadMessage;
 import org.voltcore.messaging.Mailbox;
-import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.Pair;
@@ -106,7 +105,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
     private final Semaphore m_allowAcceptingMastership = new Semaphore(0);
     private volatile boolean m_closed = false;
     private volatile boolean m_mastershipAccepted = false;
-    private volatile ListeningExecutorService m_executor;
+    private volatile ExportTaskLane m_executor;
     private final Integer m_executorLock = new Integer(0);
     private final LinkedTransferQueue<RunnableWithES> m_queuedActions = new LinkedTransferQueue<>();
     private RunnableWithES m_firstAction = null;
@@ -1018,9 +1017,9 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
 
         synchronized(m_executorLock) {
             if (m_executor==null) {
-                ListeningExecutorService es = CoreUtils.getListeningExecutorService(
+                ExportTaskLane es = new ExportTaskLane(
                             "ExportDataSource gen " + m_generation
-                            + " table " + m_tableName + " partition " + m_partitionId, 1);
+                            + " table " + m_tableName + " partition " + m_partitionId);
                 //If we have a truncate task do that first.
                 if (m_firstAction != null) {
                     exportLog.info("Submitting truncate task for ExportDataSource gen " + m_generation
@@ -1043,6 +1042,14 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
         return m_executor;
     }
 
+    /**
+     * The lane on the shared export worker pool that runs this source's tasks,
+     * null until the source is activated.
+     */
+    public ExportTaskLane getTaskLane() {
+        return m_executor;
+    }
+
     private abstract class RunnableWithES implements Runnable {
 
         private final String m_taskName;
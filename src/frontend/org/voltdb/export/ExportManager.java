@@ -20,6 +20,7 @@ package org.voltdb.export;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -664,6 +665,19 @@ public class ExportManager
         m_generations.clear();
     }
 
+    /**
+     * Data sources of every generation on this host, oldest generation first.
+     */
+    public List<ExportDataSource> getDataSources() {
+        List<ExportDataSource> sources = new ArrayList<ExportDataSource>();
+        for (ExportGeneration generation : m_generations.values()) {
+            for (Map<String, ExportDataSource> partitionSources : generation.getDataSourceByPartition().values()) {
+                sources.addAll(partitionSources.values());
+            }
+        }
+        return sources;
+    }
+
     public static long getQueuedExportBytes(int partitionId, String signature) {
         ExportManager instance = instance();
         try {
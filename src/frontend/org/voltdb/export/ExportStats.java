@@ -0,0 +1,73 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.export;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * One row per export data source on this host describing its lane on the shared
+ * export worker pool: tasks waiting, how long the oldest of them has waited and
+ * tasks run so far. Sources that were not activated yet report zeros.
+ */
+public class ExportStats extends StatsSource {
+
+    public ExportStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("PARTITION_ID", VoltType.INTEGER));
+        columns.add(new ColumnInfo("SOURCE_NAME", VoltType.STRING));
+        columns.add(new ColumnInfo("GENERATION", VoltType.BIGINT));
+        columns.add(new ColumnInfo("QUEUE_DEPTH", VoltType.INTEGER));
+        columns.add(new ColumnInfo("LAG_MS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("TASKS_COMPLETED", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        ExportDataSource source = (ExportDataSource) rowKey;
+        ExportTaskLane lane = source.getTaskLane();
+        rowValues[columnNameToIndex.get("PARTITION_ID")] = source.getPartitionId();
+        rowValues[columnNameToIndex.get("SOURCE_NAME")] = source.getTableName();
+        rowValues[columnNameToIndex.get("GENERATION")] = source.getGeneration();
+        rowValues[columnNameToIndex.get("QUEUE_DEPTH")] = lane == null ? 0 : lane.getQueueDepth();
+        rowValues[columnNameToIndex.get("LAG_MS")] =
+                lane == null ? 0 : TimeUnit.NANOSECONDS.toMillis(lane.getLagNanos());
+        rowValues[columnNameToIndex.get("TASKS_COMPLETED")] = lane == null ? 0 : lane.getCompletedTasks();
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        ExportManager manager = ExportManager.instance();
+        if (manager == null) {
+            return Collections.emptyIterator();
+        }
+        return new ArrayList<Object>(manager.getDataSources()).iterator();
+    }
+}
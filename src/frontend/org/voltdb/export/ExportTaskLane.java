@@ -0,0 +1,200 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.export;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+
+import com.google_voltpatches.common.util.concurrent.AbstractListeningExecutorService;
+
+/**
+ * A serial executor for one export data source that borrows its thread from a pool
+ * shared by every data source on the host. Tasks of a lane run one at a time in
+ * submission order, so the push/poll/ack/sync ordering the data source relies on is
+ * the same as with a dedicated single thread executor.
+ *
+ * A lane with work queues a turn on the shared pool. A turn runs at most
+ * EXPORT_LANE_TASKS_PER_TURN tasks and then requeues itself behind the turns of the
+ * other lanes, so a busy stream can't starve the rest. The pool has
+ * EXPORT_WORKER_THREADS threads, one per core by default.
+ *
+ * Shutdown behaves like ThreadPoolExecutor: new tasks are rejected and tasks already
+ * queued still run.
+ */
+public class ExportTaskLane extends AbstractListeningExecutorService {
+
+    private static final VoltLogger exportLog = new VoltLogger("EXPORT");
+
+    static final int WORKER_THREADS =
+            Integer.getInteger("EXPORT_WORKER_THREADS", Math.max(1, CoreUtils.availableProcessors()));
+    static final int TASKS_PER_TURN = Math.max(1, Integer.getInteger("EXPORT_LANE_TASKS_PER_TURN", 4));
+
+    private static ExecutorService s_workers;
+
+    private static synchronized ExecutorService getWorkers() {
+        if (s_workers == null) {
+            s_workers = CoreUtils.getListeningExecutorService("Export Worker", WORKER_THREADS);
+        }
+        return s_workers;
+    }
+
+    private static final class Task {
+        final Runnable m_runnable;
+        final long m_queuedNanos;
+
+        Task(Runnable runnable) {
+            m_runnable = runnable;
+            m_queuedNanos = System.nanoTime();
+        }
+    }
+
+    private final String m_name;
+    private final ExecutorService m_workers;
+
+    // guarded by this
+    private final ArrayDeque<Task> m_tasks = new ArrayDeque<Task>();
+    private boolean m_scheduled = false;
+    private boolean m_shutdown = false;
+
+    private final AtomicLong m_completedTasks = new AtomicLong();
+
+    private final Runnable m_turn = new Runnable() {
+        @Override
+        public void run() {
+            for (int ii = 0; ii < TASKS_PER_TURN; ii++) {
+                Task task;
+                synchronized (ExportTaskLane.this) {
+                    task = m_tasks.poll();
+                    if (task == null) {
+                        m_scheduled = false;
+                        ExportTaskLane.this.notifyAll();
+                        return;
+                    }
+                }
+                try {
+                    task.m_runnable.run();
+                } catch (Throwable t) {
+                    exportLog.error("Unexpected error running export task for " + m_name, t);
+                } finally {
+                    m_completedTasks.incrementAndGet();
+                }
+            }
+            synchronized (ExportTaskLane.this) {
+                if (m_tasks.isEmpty()) {
+                    m_scheduled = false;
+                    ExportTaskLane.this.notifyAll();
+                    return;
+                }
+            }
+            // give the other lanes a turn before continuing
+            m_workers.execute(this);
+        }
+    };
+
+    public ExportTaskLane(String name) {
+        this(name, getWorkers());
+    }
+
+    ExportTaskLane(String name, ExecutorService workers) {
+        m_name = name;
+        m_workers = workers;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        synchronized (this) {
+            if (m_shutdown) {
+                throw new RejectedExecutionException(m_name + " is shut down");
+            }
+            m_tasks.add(new Task(command));
+            if (m_scheduled) {
+                return;
+            }
+            m_scheduled = true;
+        }
+        m_workers.execute(m_turn);
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        m_shutdown = true;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized List<Runnable> shutdownNow() {
+        m_shutdown = true;
+        List<Runnable> pending = new ArrayList<Runnable>(m_tasks.size());
+        for (Task task : m_tasks) {
+            pending.add(task.m_runnable);
+        }
+        m_tasks.clear();
+        notifyAll();
+        return pending;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return m_shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+        return m_shutdown && !m_scheduled;
+    }
+
+    @Override
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isTerminated()) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Number of tasks waiting to run, not counting one that is running.
+     */
+    public synchronized int getQueueDepth() {
+        return m_tasks.size();
+    }
+
+    /**
+     * How long the oldest waiting task has been queued, 0 if none are waiting.
+     */
+    public synchronized long getLagNanos() {
+        Task oldest = m_tasks.peek();
+        return oldest == null ? 0 : Math.max(0, System.nanoTime() - oldest.m_queuedNanos);
+    }
+
+    public long getCompletedTasks() {
+        return m_completedTasks.get();
+    }
+}
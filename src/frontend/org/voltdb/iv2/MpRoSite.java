@@ -32,6 +32,7 @@ import org.voltdb.DRConsumerDrIdTracker;
 import org.voltdb.DRIdempotencyResult;
 import org.voltdb.DependencyPair;
 import org.voltdb.HsqlBackend;
+import org.voltdb.IncrementalStreamActivation;
 import org.voltdb.LoadedProcedureSet;
 import org.voltdb.NonVoltDBBackend;
 import org.voltdb.ParameterSet;
@@ -250,6 +251,12 @@ public class MpRoSite implements Runnable, SiteProcedureConnection
             throw new RuntimeException("RO MP Site doesn't do this, shouldn't be here.");
         }
 
+        @Override
+        public IncrementalStreamActivation activateIncrementalSnapshotStream(int tableId, byte[] predicates)
+        {
+            throw new RuntimeException("RO MP Site doesn't do this, shouldn't be here.");
+        }
+
         @Override
         public void forceAllDRNodeBuffersToDisk(final boolean nofsync)
         {
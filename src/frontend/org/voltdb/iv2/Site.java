@@ -17,9 +17,11 @@
 
 package org.voltdb.iv2;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.HashMap;
@@ -47,7 +49,9 @@ import org.voltdb.DRLogSegmentId;
 import org.voltdb.DependencyPair;
 import org.voltdb.ExtensibleSnapshotDigestData;
 import org.voltdb.HsqlBackend;
+import org.voltdb.IncrementalStreamActivation;
 import org.voltdb.IndexStats;
+import org.voltdb.InvocationDispatcher;
 import org.voltdb.LoadedProcedureSet;
 import org.voltdb.MemoryStats;
 import org.voltdb.NonVoltDBBackend;
@@ -55,6 +59,7 @@ import org.voltdb.ParameterSet;
 import org.voltdb.PartitionDRGateway;
 import org.voltdb.PostGISBackend;
 import org.voltdb.PostgreSQLBackend;
+import org.voltdb.ProcedureResultCache;
 import org.voltdb.ProcedureRunner;
 import org.voltdb.SiteProcedureConnection;
 import org.voltdb.SiteSnapshotConnection;
@@ -83,6 +88,8 @@ import org.voltdb.catalog.Deployment;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Table;
 import org.voltdb.dtxn.SiteTracker;
+import org.voltdb.dtxn.TransactionStageStats;
+import org.voltdb.dtxn.TransactionStageStats.Stage;
 import org.voltdb.dtxn.TransactionState;
 import org.voltdb.dtxn.UndoAction;
 import org.voltdb.exceptions.EEException;
@@ -116,6 +123,12 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     private static final double m_taskLogReplayRatio =
             Double.valueOf(System.getProperty("TASKLOG_REPLAY_RATIO", "0.6"));
 
+    // Maximum number of tasks removed from the site tasker queue per wakeup.
+    private static final int m_taskBatchSize = Integer.getInteger("SITE_TASK_BATCH_SIZE", 64);
+
+    // Apply materialized view maintenance for inserts once per group at the end of each batch.
+    private static final boolean m_viewDeltaBatching = Boolean.getBoolean("VIEW_DELTA_BATCHING");
+
     // Set to false trigger shutdown.
     volatile boolean m_shouldContinue = true;
 
@@ -171,6 +184,11 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     // Currently available procedure
     volatile LoadedProcedureSet m_loadedProcedures;
 
+    // Procedure whose fragments run next and the tables each procedure of the current
+    // catalog may update, to tell the result cache which tables writes touch
+    private String m_procedureName = null;
+    private final Map<String, String[]> m_tablesUpdatedByProcedure = new HashMap<String, String[]>();
+
     // Cache the DR gateway here so that we can pass it to tasks as they are reconstructed from
     // the task log
     private final PartitionDRGateway m_drGateway;
@@ -416,6 +434,12 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
             return m_ee.activateTableStream(tableId, type, undo ? getNextUndoToken(m_currentTxnId) : Long.MAX_VALUE, predicates);
         }
 
+        @Override
+        public IncrementalStreamActivation activateIncrementalSnapshotStream(int tableId, byte[] predicates)
+        {
+            return m_ee.activateIncrementalSnapshotStream(tableId, Long.MAX_VALUE, predicates);
+        }
+
         @Override
         public Pair<Long, int[]> tableStreamSerializeMore(int tableId, TableStreamType type,
                                                           List<DBBPool.BBContainer> outputBuffers)
@@ -659,6 +683,25 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         });
     }
 
+    /**
+     * Each site gets its own scratch directory under voltdbroot for temp tables
+     * that outgrow the temp table memory limit. Returns an empty path, which
+     * disables spilling, if the directory can not be created.
+     */
+    private String getTempTableSpillDirectory()
+    {
+        File spillDir = new File(new File(VoltDB.instance().getVoltDBRootPath(), "temptable_spill"),
+                String.format("host_%d_site_%d",
+                        CoreUtils.getHostIdFromHSId(m_siteId),
+                        CoreUtils.getSiteIdFromHSId(m_siteId)));
+        if (!spillDir.isDirectory() && !spillDir.mkdirs()) {
+            hostLog.warn("Unable to create temp table spill directory " + spillDir.getAbsolutePath() +
+                    ", queries exceeding the temp table size limit will fail rather than spill to disk.");
+            return "";
+        }
+        return spillDir.getAbsolutePath();
+    }
+
     /** Create a native VoltDB execution engine */
     ExecutionEngine initializeEE()
     {
@@ -719,6 +762,8 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
             eeTemp.loadCatalog(m_startupConfig.m_timestamp, m_startupConfig.m_serializedCatalog);
             eeTemp.setBatchTimeout(m_context.cluster.getDeployment().get("deployment").
                             getSystemsettings().get("systemsettings").getQuerytimeout());
+            eeTemp.setTempTableSpillDirectory(getTempTableSpillDirectory());
+            eeTemp.setViewDeltaBatching(m_viewDeltaBatching);
         }
         // just print error info an bail if we run into an error here
         catch (final Exception ex) {
@@ -746,16 +791,28 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         m_startupConfig = null; // release the serializableCatalog.
         //Maintain a minimum ratio of task log (unrestricted) to live (restricted) transactions
         final MinimumRatioMaintainer mrm = new MinimumRatioMaintainer(m_taskLogReplayRatio);
+        final List<SiteTasker> batch = new ArrayList<SiteTasker>(m_taskBatchSize);
         try {
             while (m_shouldContinue) {
                 if (m_rejoinState == kStateRunning) {
-                    // Normal operation blocks the site thread on the sitetasker queue.
-                    SiteTasker task = m_scheduler.take();
-                    if (task instanceof TransactionTask) {
-                        m_currentTxnId = ((TransactionTask)task).getTxnId();
-                        m_lastTxnTime = EstTime.currentTimeMillis();
+                    // Normal operation blocks the site thread on the sitetasker queue,
+                    // then runs everything that was queued when it woke up.
+                    m_scheduler.takeBatch(batch, m_taskBatchSize);
+                    try {
+                        // Stop as soon as a task shuts the site down, the rest of the
+                        // batch is dropped like the tasks still in the queue.
+                        for (int i = 0; i < batch.size() && m_shouldContinue; i++) {
+                            SiteTasker task = batch.get(i);
+                            if (task instanceof TransactionTask) {
+                                m_currentTxnId = ((TransactionTask)task).getTxnId();
+                                m_lastTxnTime = EstTime.currentTimeMillis();
+                                TransactionStageStats.recordSince(Stage.SITE_QUEUE_WAIT, task.m_queueOfferNanos);
+                            }
+                            task.run(getSiteProcedureConnection());
+                        }
+                    } finally {
+                        batch.clear();
                     }
-                    task.run(getSiteProcedureConnection());
                 } else if (m_rejoinState == kStateReplayingRejoin) {
                     // Rejoin operation poll and try to do some catchup work. Tasks
                     // are responsible for logging any rejoin work they might have.
@@ -1017,6 +1074,9 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
             VoltTable data, boolean returnUniqueViolations, boolean shouldDRStream,
             boolean undo)
     {
+        if (ProcedureResultCache.ENABLED) {
+            ProcedureResultCache.tablesModified(null);
+        }
         // Long.MAX_VALUE is a no-op don't track undo token
         return m_ee.loadTable(tableId, data, txnId,
                 spHandle,
@@ -1116,6 +1176,9 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
             Map<Integer, List<VoltTable>> dependencies, long fragmentId,
             ParameterSet params)
     {
+        if (ProcedureResultCache.ENABLED && !txnState.isReadOnly()) {
+            ProcedureResultCache.tablesModified(null);
+        }
         ProcedureRunner runner = m_loadedProcedures.getSysproc(fragmentId);
         return runner.executeSysProcPlanFragment(txnState, dependencies, fragmentId, params);
     }
@@ -1394,6 +1457,9 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                                             boolean readOnly)
             throws EEException
     {
+        if (!readOnly && ProcedureResultCache.ENABLED) {
+            notifyResultCacheOfWrites();
+        }
         return m_ee.executePlanFragments(
                 numFragmentIds,
                 planFragmentIds,
@@ -1407,6 +1473,28 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                 readOnly ? Long.MAX_VALUE : getNextUndoTokenBroken());
     }
 
+    /**
+     * Bump the result cache counters of the tables the current procedure may update,
+     * or of unknown tables if it isn't known. A read-only procedure's name is left over
+     * from an earlier transaction.
+     */
+    private void notifyResultCacheOfWrites() {
+        String[] tableNames = null;
+        if (m_procedureName != null) {
+            if (m_tablesUpdatedByProcedure.containsKey(m_procedureName)) {
+                tableNames = m_tablesUpdatedByProcedure.get(m_procedureName);
+            }
+            else {
+                Procedure proc = InvocationDispatcher.getProcedureFromName(m_procedureName, m_context);
+                if (proc != null && !proc.getReadonly()) {
+                    tableNames = ProcedureResultCache.tablesUpdatedBy(proc);
+                }
+                m_tablesUpdatedByProcedure.put(m_procedureName, tableNames);
+            }
+        }
+        ProcedureResultCache.tablesModified(tableNames);
+    }
+
     @Override
     public ProcedureRunner getProcedureRunner(String procedureName) {
         return m_loadedProcedures.getProcByName(procedureName);
@@ -1422,6 +1510,7 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         m_ee.setBatchTimeout(m_context.cluster.getDeployment().get("deployment").
                 getSystemsettings().get("systemsettings").getQuerytimeout());
         m_loadedProcedures.loadProcedures(m_context, m_backend, csp);
+        m_tablesUpdatedByProcedure.clear();
 
         if (isMPI) {
             // the rest of the work applies to sites with real EEs
@@ -1555,6 +1644,7 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
 
     @Override
     public void setProcedureName(String procedureName) {
+        m_procedureName = procedureName;
         m_ee.setProcedureName(procedureName);
     }
 
@@ -1567,6 +1657,9 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     public long applyBinaryLog(long txnId, long spHandle,
                                long uniqueId, int remoteClusterId,
                                byte log[]) throws EEException {
+        if (ProcedureResultCache.ENABLED) {
+            ProcedureResultCache.tablesModified(null);
+        }
         ByteBuffer paramBuffer = m_ee.getParamBufferForExecuteTask(4 + log.length);
         paramBuffer.putInt(log.length);
         paramBuffer.put(log);
@@ -25,6 +25,9 @@ import org.voltdb.SiteProcedureConnection;
 
 public abstract class SiteTasker {
 
+    // When the task was last offered to a SiteTaskerQueue, for queue wait time stats
+    long m_queueOfferNanos;
+
     public static abstract class SiteTaskerRunnable extends SiteTasker {
         abstract void run();
 
@@ -17,19 +17,23 @@
 
 package org.voltdb.iv2;
 
-import java.util.concurrent.LinkedTransferQueue;
+import java.util.List;
 
-import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.MpscChunkedQueue;
 import org.voltdb.StarvationTracker;
 
-/** SiteTaskerScheduler orders SiteTaskers for execution. */
+/**
+ * SiteTaskerScheduler orders SiteTaskers for execution. Any thread may offer;
+ * only the owning site thread may take, poll, peek or drain.
+ */
 public class SiteTaskerQueue
 {
-    private final LinkedTransferQueue<SiteTasker> m_tasks = new LinkedTransferQueue<SiteTasker>();
+    private final MpscChunkedQueue<SiteTasker> m_tasks = new MpscChunkedQueue<SiteTasker>();
     private StarvationTracker m_starvationTracker;
 
     public boolean offer(SiteTasker task)
     {
+        task.m_queueOfferNanos = System.nanoTime();
         return m_tasks.offer(task);
     }
 
@@ -43,12 +47,20 @@ public class SiteTaskerQueue
             return task;
         }
         try {
-            return CoreUtils.queueSpinTake(m_tasks);
+            return m_tasks.take();
         } finally {
             m_starvationTracker.endStarvation();
         }
     }
 
+    // Block on the site tasker queue until at least one task is available, then
+    // move it and up to maxTasks - 1 more queued tasks into batch, in order.
+    public int takeBatch(List<SiteTasker> batch, int maxTasks) throws InterruptedException
+    {
+        batch.add(take());
+        return 1 + m_tasks.drainTo(batch, maxTasks - 1);
+    }
+
     // Non-blocking poll on the site tasker queue.
     public SiteTasker poll()
     {
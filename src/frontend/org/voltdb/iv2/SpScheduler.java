@@ -48,6 +48,8 @@ import org.voltdb.SystemProcedureCatalog;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltTable;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.dtxn.TransactionStageStats;
+import org.voltdb.dtxn.TransactionStageStats.Stage;
 import org.voltdb.dtxn.TransactionState;
 import org.voltdb.iv2.SiteTasker.SiteTaskerRunnable;
 import org.voltdb.messaging.BorrowTaskMessage;
@@ -380,7 +382,9 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
     public void deliver(VoltMessage message)
     {
         if (message instanceof Iv2InitiateTaskMessage) {
+            final long start = System.nanoTime();
             handleIv2InitiateTaskMessage((Iv2InitiateTaskMessage)message);
+            TransactionStageStats.recordSince(Stage.SP_SCHEDULE, start);
         }
         else if (message instanceof InitiateResponseMessage) {
             handleInitiateResponseMessage((InitiateResponseMessage)message);
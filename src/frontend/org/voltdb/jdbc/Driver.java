@@ -134,6 +134,7 @@ public class Driver implements java.sql.Driver
                 boolean heavyweight = false;
                 int maxoutstandingtxns = 0;
                 boolean reconnectOnConnectionLoss = false;
+                long batchWindowMicros = 0;
                 for (Enumeration<?> e = info.propertyNames(); e.hasMoreElements();)
                 {
                     String key = (String) e.nextElement();
@@ -150,12 +151,14 @@ public class Driver implements java.sql.Driver
                     else if ("autoreconnect".equals(key)){
                         reconnectOnConnectionLoss = ("true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value) || "1".equals(value));
                     }
+                    else if (key.toLowerCase().equals("batchwindowmicros"))
+                        batchWindowMicros = Long.parseLong(value);
                     // else - unknown; ignore
                 }
 
                 // Return JDBC connection wrapper for the client
                 return  new JDBC4Connection(JDBC4ClientConnectionPool.get(servers, user, password,
-                            heavyweight, maxoutstandingtxns, reconnectOnConnectionLoss),
+                            heavyweight, maxoutstandingtxns, reconnectOnConnectionLoss, batchWindowMicros),
                         info);
 
             } catch (Exception x) {
@@ -111,13 +111,18 @@ public class JDBC4ClientConnection implements Closeable {
      *            small transactions, this limit can be raised.
      * @param reconnectOnConnectionLoss
      *            Attempts to reconnect to a node with retry after connection loss
+     * @param batchWindowMicros
+     *            how long an invocation may wait to be sent in the same message as others bound
+     *            for the same server, in microseconds. Pipelined batches then reach each server
+     *            in a few messages instead of one per statement. 0 sends every invocation on
+     *            its own.
      * @throws IOException
      * @throws UnknownHostException
      */
     protected JDBC4ClientConnection(
             String clientConnectionKeyBase, String clientConnectionKey,
             String[] servers, String user, String password, boolean isHeavyWeight,
-            int maxOutstandingTxns, boolean reconnectOnConnectionLoss)
+            int maxOutstandingTxns, boolean reconnectOnConnectionLoss, long batchWindowMicros)
                     throws UnknownHostException, IOException
     {
         // Save the list of trimmed non-empty server names.
@@ -142,6 +147,8 @@ public class JDBC4ClientConnection implements Closeable {
             config.setMaxOutstandingTxns(maxOutstandingTxns);
 
         this.config.setReconnectOnConnectionLoss(reconnectOnConnectionLoss);
+        if (batchWindowMicros > 0)
+            this.config.enableInvocationBatching(batchWindowMicros);
 
         // Create client and connect.
         createClientAndConnect();
@@ -363,6 +370,41 @@ public class JDBC4ClientConnection implements Closeable {
         }
     }
 
+    /**
+     * Executes a procedure asynchronously with a client side timeout, then calls the provided
+     * user callback with the server response upon completion.
+     *
+     * @param callback
+     *            the user-specified callback to call with the server response upon execution
+     *            completion.
+     * @param procedure
+     *            the name of the procedure to call.
+     * @param timeout
+     *            how long to wait for the response before the callback gets a timeout response.
+     * @param unit
+     *            the unit of the timeout, seconds if null.
+     * @param parameters
+     *            the list of parameters to pass to the procedure.
+     * @return the result of the submission false if the client connection was terminated and unable
+     *         to post the request to the server, true otherwise.
+     */
+    public boolean executeAsyncWithTimeout(ProcedureCallback callback, String procedure, long timeout, TimeUnit unit,
+            Object... parameters) throws NoConnectionsException, IOException
+    {
+        ClientImpl currentClient = this.getClient();
+        if (unit == null) {
+            unit = TimeUnit.SECONDS;
+        }
+        try {
+            return currentClient.callProcedureWithClientTimeout(new TrackingCallback(this, procedure, callback),
+                    BatchTimeoutOverrideType.NO_TIMEOUT, procedure, timeout, unit, parameters);
+        }
+        catch (NoConnectionsException e) {
+            this.dropClient(currentClient);
+            throw e;
+        }
+    }
+
     /**
      * Executes a procedure asynchronously, returning a Future that can be used by the caller to
      * wait upon completion before processing the server response.
@@ -45,10 +45,16 @@ public class JDBC4Connection implements java.sql.Connection, IVoltDBConnection
     public static final String COMMIT_THROW_EXCEPTION = "jdbc.committhrowexception";
     public static final String ROLLBACK_THROW_EXCEPTION = "jdbc.rollbackthrowexception";
     public static final String QUERYTIMEOUT_UNIT = "jdbc.querytimeout.unit";
+    public static final String BATCH_MAX_INFLIGHT = "jdbc.batch.maxinflight";
+    static final int DEFAULT_BATCH_MAX_INFLIGHT = 1;
 
     protected final JDBC4ClientConnection NativeConnection;
     protected final String User;
     protected TimeUnit queryTimeOutUnit = TimeUnit.SECONDS;
+    // Number of statements of a batch that may wait for a response at the same time. Statements
+    // sent together may be applied in any order, so only batches of independent statements
+    // should raise it.
+    protected int batchMaxInFlight = DEFAULT_BATCH_MAX_INFLIGHT;
     private boolean isClosed = false;
     private Properties props;
     private boolean autoCommit = true;
@@ -61,6 +67,8 @@ public class JDBC4Connection implements java.sql.Connection, IVoltDBConnection
         if (this.props.getProperty(JDBC4Connection.QUERYTIMEOUT_UNIT, "Seconds").equalsIgnoreCase("milliseconds")) {
             this.queryTimeOutUnit = TimeUnit.MILLISECONDS;
         }
+        this.batchMaxInFlight = Math.max(1, Integer.parseInt(this.props.getProperty(
+                JDBC4Connection.BATCH_MAX_INFLIGHT, Integer.toString(DEFAULT_BATCH_MAX_INFLIGHT))));
     }
 
     private void checkClosed() throws SQLException
@@ -25,16 +25,18 @@ import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcCallException;
+import org.voltdb.client.ProcedureCallback;
 import org.voltdb.parser.JDBCParser;
 import org.voltdb.parser.SQLLexer;
 import org.voltdb.parser.JDBCParser.ParsedCall;
@@ -124,28 +126,27 @@ public class JDBC4Statement implements java.sql.Statement
             }
             catch(ProcCallException e)
             {
-                ClientResponse response = e.getClientResponse();
-                if (response != null) {
-                    // Map response status to specific JDBC exception, mostly GENERAL_ERROR except
-                    // for connection problems.
-                    switch (response.getStatus()) {
-                    case ClientResponse.CONNECTION_LOST:
-                        throw SQLError.get(e, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", e.getMessage());
-                    case ClientResponse.CONNECTION_TIMEOUT:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", e.getMessage());
-                    case ClientResponse.SERVER_UNAVAILABLE:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", e.getMessage());
-                    case ClientResponse.USER_ABORT:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "USER_ABORT", e.getMessage());
-                    case ClientResponse.UNEXPECTED_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", e.getMessage());
-                    case ClientResponse.GRACEFUL_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", e.getMessage());
-                    default:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), e.getMessage());
-                    }
+                throw getSQLException(e.getClientResponse(), e, e.getMessage());
+            }
+            catch(IOException e)
+            {
+                throw SQLError.get(e, SQLError.CONNECTION_FAILURE, e.getMessage());
+            }
+        }
+
+        // Queue the statement on the client, the callback gets the response.
+        protected void executeAsync(JDBC4ClientConnection connection, ProcedureCallback callback,
+                long timeout, TimeUnit queryTimeOutUnit) throws SQLException {
+            try
+            {
+                boolean queued;
+                if (this.type == TYPE_EXEC) {
+                    queued = connection.executeAsyncWithTimeout(callback, this.sql[0], timeout, queryTimeOutUnit, this.parameters);
                 } else {
-                    throw SQLError.get(e, SQLError.GENERAL_ERROR, e.getMessage());
+                    queued = connection.executeAsyncWithTimeout(callback, "@AdHoc", timeout, queryTimeOutUnit, this.sql[0]);
+                }
+                if (!queued) {
+                    throw SQLError.get(SQLError.CONNECTION_FAILURE, "Unable to queue " + this.sql[0]);
                 }
             }
             catch(IOException e)
@@ -154,6 +155,31 @@ public class JDBC4Statement implements java.sql.Statement
             }
         }
 
+        // Map response status to specific JDBC exception, mostly GENERAL_ERROR except
+        // for connection problems.
+        static SQLException getSQLException(ClientResponse response, Exception e, String message)
+        {
+            if (response == null) {
+                return SQLError.get(e, SQLError.GENERAL_ERROR, message);
+            }
+            switch (response.getStatus()) {
+            case ClientResponse.CONNECTION_LOST:
+                return SQLError.get(e, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", message);
+            case ClientResponse.CONNECTION_TIMEOUT:
+                return SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", message);
+            case ClientResponse.SERVER_UNAVAILABLE:
+                return SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", message);
+            case ClientResponse.USER_ABORT:
+                return SQLError.get(e, SQLError.GENERAL_ERROR, "USER_ABORT", message);
+            case ClientResponse.UNEXPECTED_FAILURE:
+                return SQLError.get(e, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", message);
+            case ClientResponse.GRACEFUL_FAILURE:
+                return SQLError.get(e, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", message);
+            default:
+                return SQLError.get(e, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), message);
+            }
+        }
+
         public static boolean isUpdateResult(VoltTable table)
         {
             return ((table.getColumnName(0).length() == 0 || table.getColumnName(0).equals("modified_tuples"))&& table.getRowCount() == 1 && table.getColumnCount() == 1 && table.getColumnType(0) == VoltType.BIGINT);
@@ -412,6 +438,9 @@ public class JDBC4Statement implements java.sql.Statement
     }
 
     // Submits a batch of commands to the database for execution and if all commands execute successfully, returns an array of update counts.
+    // Up to jdbc.batch.maxinflight commands (default 1) wait for a response at a time. Raise it only if the
+    // order in which the commands of a batch are applied can't matter, e.g. they touch different rows.
+    // Once a command fails no more are sent, the update counts cover every command that was sent.
     @Override
     public int[] executeBatch() throws SQLException
     {
@@ -421,28 +450,76 @@ public class JDBC4Statement implements java.sql.Statement
             return new int[0];
         }
 
-        int[] updateCounts = new int[batch.size()];
+        final int maxInFlight = sourceConnection.batchMaxInFlight;
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        final ClientResponse[] responses = new ClientResponse[batch.size()];
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        SQLException sendFailure = null;
+        int sent = 0;
+        try {
+            for (; sent < batch.size() && !failed.get(); sent++) {
+                final int index = sent;
+                inFlight.acquire();
+                // the response that freed the slot may have been a failure
+                if (failed.get()) {
+                    inFlight.release();
+                    break;
+                }
+                try {
+                    batch.get(sent).executeAsync(
+                            sourceConnection.NativeConnection,
+                            new ProcedureCallback() {
+                                @Override
+                                public void clientCallback(ClientResponse response) {
+                                    responses[index] = response;
+                                    if (response.getStatus() != ClientResponse.SUCCESS) {
+                                        failed.set(true);
+                                    }
+                                    inFlight.release();
+                                }
+                            },
+                            this.m_timeout,
+                            sourceConnection.queryTimeOutUnit);
+                } catch (SQLException x) {
+                    inFlight.release();
+                    sendFailure = x;
+                    break;
+                }
+            }
+            // wait for the responses of everything that was sent
+            inFlight.acquire(maxInFlight);
+        } catch (InterruptedException e) {
+            clearBatch();
+            throw SQLError.get(e, SQLError.GENERAL_ERROR, e.getMessage());
+        }
+
+        int[] updateCounts = new int[sendFailure == null ? sent : sent + 1];
         // keep a running total of update counts
         int runningUpdateCount = 0;
-
-        int i = 0;
+        SQLException failure = null;
         try {
-            for (; i < batch.size(); i++) {
-
-                setCurrentResult(
-                        null,
-                        (int) batch.get(i).execute(
-                                sourceConnection.NativeConnection,
-                                this.m_timeout,
-                                sourceConnection.queryTimeOutUnit)[0].fetchRow(
-                                0).getLong(0));
-                updateCounts[i] = this.lastUpdateCount;
-                runningUpdateCount += this.lastUpdateCount;
+            for (int i = 0; i < sent; i++) {
+                ClientResponse response = responses[i];
+                if (response.getStatus() == ClientResponse.SUCCESS) {
+                    setCurrentResult(null, (int) response.getResults()[0].fetchRow(0).getLong(0));
+                    updateCounts[i] = this.lastUpdateCount;
+                    runningUpdateCount += this.lastUpdateCount;
+                } else {
+                    updateCounts[i] = EXECUTE_FAILED;
+                    if (failure == null) {
+                        failure = VoltSQL.getSQLException(response, null, response.getStatusString());
+                    }
+                }
+            }
+            if (sendFailure != null) {
+                updateCounts[sent] = EXECUTE_FAILED;
+                if (failure == null) {
+                    failure = sendFailure;
+                }
+            }
+            if (failure != null) {
+                throw new BatchUpdateException(updateCounts, failure);
             }
-        } catch (SQLException x) {
-            updateCounts[i] = EXECUTE_FAILED;
-            throw new BatchUpdateException(Arrays.copyOf(updateCounts, i + 1),
-                    x);
         } finally {
             clearBatch();
         }
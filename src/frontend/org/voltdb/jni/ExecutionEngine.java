@@ -30,6 +30,7 @@ import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.Pair;
+import org.voltdb.IncrementalStreamActivation;
 import org.voltdb.PlannerStatsCollector;
 import org.voltdb.PlannerStatsCollector.CacheUse;
 import org.voltdb.PrivateVoltTableFactory;
@@ -39,6 +40,8 @@ import org.voltdb.TableStreamType;
 import org.voltdb.TheHashinator.HashinatorConfig;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltTable;
+import org.voltdb.dtxn.TransactionStageStats;
+import org.voltdb.dtxn.TransactionStageStats.Stage;
 import org.voltdb.exceptions.EEException;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.planner.ActivePlanRepository;
@@ -533,6 +536,16 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
                                                 long undoQuantumToken,
                                                 byte[] predicates);
 
+    /**
+     * Activate an {@link TableStreamType#INCREMENTAL_SNAPSHOT} stream. The predicates are
+     * followed by the spHandle of the base snapshot, or -1 if there is none.
+     *
+     * @return Whether the EE chose a delta or a full snapshot, or null if activation failed
+     */
+    public abstract IncrementalStreamActivation activateIncrementalSnapshotStream(final int tableId,
+                                                                                 long undoQuantumToken,
+                                                                                 byte[] predicates);
+
     /**
      * Serialize more tuples from the specified table that already has a stream enabled
      *
@@ -608,6 +621,7 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
                                             long uniqueId,
                                             long undoQuantumToken) throws EEException
     {
+        final long start = System.nanoTime();
         try {
             // For now, re-transform undoQuantumToken to readOnly. Redundancy work in site.executePlanFragments()
             m_fragmentContext = (undoQuantumToken == Long.MAX_VALUE) ? FragmentContext.RO_BATCH : FragmentContext.RW_BATCH;
@@ -632,6 +646,8 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
             m_sqlTexts = null;
 
             m_fragmentContext = FragmentContext.UNKNOWN;
+
+            TransactionStageStats.recordSince(Stage.EE_FRAGMENTS, start);
         }
     }
 
@@ -662,6 +678,22 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
      */
     public abstract boolean setLogLevels(long logLevels) throws EEException;
 
+    /**
+     * Set the scratch directory that temp tables may spill to when a plan
+     * fragment reaches the temp table memory limit.
+     * @param directory Path to an existing directory, or empty to disable spilling
+     * @throws EEException
+     */
+    public abstract boolean setTempTableSpillDirectory(String directory) throws EEException;
+
+    /**
+     * Let single table materialized views apply the inserts of a batch in one pass
+     * per group at the end of the batch instead of one row at a time.
+     * @param enabled true to batch view deltas
+     * @throws EEException
+     */
+    public abstract boolean setViewDeltaBatching(boolean enabled) throws EEException;
+
     /**
      * This method should be called roughly every second. It allows the EE
      * to do periodic non-transactional work.
@@ -987,6 +1019,20 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
      */
     protected native boolean nativeSetLogLevels(long pointer, long logLevels);
 
+    /**
+     * @param pointer Pointer to an engine instance
+     * @param directory UTF-8 bytes of the temp table spill directory path
+     * @return true for success false for failure
+     */
+    protected native boolean nativeSetTempTableSpillDirectory(long pointer, byte directory[]);
+
+    /**
+     * @param pointer Pointer to an engine instance
+     * @param enabled Whether materialized views batch their deltas
+     * @return true for success false for failure
+     */
+    protected native boolean nativeSetViewDeltaBatching(long pointer, boolean enabled);
+
     /**
      * Active a table stream of the specified type for a table.
      * @param pointer Pointer to an engine instance
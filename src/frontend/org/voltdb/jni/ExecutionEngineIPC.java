@@ -31,6 +31,7 @@ import java.util.logging.Logger;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.Pair;
 import org.voltdb.BackendTarget;
+import org.voltdb.IncrementalStreamActivation;
 import org.voltdb.ParameterSet;
 import org.voltdb.PrivateVoltTableFactory;
 import org.voltdb.StatsSelector;
@@ -125,7 +126,9 @@ public class ExecutionEngineIPC extends ExecutionEngine {
         GetUSOs(25),
         updateHashinator(27),
         executeTask(28),
-        applyBinaryLog(29);
+        applyBinaryLog(29),
+        SetTempTableSpillDirectory(30),
+        SetViewDeltaBatching(31);
         Commands(final int id) {
             m_id = id;
         }
@@ -1128,6 +1131,38 @@ public class ExecutionEngineIPC extends ExecutionEngine {
         return true;
     }
 
+    @Override
+    public IncrementalStreamActivation activateIncrementalSnapshotStream(
+            int tableId,
+            long undoQuantumToken,
+            byte[] predicates) {
+        m_data.clear();
+        m_data.putInt(Commands.ActivateTableStream.m_id);
+        m_data.putInt(tableId);
+        m_data.putInt(TableStreamType.INCREMENTAL_SNAPSHOT.ordinal());
+        m_data.putLong(undoQuantumToken);
+        m_data.put(predicates); // predicates and base spHandle
+
+        try {
+            m_data.flip();
+            m_connection.write();
+        } catch (final Exception e) {
+            System.out.println("Exception: " + e.getMessage());
+            throw new RuntimeException(e);
+        }
+
+        try {
+            if (m_connection.readStatusByte() != ExecutionEngine.ERRORCODE_SUCCESS) {
+                return null;
+            }
+            // voltdbipc follows success with the length prefixed activation result
+            return IncrementalStreamActivation.parse(readMessage());
+        } catch (final IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public boolean undoUndoToken(final long undoToken) {
         m_data.clear();
@@ -1184,6 +1219,64 @@ public class ExecutionEngineIPC extends ExecutionEngine {
         return true;
     }
 
+    @Override
+    public boolean setTempTableSpillDirectory(final String directory) throws EEException {
+        final byte directoryBytes[] = getStringBytes(directory);
+        m_data.clear();
+        m_data.putInt(Commands.SetTempTableSpillDirectory.m_id);
+        m_data.putInt(directoryBytes.length);
+        m_data.put(directoryBytes);
+
+        try {
+            m_data.flip();
+            m_connection.write();
+        } catch (final Exception e) {
+            System.out.println("Exception: " + e.getMessage());
+            throw new RuntimeException(e);
+        }
+
+        int result = ExecutionEngine.ERRORCODE_ERROR;
+        try {
+            result = m_connection.readStatusByte();
+        } catch (final IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            throw new RuntimeException(e);
+        }
+
+        if (result != ExecutionEngine.ERRORCODE_SUCCESS) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean setViewDeltaBatching(final boolean enabled) throws EEException {
+        m_data.clear();
+        m_data.putInt(Commands.SetViewDeltaBatching.m_id);
+        m_data.put((byte) (enabled ? 1 : 0));
+
+        try {
+            m_data.flip();
+            m_connection.write();
+        } catch (final Exception e) {
+            System.out.println("Exception: " + e.getMessage());
+            throw new RuntimeException(e);
+        }
+
+        int result = ExecutionEngine.ERRORCODE_ERROR;
+        try {
+            result = m_connection.readStatusByte();
+        } catch (final IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            throw new RuntimeException(e);
+        }
+
+        if (result != ExecutionEngine.ERRORCODE_SUCCESS) {
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Retrieve a dependency table and send it via the connection. If
      * no table is available send a response code indicating such.
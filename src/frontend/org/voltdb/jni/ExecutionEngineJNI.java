@@ -25,6 +25,7 @@ import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.Pair;
+import org.voltdb.IncrementalStreamActivation;
 import org.voltdb.ParameterSet;
 import org.voltdb.PrivateVoltTableFactory;
 import org.voltdb.StatsSelector;
@@ -494,6 +495,16 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         return nativeSetLogLevels(pointer, logLevels);
     }
 
+    @Override
+    public boolean setTempTableSpillDirectory(final String directory) throws EEException {
+        return nativeSetTempTableSpillDirectory(pointer, getStringBytes(directory));
+    }
+
+    @Override
+    public boolean setViewDeltaBatching(final boolean enabled) throws EEException {
+        return nativeSetViewDeltaBatching(pointer, enabled);
+    }
+
     @Override
     public boolean activateTableStream(int tableId, TableStreamType streamType,
                                        long undoQuantumToken,
@@ -502,6 +513,24 @@ public class ExecutionEngineJNI extends ExecutionEngine {
                                          undoQuantumToken, predicates);
     }
 
+    @Override
+    public IncrementalStreamActivation activateIncrementalSnapshotStream(int tableId,
+                                                                        long undoQuantumToken,
+                                                                        byte[] predicates) {
+        //Clear is destructive, do it before the native call
+        deserializer.clear();
+        try {
+            if (!nativeActivateTableStream(pointer, tableId, TableStreamType.INCREMENTAL_SNAPSHOT.ordinal(),
+                                           undoQuantumToken, predicates)) {
+                return null;
+            }
+            ByteBuffer buf = fallbackBuffer == null ? deserializer.buffer() : fallbackBuffer;
+            return IncrementalStreamActivation.parse(buf);
+        } finally {
+            fallbackBuffer = null;
+        }
+    }
+
     @Override
     public Pair<Long, int[]> tableStreamSerializeMore(int tableId,
                                                       TableStreamType streamType,
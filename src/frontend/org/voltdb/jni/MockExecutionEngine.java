@@ -25,6 +25,7 @@ import java.util.Random;
 
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.Pair;
+import org.voltdb.IncrementalStreamActivation;
 import org.voltdb.ParameterSet;
 import org.voltdb.StatsSelector;
 import org.voltdb.TableStreamType;
@@ -173,6 +174,16 @@ public class MockExecutionEngine extends ExecutionEngine {
         return false;
     }
 
+    @Override
+    public boolean setTempTableSpillDirectory(final String directory) throws EEException {
+        return false;
+    }
+
+    @Override
+    public boolean setViewDeltaBatching(final boolean enabled) throws EEException {
+        return false;
+    }
+
     @Override
     public void quiesce(long lastCommittedTxnId) {
     }
@@ -182,6 +193,12 @@ public class MockExecutionEngine extends ExecutionEngine {
         return false;
     }
 
+    @Override
+    public IncrementalStreamActivation activateIncrementalSnapshotStream(int tableId, long undoQuantumToken,
+                                                                        byte[] predicates) {
+        return null;
+    }
+
     @Override
     public Pair<Long, int[]> tableStreamSerializeMore(int tableId, TableStreamType type,
                                                       List<BBContainer> outputBuffers) {
@@ -17,6 +17,8 @@
 
 package org.voltdb.planner;
 
+import org.voltdb.plannodes.AbstractPlanNode;
+
 /**
  * Abstract base class for the code that computes plan cost given
  * a set of statistics for a plan.
@@ -32,4 +34,17 @@ public abstract class AbstractCostModel {
      * @return The computed cost of the plan.
      */
     public abstract double getPlanCost(PlanStatistics stats);
+
+    /**
+     * Computes the cost of a plan graph whose estimates have been computed into stats.
+     * By default only the statistics are considered, cost models that care about the
+     * shape of the plan can also walk the graph.
+     *
+     * @param planGraph The root of the plan graph.
+     * @param stats The statistics describing the work for the plan graph.
+     * @return The computed cost of the plan.
+     */
+    public double getPlanCost(AbstractPlanNode planGraph, PlanStatistics stats) {
+        return getPlanCost(stats);
+    }
 }
@@ -59,6 +59,7 @@ import org.voltdb.plannodes.AbstractScanPlanNode;
 import org.voltdb.plannodes.AggregatePlanNode;
 import org.voltdb.plannodes.DeletePlanNode;
 import org.voltdb.plannodes.HashAggregatePlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.InsertPlanNode;
 import org.voltdb.plannodes.LimitPlanNode;
@@ -906,7 +907,7 @@ public class PlanAssembler {
      * @param initial plan
      * @return A complete plan tree for the entire SQl.
      */
-    private AbstractPlanNode connectChildrenBestPlans(AbstractPlanNode parentPlan) {
+    static AbstractPlanNode connectChildrenBestPlans(AbstractPlanNode parentPlan) {
         if (parentPlan instanceof AbstractScanPlanNode) {
             AbstractScanPlanNode scanNode = (AbstractScanPlanNode) parentPlan;
             StmtTableScan tableScan = scanNode.getTableScan();
@@ -995,11 +996,13 @@ public class PlanAssembler {
                 if (m_parsedSelect.m_mvFixInfo.needed()) {
                     mvFixInfoCoordinatorNeeded = false;
                     AbstractPlanNode receiveNode = receivers.get(0);
-                    if (receiveNode.getParent(0) instanceof NestLoopPlanNode) {
+                    if (receiveNode.getParent(0) instanceof NestLoopPlanNode ||
+                            receiveNode.getParent(0) instanceof HashJoinPlanNode) {
                         if (subSelectRoot.hasInlinedIndexScanOfTable(m_parsedSelect.m_mvFixInfo.getMVTableName())) {
                             return getNextSelectPlan();
                         }
                         List<AbstractPlanNode> nljs = receiveNode.findAllNodesOfType(PlanNodeType.NESTLOOP);
+                        nljs.addAll(receiveNode.findAllNodesOfType(PlanNodeType.HASHJOIN));
                         List<AbstractPlanNode> nlijs = receiveNode.findAllNodesOfType(PlanNodeType.NESTLOOPINDEX);
 
                         // outer join edge case does not have any join plan node under receive node.
@@ -2062,7 +2065,8 @@ public class PlanAssembler {
         }
 
         // For join node, find outer sequential scan plan node
-        if (candidate.getPlanNodeType() == PlanNodeType.NESTLOOP) {
+        if (candidate.getPlanNodeType() == PlanNodeType.NESTLOOP ||
+                candidate.getPlanNodeType() == PlanNodeType.HASHJOIN) {
             assert(candidate.getChildCount() == 2);
             return findSeqScanCandidateForGroupBy(candidate.getChild(0));
         }
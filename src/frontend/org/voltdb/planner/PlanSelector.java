@@ -163,7 +163,7 @@ public class PlanSelector implements Cloneable {
         planGraph.computeEstimatesRecursively(m_stats, m_cluster, m_db, m_estimates, m_paramHints);
 
         // compute the cost based on the resources using the current cost model
-        plan.cost = m_costModel.getPlanCost(m_stats);
+        plan.cost = m_costModel.getPlanCost(planGraph, m_stats);
 
         // filename for debug output
         String filename = String.valueOf(m_planId++);
@@ -25,6 +25,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.voltdb.VoltType;
 import org.voltdb.catalog.Database;
 import org.voltdb.expressions.AbstractExpression;
 import org.voltdb.expressions.ExpressionUtil;
@@ -37,10 +38,12 @@ import org.voltdb.planner.parseinfo.SubqueryLeafNode;
 import org.voltdb.plannodes.AbstractJoinPlanNode;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractReceivePlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.MaterializedScanPlanNode;
 import org.voltdb.plannodes.NestLoopIndexPlanNode;
 import org.voltdb.plannodes.NestLoopPlanNode;
+import org.voltdb.types.ExpressionType;
 import org.voltdb.types.JoinType;
 import org.voltdb.types.PlanNodeType;
 import org.voltdb.utils.PermutationGenerator;
@@ -62,6 +65,18 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
     /** The list of all possible join orders, assembled by queueAllJoinOrders */
     private ArrayDeque<JoinNode> m_joinOrders = new ArrayDeque<JoinNode>();
 
+    /** The joins that got a hash join in the plan being built */
+    private final List<BranchNode> m_hashJoins = new ArrayList<>();
+
+    /** The joins that must get a NLJ instead of a hash join in the plan being built */
+    private final Set<BranchNode> m_nestLoopJoins = new HashSet<>();
+
+    /**
+     * Above this many hash joins in a plan, only the plan with all of them and the one
+     * with none of them are costed, rather than every combination.
+     */
+    private static final int MAX_HASH_JOIN_COMBINATIONS_JOINS = 4;
+
     /**
      *
      * @param db The catalog's Database object.
@@ -313,7 +328,9 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
 
             generateMorePlansForJoinTree(joinTree);
         }
-        return m_plans.poll();
+        // The plans generated for a join order share the sub-query plans, which end up
+        // linked to the last of them. Link them to the plan being handed out.
+        return PlanAssembler.connectChildrenBestPlans(m_plans.poll());
     }
 
     /**
@@ -530,11 +547,13 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
         if (nodes.size() == nextNode + 1) {
             for (AccessPath path : joinNode.m_accessPaths) {
                 joinNode.m_currentAccessPath = path;
+                m_hashJoins.clear();
                 AbstractPlanNode plan = getSelectSubPlanForJoinNode(rootNode);
                 if (plan == null) {
                     continue;
                 }
                 m_plans.add(plan);
+                generateNestLoopAlternatives(rootNode);
             }
             return;
         }
@@ -545,6 +564,40 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
         }
     }
 
+    /**
+     * Let the plan selector weigh each hash join of the plan just generated against
+     * the NLJ it replaced, by also generating the plans that use NLJs for some or all
+     * of those joins. The plan with all the hash joins goes first, so it wins a tie
+     * under the TrivialCostModel, which doesn't count the NLJ's rescans of the inner
+     * side for each outer row.
+     *
+     * @param rootNode The root node for the whole join tree, with its access paths set.
+     */
+    private void generateNestLoopAlternatives(JoinNode rootNode) {
+        List<BranchNode> hashJoins = new ArrayList<>(m_hashJoins);
+        if (hashJoins.isEmpty()) {
+            return;
+        }
+        int combinations = 1 << hashJoins.size();
+        for (int nestLoopMask = 1; nestLoopMask < combinations; nestLoopMask++) {
+            if (hashJoins.size() > MAX_HASH_JOIN_COMBINATIONS_JOINS &&
+                    nestLoopMask != combinations - 1) {
+                continue;
+            }
+            for (int ii = 0; ii < hashJoins.size(); ii++) {
+                if ((nestLoopMask & (1 << ii)) != 0) {
+                    m_nestLoopJoins.add(hashJoins.get(ii));
+                }
+            }
+            AbstractPlanNode plan = getSelectSubPlanForJoinNode(rootNode);
+            m_nestLoopJoins.clear();
+            if (plan != null) {
+                m_plans.add(plan);
+            }
+        }
+        m_hashJoins.clear();
+    }
+
     /**
      * Given a specific join node and access path set for inner and outer tables, construct the plan
      * that gives the right tuples.
@@ -704,7 +757,6 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
 
         AbstractJoinPlanNode ajNode = null;
         if (canHaveNLJ) {
-            NestLoopPlanNode nljNode = new NestLoopPlanNode();
             // get all the clauses that join the applicable two tables
             // Copy innerAccessPath.joinExprs to leave it unchanged,
             // avoiding accumulation of redundant expressions when
@@ -745,14 +797,27 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
                 // the inner node ONLY, that can not be pushed down.
                 joinClauses.addAll(innerAccessPath.otherExprs);
             }
-            nljNode.setJoinPredicate(ExpressionUtil.combinePredicates(joinClauses));
+            // No index on the join key drives the inner side here, so the NLJ would rescan
+            // the entire inner result for every outer tuple. An equi-join can hash the inner
+            // result once instead. The NLJ and NLIJ alternatives, if any, are costed separately.
+            AbstractJoinPlanNode joinPlanNode = null;
+            if ( ! m_nestLoopJoins.contains(joinNode)) {
+                joinPlanNode = getHashJoinNodeForEquiJoin(joinNode, joinClauses, whereClauses);
+                if (joinPlanNode != null) {
+                    m_hashJoins.add(joinNode);
+                }
+            }
+            if (joinPlanNode == null) {
+                joinPlanNode = new NestLoopPlanNode();
+            }
+            joinPlanNode.setJoinPredicate(ExpressionUtil.combinePredicates(joinClauses));
 
             // combine the tails plan graph with the new head node
-            nljNode.addAndLinkChild(outerPlan);
+            joinPlanNode.addAndLinkChild(outerPlan);
 
-            // If successful in the special case, the NLJ plan must be modified to cause the
+            // If successful in the special case, the join plan must be modified to cause the
             // partitioned inner data to be sent to the coordinator prior to the join.
-            // This is done by adding send and receive plan nodes between the NLJ and its
+            // This is done by adding send and receive plan nodes between the join and its
             // right child node.
             if (needInnerSendReceive) {
                 // This trick only works once per plan.
@@ -762,8 +827,8 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
                 innerPlan = addSendReceivePair(innerPlan);
             }
 
-            nljNode.addAndLinkChild(innerPlan);
-            ajNode = nljNode;
+            joinPlanNode.addAndLinkChild(innerPlan);
+            ajNode = joinPlanNode;
         }
         else if (canHaveNLIJ) {
             NestLoopIndexPlanNode nlijNode = new NestLoopIndexPlanNode();
@@ -792,6 +857,86 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
         return ajNode;
     }
 
+    /**
+     * Build a hash join node for a join whose clauses include at least one equality
+     * (= or IS NOT DISTINCT FROM) between an expression based only on the outer tables
+     * and an expression of the same type based only on the inner tables. Each such
+     * equality becomes a pair of hash keys. All of the join clauses remain the join
+     * predicate of the node. For an inner join, the post-join filters can also supply
+     * hash keys, since a row pair that fails them would be discarded anyway.
+     *
+     * @param joinNode The join node to build the plan for.
+     * @param joinClauses The clauses that will form the join predicate.
+     * @param whereClauses The clauses that will form the post-join filter.
+     * @return a HashJoinPlanNode with its hash keys set,
+     * or null if none of the clauses can be used as hash keys.
+     */
+    private static HashJoinPlanNode getHashJoinNodeForEquiJoin(BranchNode joinNode,
+                                                               List<AbstractExpression> joinClauses,
+                                                               List<AbstractExpression> whereClauses)
+    {
+        Collection<String> outerTables = joinNode.getLeftNode().generateTableJoinOrder();
+        Collection<String> innerTables = joinNode.getRightNode().generateTableJoinOrder();
+        List<AbstractExpression> candidates = new ArrayList<>(joinClauses);
+        if (joinNode.getJoinType() == JoinType.INNER) {
+            candidates.addAll(whereClauses);
+        }
+        HashJoinPlanNode hjNode = null;
+        for (AbstractExpression clause : candidates) {
+            ExpressionType comparison = clause.getExpressionType();
+            if (comparison != ExpressionType.COMPARE_EQUAL &&
+                    comparison != ExpressionType.COMPARE_NOTDISTINCT) {
+                continue;
+            }
+            AbstractExpression outerExpr = clause.getLeft();
+            AbstractExpression innerExpr = clause.getRight();
+            if ( ! (isHashJoinKey(outerExpr, outerTables) && isHashJoinKey(innerExpr, innerTables))) {
+                outerExpr = clause.getRight();
+                innerExpr = clause.getLeft();
+                if ( ! (isHashJoinKey(outerExpr, outerTables) && isHashJoinKey(innerExpr, innerTables))) {
+                    continue;
+                }
+            }
+            // The EE hashes both sides into the same key schema, so the types must agree exactly.
+            if (outerExpr.getValueType() != innerExpr.getValueType()) {
+                continue;
+            }
+            if (hjNode == null) {
+                hjNode = new HashJoinPlanNode();
+            }
+            hjNode.addHashExpressions(outerExpr, innerExpr,
+                    comparison == ExpressionType.COMPARE_NOTDISTINCT);
+        }
+        return hjNode;
+    }
+
+    /**
+     * @param expr One side of an equality join clause.
+     * @param tableAliases The tables from one side of the join.
+     * @return true if the expression depends only on the given tables
+     * and has a type that can be used in a hash key.
+     */
+    private static boolean isHashJoinKey(AbstractExpression expr, Collection<String> tableAliases) {
+        if (expr.hasSubquerySubexpression()) {
+            return false;
+        }
+        List<TupleValueExpression> tves = ExpressionUtil.getTupleValueExpressions(expr);
+        if (tves.isEmpty()) {
+            return false;
+        }
+        for (TupleValueExpression tve : tves) {
+            if ( ! tableAliases.contains(tve.getTableAlias())) {
+                return false;
+            }
+        }
+        VoltType type = expr.getValueType();
+        return type != null &&
+               type != VoltType.INVALID &&
+               type != VoltType.NULL &&
+               type != VoltType.GEOGRAPHY &&
+               type != VoltType.GEOGRAPHY_POINT;
+    }
+
     /**
      * A method to filter out single-TVE expressions.
      *
@@ -0,0 +1,62 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.planner;
+
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.NestLoopIndexPlanNode;
+import org.voltdb.plannodes.NestLoopPlanNode;
+import org.voltdb.types.PlanNodeType;
+
+/**
+ * Cost model used to plan ad hoc queries once @Analyze has measured the tables.
+ * The scan nodes' tuple estimates already come from the measured row counts and
+ * column statistics, so on top of the tuples read that the TrivialCostModel adds
+ * up, this model charges the inner side of a nested loop join once per outer row
+ * rather than once per join. That makes the join order that drives the loop from
+ * the smaller side the cheaper one.
+ */
+public class StatisticsCostModel extends TrivialCostModel {
+
+    @Override
+    public double getPlanCost(AbstractPlanNode planGraph, PlanStatistics stats) {
+        return getPlanCost(stats) + getRepeatedInnerCost(planGraph);
+    }
+
+    // the nodes only count one pass over the inner side of a join, add the others
+    private static double getRepeatedInnerCost(AbstractPlanNode node) {
+        double cost = 0;
+        if (node instanceof NestLoopIndexPlanNode) {
+            AbstractPlanNode indexScan = node.getInlinePlanNode(PlanNodeType.INDEXSCAN);
+            long outerTuples = node.getChild(0).getEstimatedOutputTupleCount();
+            if (indexScan != null && outerTuples > 1) {
+                cost += (outerTuples - 1) * (double) indexScan.getEstimatedProcessedTupleCount();
+            }
+        }
+        else if (node instanceof NestLoopPlanNode) {
+            long outerTuples = node.getChild(0).getEstimatedOutputTupleCount();
+            long innerTuples = node.getChild(1).getEstimatedOutputTupleCount();
+            if (outerTuples > 1) {
+                cost += (outerTuples - 1) * (double) innerTuples;
+            }
+        }
+        for (int ii = 0; ii < node.getChildCount(); ii++) {
+            cost += getRepeatedInnerCost(node.getChild(ii));
+        }
+        return cost;
+    }
+}
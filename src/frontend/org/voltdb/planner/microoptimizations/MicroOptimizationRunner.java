@@ -24,25 +24,33 @@ import org.voltdb.planner.CompiledPlan;
 
 public class MicroOptimizationRunner {
 
-    // list all of the micro optimizations here
-    static ArrayList<MicroOptimization> optimizations = new ArrayList<MicroOptimization>();
-    static {
-        // The orders here is important
-        optimizations.add(new PushdownLimits());
-        optimizations.add(new ReplaceWithIndexCounter());
-        optimizations.add(new ReplaceWithIndexLimit());
-
-        // Inline aggregation has to be applied after Index counter and Index Limit with MIN/MAX.
-        optimizations.add(new InlineAggregation());
-
-        // MP ORDER BY Optimization
-        optimizations.add(new InlineOrderByIntoMergeReceive());
-    }
+    // list all of the micro optimizations here.
+    // The optimizations keep per-invocation state, so each planner thread
+    // gets its own set of instances.
+    static final ThreadLocal<ArrayList<MicroOptimization>> optimizations =
+            new ThreadLocal<ArrayList<MicroOptimization>>() {
+        @Override
+        protected ArrayList<MicroOptimization> initialValue() {
+            ArrayList<MicroOptimization> optimizations = new ArrayList<MicroOptimization>();
+            // The orders here is important
+            optimizations.add(new PushdownLimits());
+            optimizations.add(new ReplaceWithIndexCounter());
+            optimizations.add(new ReplaceWithIndexLimit());
+
+            // Inline aggregation has to be applied after Index counter and Index Limit with MIN/MAX.
+            optimizations.add(new InlineAggregation());
+
+            // MP ORDER BY Optimization
+            optimizations.add(new InlineOrderByIntoMergeReceive());
+            return optimizations;
+        }
+    };
 
     public static void applyAll(CompiledPlan plan, AbstractParsedStmt parsedStmt)
     {
-        for (int i = 0; i < optimizations.size(); i++) {
-            MicroOptimization opt = optimizations.get(i);
+        ArrayList<MicroOptimization> threadOptimizations = optimizations.get();
+        for (int i = 0; i < threadOptimizations.size(); i++) {
+            MicroOptimization opt = threadOptimizations.get(i);
             opt.apply(plan, parsedStmt);
         }
     }
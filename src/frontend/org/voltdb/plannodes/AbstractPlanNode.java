@@ -53,10 +53,16 @@ import org.voltdb.types.SortDirectionType;
 public abstract class AbstractPlanNode implements JSONString, Comparable<AbstractPlanNode> {
 
     /**
-     * Internal PlanNodeId counter. Note that this member is static, which means
-     * all PlanNodes will have a unique id
+     * Internal PlanNodeId counter. Note that this member is static and per
+     * thread, which means all PlanNodes of a plan built on one thread will have
+     * a unique id, even when several planner threads are running concurrently.
      */
-    private static int NEXT_PLAN_NODE_ID = 1;
+    private static final ThreadLocal<int[]> NEXT_PLAN_NODE_ID = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[] { 1 };
+        }
+    };
 
     // Keep this flag turned off in production or when testing user-accessible EXPLAIN output or when
     // using EXPLAIN output to validate plans.
@@ -80,7 +86,7 @@ public abstract class AbstractPlanNode implements JSONString, Comparable<Abstrac
      * Reset between plans
      */
     public static final void resetPlanNodeIds() {
-        NEXT_PLAN_NODE_ID = 1;
+        NEXT_PLAN_NODE_ID.get()[0] = 1;
     }
 
     public enum Members {
@@ -125,7 +131,7 @@ public abstract class AbstractPlanNode implements JSONString, Comparable<Abstrac
      * Instantiates a new plan node.
      */
     protected AbstractPlanNode() {
-        m_id = NEXT_PLAN_NODE_ID++;
+        m_id = NEXT_PLAN_NODE_ID.get()[0]++;
     }
 
     public int overrideId(int newId) {
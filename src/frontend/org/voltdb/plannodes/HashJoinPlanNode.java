@@ -0,0 +1,261 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.plannodes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.json_voltpatches.JSONArray;
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.json_voltpatches.JSONStringer;
+import org.voltdb.catalog.Cluster;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Deployment;
+import org.voltdb.catalog.Systemsettings;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.compiler.ScalarValueHints;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.ExpressionUtil;
+import org.voltdb.expressions.TupleValueExpression;
+import org.voltdb.types.PlanNodeType;
+import org.voltdb.types.SortDirectionType;
+
+/**
+ * An equi-join that hashes its inner child on the inner hash expressions
+ * and probes that hash table once per outer row using the outer hash expressions.
+ * The i-th outer hash expression is paired with the i-th inner one.
+ * The complete join predicate is still applied to every hash match, so the hash
+ * expressions only need to narrow the candidates, not to decide the join.
+ */
+public class HashJoinPlanNode extends AbstractJoinPlanNode {
+
+    public enum Members {
+        OUTER_HASH_EXPRESSIONS,
+        INNER_HASH_EXPRESSIONS,
+        NULL_SAFE_HASH_KEYS;
+    }
+
+    // Bytes of a hash map entry in the EE, not counting its key tuple,
+    // as charged by HASH_ENTRY_OVERHEAD in hashjoinexecutor.cpp
+    private static final int HASH_ENTRY_OVERHEAD = 48;
+    // The EE tuple header in front of each key tuple
+    private static final int TUPLE_HEADER_SIZE = 1;
+    // The deployment's default temptables maxsize, for catalogs planned without one
+    private static final long DEFAULT_TEMP_TABLE_MAX_SIZE_MB = 100;
+
+    private List<AbstractExpression> m_outerHashExpressions = new ArrayList<>();
+    private List<AbstractExpression> m_innerHashExpressions = new ArrayList<>();
+    // For each key pair, whether NULL matches NULL (IS NOT DISTINCT FROM) or matches nothing (=)
+    private List<Boolean> m_nullSafeHashKeys = new ArrayList<>();
+
+    public HashJoinPlanNode() {
+        super();
+    }
+
+    @Override
+    public PlanNodeType getPlanNodeType() {
+        return PlanNodeType.HASHJOIN;
+    }
+
+    @Override
+    public void validate() throws Exception {
+        super.validate();
+
+        if (m_outerHashExpressions.isEmpty() ||
+                m_outerHashExpressions.size() != m_innerHashExpressions.size() ||
+                m_outerHashExpressions.size() != m_nullSafeHashKeys.size()) {
+            throw new Exception("ERROR: Hash join requires matching non-empty outer and inner hash expressions");
+        }
+        for (AbstractExpression expr : m_outerHashExpressions) {
+            expr.validate();
+        }
+        for (AbstractExpression expr : m_innerHashExpressions) {
+            expr.validate();
+        }
+    }
+
+    /**
+     * @return the expressions evaluated against each outer row to probe the hash table
+     */
+    public List<AbstractExpression> getOuterHashExpressions() {
+        return m_outerHashExpressions;
+    }
+
+    /**
+     * @return the expressions evaluated against each inner row to build the hash table
+     */
+    public List<AbstractExpression> getInnerHashExpressions() {
+        return m_innerHashExpressions;
+    }
+
+    /**
+     * @return for each pair of hash expressions, true if NULL keys match each other
+     */
+    public List<Boolean> getNullSafeHashKeys() {
+        return m_nullSafeHashKeys;
+    }
+
+    /**
+     * Add a pair of equi-join keys.
+     * @param outerExpr an expression based only on the outer child's columns
+     * @param innerExpr an expression based only on the inner child's columns
+     * @param nullSafe true for an IS NOT DISTINCT FROM comparison, false for =
+     */
+    public void addHashExpressions(AbstractExpression outerExpr, AbstractExpression innerExpr,
+                                   boolean nullSafe) {
+        assert(outerExpr.getValueType() == innerExpr.getValueType());
+        m_outerHashExpressions.add((AbstractExpression) outerExpr.clone());
+        m_innerHashExpressions.add((AbstractExpression) innerExpr.clone());
+        m_nullSafeHashKeys.add(nullSafe);
+    }
+
+    @Override
+    public void resolveColumnIndexes()
+    {
+        super.resolveColumnIndexes();
+
+        final NodeSchema outer_schema = m_children.get(0).getOutputSchema();
+        final NodeSchema inner_schema = m_children.get(1).getOutputSchema();
+        // Each list of hash expressions is evaluated against a single tuple
+        // from its own side of the join, so all their TVEs are resolved as table 0.
+        resolveHashExpressions(m_outerHashExpressions, outer_schema);
+        resolveHashExpressions(m_innerHashExpressions, inner_schema);
+    }
+
+    private static void resolveHashExpressions(List<AbstractExpression> exprs, NodeSchema schema) {
+        for (AbstractExpression expr : exprs) {
+            for (TupleValueExpression tve : ExpressionUtil.getTupleValueExpressions(expr)) {
+                int index = tve.resolveColumnIndexesUsingSchema(schema);
+                if (index == -1) {
+                    throw new RuntimeException("Unable to resolve column index for hash join TVE: " +
+                                               tve.toString());
+                }
+                tve.setColumnIndex(index);
+                tve.setTableIndex(0);
+            }
+        }
+    }
+
+    @Override
+    public void computeCostEstimates(long childOutputTupleCountEstimate,
+                                     Cluster cluster,
+                                     Database db,
+                                     DatabaseEstimates estimates,
+                                     ScalarValueHints[] paramHints)
+    {
+        // The inner child is read once to build the hash table and each outer row
+        // probes it once. Unlike the NLJ, no outer row rescans the inner result.
+        m_estimatedOutputTupleCount = childOutputTupleCountEstimate;
+        assert(m_children.size() == 2);
+        long outerTuples = m_children.get(0).m_estimatedOutputTupleCount;
+        long innerTuples = m_children.get(1).m_estimatedOutputTupleCount;
+        m_estimatedProcessedTupleCount = discountEstimatedProcessedTupleCount(m_children.get(0)) +
+                m_children.get(1).m_estimatedProcessedTupleCount;
+        // The hash table is charged to the temp table memory limit and the query
+        // fails if it does not fit. Price such a join as if every outer row rescanned
+        // the inner result, so any join that streams the inner side wins instead.
+        if (innerTuples * getEstimatedHashEntrySize() > getTempTableMemoryLimit(cluster)) {
+            m_estimatedProcessedTupleCount += outerTuples * innerTuples;
+        }
+    }
+
+    /**
+     * The bytes the EE allocates per hashed inner row: a map entry, plus a key
+     * tuple, assuming no two rows share a key.
+     */
+    private int getEstimatedHashEntrySize() {
+        int size = HASH_ENTRY_OVERHEAD + TUPLE_HEADER_SIZE;
+        for (AbstractExpression expr : m_innerHashExpressions) {
+            size += expr.getValueSize();
+        }
+        return size;
+    }
+
+    private static long getTempTableMemoryLimit(Cluster cluster) {
+        long limitMB = DEFAULT_TEMP_TABLE_MAX_SIZE_MB;
+        if (cluster != null) {
+            Deployment deployment = cluster.getDeployment().get("deployment");
+            if (deployment != null) {
+                Systemsettings settings = deployment.getSystemsettings().get("systemsettings");
+                if (settings != null && settings.getTemptablemaxsize() > 0) {
+                    limitMB = settings.getTemptablemaxsize();
+                }
+            }
+        }
+        return limitMB * 1024 * 1024;
+    }
+
+    @Override
+    public void toJSONString(JSONStringer stringer) throws JSONException
+    {
+        super.toJSONString(stringer);
+        stringer.key(Members.OUTER_HASH_EXPRESSIONS.name()).array();
+        for (AbstractExpression ae : m_outerHashExpressions) {
+            stringer.value(ae);
+        }
+        stringer.endArray();
+        stringer.key(Members.INNER_HASH_EXPRESSIONS.name()).array();
+        for (AbstractExpression ae : m_innerHashExpressions) {
+            stringer.value(ae);
+        }
+        stringer.endArray();
+        stringer.key(Members.NULL_SAFE_HASH_KEYS.name()).array();
+        for (Boolean nullSafe : m_nullSafeHashKeys) {
+            stringer.value(nullSafe.booleanValue());
+        }
+        stringer.endArray();
+    }
+
+    @Override
+    public void loadFromJSONObject(JSONObject jobj, Database db) throws JSONException
+    {
+        super.loadFromJSONObject(jobj, db);
+        m_outerHashExpressions.clear();
+        m_innerHashExpressions.clear();
+        AbstractExpression.loadFromJSONArrayChild(m_outerHashExpressions, jobj,
+                Members.OUTER_HASH_EXPRESSIONS.name(), null);
+        AbstractExpression.loadFromJSONArrayChild(m_innerHashExpressions, jobj,
+                Members.INNER_HASH_EXPRESSIONS.name(), null);
+        m_nullSafeHashKeys.clear();
+        JSONArray jarray = jobj.getJSONArray(Members.NULL_SAFE_HASH_KEYS.name());
+        for (int ii = 0; ii < jarray.length(); ii++) {
+            m_nullSafeHashKeys.add(jarray.getBoolean(ii));
+        }
+    }
+
+    @Override
+    public void findAllExpressionsOfClass(Class< ? extends AbstractExpression> aeClass, Set<AbstractExpression> collected) {
+        super.findAllExpressionsOfClass(aeClass, collected);
+        for (AbstractExpression ae : m_outerHashExpressions) {
+            collected.addAll(ae.findAllSubexpressionsOfClass(aeClass));
+        }
+        for (AbstractExpression ae : m_innerHashExpressions) {
+            collected.addAll(ae.findAllSubexpressionsOfClass(aeClass));
+        }
+    }
+
+    @Override
+    protected String explainPlanForNode(String indent) {
+        return "HASH " + this.m_joinType.toString() + " JOIN" +
+                (m_sortDirection == SortDirectionType.INVALID ? "" : " (" + m_sortDirection + ")") +
+                explainFilters(indent);
+    }
+
+}
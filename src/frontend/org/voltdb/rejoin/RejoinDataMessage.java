@@ -22,32 +22,61 @@ import java.nio.ByteBuffer;
 
 import org.voltcore.messaging.Subject;
 import org.voltcore.messaging.VoltMessage;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.messaging.VoltDbMessageFactory;
 
 /**
+ * A block of compressed stream snapshot data.
  *
+ * The sender hands over the pooled direct buffer the block was compressed into, so the
+ * block is only copied once, into the network buffer. The message owns that buffer and
+ * gives it back once it has been flattened, which the network layer does lazily, or when
+ * a receiver on the same host calls {@link #discard()}. The receiving side reads the
+ * block into a buffer from the DBBPool pool that it decompresses from directly and has
+ * to give back with {@link #discard()}.
  */
 public class RejoinDataMessage extends VoltMessage {
     private long m_targetId = -1;
     // compressed snapshot data
-    private byte[] m_data = null;
+    private ByteBuffer m_data = null;
+    // pooled buffer holding m_data, released when flattened or discarded
+    private BBContainer m_container = null;
 
     public RejoinDataMessage() {
         m_subject = Subject.DEFAULT.getId();
     }
 
-    public RejoinDataMessage(long targetId, byte[] data) {
+    /**
+     * @param data The compressed data, positioned at its start. The message takes
+     * ownership of the container.
+     */
+    public RejoinDataMessage(long targetId, BBContainer data) {
         m_subject = Subject.DEFAULT.getId();
         m_targetId = targetId;
-        m_data = data;
+        m_container = data;
+        m_data = data.b().duplicate();
     }
 
     public long getTargetId() {
         return m_targetId;
     }
 
-    public byte[] getData() {
-        return m_data;
+    /**
+     * The compressed data, positioned at its start. Valid until {@link #discard()}
+     */
+    public ByteBuffer getData() {
+        return m_data.duplicate();
+    }
+
+    /**
+     * Release the pooled buffer of the message. Idempotent.
+     */
+    public synchronized void discard() {
+        if (m_container != null) {
+            m_container.discard();
+            m_container = null;
+        }
     }
 
     @Override
@@ -56,7 +85,7 @@ public class RejoinDataMessage extends VoltMessage {
         msgsize +=
                 8 + // m_targetId
                 4 + // data length
-                m_data.length;
+                m_data.remaining();
         return msgsize;
     }
 
@@ -64,16 +93,23 @@ public class RejoinDataMessage extends VoltMessage {
     protected void initFromBuffer(ByteBuffer buf) throws IOException {
         m_targetId = buf.getLong();
         int len = buf.getInt();
-        m_data = new byte[len];
-        buf.get(m_data);
+        m_container = DBBPool.allocateDirectAndPool(len);
+        ByteBuffer data = buf.duplicate();
+        data.limit(data.position() + len);
+        m_container.b().put(data);
+        m_container.b().flip();
+        buf.position(buf.position() + len);
+        m_data = m_container.b();
     }
 
     @Override
     public void flattenToBuffer(ByteBuffer buf) throws IOException {
         buf.put(VoltDbMessageFactory.REJOIN_DATA_ID);
         buf.putLong(m_targetId);
-        buf.putInt(m_data.length);
-        buf.put(m_data);
+        buf.putInt(m_data.remaining());
+        buf.put(m_data.duplicate());
         buf.limit(buf.position());
+        // the data is in the network buffer now, nothing else reads this message
+        discard();
     }
 }
@@ -18,6 +18,7 @@
 package org.voltdb.rejoin;
 
 import org.voltcore.messaging.VoltMessage;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.exceptions.SerializableException;
 
 /**
@@ -30,7 +31,11 @@ public abstract class StreamSnapshotBase {
     public static final int contentOffset = tableIdOffset + 4;
 
     public static interface MessageFactory {
-        public VoltMessage makeDataMessage(long targetId, byte[] data);
+        /**
+         * Wrap compressed data in a message. The message takes ownership of the
+         * container and releases it once the data is serialized or delivered.
+         */
+        public VoltMessage makeDataMessage(long targetId, BBContainer data);
 
         public boolean isAckEOS(VoltMessage msg);
         public long getAckTargetId(VoltMessage msg);
@@ -40,7 +45,7 @@ public abstract class StreamSnapshotBase {
 
     public static class DefaultMessageFactory implements MessageFactory {
         @Override
-        public VoltMessage makeDataMessage(long targetId, byte[] data)
+        public VoltMessage makeDataMessage(long targetId, BBContainer data)
         {
             return new RejoinDataMessage(targetId, data);
         }
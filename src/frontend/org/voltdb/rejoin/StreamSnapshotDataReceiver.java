@@ -93,7 +93,7 @@ implements Runnable {
             while (true) {
                 BBContainer container = null;
                 BBContainer compressionBufferC = null;
-                ByteBuffer compressionBuffer = null;
+                RejoinDataMessage dataMsg = null;
                 boolean success = false;
 
                 try {
@@ -104,8 +104,8 @@ implements Runnable {
                     }
 
                     assert(msg instanceof RejoinDataMessage);
-                    RejoinDataMessage dataMsg = (RejoinDataMessage) msg;
-                    byte[] data = dataMsg.getData();
+                    dataMsg = (RejoinDataMessage) msg;
+                    ByteBuffer data = dataMsg.getData();
 
                     // Only grab the buffer from the pool after receiving a message from the
                     // mailbox. If the buffer is grabbed before receiving the message,
@@ -115,15 +115,20 @@ implements Runnable {
                     ByteBuffer messageBuffer = container.b();
                     messageBuffer.clear();
 
-                    compressionBufferC = compressionBufferQueue.take();
-                    compressionBuffer = compressionBufferC.b();
-                    compressionBuffer.clear();
-                    compressionBuffer.limit(data.length);
-                    compressionBuffer.put(data);
-                    compressionBuffer.flip();
+                    // A message from the network arrives in a direct buffer that can be
+                    // decompressed straight into the block handed to the EE, others are
+                    // staged in a compression buffer from the pool first.
+                    if (!data.isDirect()) {
+                        compressionBufferC = compressionBufferQueue.take();
+                        ByteBuffer compressionBuffer = compressionBufferC.b();
+                        compressionBuffer.clear();
+                        compressionBuffer.put(data);
+                        compressionBuffer.flip();
+                        data = compressionBuffer;
+                    }
                     int uncompressedSize =
                             CompressionService.decompressBuffer(
-                                    compressionBuffer,
+                                    data,
                                     messageBuffer);
                     messageBuffer.limit(uncompressedSize);
                     m_queue.offer(Pair.of(dataMsg.m_sourceHSId, Pair.of(dataMsg.getTargetId(), container)));
@@ -132,9 +137,12 @@ implements Runnable {
                     if (!success && container != null) {
                         container.discard();
                     }
-                    if (compressionBuffer != null) {
+                    if (compressionBufferC != null) {
                         compressionBufferC.discard();
                     }
+                    if (dataMsg != null) {
+                        dataMsg.discard();
+                    }
                 }
             }
         } catch (IOException e) {
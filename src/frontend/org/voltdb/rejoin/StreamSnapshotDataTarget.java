@@ -19,12 +19,15 @@ package org.voltdb.rejoin;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -128,6 +131,9 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
      */
     public static class SendWork {
         BBContainer m_message;
+        // m_message compressed into a pooled buffer, until it is handed to the message sent
+        BBContainer m_compressed;
+        Future<?> m_compression;
         final long m_targetId;
         final long m_destHSId;
         final long m_ts;
@@ -169,52 +175,87 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
                 m_message.discard();
                 m_message = null;
             }
+            if (m_compressed != null) {
+                m_compressed.discard();
+                m_compressed = null;
+            }
         }
 
         /**
-         * Compress the data in the BBContainer provided, then package it up in
-         * a RejoinDataMessage instance, and finally hand it off to the messaging
-         * subsystem.
+         * Start compressing the data on the compression service so that it is
+         * ready by the time the sender gets to this work.
          */
-        protected int send(Mailbox mb, MessageFactory msgFactory, BBContainer message) throws IOException {
-            final ByteBuffer messageBuffer = message.b();
-            if (messageBuffer.isDirect()) {
-                byte[] data = CompressionService.compressBuffer(messageBuffer);
-                mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, data));
-
-                if (rejoinLog.isTraceEnabled()) {
-                    rejoinLog.trace("Sending direct buffer");
+        void startCompression() {
+            if (m_isEmpty) {
+                return;
+            }
+            m_compression = CompressionService.submitCompressionTask(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    compress();
+                    return null;
                 }
+            });
+        }
 
-                return data.length;
-            } else {
-                byte compressedBytes[] =
-                    CompressionService.compressBytes(
-                            messageBuffer.array(), messageBuffer.position(),
-                            messageBuffer.remaining());
-
-                mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, compressedBytes));
+        private synchronized void compress() throws IOException {
+            // this work has already been discarded
+            if (m_message == null) {
+                return;
+            }
+            m_compressed = CompressionService.compressBufferToPooled(m_message.b());
+        }
 
-                if (rejoinLog.isTraceEnabled()) {
-                    rejoinLog.trace("Sending heap buffer");
-                }
+        /**
+         * Package the compressed data up in a RejoinDataMessage instance and hand
+         * it off to the messaging subsystem. The message takes over the compressed
+         * buffer, as the network layer serializes it lazily and may do so after
+         * this work has been discarded.
+         */
+        protected int send(Mailbox mb, MessageFactory msgFactory, BBContainer compressed) throws IOException {
+            final int size = compressed.b().remaining();
+            mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, compressed));
 
-                return compressedBytes.length;
+            if (rejoinLog.isTraceEnabled()) {
+                rejoinLog.trace("Sending compressed block of " + size + " bytes");
             }
+
+            return size;
         }
 
-        public synchronized int doWork(Mailbox mb, MessageFactory msgFactory) throws Exception {
-            // this work has already been discarded
-            if (m_message == null) {
-                return 0;
+        public int doWork(Mailbox mb, MessageFactory msgFactory) throws Exception {
+            Throwable compressionFailure = null;
+            if (m_compression != null) {
+                // wait outside of the lock, compress() needs it
+                try {
+                    m_compression.get();
+                } catch (ExecutionException e) {
+                    compressionFailure = e.getCause();
+                }
             }
 
-            try {
-                return send(mb, msgFactory, m_message);
-            } finally {
-                // Buffers are only discarded after they are acked. Discarding them here would cause the sender to
-                // generate too much work for the receiver.
-                m_future.set(true);
+            synchronized (this) {
+                // this work has already been discarded
+                if (m_message == null) {
+                    return 0;
+                }
+
+                try {
+                    if (compressionFailure != null) {
+                        throw new IOException("Failed to compress a stream snapshot block", compressionFailure);
+                    }
+                    if (m_compressed == null) {
+                        // compression was never started, do it here
+                        compress();
+                    }
+                    final BBContainer compressed = m_compressed;
+                    m_compressed = null;
+                    return send(mb, msgFactory, compressed);
+                } finally {
+                    // The uncompressed buffer is only discarded after it is acked. Discarding it here would cause the
+                    // sender to generate too much work for the receiver.
+                    m_future.set(true);
+                }
             }
         }
     }
@@ -325,9 +366,16 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
     }
 
     /**
-     * Thread that runs send work (sending snapshot blocks). One per node
+     * Thread that runs send work (sending snapshot blocks). One per node.
+     *
+     * Blocks are compressed on the compression service ahead of the sender, up to
+     * REJOIN_COMPRESSION_WINDOW blocks at a time, and sent in the order they were
+     * offered once their compression is done.
      */
     public static class SnapshotSender implements Runnable {
+        static final int COMPRESSION_WINDOW = Math.max(1,
+                Integer.getInteger("REJOIN_COMPRESSION_WINDOW", Math.max(2, CoreUtils.availableProcessors())));
+
         private final Mailbox m_mb;
         private final MessageFactory m_msgFactory;
         private final LinkedBlockingQueue<SendWork> m_workQueue;
@@ -369,17 +417,31 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         public void run() {
             rejoinLog.trace("Starting stream sender thread");
 
+            // works being compressed, in the order they have to be sent
+            final ArrayDeque<SendWork> inFlight = new ArrayDeque<SendWork>();
             while (true) {
                 SendWork work;
 
                 try {
-                    rejoinLog.trace("Blocking on sending work queue");
-                    work = m_workQueue.poll(10, TimeUnit.MINUTES);
+                    if (inFlight.isEmpty()) {
+                        rejoinLog.trace("Blocking on sending work queue");
+                        work = m_workQueue.poll(10, TimeUnit.MINUTES);
+
+                        if (work == null) {
+                            rejoinLog.warn("No stream snapshot send work was produced in the past 10 minutes");
+                            break;
+                        }
+                        work.startCompression();
+                        inFlight.add(work);
+                    }
+                    // keep the window full while waiting for the oldest work
+                    while (inFlight.size() < COMPRESSION_WINDOW && (work = m_workQueue.poll()) != null) {
+                        work.startCompression();
+                        inFlight.add(work);
+                    }
 
-                    if (work == null) {
-                        rejoinLog.warn("No stream snapshot send work was produced in the past 10 minutes");
-                        break;
-                    } else if (work.m_isEmpty) {
+                    work = inFlight.poll();
+                    if (work.m_isEmpty) {
                         // Empty work indicates the end of the queue.
                         // The sender is shared by multiple data targets, each of them will
                         // send an end-of-queue work, must wait until all end-of-queue works
@@ -0,0 +1,705 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltdb.sysprocs;
+
+import static org.voltdb.sysprocs.SysProcFragmentId.PF_analyzeInstall;
+import static org.voltdb.sysprocs.SysProcFragmentId.PF_analyzeInstallAggregate;
+import static org.voltdb.sysprocs.SysProcFragmentId.PF_analyzePartitions;
+import static org.voltdb.sysprocs.SysProcFragmentId.PF_analyzePartitionsAggregate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.zookeeper_voltpatches.KeeperException;
+import org.apache.zookeeper_voltpatches.ZooKeeper;
+import org.json_voltpatches.JSONArray;
+import org.json_voltpatches.JSONException;
+import org.voltcore.logging.VoltLogger;
+import org.voltdb.DependencyPair;
+import org.voltdb.ParameterSet;
+import org.voltdb.ProcInfo;
+import org.voltdb.SystemProcedureExecutionContext;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltSystemProcedure;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.VoltZK;
+import org.voltdb.catalog.Column;
+import org.voltdb.catalog.ColumnRef;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Index;
+import org.voltdb.catalog.Table;
+import org.voltdb.common.Constants;
+import org.voltdb.compiler.AdHocPlannedStatement;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.compiler.DatabaseEstimates.ColumnEstimates;
+import org.voltdb.compiler.DatabaseEstimates.TableEstimates;
+import org.voltdb.compiler.PlannerTool;
+import org.voltdb.dtxn.DtxnConstants;
+import org.voltdb.dtxn.TransactionState;
+import org.voltdb.planner.ActivePlanRepository;
+import org.voltdb.types.TimestampType;
+import org.voltdb.utils.CatalogUtil;
+import org.voltdb.utils.VoltTableUtil;
+
+/**
+ * Measures the row count of every table along with the distinct value count and an
+ * equi-depth histogram of every column that leads or is part of a column index, and
+ * makes the ad hoc planner cost plans with them instead of its static guesses.
+ *
+ * Partitioned tables are measured by every site on its own partition, with queries
+ * planned once for a single partition and run by a fragment on each site, and the
+ * per-partition results are merged here. Replicated tables are measured with ordinary
+ * queries in this transaction. A column is read once, as its distinct values and their
+ * counts in order a page at a time, which is a single ordered scan of the index the
+ * column leads; a column that only follows in an index costs a scan of the table per
+ * page, and is read for at most ANALYZE_MAX_PAGES pages. The analysis holds up other
+ * multi-partition work while it runs. The statistics are kept in
+ * ZooKeeper for hosts that join later and are installed on every host at the end of
+ * the transaction. Plans already cached or
+ * compiled into the catalog are not affected until they are planned again.
+ */
+@ProcInfo(singlePartition = false)
+public class Analyze extends VoltSystemProcedure {
+
+    private static final VoltLogger log = new VoltLogger("HOST");
+
+    static final int HISTOGRAM_BUCKETS =
+            Math.min(100, Math.max(1, Integer.getInteger("ANALYZE_HISTOGRAM_BUCKETS", 10)));
+
+    // distinct values read per statement, and statements per column
+    static final int PAGE_SIZE = Math.max(1, Integer.getInteger("ANALYZE_PAGE_SIZE", 1000));
+    static final int MAX_PAGES = Math.max(1, Integer.getInteger("ANALYZE_MAX_PAGES", 100));
+
+    private static final int DEP_analyzeInstall = (int)
+            PF_analyzeInstall | DtxnConstants.MULTIPARTITION_DEPENDENCY;
+    private static final int DEP_analyzeInstallAggregate = (int)
+            PF_analyzeInstallAggregate;
+    private static final int DEP_analyzePartitions = (int)
+            PF_analyzePartitions | DtxnConstants.MULTIPARTITION_DEPENDENCY;
+    private static final int DEP_analyzePartitionsAggregate = (int)
+            PF_analyzePartitionsAggregate;
+
+    // What a statement run on each partition measures
+    static final String STAT_ROWS = "ROWS";
+    static final String STAT_VALUES = "VALUES";
+    static final String STAT_NEXT_VALUES = "NEXT_VALUES";
+
+    private static final ColumnInfo[] PARTITION_STATS_SCHEMA = new ColumnInfo[] {
+        new ColumnInfo("PARTITION_ID", VoltType.INTEGER),
+        new ColumnInfo("TABLE_NAME", VoltType.STRING),
+        new ColumnInfo("COLUMN_NAME", VoltType.STRING),
+        new ColumnInfo("STAT", VoltType.STRING),
+        new ColumnInfo("VALUE_COUNT", VoltType.BIGINT),
+        new ColumnInfo("DISTINCT_COUNT", VoltType.BIGINT),
+        new ColumnInfo("HISTOGRAM", VoltType.STRING)
+    };
+
+    @Override
+    public void init() {
+        registerPlanFragment(PF_analyzeInstall);
+        registerPlanFragment(PF_analyzeInstallAggregate);
+        registerPlanFragment(PF_analyzePartitions);
+        registerPlanFragment(PF_analyzePartitionsAggregate);
+    }
+
+    @Override
+    public DependencyPair executePlanFragment(
+            Map<Integer, List<VoltTable>> dependencies, long fragmentId,
+            ParameterSet params, SystemProcedureExecutionContext context) {
+
+        if (fragmentId == PF_analyzePartitions) {
+
+            Object[] args = params.toArray();
+            VoltTable result = analyzePartition(context,
+                    (String[]) args[0], (String[]) args[1], (String[]) args[2],
+                    (String[]) args[3], (byte[][]) args[4], (byte[][]) args[5]);
+            return new DependencyPair(DEP_analyzePartitions, result);
+
+        } else if (fragmentId == PF_analyzePartitionsAggregate) {
+
+            VoltTable result = VoltTableUtil.unionTables(dependencies.get(DEP_analyzePartitions));
+            return new DependencyPair(DEP_analyzePartitionsAggregate, result);
+
+        } else if (fragmentId == PF_analyzeInstall) {
+
+            String json = (String) params.toArray()[0];
+            VoltTable result = new VoltTable(VoltSystemProcedure.STATUS_SCHEMA);
+            try {
+                installStatistics(json);
+                result.addRow(VoltSystemProcedure.STATUS_OK);
+            } catch (JSONException e) {
+                log.error("Failed to install table statistics", e);
+                result.addRow(VoltSystemProcedure.STATUS_FAILURE);
+            }
+            return new DependencyPair(DEP_analyzeInstall, result);
+
+        } else if (fragmentId == PF_analyzeInstallAggregate) {
+
+            VoltTable result = VoltTableUtil.unionTables(dependencies.get(DEP_analyzeInstall));
+            return new DependencyPair(DEP_analyzeInstallAggregate, result);
+
+        } else {
+            VoltDB.crashLocalVoltDB(
+                    "Received unrecognized plan fragment id " + fragmentId + " in Analyze",
+                    false,
+                    null);
+        }
+        throw new RuntimeException("Should not reach this code");
+    }
+
+    // statistics last installed on this host, guarded by the class
+    private static String s_installedJSON = null;
+
+    // every site of a host delivers the same statistics, only the first one installs them
+    private static synchronized void installStatistics(String json) throws JSONException {
+        if (json.equals(s_installedJSON)) {
+            return;
+        }
+        PlannerTool.setAnalyzedEstimates(DatabaseEstimates.fromJSONString(json));
+        s_installedJSON = json;
+    }
+
+    /**
+     * Install the statistics of the last @Analyze, if there was one, on a host
+     * that is starting up.
+     */
+    public static void restoreStatistics(ZooKeeper zk) {
+        try {
+            byte[] data = zk.getData(VoltZK.table_statistics, false, null);
+            if (data != null && data.length > 0) {
+                installStatistics(new String(data, Constants.UTF8ENCODING));
+                log.info("Restored the table statistics of the last @Analyze");
+            }
+        } catch (KeeperException.NoNodeException e) {
+            // never analyzed
+        } catch (KeeperException | InterruptedException | JSONException e) {
+            log.warn("Failed to restore table statistics, planning with default estimates", e);
+        }
+    }
+
+    public VoltTable[] run(SystemProcedureExecutionContext ctx) throws Exception {
+        final Database db = ctx.getDatabase();
+
+        VoltTable summary = new VoltTable(
+                new ColumnInfo("TABLE_NAME", VoltType.STRING),
+                new ColumnInfo("ROW_COUNT", VoltType.BIGINT),
+                new ColumnInfo("COLUMNS_ANALYZED", VoltType.INTEGER));
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        List<Table> partitionedTables = new ArrayList<Table>();
+        for (Table table : db.getTables()) {
+            if (CatalogUtil.isTableExportOnly(db, table)) {
+                continue;
+            }
+            if ( ! table.getIsreplicated()) {
+                partitionedTables.add(table);
+                continue;
+            }
+            voltQueue("SELECT COUNT(*) FROM " + table.getTypeName() + ";");
+            long rows = voltExecuteSQL()[0].asScalarLong();
+            TableEstimates tableEstimates = analyzeReplicatedTable(table, rows);
+            estimates.putEstimatesForTable(table.getTypeName(), tableEstimates);
+            summary.addRow(table.getTypeName(), rows, tableEstimates.columnEstimates.size());
+        }
+
+        if ( ! partitionedTables.isEmpty()) {
+            VoltTable[] results = executeSysProcPlanFragments(
+                    createPartitionFragments(partitionedTables), DEP_analyzePartitionsAggregate);
+            Map<String, Long> rowCounts = new TreeMap<String, Long>();
+            Map<String, TableEstimates> merged = mergePartitionStatistics(results[0], rowCounts);
+            for (Table table : partitionedTables) {
+                TableEstimates tableEstimates = merged.get(table.getTypeName());
+                estimates.putEstimatesForTable(table.getTypeName(), tableEstimates);
+                summary.addRow(table.getTypeName(), rowCounts.get(table.getTypeName()),
+                               tableEstimates.columnEstimates.size());
+            }
+        }
+
+        String json = estimates.toJSONString();
+        ZooKeeper zk = VoltDB.instance().getHostMessenger().getZK();
+        zk.setData(VoltZK.table_statistics, json.getBytes(Constants.UTF8ENCODING), -1);
+
+        VoltTable[] results = executeSysProcPlanFragments(
+                createInstallFragments(json), DEP_analyzeInstallAggregate);
+        while (results[0].advanceRow()) {
+            if (results[0].getLong(0) != STATUS_OK) {
+                throw new VoltAbortException("Failed to install the table statistics on every host");
+            }
+        }
+        log.info("Analyzed " + estimates.getTableCount() + " tables");
+        return new VoltTable[] { summary };
+    }
+
+    private void voltQueue(String sql) {
+        m_runner.voltQueueSQL(sql);
+    }
+
+    /**
+     * Gather the column statistics of a replicated table, which every site holds in full.
+     */
+    private TableEstimates analyzeReplicatedTable(Table table, long rows) {
+        final String tableName = table.getTypeName();
+
+        TableEstimates tableEstimates = new TableEstimates();
+        tableEstimates.analyzed = true;
+        tableEstimates.maxTuples = rows;
+        tableEstimates.minTuples = rows;
+        if (rows == 0) {
+            return tableEstimates;
+        }
+
+        for (Column column : getIndexedColumns(table).values()) {
+            final String columnName = column.getTypeName();
+            ColumnScan scan = new ColumnScan();
+            m_runner.voltQueueSQL(valuesSQL(tableName, columnName), PAGE_SIZE);
+            while (scan.addPage(voltExecuteSQL()[0])) {
+                m_runner.voltQueueSQL(nextValuesSQL(tableName, columnName), scan.lastValue(), PAGE_SIZE);
+            }
+
+            ColumnEstimates columnEstimates = new ColumnEstimates();
+            columnEstimates.distinctValues = scan.distinctValues(rows);
+            columnEstimates.histogram = scan.histogram();
+            tableEstimates.columnEstimates.put(columnName, columnEstimates);
+        }
+        return tableEstimates;
+    }
+
+    private static String rowsSQL(String tableName) {
+        return "SELECT COUNT(*) FROM " + tableName + ";";
+    }
+
+    // reads the first page of the column's distinct values and their counts, in order
+    private static String valuesSQL(String tableName, String columnName) {
+        return "SELECT " + columnName + ", COUNT(*) FROM " + tableName +
+               " WHERE " + columnName + " IS NOT NULL GROUP BY " + columnName +
+               " ORDER BY " + columnName + " LIMIT ?;";
+    }
+
+    // reads the page of the column's distinct values that follows the given value
+    private static String nextValuesSQL(String tableName, String columnName) {
+        return "SELECT " + columnName + ", COUNT(*) FROM " + tableName +
+               " WHERE " + columnName + " > ? GROUP BY " + columnName +
+               " ORDER BY " + columnName + " LIMIT ?;";
+    }
+
+    /**
+     * The ranks of the bucket bounds of an equi-depth histogram of the given
+     * number of non-null values.
+     */
+    private static long[] histogramRanks(long nonNull) {
+        final int buckets = (int) Math.min(HISTOGRAM_BUCKETS, nonNull);
+        long[] ranks = new long[buckets + 1];
+        for (int ii = 0; ii <= buckets; ii++) {
+            ranks[ii] = (nonNull - 1) * ii / buckets;
+        }
+        return ranks;
+    }
+
+    /**
+     * What has been read of one column's distinct values and their counts. The distinct
+     * count and the bucket bounds of the histogram are worked out from the counts, so
+     * the column only has to be read once. When the column has more distinct values
+     * than MAX_PAGES pages hold, the distinct count is extrapolated from the values read
+     * and there is no histogram.
+     */
+    static class ColumnScan {
+        private final List<Double> m_values = new ArrayList<Double>();
+        private final List<Long> m_counts = new ArrayList<Long>();
+        private boolean m_histogram = false;
+        private Object m_lastValue = null;
+        private int m_pages = 0;
+        private long m_nonNull = 0;
+        private long m_distinct = 0;
+        private boolean m_complete = false;
+
+        /**
+         * Add the next page of values and their counts.
+         * @return true if the next page should be read
+         */
+        boolean addPage(VoltTable page) {
+            final VoltType type = page.getColumnType(0);
+            m_histogram = isHistogramType(type);
+            while (page.advanceRow()) {
+                m_lastValue = page.get(0, type);
+                final long count = page.getLong(1);
+                m_nonNull += count;
+                m_distinct++;
+                if (m_histogram) {
+                    m_values.add(toDouble(m_lastValue));
+                    m_counts.add(count);
+                }
+            }
+            m_pages++;
+            if (page.getRowCount() < PAGE_SIZE) {
+                m_complete = true;
+                return false;
+            }
+            return m_pages < MAX_PAGES;
+        }
+
+        Object lastValue() {
+            return m_lastValue;
+        }
+
+        boolean isComplete() {
+            return m_complete;
+        }
+
+        long nonNullValues() {
+            return m_nonNull;
+        }
+
+        /**
+         * The distinct value count of a column of the given number of rows.
+         */
+        long distinctValues(long rows) {
+            if (m_complete || m_nonNull == 0) {
+                return m_distinct;
+            }
+            return Math.max(m_distinct, (long) ((double) m_distinct * rows / m_nonNull));
+        }
+
+        /**
+         * The bucket bounds of an equi-depth histogram of the column, or none if the
+         * column has no values, isn't numeric or wasn't read to the end.
+         */
+        double[] histogram() {
+            if ( ! m_histogram || ! m_complete || m_nonNull == 0) {
+                return new double[0];
+            }
+            long[] ranks = histogramRanks(m_nonNull);
+            double[] histogram = new double[ranks.length];
+            int value = 0;
+            long upTo = m_counts.get(0);
+            for (int ii = 0; ii < ranks.length; ii++) {
+                while (ranks[ii] >= upTo) {
+                    value++;
+                    upTo += m_counts.get(value);
+                }
+                histogram[ii] = m_values.get(value);
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * Plan the statements that measure the partitioned tables, once and for a single
+     * partition, to be run by every site on its own partition.
+     */
+    private SynthesizedPlanFragment[] createPartitionFragments(List<Table> tables) {
+        List<String> tableNames = new ArrayList<String>();
+        List<String> columnNames = new ArrayList<String>();
+        List<String> stats = new ArrayList<String>();
+        List<String> sqlTexts = new ArrayList<String>();
+        List<byte[]> planHashes = new ArrayList<byte[]>();
+        List<byte[]> plans = new ArrayList<byte[]>();
+        for (Table table : tables) {
+            final String tableName = table.getTypeName();
+            List<String[]> statements = new ArrayList<String[]>();
+            statements.add(new String[] { "", STAT_ROWS, rowsSQL(tableName) });
+            for (Column column : getIndexedColumns(table).values()) {
+                final String columnName = column.getTypeName();
+                statements.add(new String[] { columnName, STAT_VALUES, valuesSQL(tableName, columnName) });
+                statements.add(new String[] { columnName, STAT_NEXT_VALUES, nextValuesSQL(tableName, columnName) });
+            }
+            for (String[] statement : statements) {
+                AdHocPlannedStatement planned;
+                if (statement[1].equals(STAT_VALUES)) {
+                    planned = m_runner.planSinglePartitionSQL(statement[2], PAGE_SIZE);
+                }
+                else if (statement[1].equals(STAT_NEXT_VALUES)) {
+                    planned = m_runner.planSinglePartitionSQL(statement[2], 0L, PAGE_SIZE);
+                }
+                else {
+                    planned = m_runner.planSinglePartitionSQL(statement[2]);
+                }
+                if (planned.hasExtractedParams()) {
+                    throw new VoltAbortException("Unexpected constants in statistics query " + statement[2]);
+                }
+                tableNames.add(tableName);
+                columnNames.add(statement[0]);
+                stats.add(statement[1]);
+                sqlTexts.add(statement[2]);
+                planHashes.add(planned.core.aggregatorHash);
+                plans.add(planned.core.aggregatorFragment);
+            }
+        }
+
+        SynthesizedPlanFragment pfs[] = new SynthesizedPlanFragment[2];
+
+        pfs[0] = new SynthesizedPlanFragment();
+        pfs[0].fragmentId = PF_analyzePartitions;
+        pfs[0].outputDepId = DEP_analyzePartitions;
+        pfs[0].inputDepIds = new int[]{};
+        pfs[0].multipartition = true;
+        pfs[0].parameters = ParameterSet.fromArrayNoCopy(new Object[] {
+                tableNames.toArray(new String[0]),
+                columnNames.toArray(new String[0]),
+                stats.toArray(new String[0]),
+                sqlTexts.toArray(new String[0]),
+                planHashes.toArray(new byte[0][]),
+                plans.toArray(new byte[0][]) });
+
+        pfs[1] = new SynthesizedPlanFragment();
+        pfs[1].fragmentId = PF_analyzePartitionsAggregate;
+        pfs[1].outputDepId = DEP_analyzePartitionsAggregate;
+        pfs[1].inputDepIds = new int[] {DEP_analyzePartitions};
+        pfs[1].multipartition = false;
+        pfs[1].parameters = ParameterSet.emptyParameterSet();
+
+        return pfs;
+    }
+
+    /**
+     * Run the statistics statements on this site's partition. The statement that reads
+     * the first page of a column's values is followed by the one that reads the next.
+     * The histogram of a column that wasn't read to the end is null.
+     */
+    private VoltTable analyzePartition(SystemProcedureExecutionContext context,
+            String[] tableNames, String[] columnNames, String[] stats, String[] sqlTexts,
+            byte[][] planHashes, byte[][] plans) {
+        final int partitionId = context.getPartitionId();
+        VoltTable result = new VoltTable(PARTITION_STATS_SCHEMA);
+        long rows = 0;
+        for (int ii = 0; ii < sqlTexts.length; ii++) {
+            if (stats[ii].equals(STAT_ROWS)) {
+                VoltTable counts = executeLocally(context, sqlTexts[ii], planHashes[ii], plans[ii]);
+                counts.advanceRow();
+                rows = counts.getLong(0);
+                result.addRow(partitionId, tableNames[ii], "", STAT_ROWS, rows, 0, "");
+                continue;
+            }
+            assert(stats[ii].equals(STAT_VALUES) && stats[ii + 1].equals(STAT_NEXT_VALUES));
+            ColumnScan scan = new ColumnScan();
+            if (rows > 0) {
+                boolean more = scan.addPage(executeLocally(
+                        context, sqlTexts[ii], planHashes[ii], plans[ii], PAGE_SIZE));
+                while (more) {
+                    more = scan.addPage(executeLocally(context, sqlTexts[ii + 1],
+                            planHashes[ii + 1], plans[ii + 1], scan.lastValue(), PAGE_SIZE));
+                }
+            }
+            String histogramJSON = "";
+            double[] histogram = scan.histogram();
+            if (histogram.length > 0) {
+                JSONArray bounds = new JSONArray();
+                for (double bound : histogram) {
+                    try {
+                        bounds.put(bound);
+                    } catch (JSONException e) {
+                        throw new VoltAbortException(e);
+                    }
+                }
+                histogramJSON = bounds.toString();
+            }
+            else if ( ! scan.isComplete() && rows > 0) {
+                histogramJSON = null;
+            }
+            result.addRow(partitionId, tableNames[ii], columnNames[ii], STAT_VALUES,
+                          scan.nonNullValues(), scan.distinctValues(rows), histogramJSON);
+            ii++;
+        }
+        return result;
+    }
+
+    /**
+     * Execute a plan on this site's partition in the current transaction.
+     */
+    private VoltTable executeLocally(SystemProcedureExecutionContext context,
+            String sqlText, byte[] planHash, byte[] plan, Object... params) {
+        final long fragmentId = ActivePlanRepository.loadOrAddRefPlanFragment(planHash, plan, sqlText);
+        try {
+            TransactionState txnState = m_runner.getTxnState();
+            return context.getSiteProcedureConnection().executePlanFragments(
+                    1, new long[] { fragmentId }, null,
+                    new Object[] { ParameterSet.fromArrayNoCopy(params) }, new String[] { sqlText },
+                    txnState.txnId, txnState.m_spHandle, txnState.uniqueId, true)[0];
+        }
+        finally {
+            ActivePlanRepository.decrefPlanFragmentById(fragmentId);
+        }
+    }
+
+    // what the partitions measured of one column, by partition id
+    private static class PartitionColumnStats {
+        final Map<Integer, Long> distinct = new TreeMap<Integer, Long>();
+        final Map<Integer, Long> nonNull = new TreeMap<Integer, Long>();
+        final Map<Integer, double[]> histograms = new TreeMap<Integer, double[]>();
+        // a partition didn't read the column to the end
+        boolean incomplete = false;
+    }
+
+    /**
+     * Merge what every partition measured into the estimates of one partition, which is
+     * what one site's fragment scans. The row count is that of the largest partition and
+     * the distinct value count is the average over the partitions. The histograms are
+     * merged weighted by the values they were built from, unless a partition has too many
+     * values to have built one. The results of the replicas of a partition are the same,
+     * only the first one is used.
+     *
+     * @param rowCounts filled with the row count of every table across all partitions
+     */
+    static Map<String, TableEstimates> mergePartitionStatistics(VoltTable partitionStats,
+                                                                Map<String, Long> rowCounts)
+            throws JSONException {
+        Map<String, Map<Integer, Long>> tableRows = new TreeMap<String, Map<Integer, Long>>();
+        Map<String, Map<String, PartitionColumnStats>> tableColumns =
+                new TreeMap<String, Map<String, PartitionColumnStats>>();
+        partitionStats.resetRowPosition();
+        while (partitionStats.advanceRow()) {
+            final int partitionId = (int) partitionStats.getLong("PARTITION_ID");
+            final String tableName = partitionStats.getString("TABLE_NAME");
+            final String stat = partitionStats.getString("STAT");
+            if (stat.equals(STAT_ROWS)) {
+                Map<Integer, Long> rows = tableRows.get(tableName);
+                if (rows == null) {
+                    rows = new TreeMap<Integer, Long>();
+                    tableRows.put(tableName, rows);
+                }
+                putIfAbsent(rows, partitionId, partitionStats.getLong("VALUE_COUNT"));
+                continue;
+            }
+            Map<String, PartitionColumnStats> columns = tableColumns.get(tableName);
+            if (columns == null) {
+                columns = new LinkedHashMap<String, PartitionColumnStats>();
+                tableColumns.put(tableName, columns);
+            }
+            final String columnName = partitionStats.getString("COLUMN_NAME");
+            PartitionColumnStats column = columns.get(columnName);
+            if (column == null) {
+                column = new PartitionColumnStats();
+                columns.put(columnName, column);
+            }
+            if (column.distinct.containsKey(partitionId)) {
+                continue;
+            }
+            column.distinct.put(partitionId, partitionStats.getLong("DISTINCT_COUNT"));
+            final String histogram = partitionStats.getString("HISTOGRAM");
+            if (histogram == null) {
+                column.incomplete = true;
+            }
+            else if ( ! histogram.isEmpty()) {
+                JSONArray boundsJSON = new JSONArray(histogram);
+                double[] bounds = new double[boundsJSON.length()];
+                for (int ii = 0; ii < bounds.length; ii++) {
+                    bounds[ii] = boundsJSON.getDouble(ii);
+                }
+                column.histograms.put(partitionId, bounds);
+                column.nonNull.put(partitionId, partitionStats.getLong("VALUE_COUNT"));
+            }
+        }
+
+        Map<String, TableEstimates> estimates = new TreeMap<String, TableEstimates>();
+        for (Map.Entry<String, Map<Integer, Long>> table : tableRows.entrySet()) {
+            long total = 0;
+            long largest = 0;
+            long smallest = Long.MAX_VALUE;
+            for (long rows : table.getValue().values()) {
+                total += rows;
+                largest = Math.max(largest, rows);
+                smallest = Math.min(smallest, rows);
+            }
+            final int partitions = table.getValue().size();
+            rowCounts.put(table.getKey(), total);
+
+            TableEstimates tableEstimates = new TableEstimates();
+            tableEstimates.analyzed = true;
+            tableEstimates.maxTuples = largest;
+            tableEstimates.minTuples = smallest;
+            estimates.put(table.getKey(), tableEstimates);
+            if (total == 0 || ! tableColumns.containsKey(table.getKey())) {
+                continue;
+            }
+            for (Map.Entry<String, PartitionColumnStats> column : tableColumns.get(table.getKey()).entrySet()) {
+                long distinct = 0;
+                for (long partitionDistinct : column.getValue().distinct.values()) {
+                    distinct += partitionDistinct;
+                }
+                ColumnEstimates columnEstimates = new ColumnEstimates();
+                columnEstimates.distinctValues = (distinct + partitions - 1) / partitions;
+                if ( ! column.getValue().incomplete && ! column.getValue().histograms.isEmpty()) {
+                    columnEstimates.histogram = ColumnEstimates.mergeHistograms(
+                            new ArrayList<double[]>(column.getValue().histograms.values()),
+                            new ArrayList<Long>(column.getValue().nonNull.values()),
+                            HISTOGRAM_BUCKETS);
+                }
+                tableEstimates.columnEstimates.put(column.getKey(), columnEstimates);
+            }
+        }
+        return estimates;
+    }
+
+    private static void putIfAbsent(Map<Integer, Long> map, int partitionId, long value) {
+        if ( ! map.containsKey(partitionId)) {
+            map.put(partitionId, value);
+        }
+    }
+
+    // the orderable columns of the table's indexes on plain columns, by name
+    private static Map<String, Column> getIndexedColumns(Table table) {
+        Map<String, Column> columns = new LinkedHashMap<String, Column>();
+        for (Index index : table.getIndexes()) {
+            if ( ! index.getExpressionsjson().isEmpty()) {
+                continue;
+            }
+            for (ColumnRef ref : CatalogUtil.getSortedCatalogItems(index.getColumns(), "index")) {
+                VoltType type = VoltType.get((byte) ref.getColumn().getType());
+                if (type == VoltType.GEOGRAPHY || type == VoltType.GEOGRAPHY_POINT) {
+                    continue;
+                }
+                columns.put(ref.getColumn().getTypeName(), ref.getColumn());
+            }
+        }
+        return columns;
+    }
+
+    private static boolean isHistogramType(VoltType type) {
+        return type.isExactNumeric() || type == VoltType.FLOAT || type == VoltType.TIMESTAMP;
+    }
+
+    private static double toDouble(Object value) {
+        if (value instanceof TimestampType) {
+            return ((TimestampType) value).getTime();
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    private SynthesizedPlanFragment[] createInstallFragments(String json) {
+
+        SynthesizedPlanFragment pfs[] = new SynthesizedPlanFragment[2];
+
+        pfs[0] = new SynthesizedPlanFragment();
+        pfs[0].fragmentId = PF_analyzeInstall;
+        pfs[0].outputDepId = DEP_analyzeInstall;
+        pfs[0].inputDepIds = new int[]{};
+        pfs[0].multipartition = true;
+        pfs[0].parameters = ParameterSet.fromArrayNoCopy(new Object[] { json });
+
+        pfs[1] = new SynthesizedPlanFragment();
+        pfs[1].fragmentId = PF_analyzeInstallAggregate;
+        pfs[1].outputDepId = DEP_analyzeInstallAggregate;
+        pfs[1].inputDepIds = new int[] {DEP_analyzeInstall};
+        pfs[1].multipartition = false;
+        pfs[1].parameters = ParameterSet.emptyParameterSet();
+
+        return pfs;
+    }
+}
@@ -209,4 +209,10 @@ public class SysProcFragmentId
     // @PrepareShutdown
     public static final long PF_prepareShutdown = 310;
     public static final long PF_prepareShutdownAggregate = 311;
+
+    // @Analyze
+    public static final long PF_analyzeInstall = 320;
+    public static final long PF_analyzeInstallAggregate = 321;
+    public static final long PF_analyzePartitions = 322;
+    public static final long PF_analyzePartitionsAggregate = 323;
 }
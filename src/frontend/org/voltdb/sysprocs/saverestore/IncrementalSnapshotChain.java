@@ -0,0 +1,459 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTableRow;
+import org.voltdb.utils.VoltFile;
+
+/**
+ * Reads and writes the per host <code>.deltas</code> file of an incremental snapshot and
+ * rebuilds table contents from a chain of incremental snapshots.
+ *
+ * An incremental snapshot writes its table files in the native format, but for a
+ * partition where the table was a delta they only hold the rows of the blocks changed
+ * since the base snapshot. The deltas file names the base snapshot and records, per
+ * table and partition, whether the rows are a delta and which primary keys were deleted
+ * since the base. Replicated tables are recorded under partition -1.
+ *
+ * A table is rebuilt by walking the chain from the newest snapshot back to the one where
+ * it was written in full. A row is taken from the newest snapshot that has its key, and
+ * keys that a newer snapshot deleted or rewrote are ignored in the older ones.
+ */
+public class IncrementalSnapshotChain {
+    public static final String DELTAS_EXTENSION = ".deltas";
+    public static final int REPLICATED_PARTITION = -1;
+
+    private static final int DELTAS_VERSION = 1;
+
+    /**
+     * The deltas of one table in one incremental snapshot.
+     */
+    public static class TableDeltas {
+        public final String name;
+        public final boolean isReplicated;
+        /** Indexes of the primary key columns, in primary key order */
+        public final int[] pkColumns;
+        /**
+         * Keyed by partition id. The value is the table of keys deleted since the base
+         * snapshot when the partition is a delta, or null when it was written in full.
+         */
+        public final Map<Integer, VoltTable> partitions = new TreeMap<Integer, VoltTable>();
+
+        public TableDeltas(String name, boolean isReplicated, int[] pkColumns) {
+            this.name = name;
+            this.isReplicated = isReplicated;
+            this.pkColumns = pkColumns;
+        }
+    }
+
+    /**
+     * Contents of a <code>.deltas</code> file.
+     */
+    public static class Deltas {
+        /** Nonce of the snapshot this one is relative to, null if there is none */
+        public final String baseNonce;
+        public final Map<String, TableDeltas> tables = new TreeMap<String, TableDeltas>();
+
+        public Deltas(String baseNonce) {
+            this.baseNonce = baseNonce;
+        }
+
+        public boolean hasDeltas() {
+            for (TableDeltas table : tables.values()) {
+                for (VoltTable keys : table.partitions.values()) {
+                    if (keys != null) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Rows of one table and partition from one snapshot of a chain, newest first.
+     */
+    public interface Source {
+        /** @return The next chunk of rows, or null when there are no more */
+        public VoltTable nextChunk() throws IOException;
+        /** @return The keys deleted since the base, or null if the rows are complete */
+        public VoltTable deletedKeys();
+    }
+
+    /**
+     * Receives the rows of a rebuilt table.
+     */
+    public interface RowConsumer {
+        public void accept(VoltTableRow row) throws IOException;
+    }
+
+    public static String constructDeltasFilenameForNonce(String nonce, int hostId) {
+        return nonce + "-host_" + hostId + DELTAS_EXTENSION;
+    }
+
+    /**
+     * Write a deltas file. Passing null writes a placeholder that marks the snapshot
+     * as incremental until the real deltas are known, so a snapshot that fails to
+     * record them can't be mistaken for a full one.
+     */
+    public static void writeDeltas(File file, Deltas deltas) throws IOException {
+        final FileOutputStream fos = new FileOutputStream(file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(DELTAS_VERSION);
+            out.writeBoolean(deltas != null);
+            if (deltas == null) {
+                out.flush();
+                fos.getFD().sync();
+                return;
+            }
+            out.writeUTF(deltas.baseNonce == null ? "" : deltas.baseNonce);
+            out.writeInt(deltas.tables.size());
+            for (TableDeltas table : deltas.tables.values()) {
+                out.writeUTF(table.name);
+                out.writeBoolean(table.isReplicated);
+                out.writeInt(table.pkColumns.length);
+                for (int column : table.pkColumns) {
+                    out.writeInt(column);
+                }
+                out.writeInt(table.partitions.size());
+                for (Map.Entry<Integer, VoltTable> e : table.partitions.entrySet()) {
+                    out.writeInt(e.getKey());
+                    out.writeBoolean(e.getValue() != null);
+                    if (e.getValue() != null) {
+                        ByteBuffer buf = ByteBuffer.allocate(e.getValue().getSerializedSize());
+                        e.getValue().flattenToBuffer(buf);
+                        out.write(buf.array());
+                    }
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+    }
+
+    public static Deltas readDeltas(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt();
+            if (version != DELTAS_VERSION) {
+                throw new IOException("Unsupported version " + version + " in " + file);
+            }
+            if (!in.readBoolean()) {
+                throw new IOException("Incremental snapshot deltas in " + file + " were never completed");
+            }
+            String baseNonce = in.readUTF();
+            Deltas deltas = new Deltas(baseNonce.isEmpty() ? null : baseNonce);
+            int tableCount = in.readInt();
+            for (int ii = 0; ii < tableCount; ii++) {
+                String name = in.readUTF();
+                boolean isReplicated = in.readBoolean();
+                int[] pkColumns = new int[in.readInt()];
+                for (int jj = 0; jj < pkColumns.length; jj++) {
+                    pkColumns[jj] = in.readInt();
+                }
+                TableDeltas table = new TableDeltas(name, isReplicated, pkColumns);
+                int partitionCount = in.readInt();
+                for (int jj = 0; jj < partitionCount; jj++) {
+                    int partitionId = in.readInt();
+                    VoltTable keys = null;
+                    if (in.readBoolean()) {
+                        byte[] bytes = new byte[in.readInt()];
+                        in.readFully(bytes);
+                        keys = PrivateVoltTableFactory.createVoltTableFromBuffer(ByteBuffer.wrap(bytes), true);
+                    }
+                    table.partitions.put(partitionId, keys);
+                }
+                deltas.tables.put(name, table);
+            }
+            return deltas;
+        }
+    }
+
+    /**
+     * Resolve the chain of incremental snapshots that the given one depends on.
+     *
+     * @return Pairs of nonce and deltas, starting with the given snapshot and ending with
+     * the one that has no base, or an empty list if the snapshot is not incremental.
+     * @throws IOException if a snapshot in the chain is missing, unfinished or unreadable
+     */
+    public static List<Map.Entry<String, Deltas>> resolve(File dir, String nonce, int hostId)
+            throws IOException {
+        List<Map.Entry<String, Deltas>> chain = new ArrayList<Map.Entry<String, Deltas>>();
+        Set<String> seen = new HashSet<String>();
+        File file = new VoltFile(dir, constructDeltasFilenameForNonce(nonce, hostId));
+        if (!file.exists()) {
+            return chain;
+        }
+        Deltas previous = null;
+        String current = nonce;
+        while (current != null) {
+            if (!seen.add(current)) {
+                throw new IOException("Incremental snapshot " + current + " refers to itself");
+            }
+            file = new VoltFile(dir, constructDeltasFilenameForNonce(current, hostId));
+            if (!file.exists() ||
+                !new VoltFile(dir, SnapshotUtil.constructCompletionFilenameForNonce(current, hostId)).exists()) {
+                throw new IOException("Base snapshot " + current + " for host " + hostId +
+                                      " is missing or did not finish");
+            }
+            Deltas deltas = readDeltas(file);
+            if (previous != null) {
+                checkBaseCovers(current, deltas, previous);
+            }
+            chain.add(new AbstractMap.SimpleImmutableEntry<String, Deltas>(current, deltas));
+            previous = deltas;
+            current = deltas.baseNonce;
+        }
+        if (previous != null && previous.hasDeltas()) {
+            throw new IOException("Incremental snapshot chain of " + nonce + " has no full base");
+        }
+        return chain;
+    }
+
+    /**
+     * Check that the chain of every host that wrote the given snapshot into the directory
+     * can be resolved. Does nothing for a snapshot that is not incremental.
+     *
+     * @throws IOException describing the first broken chain
+     */
+    public static void checkChains(File dir, String nonce) throws IOException {
+        for (int hostId : hostsWithDeltas(dir, nonce)) {
+            resolve(dir, nonce, hostId);
+        }
+    }
+
+    /**
+     * Check that the given snapshot can be restored from its own table files. Restore
+     * does not rebuild tables from a chain yet, so a snapshot that has a table partition
+     * written as a delta, or whose deltas were never recorded, can't be restored.
+     * Does nothing for a snapshot that is not incremental.
+     *
+     * @throws IOException describing the first host whose files are not restorable
+     */
+    public static void checkRestorable(File dir, String nonce) throws IOException {
+        for (int hostId : hostsWithDeltas(dir, nonce)) {
+            File file = new VoltFile(dir, constructDeltasFilenameForNonce(nonce, hostId));
+            if (readDeltas(file).hasDeltas()) {
+                throw new IOException("Snapshot " + nonce + " for host " + hostId +
+                                      " is an incremental snapshot with tables saved as deltas");
+            }
+        }
+    }
+
+    /**
+     * Ids of the hosts that wrote a deltas file for the given snapshot into the directory.
+     */
+    private static List<Integer> hostsWithDeltas(File dir, String nonce) {
+        final String prefix = nonce + "-host_";
+        List<Integer> hostIds = new ArrayList<Integer>();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return hostIds;
+        }
+        for (File file : files) {
+            final String name = file.getName();
+            if (!name.startsWith(prefix) || !name.endsWith(DELTAS_EXTENSION)) {
+                continue;
+            }
+            try {
+                hostIds.add(Integer.parseInt(name.substring(prefix.length(), name.length() - DELTAS_EXTENSION.length())));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+        }
+        return hostIds;
+    }
+
+    /**
+     * Every table partition that is a delta must be present in its base.
+     */
+    private static void checkBaseCovers(String baseNonce, Deltas base, Deltas newer) throws IOException {
+        for (TableDeltas table : newer.tables.values()) {
+            for (Map.Entry<Integer, VoltTable> e : table.partitions.entrySet()) {
+                if (e.getValue() == null) {
+                    continue;
+                }
+                TableDeltas baseTable = base.tables.get(table.name);
+                if (baseTable == null || !baseTable.partitions.containsKey(e.getKey())) {
+                    throw new IOException("Base snapshot " + baseNonce + " has no data for table " +
+                                          table.name + " partition " + e.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge the rows of one table and partition from a chain of sources, newest first.
+     * Stops at the first source that was written in full.
+     *
+     * @return The number of rows passed to the consumer
+     */
+    public static long merge(List<? extends Source> newestFirst, int[] pkColumns, RowConsumer consumer)
+            throws IOException {
+        Set<List<Object>> superseded = new HashSet<List<Object>>();
+        long rows = 0;
+        for (Source source : newestFirst) {
+            List<List<Object>> seen = new ArrayList<List<Object>>();
+            VoltTable chunk;
+            while ((chunk = source.nextChunk()) != null) {
+                chunk.resetRowPosition();
+                while (chunk.advanceRow()) {
+                    List<Object> key = key(chunk, pkColumns);
+                    if (!superseded.contains(key)) {
+                        consumer.accept(chunk);
+                        seen.add(key);
+                        rows++;
+                    }
+                }
+            }
+            superseded.addAll(seen);
+
+            VoltTable deletedKeys = source.deletedKeys();
+            if (deletedKeys == null) {
+                break;
+            }
+            deletedKeys.resetRowPosition();
+            while (deletedKeys.advanceRow()) {
+                superseded.add(key(deletedKeys, null));
+            }
+        }
+        return rows;
+    }
+
+    private static List<Object> key(VoltTableRow row, int[] columns) {
+        final int count = columns == null ? row.getColumnCount() : columns.length;
+        List<Object> key = new ArrayList<Object>(count);
+        for (int ii = 0; ii < count; ii++) {
+            final int column = columns == null ? ii : columns[ii];
+            Object value = row.get(column, row.getColumnType(column));
+            // Arrays don't have value equality
+            if (value instanceof byte[]) {
+                value = ByteBuffer.wrap((byte[]) value);
+            }
+            key.add(value);
+        }
+        return key;
+    }
+
+    /**
+     * Rebuild one table partition of an incremental snapshot from its saved files.
+     * The partition id is ignored for replicated tables.
+     *
+     * @return The number of rows passed to the consumer
+     */
+    public static long rebuildTable(File dir, String nonce, int hostId, String tableName,
+                                    int partitionId, RowConsumer consumer) throws IOException {
+        List<SaveFileSource> sources = new ArrayList<SaveFileSource>();
+        try {
+            int[] pkColumns = null;
+            for (Map.Entry<String, Deltas> link : resolve(dir, nonce, hostId)) {
+                TableDeltas table = link.getValue().tables.get(tableName);
+                if (table == null) {
+                    throw new IOException("Snapshot " + link.getKey() + " has no data for table " + tableName);
+                }
+                final int key = table.isReplicated ? REPLICATED_PARTITION : partitionId;
+                if (!table.partitions.containsKey(key)) {
+                    throw new IOException("Snapshot " + link.getKey() + " has no data for table " +
+                                          tableName + " partition " + partitionId);
+                }
+                if (pkColumns == null) {
+                    pkColumns = table.pkColumns;
+                }
+                String filename = link.getKey() + "-" + tableName +
+                        (table.isReplicated ? "" : "-host_" + hostId) + ".vpt";
+                sources.add(new SaveFileSource(new VoltFile(dir, filename),
+                                               table.isReplicated ? null : partitionId,
+                                               table.partitions.get(key)));
+                if (table.partitions.get(key) == null) {
+                    break;
+                }
+            }
+            if (pkColumns == null) {
+                throw new IOException("Snapshot " + nonce + " is not an incremental snapshot");
+            }
+            return merge(sources, pkColumns, consumer);
+        } finally {
+            for (SaveFileSource source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the chunks of one partition, or all of them for a replicated table,
+     * from a native save file.
+     */
+    private static class SaveFileSource implements Source {
+        private final FileInputStream m_fis;
+        private final TableSaveFile m_saveFile;
+        private final VoltTable m_deletedKeys;
+        private BBContainer m_chunk = null;
+
+        SaveFileSource(File file, Integer partitionId, VoltTable deletedKeys) throws IOException {
+            m_fis = new FileInputStream(file);
+            m_saveFile = new TableSaveFile(m_fis, 1, partitionId == null ? null : new Integer[] { partitionId });
+            m_deletedKeys = deletedKeys;
+        }
+
+        @Override
+        public VoltTable nextChunk() throws IOException {
+            if (m_chunk != null) {
+                m_chunk.discard();
+                m_chunk = null;
+            }
+            m_chunk = m_saveFile.getNextChunk();
+            if (m_chunk == null) {
+                return null;
+            }
+            return PrivateVoltTableFactory.createVoltTableFromBuffer(m_chunk.b(), true);
+        }
+
+        @Override
+        public VoltTable deletedKeys() {
+            return m_deletedKeys;
+        }
+
+        void close() throws IOException {
+            if (m_chunk != null) {
+                m_chunk.discard();
+                m_chunk = null;
+            }
+            m_saveFile.close();
+            m_fis.close();
+        }
+    }
+}
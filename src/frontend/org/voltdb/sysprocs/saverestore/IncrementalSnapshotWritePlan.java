@@ -0,0 +1,256 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import org.json_voltpatches.JSONObject;
+import org.voltdb.ExtensibleSnapshotDigestData;
+import org.voltdb.IncrementalStreamActivation;
+import org.voltdb.SnapshotDataTarget;
+import org.voltdb.SnapshotFormat;
+import org.voltdb.SnapshotSiteProcessor;
+import org.voltdb.SystemProcedureExecutionContext;
+import org.voltdb.VoltTable;
+import org.voltdb.catalog.Column;
+import org.voltdb.catalog.Table;
+import org.voltdb.dtxn.SiteTracker;
+import org.voltdb.sysprocs.saverestore.IncrementalSnapshotChain.Deltas;
+import org.voltdb.sysprocs.saverestore.IncrementalSnapshotChain.TableDeltas;
+import org.voltdb.utils.CatalogUtil;
+import org.voltdb.utils.VoltFile;
+
+import com.google_voltpatches.common.collect.ImmutableMap;
+import com.google_voltpatches.common.collect.ImmutableSet;
+
+/**
+ * Create a snapshot write plan for an incremental snapshot. The files are laid out like
+ * a native snapshot, but the sites activate {@link org.voltdb.TableStreamType#INCREMENTAL_SNAPSHOT}
+ * streams, so a table that has been tracking changes since the previous incremental
+ * snapshot on this host only writes the blocks changed since then. What each table did
+ * and the primary keys deleted since the base go into a per host deltas file, which
+ * {@link IncrementalSnapshotChain} uses to rebuild the tables.
+ *
+ * The chain is per host. It only advances when every target of an incremental snapshot
+ * wrote successfully, so a failed snapshot makes the next one relative to the last good one.
+ */
+public class IncrementalSnapshotWritePlan extends NativeSnapshotWritePlan
+{
+    /**
+     * Where the last incremental snapshot that finished on this host left off.
+     */
+    private static class ChainTip {
+        final String path;
+        final String nonce;
+        final Map<Integer, Long> spHandles;
+        final Set<String> tables;
+
+        ChainTip(String path, String nonce, Map<Integer, Long> spHandles, Set<String> tables) {
+            this.path = path;
+            this.nonce = nonce;
+            this.spHandles = spHandles;
+            this.tables = tables;
+        }
+    }
+
+    /**
+     * The incremental snapshot being taken on this host.
+     */
+    private static class InProgress {
+        final String path;
+        final String nonce;
+        final ChainTip base;
+        final Map<String, Table> catalogTables;
+        final Map<String, Map<Integer, IncrementalStreamActivation>> activations =
+                new TreeMap<String, Map<Integer, IncrementalStreamActivation>>();
+        final Map<Integer, Long> spHandles = new TreeMap<Integer, Long>();
+
+        InProgress(String path, String nonce, ChainTip base, Map<String, Table> catalogTables) {
+            this.path = path;
+            this.nonce = nonce;
+            this.base = base;
+            this.catalogTables = catalogTables;
+        }
+    }
+
+    private static ChainTip s_chainTip = null;
+    private static InProgress s_inProgress = null;
+
+    @Override
+    protected SnapshotFormat getFormat()
+    {
+        return SnapshotFormat.INCREMENTAL;
+    }
+
+    @Override
+    public Callable<Boolean> createSetup(final String file_path, String pathType,
+                                            final String file_nonce,
+                                            long txnId,
+                                            Map<Integer, Long> partitionTransactionIds,
+                                            JSONObject jsData,
+                                            final SystemProcedureExecutionContext context,
+                                            final VoltTable result,
+                                            ExtensibleSnapshotDigestData extraSnapshotData,
+                                            SiteTracker tracker,
+                                            HashinatorSnapshotData hashinatorData,
+                                            long timestamp)
+    {
+        final Map<String, Table> catalogTables = new HashMap<String, Table>();
+        for (Table table : context.getDatabase().getTables()) {
+            catalogTables.put(table.getTypeName(), table);
+        }
+        final InProgress snapshot;
+        synchronized (IncrementalSnapshotWritePlan.class) {
+            // A chain can't span directories, start over with full snapshots
+            final ChainTip base = s_chainTip != null && s_chainTip.path.equals(file_path) ? s_chainTip : null;
+            snapshot = new InProgress(file_path, file_nonce, base, catalogTables);
+            s_inProgress = snapshot;
+        }
+
+        // Queued ahead of the completion tasks of the native plan so that the
+        // deltas are on disk before the snapshot is marked finished.
+        final int hostId = context.getHostId();
+        SnapshotSiteProcessor.m_tasksOnSnapshotCompletion.offer(new Runnable() {
+            @Override
+            public void run()
+            {
+                finishSnapshot(snapshot, hostId);
+            }
+        });
+
+        final Callable<Boolean> nativeSetup = super.createSetup(file_path, pathType, file_nonce, txnId,
+                partitionTransactionIds, jsData, context, result, extraSnapshotData, tracker,
+                hashinatorData, timestamp);
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception
+            {
+                IncrementalSnapshotChain.writeDeltas(deltasFile(snapshot, hostId), null);
+                return nativeSetup.call();
+            }
+        };
+    }
+
+    /**
+     * Append the spHandle of the base snapshot, or -1 if there is none, to the stream
+     * predicates for a table on the given partition.
+     */
+    public static byte[] appendBaseSpHandle(byte[] predicates, String tableName, int partitionId)
+    {
+        long base = -1;
+        synchronized (IncrementalSnapshotWritePlan.class) {
+            if (s_inProgress != null && s_inProgress.base != null &&
+                s_inProgress.base.tables.contains(tableName)) {
+                Long spHandle = s_inProgress.base.spHandles.get(partitionId);
+                if (spHandle != null) {
+                    base = spHandle;
+                }
+            }
+        }
+        ByteBuffer buf = ByteBuffer.allocate(predicates.length + 8);
+        buf.put(predicates);
+        buf.putLong(base);
+        return buf.array();
+    }
+
+    /**
+     * Called by each site once its incremental stream for a table is active.
+     */
+    public static synchronized void recordActivation(String tableName, int partitionId,
+                                                     IncrementalStreamActivation activation)
+    {
+        assert(s_inProgress != null);
+        Table table = s_inProgress.catalogTables.get(tableName);
+        Map<Integer, IncrementalStreamActivation> partitions = s_inProgress.activations.get(tableName);
+        if (partitions == null) {
+            partitions = new TreeMap<Integer, IncrementalStreamActivation>();
+            s_inProgress.activations.put(tableName, partitions);
+        }
+        partitions.put(table.getIsreplicated() ? IncrementalSnapshotChain.REPLICATED_PARTITION : partitionId,
+                       activation);
+        s_inProgress.spHandles.put(partitionId, activation.spHandle);
+    }
+
+    private static File deltasFile(InProgress snapshot, int hostId)
+    {
+        return new VoltFile(snapshot.path,
+                IncrementalSnapshotChain.constructDeltasFilenameForNonce(snapshot.nonce, hostId));
+    }
+
+    private void finishSnapshot(InProgress snapshot, int hostId)
+    {
+        boolean succeeded = true;
+        for (SnapshotDataTarget target : getSnapshotDataTargets()) {
+            if (target.getLastWriteException() != null) {
+                succeeded = false;
+            }
+        }
+
+        Deltas deltas = new Deltas(snapshot.base == null ? null : snapshot.base.nonce);
+        synchronized (IncrementalSnapshotWritePlan.class) {
+            for (Map.Entry<String, Map<Integer, IncrementalStreamActivation>> e : snapshot.activations.entrySet()) {
+                Table table = snapshot.catalogTables.get(e.getKey());
+                TableDeltas tableDeltas = new TableDeltas(e.getKey(), table.getIsreplicated(),
+                                                          getPrimaryKeyColumnIndexes(table));
+                for (Map.Entry<Integer, IncrementalStreamActivation> p : e.getValue().entrySet()) {
+                    tableDeltas.partitions.put(p.getKey(), p.getValue().isDelta ? p.getValue().deletedKeys : null);
+                }
+                deltas.tables.put(e.getKey(), tableDeltas);
+            }
+        }
+
+        try {
+            IncrementalSnapshotChain.writeDeltas(deltasFile(snapshot, hostId), deltas);
+        } catch (IOException e) {
+            SNAP_LOG.error("Failed to write the deltas of incremental snapshot " + snapshot.nonce, e);
+            succeeded = false;
+        }
+
+        synchronized (IncrementalSnapshotWritePlan.class) {
+            if (succeeded) {
+                s_chainTip = new ChainTip(snapshot.path, snapshot.nonce,
+                                          ImmutableMap.copyOf(snapshot.spHandles),
+                                          ImmutableSet.copyOf(snapshot.activations.keySet()));
+            } else {
+                SNAP_LOG.warn("Incremental snapshot " + snapshot.nonce +
+                              " failed, the next one will be relative to " +
+                              (snapshot.base == null ? "no snapshot" : snapshot.base.nonce));
+            }
+            if (s_inProgress == snapshot) {
+                s_inProgress = null;
+            }
+        }
+    }
+
+    private static int[] getPrimaryKeyColumnIndexes(Table table)
+    {
+        int[] indexes = new int[CatalogUtil.getPrimaryKeyColumns(table).size()];
+        int ii = 0;
+        for (Column column : CatalogUtil.getPrimaryKeyColumns(table)) {
+            indexes[ii++] = column.getIndex();
+        }
+        return indexes;
+    }
+}
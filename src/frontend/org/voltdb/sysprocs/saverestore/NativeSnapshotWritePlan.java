@@ -77,6 +77,14 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                 timestamp, context.getNumberOfPartitions());
     }
 
+    /**
+     * The format recorded in the snapshot registry. The table files are always native.
+     */
+    protected SnapshotFormat getFormat()
+    {
+        return SnapshotFormat.NATIVE;
+    }
+
     Callable<Boolean> createSetupInternal(String file_path, String pathType,
                                                     String file_nonce,
                                                     long txnId,
@@ -110,7 +118,7 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                     context.getHostId(),
                     file_path,
                     file_nonce,
-                    SnapshotFormat.NATIVE,
+                    getFormat(),
                     tableArray);
 
         final ArrayList<SnapshotTableTask> partitionedSnapshotTasks =
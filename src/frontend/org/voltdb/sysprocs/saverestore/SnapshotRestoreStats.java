@@ -0,0 +1,125 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Reports how much snapshot data this host has read and decoded through
+ * {@link TableSaveFile}, one row per host. Interval polls return the amounts
+ * since the previous interval poll, which together with the timestamp give
+ * the restore throughput.
+ */
+public class SnapshotRestoreStats extends StatsSource {
+
+    static final AtomicLong s_filesOpened = new AtomicLong();
+    static final AtomicLong s_filesClosed = new AtomicLong();
+    static final AtomicLong s_bytesRead = new AtomicLong();
+    static final AtomicLong s_chunksDecoded = new AtomicLong();
+    static final AtomicLong s_bytesDecompressed = new AtomicLong();
+    static final AtomicLong s_corruptChunks = new AtomicLong();
+
+    /**
+     * Whether to return results in intervals since polling or since the beginning
+     */
+    private boolean m_interval = false;
+
+    private final long[] m_lastValues = new long[5];
+
+    public SnapshotRestoreStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("OPEN_FILES", VoltType.INTEGER));
+        columns.add(new ColumnInfo("FILES_READ", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BYTES_READ", VoltType.BIGINT));
+        columns.add(new ColumnInfo("CHUNKS_DECODED", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BYTES_DECOMPRESSED", VoltType.BIGINT));
+        columns.add(new ColumnInfo("CORRUPT_CHUNKS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("DECODE_THREADS", VoltType.INTEGER));
+        columns.add(new ColumnInfo("DECODE_QUEUE_DEPTH", VoltType.INTEGER));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        final long opened = s_filesOpened.get();
+        final long closed = s_filesClosed.get();
+        long[] values = new long[] {
+                closed,
+                s_bytesRead.get(),
+                s_chunksDecoded.get(),
+                s_bytesDecompressed.get(),
+                s_corruptChunks.get()
+        };
+
+        long[] reported = values.clone();
+        if (m_interval) {
+            for (int i = 0; i < values.length; ++i) {
+                reported[i] = values[i] - m_lastValues[i];
+                m_lastValues[i] = values[i];
+            }
+        }
+
+        rowValues[columnNameToIndex.get("OPEN_FILES")] = (int) (opened - closed);
+        rowValues[columnNameToIndex.get("FILES_READ")] = reported[0];
+        rowValues[columnNameToIndex.get("BYTES_READ")] = reported[1];
+        rowValues[columnNameToIndex.get("CHUNKS_DECODED")] = reported[2];
+        rowValues[columnNameToIndex.get("BYTES_DECOMPRESSED")] = reported[3];
+        rowValues[columnNameToIndex.get("CORRUPT_CHUNKS")] = reported[4];
+        rowValues[columnNameToIndex.get("DECODE_THREADS")] = TableSaveFile.getDecodeThreadCount();
+        rowValues[columnNameToIndex.get("DECODE_QUEUE_DEPTH")] = TableSaveFile.getDecodeQueueDepth();
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_interval = interval;
+        return new Iterator<Object>() {
+            boolean returnRow = true;
+
+            @Override
+            public boolean hasNext() {
+                return returnRow;
+            }
+
+            @Override
+            public Object next() {
+                if (returnRow) {
+                    returnRow = false;
+                    return new Object();
+                } else {
+                    return null;
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
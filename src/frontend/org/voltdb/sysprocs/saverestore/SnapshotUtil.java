@@ -1635,6 +1635,37 @@ public class SnapshotUtil {
         }
     }
 
+    /*
+     * Reject a restore of an incremental snapshot that has tables saved as deltas.
+     * Expects the parameters to have been transformed to JSON already.
+     */
+    public static ClientResponseImpl checkRestoreIsNotIncremental(StoredProcedureInvocation task) {
+        final String path;
+        final String nonce;
+        try {
+            JSONObject jsObj = new JSONObject(task.getParams().getParam(0).toString());
+            nonce = jsObj.optString(JSON_NONCE);
+            String pathType = jsObj.optString(JSON_PATH_TYPE, SnapshotPathType.SNAP_PATH.toString());
+            path = getRealPath(SnapshotPathType.valueOf(pathType), jsObj.optString(JSON_PATH));
+        } catch (JSONException | IllegalArgumentException e) {
+            // Malformed parameters are reported by the restore itself
+            return null;
+        }
+        if (path == null || path.isEmpty() || nonce.isEmpty()) {
+            return null;
+        }
+        try {
+            IncrementalSnapshotChain.checkRestorable(new VoltFile(path), nonce);
+        } catch (IOException e) {
+            return new ClientResponseImpl(ClientResponseImpl.GRACEFUL_FAILURE,
+                                          new VoltTable[0],
+                                          "@SnapshotRestore can't restore snapshot " + nonce +
+                                          " without its incremental snapshot chain: " + e.getMessage(),
+                                          task.getClientHandle());
+        }
+        return null;
+    }
+
     //Return path based on type if type is not CL or AUTO return provided path.
     public static String getRealPath(SnapshotPathType stype, String path) {
         if (stype == SnapshotPathType.SNAP_CL) {
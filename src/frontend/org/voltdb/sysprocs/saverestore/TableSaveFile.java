@@ -29,7 +29,10 @@ import java.util.ArrayDeque;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.Checksum;
 
 import org.apache.hadoop_voltpatches.util.PureJavaCrc32;
@@ -40,6 +43,7 @@ import org.json_voltpatches.JSONObject;
 import org.voltcore.TransactionIdManager;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.Bits;
+import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.EELibraryLoader;
@@ -91,6 +95,33 @@ public class TableSaveFile
     private static final int DEFAULT_CHUNKSIZE =
             org.voltdb.SnapshotSiteProcessor.m_snapshotBufferLength + (1024 * 256);
 
+    private static final int COMPRESSED_CHUNKSIZE = CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE);
+
+    /**
+     * Threads shared by every open save file that validate and decompress chunks,
+     * so that restore isn't limited to one core per file being read.
+     * Defaults to half the available cores.
+     */
+    private static class DecodePool {
+        static final int THREADS = Math.max(1, Integer.getInteger("SNAPSHOT_RESTORE_DECODE_THREADS",
+                CoreUtils.availableProcessors() / 2));
+        static final ThreadPoolExecutor EXECUTOR;
+        static {
+            EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 1, TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<Runnable>(),
+                    CoreUtils.getThreadFactory("Snapshot Restore Decoder"));
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    static int getDecodeThreadCount() {
+        return DecodePool.THREADS;
+    }
+
+    static int getDecodeQueueDepth() {
+        return DecodePool.EXECUTOR.getQueue().size();
+    }
+
     public TableSaveFile(
             FileInputStream fis,
             int readAheadChunks,
@@ -324,6 +355,7 @@ public class TableSaveFile
         } catch (JSONException e) {
             throw new IOException(e);
         }
+        SnapshotRestoreStats.s_filesOpened.incrementAndGet();
     }
 
     public int[] getVersionNumber()
@@ -390,6 +422,10 @@ public class TableSaveFile
         synchronized (this) {
             m_hasMoreChunks = false;
             chunkReader = m_chunkReaderThread;
+            if (!m_isClosed) {
+                m_isClosed = true;
+                SnapshotRestoreStats.s_filesClosed.incrementAndGet();
+            }
         }
 
         if (chunkReader != null) {
@@ -402,6 +438,14 @@ public class TableSaveFile
         }
 
         synchronized (this) {
+            // Decoders write into buffers that are about to be freed
+            while (m_chunksDecoding > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
             while (!m_availableChunks.isEmpty()) {
                 m_availableChunks.poll().discard();
             }
@@ -415,6 +459,9 @@ public class TableSaveFile
         while ((cont = m_buffers.poll()) != null) {
             cont.discard();
         }
+        while ((cont = m_compressedBuffers.poll()) != null) {
+            cont.discard();
+        }
     }
 
     public Set<Integer> getCorruptedPartitionIds() {
@@ -431,7 +478,7 @@ public class TableSaveFile
         if (m_chunkReaderException != null) {
             throw m_chunkReaderException;
         }
-        if (!m_hasMoreChunks) {
+        if (!m_hasMoreChunks && m_chunksDecoding == 0) {
             final Container c = m_availableChunks.poll();
             return c;
         }
@@ -443,7 +490,7 @@ public class TableSaveFile
         }
 
         Container c = null;
-        while (c == null && (m_hasMoreChunks || !m_availableChunks.isEmpty())) {
+        while (c == null && (m_hasMoreChunks || m_chunksDecoding > 0 || !m_availableChunks.isEmpty())) {
             c = m_availableChunks.poll();
             if (c == null) {
                 try {
@@ -468,7 +515,7 @@ public class TableSaveFile
         if (m_chunkReaderException != null) {
             throw m_chunkReaderException;
         }
-        return m_hasMoreChunks || !m_availableChunks.isEmpty();
+        return m_hasMoreChunks || m_chunksDecoding > 0 || !m_availableChunks.isEmpty();
     }
 
     private final FileChannel m_saveFile;
@@ -487,8 +534,13 @@ public class TableSaveFile
     private final int m_totalPartitions;
     private final long m_txnId;
     private final long m_timestamp;
-    private boolean m_hasMoreChunks = true;
+    private volatile boolean m_hasMoreChunks = true;
+    private boolean m_isClosed = false;
     private ConcurrentLinkedQueue<BBContainer> m_buffers = new ConcurrentLinkedQueue<BBContainer>();
+    // Buffers the reader fills with compressed chunks for the decoders
+    private final ConcurrentLinkedQueue<BBContainer> m_compressedBuffers = new ConcurrentLinkedQueue<BBContainer>();
+    // Chunks handed to the decode pool that haven't finished, guarded by this
+    private int m_chunksDecoding = 0;
     private final ArrayDeque<Container> m_availableChunks = new ArrayDeque<Container>();
     private final HashSet<Integer> m_relevantPartitionIds;
     private final ChecksumType m_checksumType;
@@ -530,10 +582,6 @@ public class TableSaveFile
          * that should be easier to understand and validate.
          */
         private void readChunksV2() {
-            //For reading the compressed input.
-            final BBContainer fileInputBufferC =
-                    DBBPool.allocateDirect(CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE));
-            final ByteBuffer fileInputBuffer = fileInputBufferC.b();
             long sinceLastFAdvise = Long.MAX_VALUE;
             long positionAtLastFAdvise = 0;
             while (m_hasMoreChunks) {
@@ -579,11 +627,10 @@ public class TableSaveFile
                 try {
                     m_chunkReads.acquire();
                 } catch (InterruptedException e) {
-                    fileInputBufferC.discard();
                     return;
                 }
                 boolean expectedAnotherChunk = false;
-                Container c = null;
+                BBContainer compressed = null;
                 try {
 
                     /*
@@ -636,17 +683,17 @@ public class TableSaveFile
                         throw new IOException("Corrupted TableSaveFile chunk has negative chunk length");
                     }
 
-                    if (nextChunkLength > fileInputBuffer.capacity()) {
+                    if (nextChunkLength > COMPRESSED_CHUNKSIZE) {
                         throw new IOException("Corrupted TableSaveFile chunk has unreasonable length " +
                                 "> DEFAULT_CHUNKSIZE bytes");
                     }
 
                     /*
-                     * Go fetch the compressed data so that the uncompressed size is known
-                     * and use that to set nextChunkLength to be the uncompressed length,
-                     * the code ahead that constructs the volt table is expecting
-                     * the uncompressed size/data since it is producing an uncompressed table
+                     * Go fetch the compressed data. Validating and decompressing it is
+                     * handed off to the decode pool so this thread can go on reading ahead.
                      */
+                    compressed = getCompressedBuffer();
+                    final ByteBuffer fileInputBuffer = compressed.b();
                     fileInputBuffer.clear();
                     fileInputBuffer.limit(nextChunkLength);
                     while (fileInputBuffer.hasRemaining()) {
@@ -657,89 +704,20 @@ public class TableSaveFile
                         sinceLastFAdvise += read;
                     }
                     fileInputBuffer.flip();
-                    nextChunkLength = CompressionService.uncompressedLength(fileInputBuffer);
+                    SnapshotRestoreStats.s_bytesRead.addAndGet(nextChunkLength);
 
-                    /*
-                     * Validate the rest of the chunk. This can fail if the data is corrupted
-                     * or the length value was corrupted.
-                     */
-                    final int calculatedCRC =
-                            DBBPool.getBufferCRC32C(fileInputBuffer, 0, fileInputBuffer.remaining());
-                    if (calculatedCRC != nextChunkCRC) {
-                        m_corruptedPartitions.add(nextChunkPartitionId);
-                        if (m_continueOnCorruptedChunk) {
-                            m_chunkReads.release();
-                            continue;
-                        } else {
-                            throw new IOException("CRC mismatch in saved table chunk");
-                        }
+                    synchronized (TableSaveFile.this) {
+                        m_chunksDecoding++;
                     }
-
-                    /*
-                     * Now allocate space to store the chunk using the VoltTable serialization representation.
-                     * The chunk will contain an integer row count preceding it so it can
-                     * be sucked straight in. There is a little funny business to overwrite the
-                     * partition id that is not part of the serialization format
-                     */
-                    c = getOutputBuffer(nextChunkPartitionId);
-
-                    /*
-                     * If the length value is wrong or not all data made it to disk this read will
-                     * not complete correctly. There could be overflow, underflow etc.
-                     * so use a try finally block to indicate that all partitions are now corrupt.
-                     * The enclosing exception handlers will do the right thing WRT to
-                     * propagating the error and closing the file.
-                     */
-                    boolean completedRead = false;
                     try {
-                        final ByteBuffer buf = c.b();
-                        /*
-                         * Assemble a VoltTable out of the chunk of tuples.
-                         * Put in the header that was cached in the constructor,
-                         * then copy the tuple data.
-                         */
-                        buf.clear();
-                        buf.limit(nextChunkLength  + m_tableHeader.capacity());
-                        m_tableHeader.position(0);
-                        buf.put(m_tableHeader);
-                        //Doesn't move buffer position, does change the limit
-                        CompressionService.decompressBuffer(fileInputBuffer, buf);
-                        completedRead = true;
-                    } finally {
-                        if (!completedRead) {
-                            for (int partitionId : m_partitionIds) {
-                                m_corruptedPartitions.add(partitionId);
-                            }
-                            if (m_continueOnCorruptedChunk) {
-                                m_chunkReads.release();
-                                continue;
-                            } else {
-                                throw new IOException("Failed decompression of saved table chunk");
-                            }
+                        DecodePool.EXECUTOR.execute(new ChunkDecoder(compressed, nextChunkPartitionId, nextChunkCRC));
+                    } catch (RuntimeException e) {
+                        synchronized (TableSaveFile.this) {
+                            m_chunksDecoding--;
                         }
+                        throw e;
                     }
-
-                    /*
-                     * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
-                     * in case it is the length value that is corrupted
-                     */
-                    if (m_relevantPartitionIds != null) {
-                        if (!m_relevantPartitionIds.contains(nextChunkPartitionId)) {
-                            m_chunkReads.release();
-                            continue;
-                        }
-                    }
-
-                    /*
-                     * VoltTable wants the buffer at the home position 0
-                     */
-                    c.b().position(0);
-
-                    synchronized (TableSaveFile.this) {
-                        m_availableChunks.offer(c);
-                        c = null;
-                        TableSaveFile.this.notifyAll();
-                    }
+                    compressed = null;
                 } catch (EOFException eof) {
                     synchronized (TableSaveFile.this) {
                         m_hasMoreChunks = false;
@@ -775,10 +753,12 @@ public class TableSaveFile
                         TableSaveFile.this.notifyAll();
                     }
                 } finally {
-                    if (c != null) c.discard();
+                    if (compressed != null) {
+                        m_compressedBuffers.offer(compressed);
+                        m_chunkReads.release();
+                    }
                 }
             }
-            fileInputBufferC.discard();
         }
 
         private void readChunks() {
@@ -1043,6 +1023,136 @@ public class TableSaveFile
             }
             fileInputBufferC.discard();
         }
+
+        /**
+         * Validates and decompresses one chunk read by readChunksV2 and makes it
+         * available to getNextChunk. Chunks decoded in parallel can become available
+         * in a different order than they appear in the file.
+         */
+        private class ChunkDecoder implements Runnable {
+            private final BBContainer m_compressed;
+            private final int m_partitionId;
+            private final int m_crc;
+
+            ChunkDecoder(BBContainer compressed, int partitionId, int crc) {
+                m_compressed = compressed;
+                m_partitionId = partitionId;
+                m_crc = crc;
+            }
+
+            @Override
+            public void run() {
+                Container c = null;
+                boolean offered = false;
+                IOException failure = null;
+                try {
+                    final ByteBuffer fileInputBuffer = m_compressed.b();
+
+                    /*
+                     * Validate the rest of the chunk. This can fail if the data is corrupted
+                     * or the length value was corrupted.
+                     */
+                    final int calculatedCRC =
+                            DBBPool.getBufferCRC32C(fileInputBuffer, 0, fileInputBuffer.remaining());
+                    if (calculatedCRC != m_crc) {
+                        SnapshotRestoreStats.s_corruptChunks.incrementAndGet();
+                        synchronized (TableSaveFile.this) {
+                            m_corruptedPartitions.add(m_partitionId);
+                        }
+                        if (!m_continueOnCorruptedChunk) {
+                            failure = new IOException("CRC mismatch in saved table chunk");
+                        }
+                        return;
+                    }
+
+                    /*
+                     * Now allocate space to store the chunk using the VoltTable serialization representation.
+                     * The chunk will contain an integer row count preceding it so it can
+                     * be sucked straight in. There is a little funny business to overwrite the
+                     * partition id that is not part of the serialization format
+                     */
+                    c = getOutputBuffer(m_partitionId);
+                    try {
+                        final int uncompressedLength = CompressionService.uncompressedLength(fileInputBuffer);
+                        final ByteBuffer buf = c.b();
+                        /*
+                         * Assemble a VoltTable out of the chunk of tuples.
+                         * Put in the header that was cached in the constructor,
+                         * then copy the tuple data.
+                         */
+                        buf.clear();
+                        buf.limit(uncompressedLength + m_tableHeader.capacity());
+                        final ByteBuffer tableHeader = m_tableHeader.duplicate();
+                        tableHeader.position(0);
+                        buf.put(tableHeader);
+                        //Doesn't move buffer position, does change the limit
+                        CompressionService.decompressBuffer(fileInputBuffer, buf);
+                        SnapshotRestoreStats.s_bytesDecompressed.addAndGet(uncompressedLength);
+                    } catch (IOException | RuntimeException e) {
+                        SnapshotRestoreStats.s_corruptChunks.incrementAndGet();
+                        synchronized (TableSaveFile.this) {
+                            for (int partitionId : m_partitionIds) {
+                                m_corruptedPartitions.add(partitionId);
+                            }
+                        }
+                        if (!m_continueOnCorruptedChunk) {
+                            failure = new IOException("Failed decompression of saved table chunk", e);
+                        }
+                        return;
+                    }
+                    SnapshotRestoreStats.s_chunksDecoded.incrementAndGet();
+
+                    /*
+                     * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
+                     * in case it is the length value that is corrupted
+                     */
+                    if (m_relevantPartitionIds != null) {
+                        if (!m_relevantPartitionIds.contains(m_partitionId)) {
+                            return;
+                        }
+                    }
+
+                    /*
+                     * VoltTable wants the buffer at the home position 0
+                     */
+                    c.b().position(0);
+
+                    synchronized (TableSaveFile.this) {
+                        m_availableChunks.offer(c);
+                        c = null;
+                        offered = true;
+                    }
+                } catch (RuntimeException e) {
+                    failure = new IOException(e);
+                } finally {
+                    m_compressedBuffers.offer(m_compressed);
+                    if (c != null) {
+                        c.discard();
+                    }
+                    synchronized (TableSaveFile.this) {
+                        if (!offered) {
+                            // The chunk won't be handed out, let the reader read another in its place
+                            m_chunkReads.release();
+                        }
+                        if (failure != null && m_chunkReaderException == null) {
+                            m_hasMoreChunks = false;
+                            m_chunkReaderException = failure;
+                        }
+                        m_chunksDecoding--;
+                        TableSaveFile.this.notifyAll();
+                    }
+                }
+            }
+        }
+
+        private BBContainer getCompressedBuffer() {
+            BBContainer c = m_compressedBuffers.poll();
+            if (c == null) {
+                c = DBBPool.allocateDirect(COMPRESSED_CHUNKSIZE);
+            }
+            return c;
+        }
+
         private Container getOutputBuffer(final int nextChunkPartitionId) {
             BBContainer c = m_buffers.poll();
             if (c == null) {
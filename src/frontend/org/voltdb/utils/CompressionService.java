@@ -166,6 +166,30 @@ public final class CompressionService {
         return result;
     }
 
+    /**
+     * Compress the remaining bytes of a direct or heap buffer into a buffer from the
+     * DBBPool pool, without going through a byte array. The position of the input
+     * is left alone. The caller owns the returned container, whose buffer is
+     * positioned at the compressed data, and must discard it.
+     */
+    public static BBContainer compressBufferToPooled(ByteBuffer buffer) throws IOException {
+        ByteBuffer input = buffer.duplicate();
+        if (!input.isDirect()) {
+            IOBuffers buffers = getBuffersForCompression(input.remaining(), false);
+            buffers.input.b().put(input);
+            input = buffers.input.b();
+            input.flip();
+        }
+        BBContainer output = DBBPool.allocateDirectAndPool(Snappy.maxCompressedLength(input.remaining()));
+        try {
+            Snappy.compress(input, output.b());
+        } catch (IOException e) {
+            output.discard();
+            throw e;
+        }
+        return output;
+    }
+
     public static byte[] compressBytes(byte bytes[], int offset, int length) throws IOException {
         final IOBuffers buffers = getBuffersForCompression(bytes.length, false);
         final ByteBuffer input = buffers.input.b();
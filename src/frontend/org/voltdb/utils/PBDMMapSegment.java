@@ -0,0 +1,547 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.DeferredSerialization;
+import org.voltdb.utils.BinaryDeque.OutputContainerFactory;
+
+import com.google_voltpatches.common.base.Preconditions;
+
+/**
+ * A segment with the same on disk format as {@link PBDRegularSegment} that is accessed
+ * through a memory mapping instead of positional channel reads and writes.
+ *
+ * A segment opened for write maps the full {@link PBDSegment#CHUNK_SIZE} and appends
+ * entries by copying (or compressing) straight into the mapping. The file is truncated
+ * back to the bytes actually written when the segment is closed, which is also how
+ * {@link #truncateTo(long)} cuts off entries during parseAndTruncate. A segment opened
+ * only for read maps the existing file read only.
+ *
+ * Uncompressed entries are returned by {@link PBDSegmentReader#poll(OutputContainerFactory)}
+ * as read only slices of the mapping, without copying and without using the factory.
+ * Compressed entries are decompressed from the mapping into a container from the factory.
+ * Each mapping is reference counted so that it is only unmapped once the segment has been
+ * closed and every slice handed out from it has been discarded.
+ */
+public class PBDMMapSegment extends PBDSegment {
+    private static final VoltLogger LOG = new VoltLogger("HOST");
+
+    /**
+     * A mapping of the segment file. The segment holds one reference while it is open
+     * and every outstanding slice holds another.
+     */
+    private static class MappedRegion {
+        private final DBBPool.MBBContainer m_cont;
+        private int m_refCount = 1;
+
+        MappedRegion(DBBPool.MBBContainer cont) {
+            m_cont = cont;
+        }
+
+        synchronized void retain() {
+            assert(m_refCount > 0);
+            m_refCount++;
+        }
+
+        synchronized void release() {
+            assert(m_refCount > 0);
+            if (--m_refCount == 0) {
+                m_cont.discard();
+            }
+        }
+    }
+
+    private final Map<String, SegmentReader> m_readCursors = new HashMap<>();
+    private final Map<String, SegmentReader> m_closedCursors = new HashMap<>();
+
+    //ID of this segment
+    private final Long m_index;
+
+    private int m_numOfEntries = -1;
+    private int m_size = -1;
+
+    private MappedRegion m_region = null;
+    // The mapped buffer, its position is the write position when open for write
+    private ByteBuffer m_buf = null;
+    private boolean m_forWrite = false;
+
+    public PBDMMapSegment(Long index, File file) {
+        super(file);
+        m_index = index;
+        reset();
+    }
+
+    @Override
+    public long segmentId()
+    {
+        return m_index;
+    }
+
+    @Override
+    public File file()
+    {
+        return m_file;
+    }
+
+    @Override
+    public void reset()
+    {
+        m_syncedSinceLastEdit = false;
+        for (SegmentReader reader : m_readCursors.values()) {
+            reader.resetReader();
+        }
+    }
+
+    @Override
+    public int getNumEntries() throws IOException
+    {
+        boolean wasClosed = false;
+        if (m_closed) {
+            wasClosed = true;
+            open(false, false);
+        }
+        if (m_buf.capacity() >= SEGMENT_HEADER_BYTES) {
+            m_numOfEntries = m_buf.getInt(COUNT_OFFSET);
+            m_size = m_buf.getInt(SIZE_OFFSET);
+        } else {
+            m_numOfEntries = 0;
+            m_size = 0;
+        }
+        if (wasClosed) closeReadersAndFile();
+        return m_numOfEntries;
+    }
+
+    @Override
+    public boolean isBeingPolled()
+    {
+        return !m_readCursors.isEmpty();
+    }
+
+    @Override
+    public boolean isOpenForReading(String cursorId) {
+        return m_readCursors.containsKey(cursorId);
+    }
+
+    @Override
+    public PBDSegmentReader openForRead(String cursorId) throws IOException
+    {
+        Preconditions.checkNotNull(cursorId, "Reader id must be non-null");
+        if (m_readCursors.containsKey(cursorId) || m_closedCursors.containsKey(cursorId)) {
+            throw new IOException("Segment is already open for reading for cursor " + cursorId);
+        }
+
+        if (m_closed) {
+            open(false, false);
+        }
+        SegmentReader reader = new SegmentReader(cursorId);
+        m_readCursors.put(cursorId, reader);
+        return reader;
+    }
+
+    @Override
+    public PBDSegmentReader getReader(String cursorId) {
+        PBDSegmentReader reader = m_closedCursors.get(cursorId);
+        return (reader == null) ? m_readCursors.get(cursorId) : reader;
+    }
+
+    @Override
+    protected void openForWrite(boolean emptyFile) throws IOException {
+        open(true, emptyFile);
+    }
+
+    private void open(boolean forWrite, boolean emptyFile) throws IOException {
+        if (!m_closed) {
+            throw new IOException("Segment is already opened");
+        }
+
+        if (!m_file.exists()) {
+            if (!forWrite) {
+                throw new IOException("File " + m_file + " does not exist");
+            }
+            m_syncedSinceLastEdit = false;
+        }
+        assert(m_ras == null);
+        m_ras = new RandomAccessFile( m_file, forWrite ? "rw" : "r");
+        m_fc = m_ras.getChannel();
+        final long existingBytes;
+        try {
+            existingBytes = m_fc.size();
+            if (forWrite) {
+                // Mapping past the end of the file extends it, the unused tail is cut off on close
+                m_region = new MappedRegion(DBBPool.wrapMBB(
+                        m_fc.map(MapMode.READ_WRITE, 0, Math.max(CHUNK_SIZE, existingBytes))));
+            } else {
+                m_region = new MappedRegion(DBBPool.wrapMBB(m_fc.map(MapMode.READ_ONLY, 0, m_fc.size())));
+            }
+        } catch (IOException e) {
+            m_ras.close();
+            m_ras = null;
+            m_fc = null;
+            throw e;
+        }
+        m_buf = m_region.m_cont.b();
+        m_forWrite = forWrite;
+
+        if (emptyFile) {
+            initNumEntries(0, 0);
+        }
+        if (forWrite && !emptyFile) {
+            // Keep the existing entries when the file is only cut off on close
+            m_buf.position((int)Math.max(SEGMENT_HEADER_BYTES, existingBytes));
+        } else if (m_buf.capacity() >= SEGMENT_HEADER_BYTES) {
+            m_buf.position(SEGMENT_HEADER_BYTES);
+        }
+
+        m_closed = false;
+    }
+
+    @Override
+    protected void initNumEntries(int count, int size) throws IOException {
+        m_numOfEntries = count;
+        m_size = size;
+
+        m_buf.putInt(COUNT_OFFSET, m_numOfEntries);
+        m_buf.putInt(SIZE_OFFSET, m_size);
+        m_syncedSinceLastEdit = false;
+    }
+
+    private void incrementNumEntries(int size) throws IOException
+    {
+        initNumEntries(m_numOfEntries + 1, m_size + size);
+    }
+
+    /**
+     * Bytes of space available for inserting more entries
+     * @return
+     */
+    private int remaining() throws IOException {
+        //Subtract 8 for the length and size prefix
+        return (PBDSegment.CHUNK_SIZE - m_buf.position()) - SEGMENT_HEADER_BYTES;
+    }
+
+    @Override
+    public void closeAndDelete() throws IOException {
+        close();
+        m_file.delete();
+
+        m_numOfEntries = -1;
+        m_size = -1;
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return m_closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        m_closedCursors.clear();
+        closeReadersAndFile();
+    }
+
+    private void closeReadersAndFile() throws IOException {
+        m_readCursors.clear();
+        try {
+            if (m_region != null) {
+                final int written = m_buf.position();
+                // Slices still held by readers keep the mapping alive, the last discard unmaps it
+                m_region.release();
+                if (m_forWrite) {
+                    m_fc.truncate(written);
+                }
+            }
+        } finally {
+            try {
+                if (m_ras != null) {
+                    m_ras.close();
+                }
+            } finally {
+                m_region = null;
+                m_buf = null;
+                m_forWrite = false;
+                m_ras = null;
+                m_fc = null;
+                m_closed = true;
+                reset();
+            }
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        if (m_closed) throw new IOException("Segment closed");
+        if (!m_syncedSinceLastEdit && m_forWrite) {
+            m_region.m_cont.b().force();
+        }
+        m_syncedSinceLastEdit = true;
+    }
+
+    @Override
+    public boolean hasAllFinishedReading() throws IOException {
+        if (m_closed) throw new IOException("Segment closed");
+
+        if (m_readCursors.size() == 0) return false;
+
+        for (SegmentReader reader : m_readCursors.values()) {
+            if (reader.m_objectReadIndex < m_numOfEntries) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean offer(DBBPool.BBContainer cont, boolean compress) throws IOException
+    {
+        if (m_closed) throw new IOException("Segment closed");
+        if (!m_forWrite) throw new IOException("Segment not opened for write");
+        final ByteBuffer buf = cont.b();
+        final int remaining = buf.remaining();
+        if (remaining < 32 || !buf.isDirect()) compress = false;
+        final int maxCompressedSize = (compress ? CompressionService.maxCompressedLength(remaining) : remaining) + OBJECT_HEADER_BYTES;
+        if (remaining() < maxCompressedSize) return false;
+
+        m_syncedSinceLastEdit = false;
+
+        try {
+            final int headerPosition = m_buf.position();
+            final int length;
+            final int flags;
+            m_buf.position(headerPosition + OBJECT_HEADER_BYTES);
+            if (compress) {
+                // Compress directly into the mapping instead of a staging buffer
+                length = CompressionService.compressBuffer(buf, m_buf.slice());
+                flags = FLAG_COMPRESSED;
+            } else {
+                m_buf.put(buf);
+                length = remaining;
+                flags = NO_FLAGS;
+            }
+            m_buf.putInt(headerPosition, length);
+            m_buf.putInt(headerPosition + 4, flags);
+            m_buf.position(headerPosition + OBJECT_HEADER_BYTES + length);
+
+            incrementNumEntries(remaining);
+        } finally {
+            cont.discard();
+        }
+
+        return true;
+    }
+
+    @Override
+    public int offer(DeferredSerialization ds) throws IOException
+    {
+        if (m_closed) throw new IOException("closed");
+        if (!m_forWrite) throw new IOException("Segment not opened for write");
+        final int fullSize = ds.getSerializedSize() + OBJECT_HEADER_BYTES;
+        if (remaining() < fullSize) return -1;
+
+        m_syncedSinceLastEdit = false;
+
+        final int headerPosition = m_buf.position();
+        final ByteBuffer dest = m_buf.duplicate();
+        dest.limit(headerPosition + fullSize);
+        final int written = PBDUtils.writeDeferredSerialization(dest, ds);
+        m_buf.position(headerPosition + OBJECT_HEADER_BYTES + written);
+
+        incrementNumEntries(written);
+        return written;
+    }
+
+    @Override
+    public int size() {
+        return m_size;
+    }
+
+    @Override
+    protected int writeTruncatedEntry(BinaryDeque.TruncatorResponse entry, int length, long offset)
+            throws IOException
+    {
+        // The response may still reference the polled entry, which is a slice of this
+        // mapping, so stage it before overwriting the original in place
+        int written = 0;
+        final DBBPool.BBContainer partialCont = DBBPool.allocateDirect(length);
+        try {
+            written += entry.writeTruncatedObject(partialCont.b());
+            partialCont.b().flip();
+
+            final ByteBuffer dest = m_buf.duplicate();
+            dest.position((int)offset);
+            dest.put(partialCont.b());
+        } finally {
+            partialCont.discard();
+        }
+        m_syncedSinceLastEdit = false;
+        return written;
+    }
+
+    @Override
+    protected void truncateTo(long offset) throws IOException
+    {
+        // The file is cut off at the write position when the segment is closed
+        m_buf.position((int)offset);
+        m_syncedSinceLastEdit = false;
+    }
+
+    private class SegmentReader implements PBDSegmentReader {
+        private final String m_cursorId;
+        private long m_readOffset = SEGMENT_HEADER_BYTES;
+        //Index of the next object to read, not an offset into the file
+        private int m_objectReadIndex = 0;
+        private int m_bytesRead = 0;
+        private int m_discardCount = 0;
+        private boolean m_closed = false;
+
+        public SegmentReader(String cursorId) {
+            assert(cursorId != null);
+            m_cursorId = cursorId;
+        }
+
+        private void resetReader() {
+            m_objectReadIndex = 0;
+            m_bytesRead = 0;
+            m_readOffset = SEGMENT_HEADER_BYTES;
+            m_discardCount = 0;
+        }
+
+        @Override
+        public boolean hasMoreEntries() throws IOException {
+            return m_objectReadIndex < m_numOfEntries;
+        }
+
+        @Override
+        public boolean allReadAndDiscarded() throws IOException {
+            return m_discardCount == m_numOfEntries;
+        }
+
+        @Override
+        public BBContainer poll(OutputContainerFactory factory) throws IOException {
+            if (m_closed) throw new IOException("Reader closed");
+
+            if (!hasMoreEntries()) {
+                return null;
+            }
+
+            final int headerPosition = (int)m_readOffset;
+            final int length = m_buf.getInt(headerPosition);
+            final int flags = m_buf.getInt(headerPosition + 4);
+            final boolean compressed = (flags & FLAG_COMPRESSED) != 0;
+            final int uncompressedLen;
+
+            if (length < 1) {
+                throw new IOException("Read an invalid length");
+            }
+
+            final ByteBuffer entry = m_buf.asReadOnlyBuffer();
+            entry.limit(headerPosition + OBJECT_HEADER_BYTES + length);
+            entry.position(headerPosition + OBJECT_HEADER_BYTES);
+
+            final DBBPool.BBContainer retcont;
+            if (compressed) {
+                final ByteBuffer compressedBuf = entry.slice();
+                uncompressedLen = CompressionService.uncompressedLength(compressedBuf);
+                retcont = factory.getContainer(uncompressedLen);
+                retcont.b().limit(uncompressedLen);
+                CompressionService.decompressBuffer(compressedBuf, retcont.b());
+            } else {
+                uncompressedLen = length;
+                final MappedRegion region = m_region;
+                region.retain();
+                retcont = new DBBPool.BBContainer(entry.slice()) {
+                    @Override
+                    public void discard() {
+                        checkDoubleFree();
+                        region.release();
+                    }
+                };
+            }
+
+            m_readOffset = headerPosition + OBJECT_HEADER_BYTES + length;
+            m_bytesRead += uncompressedLen;
+            m_objectReadIndex++;
+
+            return new DBBPool.BBContainer(retcont.b()) {
+                private boolean m_discarded = false;
+
+                @Override
+                public void discard() {
+                    checkDoubleFree();
+                    if (m_discarded) {
+                        LOG.error("PBD Container discarded more than once");
+                        return;
+                    }
+
+                    m_discarded = true;
+                    retcont.discard();
+                    m_discardCount++;
+                }
+            };
+        }
+
+        @Override
+        public int uncompressedBytesToRead() {
+            if (m_closed) throw new RuntimeException("Reader closed");
+
+            return m_size - m_bytesRead;
+        }
+
+        @Override
+        public long readOffset() {
+            return m_readOffset;
+        }
+
+        @Override
+        public int readIndex() {
+            return m_objectReadIndex;
+        }
+
+        @Override
+        public void rewindReadOffset(int byBytes) {
+            m_readOffset -= byBytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            m_closed = true;
+            m_readCursors.remove(m_cursorId);
+            m_closedCursors.put(m_cursorId, this);
+            if (m_readCursors.isEmpty()) {
+                closeReadersAndFile();
+            }
+        }
+
+        @Override
+        public boolean isClosed() {
+            return m_closed;
+        }
+    }
+}
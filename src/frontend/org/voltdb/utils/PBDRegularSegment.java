@@ -342,8 +342,10 @@ public class PBDRegularSegment extends PBDSegment {
     }
 
     @Override
-    protected int writeTruncatedEntry(BinaryDeque.TruncatorResponse entry, int length) throws IOException
+    protected int writeTruncatedEntry(BinaryDeque.TruncatorResponse entry, int length, long offset)
+            throws IOException
     {
+        m_fc.position(offset);
         int written = 0;
         final DBBPool.BBContainer partialCont = DBBPool.allocateDirect(length);
         try {
@@ -359,6 +361,12 @@ public class PBDRegularSegment extends PBDSegment {
         return written;
     }
 
+    @Override
+    protected void truncateTo(long offset) throws IOException
+    {
+        m_fc.truncate(offset);
+    }
+
     private class SegmentReader implements PBDSegmentReader {
         private final String m_cursorId;
         private long m_readOffset = SEGMENT_HEADER_BYTES;
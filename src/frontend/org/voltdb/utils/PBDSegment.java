@@ -165,7 +165,20 @@ public abstract class PBDSegment {
     // TODO: javadoc
     abstract int size();
 
-    abstract protected int writeTruncatedEntry(BinaryDeque.TruncatorResponse entry, int length) throws IOException;
+    /**
+     * Write the truncated form of an entry at the given offset of a segment opened for write.
+     * @param entry     truncator response producing the replacement entry
+     * @param length    stored length of the entry being replaced, an upper bound on the replacement
+     * @param offset    file offset of the header of the entry being replaced
+     * @return bytes of entry data written, not counting the entry header
+     */
+    abstract protected int writeTruncatedEntry(BinaryDeque.TruncatorResponse entry, int length, long offset)
+            throws IOException;
+
+    /**
+     * Cut off everything in a segment opened for write after the given file offset.
+     */
+    abstract protected void truncateTo(long offset) throws IOException;
 
     /**
      * Parse the segment and truncate the file if necessary.
@@ -216,7 +229,7 @@ public abstract class PBDSegment {
                             entriesTruncated = initialEntryCount - (reader.readIndex() - 1);
                             //Don't forget to update the number of entries in the file
                             initNumEntries(reader.readIndex() - 1, sizeInBytes);
-                            m_fc.truncate(reader.readOffset() - (compressedLength + OBJECT_HEADER_BYTES));
+                            truncateTo(reader.readOffset() - (compressedLength + OBJECT_HEADER_BYTES));
                         }
                     } else {
                         assert retval.status == BinaryDeque.TruncatorResponse.Status.PARTIAL_TRUNCATE;
@@ -224,13 +237,12 @@ public abstract class PBDSegment {
                         //Partial object truncation
                         reader.rewindReadOffset(compressedLength + OBJECT_HEADER_BYTES);
                         final long partialEntryBeginOffset = reader.readOffset();
-                        m_fc.position(partialEntryBeginOffset);
 
-                        final int written = writeTruncatedEntry(retval, compressedLength);
+                        final int written = writeTruncatedEntry(retval, compressedLength, partialEntryBeginOffset);
                         sizeInBytes += written;
 
                         initNumEntries(reader.readIndex(), sizeInBytes);
-                        m_fc.truncate(partialEntryBeginOffset + written + OBJECT_HEADER_BYTES);
+                        truncateTo(partialEntryBeginOffset + written + OBJECT_HEADER_BYTES);
                     }
 
                     break;
@@ -255,6 +255,8 @@ public class PersistentBinaryDeque implements BinaryDeque {
     private final HashMap<String, ReadCursor> m_readCursors = new HashMap<>();
     private int m_numObjects;
     private int m_numDeleted;
+    // Use memory mapped segments that hand out entries without copying, see PBDMMapSegment
+    private final boolean m_useMmap = Boolean.getBoolean("PBD_USE_MMAP");
 
     /**
      * Create a persistent binary deque with the specified nonce and storage
@@ -484,6 +486,9 @@ public class PersistentBinaryDeque implements BinaryDeque {
     }
 
     private PBDSegment newSegment(long segmentId, File file) {
+        if (m_useMmap) {
+            return new PBDMMapSegment(segmentId, file);
+        }
         return new PBDRegularSegment(segmentId, file);
     }
 
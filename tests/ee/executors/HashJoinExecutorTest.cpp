@@ -0,0 +1,428 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include "harness.h"
+
+#include "catalog/cluster.h"
+#include "catalog/database.h"
+#include "catalog/table.h"
+#include "execution/VoltDBEngine.h"
+#include "storage/persistenttable.h"
+#include "storage/temptable.h"
+#include "test_utils/plan_testing_baseclass.h"
+
+#include <cstdio>
+#include <limits>
+#include <vector>
+
+namespace {
+//  Plan for this query, with the join type and whether the hash key
+//  matches NULLs (IS NOT DISTINCT FROM rather than =) left to fill in:
+//      select AAA.A, AAA.B, BBB.A, BBB.B
+//          from AAA <join> BBB on AAA.A = BBB.A order by 1, 2, 3, 4;
+const char *plan_template =
+    "{\n"
+    "    \"EXECUTE_LIST\": [\n"
+    "        1,\n"
+    "        2,\n"
+    "        3,\n"
+    "        4,\n"
+    "        5\n"
+    "    ],\n"
+    "    \"PLAN_NODES\": [\n"
+    "        {\n"
+    "            \"CHILDREN_IDS\": [4],\n"
+    "            \"ID\": 5,\n"
+    "            \"PLAN_NODE_TYPE\": \"SEND\"\n"
+    "        },\n"
+    "        {\n"
+    "            \"CHILDREN_IDS\": [3],\n"
+    "            \"ID\": 4,\n"
+    "            \"PLAN_NODE_TYPE\": \"ORDERBY\",\n"
+    "            \"SORT_COLUMNS\": [\n"
+    "                {\n"
+    "                    \"SORT_DIRECTION\": \"ASC\",\n"
+    "                    \"SORT_EXPRESSION\": {\n"
+    "                        \"COLUMN_IDX\": 0,\n"
+    "                        \"TYPE\": 32,\n"
+    "                        \"VALUE_TYPE\": 5\n"
+    "                    }\n"
+    "                },\n"
+    "                {\n"
+    "                    \"SORT_DIRECTION\": \"ASC\",\n"
+    "                    \"SORT_EXPRESSION\": {\n"
+    "                        \"COLUMN_IDX\": 1,\n"
+    "                        \"TYPE\": 32,\n"
+    "                        \"VALUE_TYPE\": 5\n"
+    "                    }\n"
+    "                },\n"
+    "                {\n"
+    "                    \"SORT_DIRECTION\": \"ASC\",\n"
+    "                    \"SORT_EXPRESSION\": {\n"
+    "                        \"COLUMN_IDX\": 2,\n"
+    "                        \"TYPE\": 32,\n"
+    "                        \"VALUE_TYPE\": 5\n"
+    "                    }\n"
+    "                },\n"
+    "                {\n"
+    "                    \"SORT_DIRECTION\": \"ASC\",\n"
+    "                    \"SORT_EXPRESSION\": {\n"
+    "                        \"COLUMN_IDX\": 3,\n"
+    "                        \"TYPE\": 32,\n"
+    "                        \"VALUE_TYPE\": 5\n"
+    "                    }\n"
+    "                }\n"
+    "            ]\n"
+    "        },\n"
+    "        {\n"
+    "            \"CHILDREN_IDS\": [\n"
+    "                1,\n"
+    "                2\n"
+    "            ],\n"
+    "            \"ID\": 3,\n"
+    "            \"INNER_HASH_EXPRESSIONS\": [{\n"
+    "                \"COLUMN_IDX\": 0,\n"
+    "                \"TYPE\": 32,\n"
+    "                \"VALUE_TYPE\": 5\n"
+    "            }],\n"
+    "            \"JOIN_TYPE\": \"%s\",\n"
+    "            \"NULL_SAFE_HASH_KEYS\": [%s],\n"
+    "            \"OUTER_HASH_EXPRESSIONS\": [{\n"
+    "                \"COLUMN_IDX\": 0,\n"
+    "                \"TYPE\": 32,\n"
+    "                \"VALUE_TYPE\": 5\n"
+    "            }],\n"
+    "            \"OUTPUT_SCHEMA\": [\n"
+    "                {\n"
+    "                    \"COLUMN_NAME\": \"A\",\n"
+    "                    \"EXPRESSION\": {\n"
+    "                        \"COLUMN_IDX\": 0,\n"
+    "                        \"TYPE\": 32,\n"
+    "                        \"VALUE_TYPE\": 5\n"
+    "                    }\n"
+    "                },\n"
+    "                {\n"
+    "                    \"COLUMN_NAME\": \"B\",\n"
+    "                    \"EXPRESSION\": {\n"
+    "                        \"COLUMN_IDX\": 1,\n"
+    "                        \"TYPE\": 32,\n"
+    "                        \"VALUE_TYPE\": 5\n"
+    "                    }\n"
+    "                },\n"
+    "                {\n"
+    "                    \"COLUMN_NAME\": \"A\",\n"
+    "                    \"EXPRESSION\": {\n"
+    "                        \"COLUMN_IDX\": 0,\n"
+    "                        \"TABLE_IDX\": 1,\n"
+    "                        \"TYPE\": 32,\n"
+    "                        \"VALUE_TYPE\": 5\n"
+    "                    }\n"
+    "                },\n"
+    "                {\n"
+    "                    \"COLUMN_NAME\": \"B\",\n"
+    "                    \"EXPRESSION\": {\n"
+    "                        \"COLUMN_IDX\": 1,\n"
+    "                        \"TABLE_IDX\": 1,\n"
+    "                        \"TYPE\": 32,\n"
+    "                        \"VALUE_TYPE\": 5\n"
+    "                    }\n"
+    "                }\n"
+    "            ],\n"
+    "            \"PLAN_NODE_TYPE\": \"HASHJOIN\"\n"
+    "        },\n"
+    "        {\n"
+    "            \"ID\": 1,\n"
+    "            \"PLAN_NODE_TYPE\": \"SEQSCAN\",\n"
+    "            \"TARGET_TABLE_ALIAS\": \"AAA\",\n"
+    "            \"TARGET_TABLE_NAME\": \"AAA\"\n"
+    "        },\n"
+    "        {\n"
+    "            \"ID\": 2,\n"
+    "            \"PLAN_NODE_TYPE\": \"SEQSCAN\",\n"
+    "            \"TARGET_TABLE_ALIAS\": \"BBB\",\n"
+    "            \"TARGET_TABLE_NAME\": \"BBB\"\n"
+    "        }\n"
+    "    ]\n"
+    "}\n";
+
+/**
+ * The catalog string below reflects this DDL.
+ *
+ * CREATE TABLE AAA (
+ *    A  INTEGER,
+ *    B  INTEGER
+ * );
+ * CREATE TABLE BBB (
+ *    A  INTEGER,
+ *    B  INTEGER
+ * );
+ */
+const char *catalog_string =
+    "add / clusters cluster\n"
+    "set /clusters#cluster localepoch 1199145600\n"
+    "set $PREV securityEnabled false\n"
+    "set $PREV httpdportno 0\n"
+    "set $PREV jsonapi false\n"
+    "set $PREV networkpartition false\n"
+    "set $PREV voltRoot \"\"\n"
+    "set $PREV exportOverflow \"\"\n"
+    "set $PREV drOverflow \"\"\n"
+    "set $PREV adminport 0\n"
+        "set $PREV adminstartup false\n"
+    "set $PREV heartbeatTimeout 0\n"
+    "set $PREV useddlschema false\n"
+    "set $PREV drConsumerEnabled false\n"
+    "set $PREV drProducerEnabled false\n"
+        "set $PREV drClusterId 0\n"
+    "set $PREV drProducerPort 0\n"
+    "set $PREV drMasterHost \"\"\n"
+    "set $PREV drFlushInterval 0\n"
+    "add /clusters#cluster databases database\n"
+    "set /clusters#cluster/databases#database schema \"eJx9ikEKgEAMA+++pptO0L26+P8v2YIHQZCQkDAhLcwwWFE5EKt7tZJCR/lRbyZXv9mxpfWi+qX5oaGZ53YD0G8aZw==\"\n"
+    "set $PREV isActiveActiveDRed false\n"
+    "set $PREV securityprovider \"\"\n"
+    "add /clusters#cluster/databases#database groups administrator\n"
+    "set /clusters#cluster/databases#database/groups#administrator admin true\n"
+    "set $PREV defaultproc true\n"
+    "set $PREV defaultprocread true\n"
+    "set $PREV sql true\n"
+    "set $PREV sqlread true\n"
+    "set $PREV allproc true\n"
+    "add /clusters#cluster/databases#database groups user\n"
+    "set /clusters#cluster/databases#database/groups#user admin false\n"
+    "set $PREV defaultproc true\n"
+    "set $PREV defaultprocread true\n"
+    "set $PREV sql true\n"
+    "set $PREV sqlread true\n"
+    "set $PREV allproc true\n"
+    "add /clusters#cluster/databases#database tables AAA\n"
+    "set /clusters#cluster/databases#database/tables#AAA isreplicated true\n"
+    "set $PREV partitioncolumn null\n"
+    "set $PREV estimatedtuplecount 0\n"
+    "set $PREV materializer null\n"
+    "set $PREV signature \"AAA|ii\"\n"
+    "set $PREV tuplelimit 2147483647\n"
+    "set $PREV isDRed false\n"
+    "add /clusters#cluster/databases#database/tables#AAA columns A\n"
+    "set /clusters#cluster/databases#database/tables#AAA/columns#A index 0\n"
+    "set $PREV type 5\n"
+    "set $PREV size 4\n"
+    "set $PREV nullable true\n"
+    "set $PREV name \"A\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV matview null\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV inbytes false\n"
+    "add /clusters#cluster/databases#database/tables#AAA columns B\n"
+    "set /clusters#cluster/databases#database/tables#AAA/columns#B index 1\n"
+    "set $PREV type 5\n"
+    "set $PREV size 4\n"
+    "set $PREV nullable true\n"
+    "set $PREV name \"B\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV matview null\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV inbytes false\n"
+    "add /clusters#cluster/databases#database tables BBB\n"
+    "set /clusters#cluster/databases#database/tables#BBB isreplicated true\n"
+    "set $PREV partitioncolumn null\n"
+    "set $PREV estimatedtuplecount 0\n"
+    "set $PREV materializer null\n"
+    "set $PREV signature \"BBB|ii\"\n"
+    "set $PREV tuplelimit 2147483647\n"
+    "set $PREV isDRed false\n"
+    "add /clusters#cluster/databases#database/tables#BBB columns A\n"
+    "set /clusters#cluster/databases#database/tables#BBB/columns#A index 0\n"
+    "set $PREV type 5\n"
+    "set $PREV size 4\n"
+    "set $PREV nullable true\n"
+    "set $PREV name \"A\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV matview null\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV inbytes false\n"
+    "add /clusters#cluster/databases#database/tables#BBB columns B\n"
+    "set /clusters#cluster/databases#database/tables#BBB/columns#B index 1\n"
+    "set $PREV type 5\n"
+    "set $PREV size 4\n"
+    "set $PREV nullable true\n"
+    "set $PREV name \"B\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV matview null\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV inbytes false\n";
+
+// An INTEGER column stores NULL as its minimum value.
+const int32_t NULL_INT = std::numeric_limits<int32_t>::min();
+
+const int NUM_COLS = 2;
+
+const int32_t input_AAA[][NUM_COLS] = {
+    {        1,  10 },
+    {        2,  20 },
+    {        2,  21 },
+    {        3,  30 },
+    { NULL_INT,  40 }
+};
+
+const int32_t input_BBB[][NUM_COLS] = {
+    {        2, 200 },
+    {        2, 201 },
+    {        3, 300 },
+    {        4, 400 },
+    { NULL_INT, 500 }
+};
+
+const int NUM_ROWS_AAA = sizeof(input_AAA) / sizeof(input_AAA[0]);
+const int NUM_ROWS_BBB = sizeof(input_BBB) / sizeof(input_BBB[0]);
+}
+
+class HashJoinExecutorTest : public PlanTestingBaseClass<EngineTestTopend> {
+public:
+    HashJoinExecutorTest() {
+        initialize(catalog_string);
+    }
+
+    void loadTable(const char *name, const int32_t (*rows)[NUM_COLS], int numRows) {
+        initializeTableOfInt(name, NULL, NULL, numRows, NUM_COLS, (const int32_t *)rows);
+    }
+
+    void executeJoin(const char *joinType, bool nullSafe) {
+        char plan[8192];
+        snprintf(plan, sizeof(plan), plan_template, joinType, nullSafe ? "true" : "false");
+        // A new fragment id for every plan, the engine caches them by id.
+        ASSERT_EQ(ENGINE_ERRORCODE_SUCCESS, executeFragment(m_fragmentNumber++, plan));
+    }
+
+    void loadBothTables() {
+        loadTable("AAA", input_AAA, NUM_ROWS_AAA);
+        loadTable("BBB", input_BBB, NUM_ROWS_BBB);
+    }
+};
+
+// Every pair of duplicate keys matches, NULL keys match nothing.
+TEST_F(HashJoinExecutorTest, testInnerJoin) {
+    loadBothTables();
+    const int32_t output[][4] = {
+        {        2,  20,        2, 200 },
+        {        2,  20,        2, 201 },
+        {        2,  21,        2, 200 },
+        {        2,  21,        2, 201 },
+        {        3,  30,        3, 300 }
+    };
+    executeJoin("INNER", false);
+    validateResult((const int32_t *)output, 5, 4);
+}
+
+// An IS NOT DISTINCT FROM key matches NULL to NULL.
+TEST_F(HashJoinExecutorTest, testInnerJoinNullSafe) {
+    loadBothTables();
+    const int32_t output[][4] = {
+        { NULL_INT,  40, NULL_INT, 500 },
+        {        2,  20,        2, 200 },
+        {        2,  20,        2, 201 },
+        {        2,  21,        2, 200 },
+        {        2,  21,        2, 201 },
+        {        3,  30,        3, 300 }
+    };
+    executeJoin("INNER", true);
+    validateResult((const int32_t *)output, 6, 4);
+}
+
+// Outer rows without a match, including the one with a NULL key, are padded with NULLs.
+TEST_F(HashJoinExecutorTest, testLeftJoin) {
+    loadBothTables();
+    const int32_t output[][4] = {
+        { NULL_INT,  40, NULL_INT, NULL_INT },
+        {        1,  10, NULL_INT, NULL_INT },
+        {        2,  20,        2,      200 },
+        {        2,  20,        2,      201 },
+        {        2,  21,        2,      200 },
+        {        2,  21,        2,      201 },
+        {        3,  30,        3,      300 }
+    };
+    executeJoin("LEFT", false);
+    validateResult((const int32_t *)output, 7, 4);
+}
+
+// Inner rows that no outer row matched are added with NULL outer columns.
+TEST_F(HashJoinExecutorTest, testFullJoin) {
+    loadBothTables();
+    const int32_t output[][4] = {
+        { NULL_INT, NULL_INT, NULL_INT,      500 },
+        { NULL_INT, NULL_INT,        4,      400 },
+        { NULL_INT,       40, NULL_INT, NULL_INT },
+        {        1,       10, NULL_INT, NULL_INT },
+        {        2,       20,        2,      200 },
+        {        2,       20,        2,      201 },
+        {        2,       21,        2,      200 },
+        {        2,       21,        2,      201 },
+        {        3,       30,        3,      300 }
+    };
+    executeJoin("FULL", false);
+    validateResult((const int32_t *)output, 9, 4);
+}
+
+TEST_F(HashJoinExecutorTest, testEmptyInner) {
+    loadTable("AAA", input_AAA, NUM_ROWS_AAA);
+    executeJoin("INNER", false);
+    validateResult(NULL, 0, 4);
+
+    const int32_t output[][4] = {
+        { NULL_INT,  40, NULL_INT, NULL_INT },
+        {        1,  10, NULL_INT, NULL_INT },
+        {        2,  20, NULL_INT, NULL_INT },
+        {        2,  21, NULL_INT, NULL_INT },
+        {        3,  30, NULL_INT, NULL_INT }
+    };
+    executeJoin("LEFT", false);
+    validateResult((const int32_t *)output, 5, 4);
+}
+
+TEST_F(HashJoinExecutorTest, testEmptyOuter) {
+    loadTable("BBB", input_BBB, NUM_ROWS_BBB);
+    executeJoin("LEFT", false);
+    validateResult(NULL, 0, 4);
+
+    const int32_t output[][4] = {
+        { NULL_INT, NULL_INT, NULL_INT, 500 },
+        { NULL_INT, NULL_INT,        2, 200 },
+        { NULL_INT, NULL_INT,        2, 201 },
+        { NULL_INT, NULL_INT,        3, 300 },
+        { NULL_INT, NULL_INT,        4, 400 }
+    };
+    executeJoin("FULL", false);
+    validateResult((const int32_t *)output, 5, 4);
+}
+
+int main() {
+     return TestSuite::globalInstance()->runAll();
+}
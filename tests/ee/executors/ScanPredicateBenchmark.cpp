@@ -0,0 +1,253 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include <cstring>
+#include <iostream>
+#include <limits>
+#include <vector>
+
+#include "boost/format.hpp"
+#include "boost/scoped_ptr.hpp"
+#include "boost/timer.hpp"
+
+#include "harness.h"
+
+#include "common/Pool.hpp"
+#include "common/TupleSchema.h"
+#include "common/ValueFactory.hpp"
+#include "common/executorcontext.hpp"
+#include "common/tabletuple.h"
+#include "expressions/comparisonexpression.h"
+#include "expressions/compiledpredicate.h"
+#include "expressions/constantvalueexpression.h"
+#include "expressions/expressionutil.h"
+#include "expressions/tuplevalueexpression.h"
+#include "storage/persistenttable.h"
+#include "storage/tablefactory.h"
+#include "storage/tableiterator.h"
+
+using namespace voltdb;
+
+static const int64_t NUM_ROWS = 1000000;
+static const uint32_t RUN_SIZE = 1024;
+
+/**
+ * Compare scanning a persistent table one tuple at a time, with the predicate
+ * interpreted or compiled, against scanning it in runs of tuple slots with the
+ * compiled tests applied to a whole run at once, as SeqScanExecutor does.
+ */
+class ScanPredicateBenchmark : public Test {
+public:
+    // ID BIGINT, A INTEGER, B DOUBLE, C TIMESTAMP, FILLER BIGINT
+    ScanPredicateBenchmark() {
+        std::vector<ValueType> types;
+        types.push_back(VALUE_TYPE_BIGINT);
+        types.push_back(VALUE_TYPE_INTEGER);
+        types.push_back(VALUE_TYPE_DOUBLE);
+        types.push_back(VALUE_TYPE_TIMESTAMP);
+        types.push_back(VALUE_TYPE_BIGINT);
+        std::vector<int32_t> sizes;
+        std::vector<bool> allowNull;
+        std::vector<std::string> names;
+        for (size_t i = 0; i < types.size(); ++i) {
+            sizes.push_back(NValue::getTupleStorageSize(types[i]));
+            allowNull.push_back(true);
+            names.push_back(std::string("C") + static_cast<char>('0' + i));
+        }
+        TupleSchema* schema = TupleSchema::createTupleSchemaForTest(types, sizes, allowNull);
+        char signature[20];
+        m_table.reset(dynamic_cast<PersistentTable*>(
+                TableFactory::getPersistentTable(0, "T", schema, names, signature)));
+
+        TableTuple& tuple = m_table->tempTuple();
+        for (int64_t id = 0; id < NUM_ROWS; ++id) {
+            tuple.setNValue(0, ValueFactory::getBigIntValue(id));
+            tuple.setNValue(1, id % 11 == 0 ? NValue::getNullValue(VALUE_TYPE_INTEGER)
+                                            : ValueFactory::getIntegerValue(static_cast<int32_t>(id % 1000)));
+            // Some NaNs, which compare below every other double
+            tuple.setNValue(2, ValueFactory::getDoubleValue(id % 97 == 0 ? std::numeric_limits<double>::quiet_NaN()
+                                                                         : static_cast<double>(id % 977) / 10));
+            tuple.setNValue(3, ValueFactory::getTimestampValue(id * 1000));
+            tuple.setNValue(4, ValueFactory::getBigIntValue(id * 7));
+            m_table->insertTuple(tuple);
+        }
+
+        // Leave holes in the blocks that the runs have to skip
+        std::vector<char*> deleted;
+        TableTuple scanned(m_table->schema());
+        TableIterator iterator = m_table->iterator();
+        int64_t n = 0;
+        while (iterator.next(scanned)) {
+            if (n++ % 13 == 0) {
+                deleted.push_back(scanned.address());
+            }
+        }
+        for (size_t i = 0; i < deleted.size(); ++i) {
+            scanned.move(deleted[i]);
+            m_table->deleteTuple(scanned, true);
+        }
+    }
+
+protected:
+
+    template<typename Cmp>
+    static AbstractExpression* compare(ExpressionType type, AbstractExpression* left, AbstractExpression* right) {
+        return new ComparisonExpression<Cmp>(type, left, right);
+    }
+
+    static AbstractExpression* both(AbstractExpression* left, AbstractExpression* right) {
+        return ExpressionUtil::conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND, left, right);
+    }
+
+    int64_t scanInterpreted(const AbstractExpression* predicate) {
+        int64_t selected = 0;
+        TableTuple tuple(m_table->schema());
+        TableIterator iterator = m_table->iterator();
+        while (iterator.next(tuple)) {
+            if (predicate->eval(&tuple, NULL).isTrue()) {
+                ++selected;
+            }
+        }
+        return selected;
+    }
+
+    int64_t scanCompiled(const CompiledPredicate* compiled) {
+        int64_t selected = 0;
+        TableTuple tuple(m_table->schema());
+        TableIterator iterator = m_table->iterator();
+        while (iterator.next(tuple)) {
+            if (compiled->eval(&tuple)) {
+                ++selected;
+            }
+        }
+        return selected;
+    }
+
+    int64_t scanInRuns(const CompiledPredicate* compiled) {
+        int64_t selected = 0;
+        uint8_t selection[RUN_SIZE];
+        TableTuple tuple(m_table->schema());
+        const uint32_t tupleLength = tuple.tupleLength();
+        TableIterator iterator = m_table->iterator();
+        char* run;
+        uint32_t slots;
+        while ((slots = iterator.nextRun(run, RUN_SIZE)) > 0) {
+            ::memset(selection, 1, slots);
+            compiled->evalBatch(run, tupleLength, slots, selection);
+            for (uint32_t ii = 0; ii < slots; ++ii) {
+                if ( ! selection[ii]) {
+                    continue;
+                }
+                tuple.move(run + ii * tupleLength);
+                if (tuple.isActive() && ! tuple.isPendingDelete() &&
+                    ! tuple.isPendingDeleteOnUndoRelease() && compiled->evalResidual(&tuple)) {
+                    ++selected;
+                }
+            }
+        }
+        return selected;
+    }
+
+    void runScans(const std::string& name, const AbstractExpression* predicate) {
+        boost::scoped_ptr<CompiledPredicate> compiled(CompiledPredicate::compile(predicate, m_table->schema()));
+        ASSERT_TRUE(compiled.get() != NULL);
+        ASSERT_TRUE(compiled->bind());
+
+        boost::timer t;
+        int64_t interpreted = scanInterpreted(predicate);
+        double interpretedSecs = t.elapsed();
+        t.restart();
+        int64_t rowCompiled = scanCompiled(compiled.get());
+        double compiledSecs = t.elapsed();
+        t.restart();
+        int64_t batched = scanInRuns(compiled.get());
+        double batchedSecs = t.elapsed();
+
+        EXPECT_EQ(interpreted, rowCompiled);
+        EXPECT_EQ(interpreted, batched);
+        std::cout << "\n          " << name << ", " << interpreted << " of "
+                  << m_table->activeTupleCount() << " rows selected\n"
+                  << "            row at a time, interpreted: " << boost::format("%10.0f") % (NUM_ROWS / interpretedSecs)
+                  << " rows per second\n"
+                  << "            row at a time, compiled:    " << boost::format("%10.0f") % (NUM_ROWS / compiledSecs)
+                  << " rows per second\n"
+                  << "            batched runs, compiled:     " << boost::format("%10.0f") % (NUM_ROWS / batchedSecs)
+                  << " rows per second\n";
+    }
+
+    boost::scoped_ptr<PersistentTable> m_table;
+};
+
+TEST_F(ScanPredicateBenchmark, Selective) {
+    boost::scoped_ptr<AbstractExpression> predicate(
+        both(compare<CmpGt>(EXPRESSION_TYPE_COMPARE_GREATERTHAN,
+                            new TupleValueExpression(0, 1), new ConstantValueExpression(ValueFactory::getIntegerValue(990))),
+        both(compare<CmpLt>(EXPRESSION_TYPE_COMPARE_LESSTHAN,
+                            new TupleValueExpression(0, 2), new ConstantValueExpression(ValueFactory::getDoubleValue(50.0))),
+             compare<CmpGte>(EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO,
+                             new TupleValueExpression(0, 3), new ConstantValueExpression(ValueFactory::getTimestampValue(1000))))));
+    runScans("A > 990 AND B < 50.0 AND C >= 1000", predicate.get());
+}
+
+TEST_F(ScanPredicateBenchmark, WithResidual) {
+    // The column to column comparison is evaluated as an expression on the survivors
+    boost::scoped_ptr<AbstractExpression> predicate(
+        both(compare<CmpLte>(EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO,
+                             new TupleValueExpression(0, 1), new ConstantValueExpression(ValueFactory::getBigIntValue(500))),
+             compare<CmpLt>(EXPRESSION_TYPE_COMPARE_LESSTHAN,
+                            new TupleValueExpression(0, 0), new TupleValueExpression(0, 4))));
+    runScans("A <= 500 AND ID < FILLER", predicate.get());
+}
+
+TEST_F(ScanPredicateBenchmark, DoubleWithNaN) {
+    // The NaN rows fail B >= 50.0 and pass B <> 1.0, as in the interpreted predicate
+    boost::scoped_ptr<AbstractExpression> predicate(
+        both(compare<CmpGte>(EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO,
+                             new TupleValueExpression(0, 2), new ConstantValueExpression(ValueFactory::getDoubleValue(50.0))),
+             compare<CmpNe>(EXPRESSION_TYPE_COMPARE_NOTEQUAL,
+                            new TupleValueExpression(0, 2), new ConstantValueExpression(ValueFactory::getDoubleValue(1.0)))));
+    runScans("B >= 50.0 AND B <> 1.0", predicate.get());
+}
+
+int main() {
+    assert (voltdb::ExecutorContext::getExecutorContext() == NULL);
+
+    boost::scoped_ptr<voltdb::Pool> testPool(new voltdb::Pool());
+    voltdb::UndoQuantum* wantNoQuantum = NULL;
+    voltdb::Topend* topless = NULL;
+    boost::scoped_ptr<voltdb::ExecutorContext>
+        executorContext(new voltdb::ExecutorContext(0,              // siteId
+                                                    0,              // partitionId
+                                                    wantNoQuantum,  // undoQuantum
+                                                    topless,        // topend
+                                                    testPool.get(), // tempStringPool
+                                                    NULL,           // params
+                                                    NULL,           // engine
+                                                    "",             // hostname
+                                                    0,              // hostId
+                                                    NULL,           // drTupleStream
+                                                    NULL,           // drReplicatedStream
+                                                    0));            // drClusterId
+
+    return TestSuite::globalInstance()->runAll();
+}
@@ -0,0 +1,350 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include "harness.h"
+
+#include "catalog/cluster.h"
+#include "catalog/database.h"
+#include "catalog/table.h"
+#include "execution/VoltDBEngine.h"
+#include "storage/persistenttable.h"
+#include "storage/temptable.h"
+#include "test_utils/plan_testing_baseclass.h"
+
+#include <vector>
+
+namespace {
+const char *plan_strings[] = {
+    //  Plan for this query:
+    //      select A, B from AAA order by A;
+    "{\n"
+    "    \"EXECUTE_LIST\": [\n"
+    "        1,\n"
+    "        2,\n"
+    "        3\n"
+    "    ],\n"
+    "    \"PLAN_NODES\": [\n"
+    "        {\n"
+    "            \"CHILDREN_IDS\": [2],\n"
+    "            \"ID\": 3,\n"
+    "            \"PLAN_NODE_TYPE\": \"SEND\"\n"
+    "        },\n"
+    "        {\n"
+    "            \"CHILDREN_IDS\": [1],\n"
+    "            \"ID\": 2,\n"
+    "            \"PLAN_NODE_TYPE\": \"ORDERBY\",\n"
+    "            \"SORT_COLUMNS\": [{\n"
+    "                \"SORT_DIRECTION\": \"ASC\",\n"
+    "                \"SORT_EXPRESSION\": {\n"
+    "                    \"COLUMN_IDX\": 0,\n"
+    "                    \"TYPE\": 32,\n"
+    "                    \"VALUE_TYPE\": 5\n"
+    "                }\n"
+    "            }]\n"
+    "        },\n"
+    "        {\n"
+    "            \"ID\": 1,\n"
+    "            \"INLINE_NODES\": [{\n"
+    "                \"ID\": 4,\n"
+    "                \"OUTPUT_SCHEMA\": [\n"
+    "                    {\n"
+    "                        \"COLUMN_NAME\": \"A\",\n"
+    "                        \"EXPRESSION\": {\n"
+    "                            \"COLUMN_IDX\": 0,\n"
+    "                            \"TYPE\": 32,\n"
+    "                            \"VALUE_TYPE\": 5\n"
+    "                        }\n"
+    "                    },\n"
+    "                    {\n"
+    "                        \"COLUMN_NAME\": \"B\",\n"
+    "                        \"EXPRESSION\": {\n"
+    "                            \"COLUMN_IDX\": 1,\n"
+    "                            \"TYPE\": 32,\n"
+    "                            \"VALUE_TYPE\": 5\n"
+    "                        }\n"
+    "                    }\n"
+    "                ],\n"
+    "                \"PLAN_NODE_TYPE\": \"PROJECTION\"\n"
+    "            }],\n"
+    "            \"PLAN_NODE_TYPE\": \"SEQSCAN\",\n"
+    "            \"TARGET_TABLE_ALIAS\": \"AAA\",\n"
+    "            \"TARGET_TABLE_NAME\": \"AAA\"\n"
+    "        }\n"
+    "    ]\n"
+    "}\n",
+    //  Plan for this query:
+    //      select A, count(*) from AAA group by A order by A;
+    "{\n"
+    "    \"EXECUTE_LIST\": [\n"
+    "        1,\n"
+    "        2,\n"
+    "        3,\n"
+    "        4\n"
+    "    ],\n"
+    "    \"PLAN_NODES\": [\n"
+    "        {\n"
+    "            \"CHILDREN_IDS\": [3],\n"
+    "            \"ID\": 4,\n"
+    "            \"PLAN_NODE_TYPE\": \"SEND\"\n"
+    "        },\n"
+    "        {\n"
+    "            \"CHILDREN_IDS\": [2],\n"
+    "            \"ID\": 3,\n"
+    "            \"PLAN_NODE_TYPE\": \"ORDERBY\",\n"
+    "            \"SORT_COLUMNS\": [{\n"
+    "                \"SORT_DIRECTION\": \"ASC\",\n"
+    "                \"SORT_EXPRESSION\": {\n"
+    "                    \"COLUMN_IDX\": 0,\n"
+    "                    \"TYPE\": 32,\n"
+    "                    \"VALUE_TYPE\": 5\n"
+    "                }\n"
+    "            }]\n"
+    "        },\n"
+    "        {\n"
+    "            \"AGGREGATE_COLUMNS\": [{\n"
+    "                \"AGGREGATE_DISTINCT\": 0,\n"
+    "                \"AGGREGATE_OUTPUT_COLUMN\": 1,\n"
+    "                \"AGGREGATE_TYPE\": \"AGGREGATE_COUNT_STAR\"\n"
+    "            }],\n"
+    "            \"CHILDREN_IDS\": [1],\n"
+    "            \"GROUPBY_EXPRESSIONS\": [{\n"
+    "                \"COLUMN_IDX\": 0,\n"
+    "                \"TYPE\": 32,\n"
+    "                \"VALUE_TYPE\": 5\n"
+    "            }],\n"
+    "            \"ID\": 2,\n"
+    "            \"OUTPUT_SCHEMA\": [\n"
+    "                {\n"
+    "                    \"COLUMN_NAME\": \"A\",\n"
+    "                    \"EXPRESSION\": {\n"
+    "                        \"COLUMN_IDX\": 0,\n"
+    "                        \"TYPE\": 32,\n"
+    "                        \"VALUE_TYPE\": 5\n"
+    "                    }\n"
+    "                },\n"
+    "                {\n"
+    "                    \"COLUMN_NAME\": \"C2\",\n"
+    "                    \"EXPRESSION\": {\n"
+    "                        \"COLUMN_IDX\": 1,\n"
+    "                        \"TYPE\": 32,\n"
+    "                        \"VALUE_TYPE\": 6\n"
+    "                    }\n"
+    "                }\n"
+    "            ],\n"
+    "            \"PLAN_NODE_TYPE\": \"HASHAGGREGATE\"\n"
+    "        },\n"
+    "        {\n"
+    "            \"ID\": 1,\n"
+    "            \"PLAN_NODE_TYPE\": \"SEQSCAN\",\n"
+    "            \"TARGET_TABLE_ALIAS\": \"AAA\",\n"
+    "            \"TARGET_TABLE_NAME\": \"AAA\"\n"
+    "        }\n"
+    "    ]\n"
+    "}\n",
+    (const char *)0
+};
+
+/**
+ * The catalog string below reflects this DDL.
+ *
+ * CREATE TABLE AAA (
+ *    A  INTEGER,
+ *    B  INTEGER,
+ *    C  INTEGER
+ * );
+ */
+const char *catalog_string =
+    "add / clusters cluster\n"
+    "set /clusters#cluster localepoch 1199145600\n"
+    "set $PREV securityEnabled false\n"
+    "set $PREV httpdportno 0\n"
+    "set $PREV jsonapi false\n"
+    "set $PREV networkpartition false\n"
+    "set $PREV voltRoot \"\"\n"
+    "set $PREV exportOverflow \"\"\n"
+    "set $PREV drOverflow \"\"\n"
+    "set $PREV adminport 0\n"
+        "set $PREV adminstartup false\n"
+    "set $PREV heartbeatTimeout 0\n"
+    "set $PREV useddlschema false\n"
+    "set $PREV drConsumerEnabled false\n"
+    "set $PREV drProducerEnabled false\n"
+        "set $PREV drClusterId 0\n"
+    "set $PREV drProducerPort 0\n"
+    "set $PREV drMasterHost \"\"\n"
+    "set $PREV drFlushInterval 0\n"
+    "add /clusters#cluster databases database\n"
+    "set /clusters#cluster/databases#database schema \"eJx9ikEKgEAMA+++pptO0L26+P8v2YIHQZCQkDAhLcwwWFE5EKt7tZJCR/lRbyZXv9mxpfWi+qX5oaGZ53YD0G8aZw==\"\n"
+    "set $PREV isActiveActiveDRed false\n"
+    "set $PREV securityprovider \"\"\n"
+    "add /clusters#cluster/databases#database groups administrator\n"
+    "set /clusters#cluster/databases#database/groups#administrator admin true\n"
+    "set $PREV defaultproc true\n"
+    "set $PREV defaultprocread true\n"
+    "set $PREV sql true\n"
+    "set $PREV sqlread true\n"
+    "set $PREV allproc true\n"
+    "add /clusters#cluster/databases#database groups user\n"
+    "set /clusters#cluster/databases#database/groups#user admin false\n"
+    "set $PREV defaultproc true\n"
+    "set $PREV defaultprocread true\n"
+    "set $PREV sql true\n"
+    "set $PREV sqlread true\n"
+    "set $PREV allproc true\n"
+    "add /clusters#cluster/databases#database tables AAA\n"
+    "set /clusters#cluster/databases#database/tables#AAA isreplicated true\n"
+    "set $PREV partitioncolumn null\n"
+    "set $PREV estimatedtuplecount 0\n"
+    "set $PREV materializer null\n"
+    "set $PREV signature \"AAA|iii\"\n"
+    "set $PREV tuplelimit 2147483647\n"
+    "set $PREV isDRed false\n"
+    "add /clusters#cluster/databases#database/tables#AAA columns A\n"
+    "set /clusters#cluster/databases#database/tables#AAA/columns#A index 0\n"
+    "set $PREV type 5\n"
+    "set $PREV size 4\n"
+    "set $PREV nullable true\n"
+    "set $PREV name \"A\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV matview null\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV inbytes false\n"
+    "add /clusters#cluster/databases#database/tables#AAA columns B\n"
+    "set /clusters#cluster/databases#database/tables#AAA/columns#B index 1\n"
+    "set $PREV type 5\n"
+    "set $PREV size 4\n"
+    "set $PREV nullable true\n"
+    "set $PREV name \"B\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV matview null\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV inbytes false\n"
+    "add /clusters#cluster/databases#database/tables#AAA columns C\n"
+    "set /clusters#cluster/databases#database/tables#AAA/columns#C index 2\n"
+    "set $PREV type 5\n"
+    "set $PREV size 4\n"
+    "set $PREV nullable true\n"
+    "set $PREV name \"C\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV matview null\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV inbytes false\n";
+
+// A directory that spill files can't be created in.
+const char *missing_spill_directory = "/nonexistent/temptable_spill";
+}
+
+/**
+ * Runs ORDER BY and hash aggregation under a temp table memory limit that
+ * is too small for their intermediate results, so that they have to write
+ * them to spillable temp tables.
+ */
+class SpillingExecutorTest : public PlanTestingBaseClass<EngineTestTopend> {
+public:
+    SpillingExecutorTest()
+        : m_AAA(NULL),
+          m_AAA_id(-1) {
+    }
+
+    void initialize(int64_t tempTableMemoryLimit) {
+        m_tempTableMemoryLimit = tempTableMemoryLimit;
+        PlanTestingBaseClass<EngineTestTopend>::initialize(catalog_string);
+    }
+
+    void loadRows(const std::vector<int32_t> &rows) {
+        const int NUM_COLS_AAA = 3;
+        initializeTableOfInt("AAA", &m_AAA, &m_AAA_id,
+                             static_cast<int>(rows.size() / NUM_COLS_AAA), NUM_COLS_AAA, &rows[0]);
+    }
+
+    ~SpillingExecutorTest() { }
+protected:
+    voltdb::PersistentTable *m_AAA;
+    int                      m_AAA_id;
+};
+
+TEST_F(SpillingExecutorTest, testExternalSort) {
+    // The sorted copy of the 640KB scan output doesn't fit next to it under
+    // a 1MB limit, so the sort writes its input out in sorted runs.
+    initialize(1024 * 1024);
+    const int NUM_ROWS = 70000;
+    std::vector<int32_t> input;
+    std::vector<int32_t> output(NUM_ROWS * 2);
+    for (int row = 0; row < NUM_ROWS; ++row) {
+        int32_t a = static_cast<int32_t>((row * 7919LL) % NUM_ROWS);
+        input.push_back(a);
+        input.push_back(row);
+        input.push_back(0);
+        output[a * 2] = a;
+        output[a * 2 + 1] = row;
+    }
+    loadRows(input);
+
+    // Without a spill directory the sort runs out of temp table memory.
+    ASSERT_EQ(ENGINE_ERRORCODE_ERROR, executeFragment(100, plan_strings[0]));
+
+    m_engine->setTempTableSpillDirectory(missing_spill_directory);
+    ASSERT_EQ(ENGINE_ERRORCODE_ERROR, executeFragment(101, plan_strings[0]));
+
+    m_engine->setTempTableSpillDirectory("/tmp");
+    ASSERT_EQ(ENGINE_ERRORCODE_SUCCESS, executeFragment(102, plan_strings[0]));
+    validateResult(&output[0], NUM_ROWS, 2);
+}
+
+TEST_F(SpillingExecutorTest, testHashAggregatePartitions) {
+    // The groups can use a quarter of a 4MB limit, about half of them fit.
+    // The rows of the rest go to the spill partitions.
+    initialize(4 * 1024 * 1024);
+    const int NUM_GROUPS = 40000;
+    const int ROWS_PER_GROUP = 3;
+    std::vector<int32_t> input;
+    std::vector<int32_t> output;
+    for (int row = 0; row < NUM_GROUPS * ROWS_PER_GROUP; ++row) {
+        input.push_back(row % NUM_GROUPS);
+        input.push_back(row);
+        input.push_back(0);
+    }
+    for (int group = 0; group < NUM_GROUPS; ++group) {
+        output.push_back(group);
+        output.push_back(ROWS_PER_GROUP);
+    }
+    loadRows(input);
+
+    // The partitions are written out, so they can't be made without a place to write them.
+    m_engine->setTempTableSpillDirectory(missing_spill_directory);
+    ASSERT_EQ(ENGINE_ERRORCODE_ERROR, executeFragment(100, plan_strings[1]));
+
+    m_engine->setTempTableSpillDirectory("/tmp");
+    ASSERT_EQ(ENGINE_ERRORCODE_SUCCESS, executeFragment(101, plan_strings[1]));
+    validateResult(&output[0], NUM_GROUPS, 2);
+}
+
+int main() {
+     return TestSuite::globalInstance()->runAll();
+}
@@ -0,0 +1,282 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include <cstring>
+#include <limits>
+#include <vector>
+
+#include "boost/scoped_array.hpp"
+#include "boost/scoped_ptr.hpp"
+
+#include "harness.h"
+#include "test_utils/ScopedTupleSchema.hpp"
+
+#include "common/tabletuple.h"
+#include "common/types.h"
+#include "common/TupleSchemaBuilder.h"
+#include "common/ValueFactory.hpp"
+#include "expressions/comparisonexpression.h"
+#include "expressions/compiledpredicate.h"
+#include "expressions/constantvalueexpression.h"
+#include "expressions/expressionutil.h"
+#include "expressions/parametervalueexpression.h"
+#include "expressions/tuplevalueexpression.h"
+
+using namespace voltdb;
+
+/**
+ * Check that a compiled predicate agrees with the expression tree it was
+ * compiled from, on tuples with every compiled column type and nulls.
+ */
+class CompiledPredicateTest : public Test {
+public:
+    // TINYINT, INTEGER, BIGINT, DOUBLE, TIMESTAMP
+    CompiledPredicateTest()
+        : m_schema(buildSchema())
+        , m_param(ValueFactory::getBigIntValue(0))
+    {
+        for (int i = -10; i <= 10; ++i) {
+            StandAloneTupleStorage* storage = new StandAloneTupleStorage(m_schema.get());
+            TableTuple tuple = storage->tuple();
+            bool null = (i % 7 == 0);
+            tuple.setNValue(0, null ? NValue::getNullValue(VALUE_TYPE_TINYINT)
+                                    : ValueFactory::getTinyIntValue(static_cast<int8_t>(i)));
+            tuple.setNValue(1, null ? NValue::getNullValue(VALUE_TYPE_INTEGER)
+                                    : ValueFactory::getIntegerValue(i * 1000));
+            tuple.setNValue(2, ValueFactory::getBigIntValue(i * 100000000000LL));
+            tuple.setNValue(3, null ? NValue::getNullValue(VALUE_TYPE_DOUBLE)
+                                    : ValueFactory::getDoubleValue(i * 0.5));
+            tuple.setNValue(4, ValueFactory::getTimestampValue(i * 1000000LL));
+            m_storage.push_back(storage);
+        }
+    }
+
+    ~CompiledPredicateTest() {
+        for (size_t i = 0; i < m_storage.size(); ++i) {
+            delete m_storage[i];
+        }
+    }
+
+protected:
+
+    static TupleSchema* buildSchema() {
+        TupleSchemaBuilder builder(5);
+        builder.setColumnAtIndex(0, VALUE_TYPE_TINYINT);
+        builder.setColumnAtIndex(1, VALUE_TYPE_INTEGER);
+        builder.setColumnAtIndex(2, VALUE_TYPE_BIGINT);
+        builder.setColumnAtIndex(3, VALUE_TYPE_DOUBLE);
+        builder.setColumnAtIndex(4, VALUE_TYPE_TIMESTAMP);
+        return builder.build();
+    }
+
+    template<typename Cmp>
+    static AbstractExpression* compare(ExpressionType type, AbstractExpression* left, AbstractExpression* right) {
+        return new ComparisonExpression<Cmp>(type, left, right);
+    }
+
+    static AbstractExpression* column(int index) {
+        return new TupleValueExpression(0, index);
+    }
+
+    static AbstractExpression* constant(const NValue& value) {
+        return new ConstantValueExpression(value);
+    }
+
+    AbstractExpression* param() {
+        return new ParameterValueExpression(0, &m_param);
+    }
+
+    static AbstractExpression* both(AbstractExpression* left, AbstractExpression* right) {
+        return ExpressionUtil::conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND, left, right);
+    }
+
+    // Returns the number of tuples the predicate accepted
+    int checkAgainstInterpreted(const AbstractExpression* predicate, const CompiledPredicate* compiled) {
+        int accepted = 0;
+        for (size_t i = 0; i < m_storage.size(); ++i) {
+            TableTuple tuple = m_storage[i]->tuple();
+            bool expected = predicate->eval(&tuple, NULL).isTrue();
+            EXPECT_EQ(expected, compiled->eval(&tuple));
+            if (expected) {
+                ++accepted;
+            }
+        }
+        return accepted;
+    }
+
+    ScopedTupleSchema m_schema;
+    std::vector<StandAloneTupleStorage*> m_storage;
+    NValue m_param;
+};
+
+TEST_F(CompiledPredicateTest, ColumnAgainstConstant) {
+    boost::scoped_ptr<AbstractExpression> predicate(
+        both(compare<CmpGt>(EXPRESSION_TYPE_COMPARE_GREATERTHAN, column(0), constant(ValueFactory::getBigIntValue(-5))),
+        both(compare<CmpLte>(EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO, column(1), constant(ValueFactory::getIntegerValue(8000))),
+        both(compare<CmpNe>(EXPRESSION_TYPE_COMPARE_NOTEQUAL, column(3), constant(ValueFactory::getIntegerValue(2))),
+             compare<CmpGte>(EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO,
+                             column(4), constant(ValueFactory::getTimestampValue(-3000000)))))));
+    boost::scoped_ptr<CompiledPredicate> compiled(CompiledPredicate::compile(predicate.get(), m_schema.get()));
+    ASSERT_TRUE(compiled.get() != NULL);
+    EXPECT_EQ(4, static_cast<int>(compiled->numCompiledTests()));
+    EXPECT_EQ(0, static_cast<int>(compiled->numResidualExpressions()));
+    ASSERT_TRUE(compiled->bind());
+    EXPECT_TRUE(checkAgainstInterpreted(predicate.get(), compiled.get()) > 0);
+}
+
+TEST_F(CompiledPredicateTest, ConstantOnTheLeft) {
+    // 4 < BIGINT column, i.e. column > 4
+    boost::scoped_ptr<AbstractExpression> predicate(
+        compare<CmpLt>(EXPRESSION_TYPE_COMPARE_LESSTHAN, constant(ValueFactory::getBigIntValue(400000000000LL)), column(2)));
+    boost::scoped_ptr<CompiledPredicate> compiled(CompiledPredicate::compile(predicate.get(), m_schema.get()));
+    ASSERT_TRUE(compiled.get() != NULL);
+    ASSERT_TRUE(compiled->bind());
+    EXPECT_EQ(6, checkAgainstInterpreted(predicate.get(), compiled.get()));
+}
+
+TEST_F(CompiledPredicateTest, ResidualConjuncts) {
+    // A column to column comparison and a decimal constant stay expressions
+    boost::scoped_ptr<AbstractExpression> predicate(
+        both(compare<CmpLt>(EXPRESSION_TYPE_COMPARE_LESSTHAN, column(0), column(1)),
+        both(compare<CmpGt>(EXPRESSION_TYPE_COMPARE_GREATERTHAN,
+                            column(2), constant(ValueFactory::getDecimalValueFromString("-500000000000"))),
+             compare<CmpEq>(EXPRESSION_TYPE_COMPARE_EQUAL, column(4), constant(ValueFactory::getTimestampValue(2000000))))));
+    boost::scoped_ptr<CompiledPredicate> compiled(CompiledPredicate::compile(predicate.get(), m_schema.get()));
+    ASSERT_TRUE(compiled.get() != NULL);
+    EXPECT_EQ(1, static_cast<int>(compiled->numCompiledTests()));
+    EXPECT_EQ(2, static_cast<int>(compiled->numResidualExpressions()));
+    ASSERT_TRUE(compiled->bind());
+    EXPECT_EQ(1, checkAgainstInterpreted(predicate.get(), compiled.get()));
+
+    // Nothing to compile
+    boost::scoped_ptr<AbstractExpression> uncompilable(
+        compare<CmpLt>(EXPRESSION_TYPE_COMPARE_LESSTHAN, column(0), column(1)));
+    EXPECT_TRUE(CompiledPredicate::compile(uncompilable.get(), m_schema.get()) == NULL);
+}
+
+TEST_F(CompiledPredicateTest, ParameterBinding) {
+    boost::scoped_ptr<AbstractExpression> predicate(
+        compare<CmpGte>(EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO, column(3), param()));
+    boost::scoped_ptr<CompiledPredicate> compiled(CompiledPredicate::compile(predicate.get(), m_schema.get()));
+    ASSERT_TRUE(compiled.get() != NULL);
+
+    m_param = ValueFactory::getBigIntValue(2);
+    ASSERT_TRUE(compiled->bind());
+    EXPECT_EQ(6, checkAgainstInterpreted(predicate.get(), compiled.get()));
+
+    m_param = ValueFactory::getDoubleValue(-1.5);
+    ASSERT_TRUE(compiled->bind());
+    checkAgainstInterpreted(predicate.get(), compiled.get());
+
+    // The original predicate has to be used for these
+    m_param = NValue::getNullValue(VALUE_TYPE_DOUBLE);
+    EXPECT_FALSE(compiled->bind());
+    m_param = ValueFactory::getDecimalValueFromString("1.5");
+    EXPECT_FALSE(compiled->bind());
+}
+
+/**
+ * Doubles compare as NValue does, where NaN equals NaN and is less than every
+ * other value, both one tuple at a time and over a run of tuple slots.
+ */
+class CompiledPredicateNaNTest : public Test {
+public:
+    CompiledPredicateNaNTest()
+        : m_schema(buildSchema())
+        , m_tupleLength(m_schema->tupleLength() + TUPLE_HEADER_SIZE)
+    {
+        const double nan = std::numeric_limits<double>::quiet_NaN();
+        const double inf = std::numeric_limits<double>::infinity();
+        m_values.push_back(ValueFactory::getDoubleValue(nan));
+        m_values.push_back(ValueFactory::getDoubleValue(-inf));
+        m_values.push_back(ValueFactory::getDoubleValue(-1.0));
+        m_values.push_back(ValueFactory::getDoubleValue(0.0));
+        m_values.push_back(ValueFactory::getDoubleValue(1.0));
+        m_values.push_back(ValueFactory::getDoubleValue(inf));
+        m_values.push_back(ValueFactory::getDoubleValue(nan));
+        m_values.push_back(NValue::getNullValue(VALUE_TYPE_DOUBLE));
+
+        // The tuples are laid out back to back, like a run of block slots
+        m_run.reset(new char[m_values.size() * m_tupleLength]);
+        ::memset(m_run.get(), 0, m_values.size() * m_tupleLength);
+        for (size_t i = 0; i < m_values.size(); ++i) {
+            TableTuple tuple(m_run.get() + i * m_tupleLength, m_schema.get());
+            tuple.setNValue(0, m_values[i]);
+        }
+    }
+
+protected:
+
+    static TupleSchema* buildSchema() {
+        TupleSchemaBuilder builder(1);
+        builder.setColumnAtIndex(0, VALUE_TYPE_DOUBLE);
+        return builder.build();
+    }
+
+    template<typename Cmp>
+    void check(ExpressionType type, const NValue& operand) {
+        boost::scoped_ptr<AbstractExpression> predicate(
+            new ComparisonExpression<Cmp>(type, new TupleValueExpression(0, 0), new ConstantValueExpression(operand)));
+        boost::scoped_ptr<CompiledPredicate> compiled(CompiledPredicate::compile(predicate.get(), m_schema.get()));
+        ASSERT_TRUE(compiled.get() != NULL);
+        ASSERT_TRUE(compiled->bind());
+
+        const uint32_t slots = static_cast<uint32_t>(m_values.size());
+        std::vector<uint8_t> selection(slots, 1);
+        compiled->evalBatch(m_run.get(), m_tupleLength, slots, &selection[0]);
+        for (uint32_t i = 0; i < slots; ++i) {
+            TableTuple tuple(m_run.get() + i * m_tupleLength, m_schema.get());
+            const bool expected = predicate->eval(&tuple, NULL).isTrue();
+            EXPECT_EQ(expected, compiled->eval(&tuple));
+            EXPECT_EQ(expected, selection[i] != 0);
+        }
+    }
+
+    void checkAll(const NValue& operand) {
+        check<CmpEq>(EXPRESSION_TYPE_COMPARE_EQUAL, operand);
+        check<CmpNe>(EXPRESSION_TYPE_COMPARE_NOTEQUAL, operand);
+        check<CmpLt>(EXPRESSION_TYPE_COMPARE_LESSTHAN, operand);
+        check<CmpLte>(EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO, operand);
+        check<CmpGt>(EXPRESSION_TYPE_COMPARE_GREATERTHAN, operand);
+        check<CmpGte>(EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO, operand);
+    }
+
+    ScopedTupleSchema m_schema;
+    const uint32_t m_tupleLength;
+    std::vector<NValue> m_values;
+    boost::scoped_array<char> m_run;
+};
+
+TEST_F(CompiledPredicateNaNTest, NaNColumnValues) {
+    checkAll(ValueFactory::getDoubleValue(0.0));
+    checkAll(ValueFactory::getDoubleValue(-std::numeric_limits<double>::infinity()));
+    checkAll(ValueFactory::getBigIntValue(1));
+}
+
+TEST_F(CompiledPredicateNaNTest, NaNOperand) {
+    checkAll(ValueFactory::getDoubleValue(std::numeric_limits<double>::quiet_NaN()));
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
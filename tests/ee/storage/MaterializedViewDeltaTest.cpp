@@ -0,0 +1,396 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include <iostream>
+#include <map>
+#include <string>
+#include <sys/time.h>
+#include <utility>
+
+#include "boost/scoped_ptr.hpp"
+
+#include "harness.h"
+
+#include "common/tabletuple.h"
+#include "common/types.h"
+#include "common/ValueFactory.hpp"
+#include "common/executorcontext.hpp"
+#include "execution/VoltDBEngine.h"
+#include "storage/table.h"
+#include "storage/tableiterator.h"
+#include "storage/persistenttable.h"
+
+using voltdb::ExecutorContext;
+using voltdb::NValue;
+using voltdb::PersistentTable;
+using voltdb::TableIterator;
+using voltdb::TableTuple;
+using voltdb::ValueFactory;
+using voltdb::ValuePeeker;
+using voltdb::VoltDBEngine;
+
+/**
+ * Compare maintaining a grouped view row by row with accumulating per group
+ * deltas and applying them once, which is what the engine does for a batch
+ * when view delta batching is turned on.
+ */
+class MaterializedViewDeltaTest : public Test {
+public:
+    // group -> (count(*), sum(V), count(V))
+    typedef std::map<int64_t, std::pair<int64_t, std::pair<int64_t, int64_t> > > ViewContents;
+
+    MaterializedViewDeltaTest()
+        : m_undoToken(0)
+        , m_uniqueId(0)
+    {
+        initEngine();
+    }
+
+protected:
+
+    void initEngine() {
+        m_engine.reset();
+        m_engine.reset(new VoltDBEngine());
+        m_engine->initialize(1,     // clusterIndex
+                             1,     // siteId
+                             0,     // partitionId
+                             0,     // hostId
+                             "",    // hostname
+                             0,     // drClusterId
+                             1024,  // defaultDrBufferSize
+                             voltdb::DEFAULT_TEMP_TABLE_MEMORY,
+                             false, // don't create DR replicated stream
+                             95);   // compaction threshold
+        m_engine->setUndoToken(m_undoToken);
+        m_engine->loadCatalog(0, catalogPayload());
+        m_table = dynamic_cast<PersistentTable*>(m_engine->getTable("T"));
+        m_view = dynamic_cast<PersistentTable*>(m_engine->getTable("MV"));
+        assert(m_table && m_view);
+    }
+
+    void beginWork() {
+        ExecutorContext::getExecutorContext()->setupForPlanFragments(
+            m_engine->getCurrentUndoQuantum(),
+            0,  // txn id
+            0,  // sp handle
+            0,  // last committed sp handle
+            m_uniqueId);
+        m_uniqueId += (1 << 14);
+    }
+
+    void commit() {
+        m_engine->releaseUndoToken(m_undoToken);
+        ++m_undoToken;
+        m_engine->setUndoToken(m_undoToken);
+    }
+
+    void rollback() {
+        m_engine->undoUndoToken(m_undoToken);
+        ++m_undoToken;
+        m_engine->setUndoToken(m_undoToken);
+    }
+
+    void setDeferViewDeltas(bool defer) {
+        ExecutorContext::getExecutorContext()->setDeferViewDeltas(defer);
+    }
+
+    void applyViewDeltas() {
+        ExecutorContext* ec = ExecutorContext::getExecutorContext();
+        ec->setDeferViewDeltas(false);
+        ec->applyViewDeltas();
+    }
+
+    // Every fifth row has a null V so that COUNT(V) and count(*) differ.
+    void insertRow(int64_t id, int64_t group) {
+        TableTuple& tuple = m_table->tempTuple();
+        tuple.setNValue(0, ValueFactory::getBigIntValue(id));
+        tuple.setNValue(1, ValueFactory::getBigIntValue(group));
+        tuple.setNValue(2, id % 5 == 0 ? NValue::getNullValue(voltdb::VALUE_TYPE_BIGINT)
+                                       : ValueFactory::getBigIntValue(id));
+        m_table->insertTuple(tuple);
+    }
+
+    void insertRows(int64_t first, int64_t count, int64_t groups) {
+        for (int64_t id = first; id < first + count; ++id) {
+            insertRow(id, id % groups);
+        }
+    }
+
+    void deleteRow(int64_t id) {
+        TableTuple tuple(m_table->schema());
+        TableIterator iterator = m_table->iterator();
+        while (iterator.next(tuple)) {
+            if (ValuePeeker::peekBigInt(tuple.getNValue(0)) == id) {
+                m_table->deleteTuple(tuple, true);
+                return;
+            }
+        }
+        ASSERT_TRUE(false);
+    }
+
+    ViewContents viewContents() const {
+        ViewContents contents;
+        TableTuple tuple(m_view->schema());
+        TableIterator iterator = m_view->iterator();
+        while (iterator.next(tuple)) {
+            int64_t sum = tuple.getNValue(2).isNull() ? -1 : ValuePeeker::peekBigInt(tuple.getNValue(2));
+            contents[ValuePeeker::peekBigInt(tuple.getNValue(0))] =
+                std::make_pair(ValuePeeker::peekBigInt(tuple.getNValue(1)),
+                               std::make_pair(sum, ValuePeeker::peekBigInt(tuple.getNValue(3))));
+        }
+        return contents;
+    }
+
+    ViewContents loadRows(bool deferred, int64_t rows, int64_t groups) {
+        initEngine();
+        beginWork();
+        if (deferred) {
+            setDeferViewDeltas(true);
+        }
+        insertRows(0, rows, groups);
+        if (deferred) {
+            applyViewDeltas();
+        }
+        commit();
+        return viewContents();
+    }
+
+    static int64_t getMicrosNow() {
+        timeval tv;
+        gettimeofday(&tv, NULL);
+        return tv.tv_sec * 1000000 + tv.tv_usec;
+    }
+
+    static const std::string& catalogPayload() {
+        static const std::string payload(
+            "add / clusters cluster\n"
+            "set /clusters#cluster localepoch 1199145600\n"
+            "add /clusters#cluster databases database\n"
+            "add /clusters#cluster/databases#database tables T\n"
+            "set /clusters#cluster/databases#database/tables#T isreplicated true\n"
+            "set $PREV partitioncolumn null\n"
+            "set $PREV estimatedtuplecount 0\n"
+            "set $PREV materializer null\n"
+            "set $PREV tuplelimit 2147483647\n"
+            "add /clusters#cluster/databases#database/tables#T columns ID\n"
+            "set /clusters#cluster/databases#database/tables#T/columns#ID index 0\n"
+            "set $PREV type 6\n"
+            "set $PREV size 8\n"
+            "set $PREV nullable false\n"
+            "set $PREV name \"ID\"\n"
+            "set $PREV defaultvalue null\n"
+            "set $PREV defaulttype 0\n"
+            "set $PREV matview null\n"
+            "set $PREV aggregatetype 0\n"
+            "set $PREV matviewsource null\n"
+            "set $PREV inbytes false\n"
+            "add /clusters#cluster/databases#database/tables#T columns G\n"
+            "set /clusters#cluster/databases#database/tables#T/columns#G index 1\n"
+            "set $PREV type 6\n"
+            "set $PREV size 8\n"
+            "set $PREV nullable true\n"
+            "set $PREV name \"G\"\n"
+            "set $PREV defaultvalue null\n"
+            "set $PREV defaulttype 0\n"
+            "set $PREV matview null\n"
+            "set $PREV aggregatetype 0\n"
+            "set $PREV matviewsource null\n"
+            "set $PREV inbytes false\n"
+            "add /clusters#cluster/databases#database/tables#T columns V\n"
+            "set /clusters#cluster/databases#database/tables#T/columns#V index 2\n"
+            "set $PREV type 6\n"
+            "set $PREV size 8\n"
+            "set $PREV nullable true\n"
+            "set $PREV name \"V\"\n"
+            "set $PREV defaultvalue null\n"
+            "set $PREV defaulttype 0\n"
+            "set $PREV matview null\n"
+            "set $PREV aggregatetype 0\n"
+            "set $PREV matviewsource null\n"
+            "set $PREV inbytes false\n"
+            "add /clusters#cluster/databases#database/tables#T indexes VOLTDB_AUTOGEN_IDX_PK_T_ID\n"
+            "set /clusters#cluster/databases#database/tables#T/indexes#VOLTDB_AUTOGEN_IDX_PK_T_ID unique true\n"
+            "set $PREV assumeUnique false\n"
+            "set $PREV countable true\n"
+            "set $PREV type 1\n"
+            "set $PREV expressionsjson \"\"\n"
+            "set $PREV predicatejson \"\"\n"
+            "add /clusters#cluster/databases#database/tables#T/indexes#VOLTDB_AUTOGEN_IDX_PK_T_ID columns ID\n"
+            "set /clusters#cluster/databases#database/tables#T/indexes#VOLTDB_AUTOGEN_IDX_PK_T_ID/columns#ID index 0\n"
+            "set $PREV column /clusters#cluster/databases#database/tables#T/columns#ID\n"
+            "add /clusters#cluster/databases#database/tables#T constraints VOLTDB_AUTOGEN_IDX_PK_T_ID\n"
+            "set /clusters#cluster/databases#database/tables#T/constraints#VOLTDB_AUTOGEN_IDX_PK_T_ID type 4\n"
+            "set $PREV oncommit \"\"\n"
+            "set $PREV index /clusters#cluster/databases#database/tables#T/indexes#VOLTDB_AUTOGEN_IDX_PK_T_ID\n"
+            "set $PREV foreignkeytable null\n"
+            "add /clusters#cluster/databases#database tables MV\n"
+            "set /clusters#cluster/databases#database/tables#MV isreplicated true\n"
+            "set $PREV partitioncolumn null\n"
+            "set $PREV estimatedtuplecount 0\n"
+            "set $PREV materializer /clusters#cluster/databases#database/tables#T\n"
+            "set $PREV tuplelimit 2147483647\n"
+            "add /clusters#cluster/databases#database/tables#MV columns G\n"
+            "set /clusters#cluster/databases#database/tables#MV/columns#G index 0\n"
+            "set $PREV type 6\n"
+            "set $PREV size 8\n"
+            "set $PREV nullable true\n"
+            "set $PREV name \"G\"\n"
+            "set $PREV defaultvalue null\n"
+            "set $PREV defaulttype 0\n"
+            "set $PREV matview /clusters#cluster/databases#database/tables#T/views#MV\n"
+            "set $PREV aggregatetype 0\n"
+            "set $PREV matviewsource /clusters#cluster/databases#database/tables#T/columns#G\n"
+            "set $PREV inbytes false\n"
+            "add /clusters#cluster/databases#database/tables#MV columns CNT\n"
+            "set /clusters#cluster/databases#database/tables#MV/columns#CNT index 1\n"
+            "set $PREV type 6\n"
+            "set $PREV size 8\n"
+            "set $PREV nullable true\n"
+            "set $PREV name \"CNT\"\n"
+            "set $PREV defaultvalue null\n"
+            "set $PREV defaulttype 0\n"
+            "set $PREV matview /clusters#cluster/databases#database/tables#T/views#MV\n"
+            "set $PREV aggregatetype 40\n"
+            "set $PREV matviewsource null\n"
+            "set $PREV inbytes false\n"
+            "add /clusters#cluster/databases#database/tables#MV columns SUMV\n"
+            "set /clusters#cluster/databases#database/tables#MV/columns#SUMV index 2\n"
+            "set $PREV type 6\n"
+            "set $PREV size 8\n"
+            "set $PREV nullable true\n"
+            "set $PREV name \"SUMV\"\n"
+            "set $PREV defaultvalue null\n"
+            "set $PREV defaulttype 0\n"
+            "set $PREV matview /clusters#cluster/databases#database/tables#T/views#MV\n"
+            "set $PREV aggregatetype 42\n"
+            "set $PREV matviewsource /clusters#cluster/databases#database/tables#T/columns#V\n"
+            "set $PREV inbytes false\n"
+            "add /clusters#cluster/databases#database/tables#MV columns CNTV\n"
+            "set /clusters#cluster/databases#database/tables#MV/columns#CNTV index 3\n"
+            "set $PREV type 6\n"
+            "set $PREV size 8\n"
+            "set $PREV nullable true\n"
+            "set $PREV name \"CNTV\"\n"
+            "set $PREV defaultvalue null\n"
+            "set $PREV defaulttype 0\n"
+            "set $PREV matview /clusters#cluster/databases#database/tables#T/views#MV\n"
+            "set $PREV aggregatetype 40\n"
+            "set $PREV matviewsource /clusters#cluster/databases#database/tables#T/columns#V\n"
+            "set $PREV inbytes false\n"
+            "add /clusters#cluster/databases#database/tables#T views MV\n"
+            "set /clusters#cluster/databases#database/tables#T/views#MV dest /clusters#cluster/databases#database/tables#MV\n"
+            "set /clusters#cluster/databases#database/tables#T/views#MV predicate \"\"\n"
+            "add /clusters#cluster/databases#database/tables#T/views#MV groupbycols G\n"
+            "set /clusters#cluster/databases#database/tables#T/views#MV/groupbycols#G index 0\n"
+            "set /clusters#cluster/databases#database/tables#T/views#MV/groupbycols#G column /clusters#cluster/databases#database/tables#T/columns#G\n"
+            "add /clusters#cluster/databases#database/tables#MV indexes MATVIEW_PK_INDEX\n"
+            "set /clusters#cluster/databases#database/tables#MV/indexes#MATVIEW_PK_INDEX unique true\n"
+            "set $PREV assumeUnique false\n"
+            "set $PREV countable true\n"
+            "set $PREV type 1\n"
+            "set $PREV expressionsjson \"\"\n"
+            "set $PREV predicatejson \"\"\n"
+            "add /clusters#cluster/databases#database/tables#MV/indexes#MATVIEW_PK_INDEX columns 0\n"
+            "set /clusters#cluster/databases#database/tables#MV/indexes#MATVIEW_PK_INDEX/columns#0 index 0\n"
+            "set $PREV column /clusters#cluster/databases#database/tables#MV/columns#G\n"
+            "add /clusters#cluster/databases#database/tables#MV constraints MATVIEW_PK_CONSTRAINT\n"
+            "set /clusters#cluster/databases#database/tables#MV/constraints#MATVIEW_PK_CONSTRAINT type 4\n"
+            "set $PREV oncommit \"\"\n"
+            "set $PREV index /clusters#cluster/databases#database/tables#MV/indexes#MATVIEW_PK_INDEX\n"
+            "set $PREV foreignkeytable null\n"
+            "");
+        return payload;
+    }
+
+    boost::scoped_ptr<VoltDBEngine> m_engine;
+    PersistentTable* m_table;
+    PersistentTable* m_view;
+    int64_t m_undoToken;
+    int64_t m_uniqueId;
+};
+
+TEST_F(MaterializedViewDeltaTest, DeferredMatchesRowByRow) {
+    ViewContents rowByRow = loadRows(false, 1000, 7);
+    ViewContents deferred = loadRows(true, 1000, 7);
+    ASSERT_EQ(7, static_cast<int>(rowByRow.size()));
+    EXPECT_TRUE(rowByRow == deferred);
+
+    // Deltas for groups that already have a view row
+    beginWork();
+    setDeferViewDeltas(true);
+    insertRows(1000, 100, 10);
+    EXPECT_TRUE(deferred == viewContents());
+    applyViewDeltas();
+    commit();
+    ViewContents combined = viewContents();
+    ASSERT_EQ(10, static_cast<int>(combined.size()));
+    EXPECT_EQ(rowByRow[3].first + 10, combined[3].first);
+    EXPECT_EQ(10, combined[9].first);
+}
+
+TEST_F(MaterializedViewDeltaTest, RollbackUndoesAppliedDeltas) {
+    beginWork();
+    setDeferViewDeltas(true);
+    insertRows(0, 100, 4);
+    applyViewDeltas();
+    EXPECT_EQ(4, static_cast<int>(viewContents().size()));
+    rollback();
+    EXPECT_EQ(0, m_table->activeTupleCount());
+    EXPECT_EQ(0, static_cast<int>(viewContents().size()));
+}
+
+TEST_F(MaterializedViewDeltaTest, DeleteAppliesPendingDeltas) {
+    ViewContents expected = loadRows(false, 100, 4);
+    initEngine();
+    beginWork();
+    setDeferViewDeltas(true);
+    insertRows(0, 100, 4);
+    // The delete needs the view row of its group to be current
+    deleteRow(6);
+    insertRows(100, 4, 4);
+    applyViewDeltas();
+    commit();
+
+    ViewContents contents = viewContents();
+    EXPECT_EQ(expected[2].first, contents[2].first);
+    EXPECT_EQ(expected[2].second.first + 102 - 6, contents[2].second.first);
+    EXPECT_EQ(expected[1].first + 1, contents[1].first);
+}
+
+TEST_F(MaterializedViewDeltaTest, Benchmark) {
+    const int64_t rows = 200000;
+    const int64_t groups[] = { 10, 1000 };
+    for (int ii = 0; ii < 2; ++ii) {
+        for (int deferred = 0; deferred < 2; ++deferred) {
+            int64_t start = getMicrosNow();
+            loadRows(deferred != 0, rows, groups[ii]);
+            std::cout << rows << " rows into " << groups[ii] << " groups "
+                      << (deferred ? "with deferred deltas" : "row by row")
+                      << " finished in " << getMicrosNow() - start << " microseconds\n";
+        }
+    }
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
@@ -25,9 +25,20 @@
 
 #include "harness.h"
 #include "common/SQLException.h"
+#include "common/TupleSchema.h"
+#include "common/ValueFactory.hpp"
+#include "common/ValuePeeker.hpp"
+#include "common/tabletuple.h"
 #include "logging/LogManager.h"
+#include "storage/tablefactory.h"
+#include "storage/tableiterator.h"
+#include "storage/temptable.h"
+
+#include <boost/scoped_ptr.hpp>
 
 #include <sstream>
+#include <string>
+#include <vector>
 
 using namespace voltdb;
 
@@ -125,6 +136,141 @@ TEST_F(TempTableLimitsTest, CheckLimitException)
     EXPECT_TRUE(threw);
 }
 
+static TempTable* buildBigIntTempTable(TempTableLimits* limits)
+{
+    std::vector<ValueType> columnTypes(1, VALUE_TYPE_BIGINT);
+    std::vector<int32_t> columnLengths(1, NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+    std::vector<bool> columnAllowNull(1, false);
+    std::vector<std::string> columnNames(1, "C0");
+    TupleSchema* schema = TupleSchema::createTupleSchemaForTest(columnTypes, columnLengths, columnAllowNull);
+    return TableFactory::buildTempTable("spill_test", schema, columnNames, limits);
+}
+
+static void insertBigInts(TempTable* table, int64_t count)
+{
+    TableTuple& tuple = table->tempTuple();
+    for (int64_t ii = 0; ii < count; ++ii) {
+        tuple.setNValue(0, ValueFactory::getBigIntValue(ii));
+        table->insertTempTuple(tuple);
+    }
+}
+
+TEST_F(TempTableLimitsTest, CheckSpillToDisk)
+{
+    const int64_t limit = 1024 * 1024;
+    TempTableLimits dut(limit, -1, "/tmp");
+    EXPECT_TRUE(dut.canSpill());
+
+    boost::scoped_ptr<TempTable> table(buildBigIntTempTable(&dut));
+    table->setSpillable(true);
+    const int64_t tupleCount = 8 * limit / table->getTupleLength();
+    insertBigInts(table.get(), tupleCount);
+
+    EXPECT_TRUE(table->hasSpilledBlocks());
+    EXPECT_TRUE(dut.getAllocated() <= limit);
+    EXPECT_TRUE(dut.getSpilledBytes() > 0);
+    EXPECT_EQ(tupleCount, table->tempTableTupleCount());
+
+    // Spilled blocks are read back, in order, as the iterator reaches them.
+    TableTuple tuple(table->schema());
+    TableIterator& iter = table->iterator();
+    int64_t expected = 0;
+    while (iter.next(tuple)) {
+        EXPECT_EQ(expected, ValuePeeker::peekBigInt(tuple.getNValue(0)));
+        ++expected;
+    }
+    EXPECT_EQ(tupleCount, expected);
+    EXPECT_TRUE(dut.getAllocated() <= limit);
+
+    // A second scan may delete the blocks as it goes.
+    TableIterator& deletingIter = table->iteratorDeletingAsWeGo();
+    expected = 0;
+    while (deletingIter.next(tuple)) {
+        EXPECT_EQ(expected, ValuePeeker::peekBigInt(tuple.getNValue(0)));
+        ++expected;
+    }
+    EXPECT_EQ(tupleCount, expected);
+
+    table->deleteAllTempTuples();
+    EXPECT_FALSE(table->hasSpilledBlocks());
+    table.reset();
+    EXPECT_EQ(0, dut.getAllocated());
+}
+
+TEST_F(TempTableLimitsTest, CheckCopiedIteratorsOnSpilledBlock)
+{
+    const int64_t limit = 1024 * 1024;
+    TempTableLimits dut(limit, -1, "/tmp");
+    boost::scoped_ptr<TempTable> table(buildBigIntTempTable(&dut));
+    table->setSpillable(true);
+    const int64_t tupleCount = 8 * limit / table->getTupleLength();
+    insertBigInts(table.get(), tupleCount);
+    ASSERT_TRUE(table->hasSpilledBlocks());
+
+    // Park an iterator in the middle of the first, spilled, block.
+    TableTuple tuple(table->schema());
+    TableIterator iter = table->iterator();
+    ASSERT_TRUE(iter.next(tuple));
+    ASSERT_TRUE(iter.next(tuple));
+
+    // A copy that goes away while the original is still on the block
+    // must leave the block readable for the original.
+    {
+        TableIterator scratch = iter;
+        TableTuple scratchTuple(table->schema());
+        ASSERT_TRUE(scratch.next(scratchTuple));
+        EXPECT_EQ(2, ValuePeeker::peekBigInt(scratchTuple.getNValue(0)));
+    }
+
+    // A copy that outlives the original on the block keeps reading it
+    // after the original has moved past it.
+    TableIterator copy = iter;
+    int64_t expected = 2;
+    while (iter.next(tuple)) {
+        EXPECT_EQ(expected, ValuePeeker::peekBigInt(tuple.getNValue(0)));
+        ++expected;
+    }
+    EXPECT_EQ(tupleCount, expected);
+
+    expected = 2;
+    while (copy.next(tuple)) {
+        EXPECT_EQ(expected, ValuePeeker::peekBigInt(tuple.getNValue(0)));
+        ++expected;
+    }
+    EXPECT_EQ(tupleCount, expected);
+}
+
+TEST_F(TempTableLimitsTest, CheckNoSpillWithoutOptIn)
+{
+    const int64_t limit = 1024 * 1024;
+    TempTableLimits dut(limit, -1, "/tmp");
+    boost::scoped_ptr<TempTable> table(buildBigIntTempTable(&dut));
+    bool threw = false;
+    try {
+        insertBigInts(table.get(), 8 * limit / table->getTupleLength());
+    }
+    catch (SQLException& sqle) {
+        threw = true;
+    }
+    EXPECT_TRUE(threw);
+    EXPECT_FALSE(table->hasSpilledBlocks());
+    EXPECT_EQ(0, dut.getSpilledBytes());
+
+    // Without a spill directory a spillable table fails the same way.
+    TempTableLimits noDirectory(limit);
+    EXPECT_FALSE(noDirectory.canSpill());
+    boost::scoped_ptr<TempTable> spillable(buildBigIntTempTable(&noDirectory));
+    spillable->setSpillable(true);
+    threw = false;
+    try {
+        insertBigInts(spillable.get(), 8 * limit / spillable->getTupleLength());
+    }
+    catch (SQLException& sqle) {
+        threw = true;
+    }
+    EXPECT_TRUE(threw);
+}
+
 int main()
 {
     return TestSuite::globalInstance()->runAll();
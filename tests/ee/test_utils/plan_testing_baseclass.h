@@ -97,7 +97,8 @@ public:
         m_database(NULL),
         m_constraint(NULL),
         m_isinitialized(false),
-        m_fragmentNumber(100)
+        m_fragmentNumber(100),
+        m_tempTableMemoryLimit(voltdb::DEFAULT_TEMP_TABLE_MEMORY)
     { }
 
     void initialize(const char   *catalogString,
@@ -134,7 +135,7 @@ public:
                              m_exception_buffer.get(), 4096);
         m_engine->resetReusedResultOutputBuffer();
         int partitionCount = 3;
-        ASSERT_TRUE(m_engine->initialize(this->m_cluster_id, this->m_site_id, 0, 0, "", 0, 1024, voltdb::DEFAULT_TEMP_TABLE_MEMORY, false));
+        ASSERT_TRUE(m_engine->initialize(this->m_cluster_id, this->m_site_id, 0, 0, "", 0, 1024, m_tempTableMemoryLimit, false));
         m_engine->updateHashinator(voltdb::HASHINATOR_LEGACY, (char*)&partitionCount, NULL, 0);
         ASSERT_TRUE(m_engine->loadCatalog( -2, m_catalog_string));
 
@@ -220,10 +221,10 @@ public:
         validateResult((const int32_t *)test.m_outputTable, test.m_numOutputRows, test.m_numOutputCols);
     }
     /**
-     * Given a PlanFragmentInfo data object, make the m_engine execute it,
-     * and validate the results.
+     * Given a PlanFragmentInfo data object, make the m_engine execute it.
+     * Returns ENGINE_ERRORCODE_SUCCESS, or ENGINE_ERRORCODE_ERROR if it threw.
      */
-    void executeFragment(fragmentId_t fragmentId, const char *plan) {
+    int executeFragment(fragmentId_t fragmentId, const char *plan) {
         m_topend->addPlan(fragmentId, plan);
 
             // Make sure the parameter buffer is filled
@@ -231,12 +232,14 @@ public:
             // deserializer.
             memset(m_parameter_buffer.get(), 0, 4 * 1024);
             voltdb::ReferenceSerializeInputBE emptyParams(m_parameter_buffer.get(), 4 * 1024);
+            // Write the results at the start of the buffer, as a new batch does.
+            m_engine->resetReusedResultOutputBuffer();
 
             //
             // Execute the plan.  You'd think this would be more
             // impressive.
             //
-            m_engine->executePlanFragments(1, &fragmentId, NULL, emptyParams, 1000, 1000, 1000, 1000, 1);
+            return m_engine->executePlanFragments(1, &fragmentId, NULL, emptyParams, 1000, 1000, 1000, 1000, 1);
     }
 
     /**
@@ -298,6 +301,8 @@ protected:
     boost::shared_array<char>m_parameter_buffer;
     bool                     m_isinitialized;
     int                      m_fragmentNumber;
+    // Set before initialize() to run fragments under a smaller limit.
+    int64_t                  m_tempTableMemoryLimit;
 };
 
 #endif /* TESTS_EE_TEST_UTILS_PLAN_TESTING_BASECLASS_H_ */
@@ -25,11 +25,13 @@ package org.voltcore.messaging;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -94,6 +96,11 @@ public class TestHostMessenger {
     }
 
     private HostMessenger createHostMessenger(int index, boolean start, int hostcount) throws Exception {
+        return createHostMessenger(index, start, hostcount, 1);
+    }
+
+    private HostMessenger createHostMessenger(int index, boolean start, int hostcount,
+            int connectionsPerHost) throws Exception {
 
         assertTrue("index is bigger than hostcount", index < hostcount);
         final HostMessenger.Config config = new HostMessenger.Config();
@@ -105,6 +112,7 @@ public class TestHostMessenger {
                 .build();
         config.internalPort = config.internalPort + index;
         config.zkInterface = "127.0.0.1:" + (7181 + index);
+        config.connectionsPerHost = connectionsPerHost;
         HostMessenger hm = new HostMessenger(config, null);
         createdMessengers.add(hm);
         if (start) {
@@ -1527,6 +1535,52 @@ public class TestHostMessenger {
         hm3.waitForGroupJoin(2);
     }
 
+    @Test
+    public void testMultipleConnectionsPerHost() throws Exception {
+        HostMessenger hm1 = createHostMessenger(0, true, 2, 3);
+        HostMessenger hm2 = createHostMessenger(1, false, 2, 3);
+
+        final AtomicReference<Exception> exception = new AtomicReference<Exception>();
+        HostMessengerThread hm2Start = new HostMessengerThread(hm2, exception);
+        hm2Start.start();
+        hm2Start.join();
+        if (exception.get() != null) {
+            fail(exception.get().toString());
+        }
+
+        // consecutive site ids land on different connections, so each message is split
+        final int receiverCount = 6;
+        final int messageCount = 500;
+        Mailbox sender = hm1.createMailbox();
+        Mailbox receivers[] = new Mailbox[receiverCount];
+        long hsIds[] = new long[receiverCount];
+        for (int ii = 0; ii < receiverCount; ii++) {
+            receivers[ii] = hm2.createMailbox();
+            hsIds[ii] = receivers[ii].getHSId();
+        }
+        for (int ii = 0; ii < messageCount; ii++) {
+            sender.send(hsIds, new BinaryPayloadMessage(ByteBuffer.allocate(4).putInt(ii).array(), null));
+        }
+
+        // every receiver sees every message in the order it was sent
+        for (Mailbox receiver : receivers) {
+            for (int ii = 0; ii < messageCount; ii++) {
+                BinaryPayloadMessage bpm = (BinaryPayloadMessage)receiver.recvBlocking(10000);
+                assertNotNull(bpm);
+                assertEquals(sender.getHSId(), bpm.m_sourceHSId);
+                assertEquals(ii, ByteBuffer.wrap(bpm.m_metadata).getInt());
+            }
+        }
+
+        // two connections opened by each side in addition to the first
+        ForeignHost fh = hm1.m_foreignHosts.get(hm2.getHostId());
+        assertEquals(3, fh.getConnectionCount());
+        for (int ii = 0; ii < 1000 && fh.getNetworks().size() < 5; ii++) {
+            Thread.sleep(10);
+        }
+        assertEquals(5, fh.getNetworks().size());
+    }
+
     @Test
     public void testPartitionDetectionMinoritySet() throws Exception
     {
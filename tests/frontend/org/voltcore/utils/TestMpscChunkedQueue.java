@@ -0,0 +1,167 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltcore.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class TestMpscChunkedQueue extends TestCase {
+
+    public void testFifoAcrossChunks() {
+        MpscChunkedQueue<Integer> queue = new MpscChunkedQueue<Integer>(4);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertEquals(Integer.valueOf(0), queue.peek());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(i), queue.peek());
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+        assertNull(queue.peek());
+
+        // reuse after the head has caught up with the tail at a chunk boundary
+        queue.offer(10);
+        assertEquals(Integer.valueOf(10), queue.poll());
+    }
+
+    public void testDrainTo() {
+        MpscChunkedQueue<Integer> queue = new MpscChunkedQueue<Integer>(3);
+        for (int i = 0; i < 7; i++) {
+            queue.offer(i);
+        }
+        List<Integer> batch = new ArrayList<Integer>();
+        assertEquals(5, queue.drainTo(batch, 5));
+        assertEquals(5, batch.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Integer.valueOf(i), batch.get(i));
+        }
+        batch.clear();
+        assertEquals(2, queue.drainTo(batch, 5));
+        assertEquals(Integer.valueOf(6), batch.get(1));
+        assertEquals(0, queue.drainTo(batch, 5));
+    }
+
+    public void testNullRejected() {
+        try {
+            new MpscChunkedQueue<Object>().offer(null);
+            fail();
+        } catch (NullPointerException expected) {}
+    }
+
+    public void testConcurrentProducers() throws Exception {
+        final int producers = 4;
+        final int perProducer = 100000;
+        final MpscChunkedQueue<long[]> queue = new MpscChunkedQueue<long[]>(16);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            final int id = p;
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perProducer; i++) {
+                        queue.offer(new long[] { id, i });
+                    }
+                }
+            };
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+
+        // every element arrives exactly once, in order for each producer
+        long[] next = new long[producers];
+        List<long[]> batch = new ArrayList<long[]>();
+        int received = 0;
+        while (received < producers * perProducer) {
+            batch.add(queue.take());
+            queue.drainTo(batch, 63);
+            for (long[] e : batch) {
+                assertEquals(next[(int) e[0]], e[1]);
+                next[(int) e[0]]++;
+            }
+            received += batch.size();
+            batch.clear();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testTakeBlocksUntilOffer() throws Exception {
+        final MpscChunkedQueue<String> queue = new MpscChunkedQueue<String>();
+        final AtomicReference<String> taken = new AtomicReference<String>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    taken.set(queue.take());
+                } catch (InterruptedException e) {
+                    taken.set("interrupted");
+                }
+                done.countDown();
+            }
+        };
+        consumer.start();
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+        queue.offer("wake");
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals("wake", taken.get());
+    }
+
+    public void testTakeInterruptible() throws Exception {
+        final MpscChunkedQueue<String> queue = new MpscChunkedQueue<String>();
+        final AtomicReference<String> taken = new AtomicReference<String>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    taken.set(queue.take());
+                } catch (InterruptedException e) {
+                    taken.set("interrupted");
+                }
+                done.countDown();
+            }
+        };
+        consumer.start();
+        consumer.interrupt();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals("interrupted", taken.get());
+    }
+}
@@ -0,0 +1,117 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.voltdb.HTTPResponseEncoder.Format;
+import org.voltdb.client.ClientResponse;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+public class TestHTTPResponseEncoder {
+
+    private static ClientResponseImpl response() {
+        VoltTable table = new VoltTable(
+                new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("NAME", VoltType.STRING),
+                new VoltTable.ColumnInfo("RATIO", VoltType.FLOAT),
+                new VoltTable.ColumnInfo("AMOUNT", VoltType.DECIMAL),
+                new VoltTable.ColumnInfo("BLOB", VoltType.VARBINARY),
+                new VoltTable.ColumnInfo("TS", VoltType.TIMESTAMP));
+        table.addRow(1, "one \"quoted\" </tag>", 1.5, new BigDecimal("12.345"), new byte[] { 1, 2, 3 }, 1000L);
+        table.addRow(2, null, null, null, null, null);
+        table.addRow(3, "nan", Double.NaN, BigDecimal.ONE, new byte[0], 0L);
+        return new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { table, new VoltTable(
+                new VoltTable.ColumnInfo("EMPTY", VoltType.INTEGER)) }, "done");
+    }
+
+    private static byte[] encode(ClientResponse response, Format format, String jsonp) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HTTPResponseEncoder.write(response, format, jsonp, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testJSONMatchesToJSONString() throws Exception {
+        ClientResponseImpl response = response();
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode expected = mapper.readTree(response.toJSONString());
+        JsonNode actual = mapper.readTree(encode(response, Format.JSON, null));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testJSONP() throws Exception {
+        ClientResponseImpl response = response();
+        String encoded = new String(encode(response, Format.JSON, "cb"), StandardCharsets.UTF_8);
+        assertTrue(encoded.startsWith("cb( "));
+        assertTrue(encoded.endsWith(" )"));
+        assertEquals(new ObjectMapper().readTree(response.toJSONString()),
+                     new ObjectMapper().readTree(encoded.substring(4, encoded.length() - 2)));
+    }
+
+    @Test
+    public void testCBOR() throws Exception {
+        JsonNode root = new ObjectMapper(new CBORFactory()).readTree(encode(response(), Format.CBOR, null));
+        assertEquals(ClientResponse.SUCCESS, root.get("status").asInt());
+        assertEquals("done", root.get("statusstring").asText());
+        assertEquals(2, root.get("results").size());
+
+        JsonNode table = root.get("results").get(0);
+        assertEquals("NAME", table.get("schema").get(1).get("name").asText());
+        assertEquals(VoltType.VARBINARY.getValue(), table.get("schema").get(4).get("type").asInt());
+        JsonNode data = table.get("data");
+        assertEquals(3, data.size());
+        assertEquals(1, data.get(0).get(0).asLong());
+        assertEquals("one \"quoted\" </tag>", data.get(0).get(1).asText());
+        assertEquals(1.5, data.get(0).get(2).asDouble(), 0.0);
+        assertEquals("12.345000000000", data.get(0).get(3).asText());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, data.get(0).get(4).binaryValue());
+        assertEquals(1000L, data.get(0).get(5).asLong());
+        for (int i = 1; i < 6; i++) {
+            assertTrue(data.get(1).get(i).isNull());
+        }
+        assertTrue(Double.isNaN(data.get(2).get(2).asDouble()));
+        assertEquals(0, table.get("data").get(2).get(4).binaryValue().length);
+        assertEquals(0, root.get("results").get(1).get("data").size());
+    }
+
+    @Test
+    public void testFormatSelection() {
+        assertEquals(Format.JSON, HTTPResponseEncoder.formatFor(null, null, null));
+        assertEquals(Format.CBOR, HTTPResponseEncoder.formatFor("CBOR", null, null));
+        assertEquals(Format.JSON, HTTPResponseEncoder.formatFor("json", HTTPResponseEncoder.CBOR_CONTENT_TYPE, null));
+        assertEquals(Format.CBOR, HTTPResponseEncoder.formatFor(null, "application/cbor, */*", null));
+        assertEquals(Format.JSON, HTTPResponseEncoder.formatFor("cbor", null, "cb"));
+    }
+}
@@ -0,0 +1,166 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Table;
+import org.voltdb.client.ClientResponse;
+
+public class TestProcedureResultCache {
+
+    private Database m_db;
+    private Procedure m_readView;
+    private Procedure m_readOther;
+    private Procedure m_write;
+
+    @Before
+    public void setUp() {
+        m_db = new Catalog().getClusters().add("cluster").getDatabases().add("database");
+        Table t = m_db.getTables().add("T");
+        Table v = m_db.getTables().add("V");
+        v.setMaterializer(t);
+        m_db.getTables().add("OTHER");
+
+        m_readView = m_db.getProcedures().add("ReadView");
+        m_readView.setReadonly(true);
+        m_readView.getStatements().add("sql").setTablesread("V");
+        m_readOther = m_db.getProcedures().add("ReadOther");
+        m_readOther.setReadonly(true);
+        m_readOther.getStatements().add("sql").setTablesread("OTHER");
+        m_write = m_db.getProcedures().add("WriteT");
+        m_write.getStatements().add("sql").setTablesupdated("T");
+    }
+
+    private static StoredProcedureInvocation invocation(String procName, Object... params) throws Exception {
+        StoredProcedureInvocation spi = new StoredProcedureInvocation();
+        spi.setProcName(procName);
+        spi.setParams(params);
+        ByteBuffer buf = ByteBuffer.allocate(spi.getSerializedSize());
+        spi.flattenToBuffer(buf);
+        buf.flip();
+        StoredProcedureInvocation fromWire = new StoredProcedureInvocation();
+        fromWire.initFromBuffer(buf);
+        return fromWire;
+    }
+
+    private static ClientResponseImpl response(long... values) {
+        VoltTable table = new VoltTable(new VoltTable.ColumnInfo("V", VoltType.BIGINT));
+        for (long value : values) {
+            table.addRow(value);
+        }
+        return new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { table }, null);
+    }
+
+    private ProcedureResultCache.Ticket ticket(ProcedureResultCache cache, Procedure proc, Object... params)
+            throws Exception {
+        return cache.ticketFor(m_db, proc, invocation(proc.getTypeName(), params), 0);
+    }
+
+    @Test
+    public void testHitReturnsCopyWithClientHandle() throws Exception {
+        ProcedureResultCache cache = new ProcedureResultCache(1024 * 1024);
+        assertNull(cache.get(ticket(cache, m_readView, 1), 5));
+        cache.put(ticket(cache, m_readView, 1), response(10, 20));
+
+        ClientResponseImpl hit = cache.get(ticket(cache, m_readView, 1), 7);
+        assertNotNull(hit);
+        assertEquals(7, hit.getClientHandle());
+        assertEquals(ClientResponse.SUCCESS, hit.getStatus());
+        assertEquals(response(10, 20).getResults()[0], hit.getResults()[0]);
+        assertNull(cache.get(ticket(cache, m_readView, 2), 7));
+        assertNull(cache.get(ticket(cache, m_readOther, 1), 7));
+        assertEquals(4, cache.m_lookups.get());
+        assertEquals(1, cache.m_hits.get());
+    }
+
+    @Test
+    public void testWritesInvalidate() throws Exception {
+        ProcedureResultCache cache = new ProcedureResultCache(1024 * 1024);
+        cache.put(ticket(cache, m_readView, 1), response(1));
+        cache.put(ticket(cache, m_readOther, 1), response(2));
+
+        // a write to the source table of the view only invalidates the view reader
+        ProcedureResultCache.tablesModified(ProcedureResultCache.tablesUpdatedBy(m_write));
+        assertNull(cache.get(ticket(cache, m_readView, 1), 0));
+        assertNotNull(cache.get(ticket(cache, m_readOther, 1), 0));
+        assertEquals(1, cache.m_invalidations.get());
+
+        // writes to unknown tables invalidate everything
+        ProcedureResultCache.tablesModified(null);
+        assertNull(cache.get(ticket(cache, m_readOther, 1), 0));
+    }
+
+    @Test
+    public void testResponseOlderThanWriteIsNotCached() throws Exception {
+        ProcedureResultCache cache = new ProcedureResultCache(1024 * 1024);
+        ProcedureResultCache.Ticket ticket = ticket(cache, m_readView, 1);
+        ProcedureResultCache.tablesModified(new String[] { "T" });
+        cache.put(ticket, response(1));
+        assertEquals(0, cache.m_insertions.get());
+
+        cache.put(ticket(cache, m_readView, 1),
+                  new ClientResponseImpl(ClientResponse.GRACEFUL_FAILURE, new VoltTable[0], "failed"));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testPartitionAndCatalogChangesMiss() throws Exception {
+        ProcedureResultCache cache = new ProcedureResultCache(1024 * 1024);
+        cache.put(ticket(cache, m_readView, 1), response(1));
+        assertNull(cache.get(cache.ticketFor(m_db, m_readView, invocation("ReadView", 1), 3), 0));
+
+        cache.put(ticket(cache, m_readView, 1), response(1));
+        Database newDb = new Catalog().getClusters().add("cluster").getDatabases().add("database");
+        cache.ticketFor(newDb, m_readView, invocation("ReadView", 1), 0);
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        final int rows = 100;
+        long[] values = new long[rows];
+        Arrays.fill(values, 42);
+        // room for about 3 responses in each stripe
+        ProcedureResultCache cache = new ProcedureResultCache(
+                ProcedureResultCache.MAX_STRIPES * (3 * (rows * 8 + ProcedureResultCache.ENTRY_OVERHEAD + 64)));
+        for (int i = 0; i < 1000; i++) {
+            cache.put(ticket(cache, m_readView, i), response(values));
+        }
+        assertTrue(cache.m_evictions.get() > 0);
+        assertEquals(1000, cache.m_insertions.get() );
+        assertEquals(1000 - cache.m_evictions.get(), cache.getEntryCount());
+        assertTrue(cache.getSizeInBytes() <= ProcedureResultCache.MAX_STRIPES *
+                   (3 * (rows * 8 + ProcedureResultCache.ENTRY_OVERHEAD + 64)));
+        assertNotNull(cache.get(ticket(cache, m_readView, 999), 0));
+    }
+}
@@ -0,0 +1,180 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.voltdb.VoltTableColumnReader.BytesColumnCursor;
+import org.voltdb.VoltTableColumnReader.DoubleColumnCursor;
+import org.voltdb.VoltTableColumnReader.LongColumnCursor;
+import org.voltdb.types.TimestampType;
+
+import junit.framework.TestCase;
+
+public class TestVoltTableColumnReader extends TestCase {
+
+    private static final int ROWS = 100;
+
+    // variable length columns ahead of fixed ones exercise the lazily computed offsets
+    private VoltTable makeTable() {
+        VoltTable table = new VoltTable(
+                new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("SMALL", VoltType.SMALLINT),
+                new VoltTable.ColumnInfo("NAME", VoltType.STRING),
+                new VoltTable.ColumnInfo("RATIO", VoltType.FLOAT),
+                new VoltTable.ColumnInfo("BLOB", VoltType.VARBINARY),
+                new VoltTable.ColumnInfo("TS", VoltType.TIMESTAMP),
+                new VoltTable.ColumnInfo("TINY", VoltType.TINYINT));
+        for (int i = 0; i < ROWS; i++) {
+            table.addRow(i,
+                         i % 7 == 0 ? null : (short) i,
+                         i % 5 == 0 ? null : "name\u00e9" + i,
+                         i % 3 == 0 ? null : i * 0.5,
+                         i % 4 == 0 ? null : new byte[i % 9],
+                         new TimestampType(1000L * i),
+                         (byte) (i % 100));
+        }
+        return table;
+    }
+
+    private VoltTable roundTrip(VoltTable t) {
+        ByteBuffer buf = ByteBuffer.allocate(t.getSerializedSize());
+        t.flattenToBuffer(buf);
+        buf.flip();
+        buf.getInt(); // ignore length prefix here
+        return PrivateVoltTableFactory.createVoltTableFromBuffer(buf.slice(), true);
+    }
+
+    public void testMatchesRowAccess() {
+        for (VoltTable table : new VoltTable[] { makeTable(), roundTrip(makeTable()) }) {
+            VoltTableColumnReader reader = new VoltTableColumnReader(table);
+            assertEquals(ROWS, reader.getRowCount());
+            assertEquals(7, reader.getColumnCount());
+
+            LongColumnCursor id = reader.getLongCursor(0);
+            LongColumnCursor small = reader.getLongCursor(1);
+            BytesColumnCursor name = reader.getBytesCursor(2);
+            DoubleColumnCursor ratio = reader.getDoubleCursor(3);
+            BytesColumnCursor blob = reader.getBytesCursor(4);
+            LongColumnCursor ts = reader.getLongCursor(5);
+            LongColumnCursor tiny = reader.getLongCursor(6);
+
+            byte[] scratch = new byte[64];
+            table.resetRowPosition();
+            while (table.advanceRow()) {
+                assertTrue(id.advanceRow());
+                assertTrue(small.advanceRow());
+                assertTrue(name.advanceRow());
+                assertTrue(ratio.advanceRow());
+                assertTrue(blob.advanceRow());
+                assertTrue(ts.advanceRow());
+                assertTrue(tiny.advanceRow());
+
+                assertEquals(table.getLong(0), id.getLong());
+                assertEquals(table.getLong(1), small.getLong());
+                assertEquals(table.wasNull(), small.wasNull());
+
+                String expected = table.getString(2);
+                assertEquals(expected, name.getString());
+                if (expected == null) {
+                    assertTrue(name.wasNull());
+                    assertNull(name.getByteBuffer());
+                    assertEquals(0, name.getLength());
+                }
+                else {
+                    byte[] utf8 = table.getStringAsBytes(2);
+                    assertEquals(utf8.length, name.getLength());
+                    assertTrue(name.bytesEqual(utf8));
+                    assertFalse(name.bytesEqual(Arrays.copyOf(utf8, utf8.length - 1)));
+                    assertEquals(utf8.length, name.getBytes(scratch, 0));
+                    assertTrue(Arrays.equals(utf8, Arrays.copyOf(scratch, utf8.length)));
+                }
+
+                assertEquals(table.getDouble(3), ratio.getDouble());
+                assertEquals(table.wasNull(), ratio.wasNull());
+
+                byte[] bytes = table.getVarbinary(4);
+                if (bytes == null) {
+                    assertNull(blob.getByteBuffer());
+                    assertTrue(blob.wasNull());
+                }
+                else {
+                    assertEquals(bytes.length, blob.getByteBuffer().remaining());
+                }
+
+                assertEquals(table.getTimestampAsLong(5), ts.getLong());
+                assertEquals(table.getLong(6), tiny.getLong());
+            }
+            assertFalse(id.advanceRow());
+            assertFalse(tiny.advanceRow());
+        }
+    }
+
+    public void testRandomAccess() {
+        VoltTableColumnReader reader = new VoltTableColumnReader(makeTable());
+        LongColumnCursor tiny = reader.getLongCursor(6);
+        assertTrue(tiny.advanceToRow(42));
+        assertEquals(42, tiny.getLong());
+        assertTrue(tiny.advanceToRow(3));
+        assertEquals(3, tiny.getLong());
+        assertFalse(tiny.advanceToRow(ROWS));
+        tiny.resetRowPosition();
+        assertEquals(-1, tiny.getActiveRowIndex());
+        try {
+            tiny.getLong();
+            fail();
+        } catch (RuntimeException e) {}
+        assertTrue(tiny.advanceRow());
+        assertEquals(0, tiny.getLong());
+
+        // a second cursor over a variable position column reuses the computed offsets
+        BytesColumnCursor blob = reader.getBytesCursor(4);
+        assertTrue(blob.advanceToRow(5));
+        assertEquals(5, blob.getLength());
+    }
+
+    public void testTypeChecks() {
+        VoltTableColumnReader reader = new VoltTableColumnReader(makeTable());
+        try {
+            reader.getLongCursor(2);
+            fail();
+        } catch (IllegalArgumentException e) {}
+        try {
+            reader.getDoubleCursor(0);
+            fail();
+        } catch (IllegalArgumentException e) {}
+        try {
+            reader.getBytesCursor(7);
+            fail();
+        } catch (IndexOutOfBoundsException e) {}
+    }
+
+    public void testEmptyTable() {
+        VoltTable table = new VoltTable(new VoltTable.ColumnInfo("NAME", VoltType.STRING));
+        VoltTableColumnReader reader = new VoltTableColumnReader(table);
+        assertEquals(0, reader.getRowCount());
+        assertFalse(reader.getBytesCursor(0).advanceRow());
+    }
+}
@@ -158,6 +158,17 @@ public class MockVoltClient implements Client {
         return false;
     }
 
+    @Override
+    public ProcedureFuture callProcedureAsync(String procName, Object... parameters) {
+        ProcedureFuture future = new ProcedureFuture();
+        try {
+            future.set(callProcedure(procName, parameters));
+        } catch (ProcCallException e) {
+            future.setException(e);
+        }
+        return future;
+    }
+
     @Override
     public void drain() {
         // TODO Auto-generated method stub
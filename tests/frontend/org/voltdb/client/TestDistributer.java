@@ -31,10 +31,13 @@ import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.TestCase;
 
@@ -66,6 +69,23 @@ public class TestDistributer extends TestCase {
 
         @Override
         public void handleMessage(ByteBuffer message, Connection c) {
+            messages.incrementAndGet();
+            if (message.get(message.position()) == ProcedureInvocation.MULTI_INVOCATION) {
+                message.get();
+                int count = message.getInt();
+                for (int i = 0; i < count; i++) {
+                    ByteBuffer invocation = message.slice();
+                    invocation.limit(message.getInt(message.position()) + 4);
+                    invocation.getInt();
+                    message.position(message.position() + invocation.limit());
+                    handleInvocation(invocation, c);
+                }
+            } else {
+                handleInvocation(message, c);
+            }
+        }
+
+        private void handleInvocation(ByteBuffer message, Connection c) {
             try {
                 StoredProcedureInvocation spi = new StoredProcedureInvocation();
                 spi.initFromBuffer(message);
@@ -138,6 +158,7 @@ public class TestDistributer extends TestCase {
 
         }
         AtomicInteger roundTrips = new AtomicInteger();
+        AtomicInteger messages = new AtomicInteger();
 
         @Override
         public Runnable offBackPressure() {
@@ -474,6 +495,47 @@ public class TestDistributer extends TestCase {
         }
     }
 
+    @Test
+    public void testInvocationBatching() throws Exception {
+        MockVolt volt = null;
+        try {
+            volt = new MockVolt(20000);
+            volt.start();
+
+            Distributer dist = new Distributer(false,
+                    ClientConfig.DEFAULT_PROCEDURE_TIMOUT_NANOS,
+                    ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                    false, false, null /* subject */,
+                    TimeUnit.MILLISECONDS.toNanos(50), 1024 * 1024);
+            dist.createConnection("localhost", "", "", 20000, ClientAuthScheme.HASH_SHA1);
+            dist.drain();
+            int setupMessages = volt.handler.messages.get();
+
+            final AtomicInteger responses = new AtomicInteger();
+            for (int i = 0; i < 100; i++) {
+                ProcedureInvocation pi = new ProcedureInvocation(i + 1, "i1", new Integer(i));
+                dist.queue(pi, new ProcedureCallback() {
+                    @Override
+                    public void clientCallback(ClientResponse clientResponse) {
+                        assertEquals(ClientResponse.SUCCESS, clientResponse.getStatus());
+                        responses.incrementAndGet();
+                    }
+                }, true, System.nanoTime(), 0);
+            }
+            dist.drain();
+
+            // every call got its own response, but they did not each need a message
+            assertEquals(100, responses.get());
+            assertEquals(100, volt.handler.roundTrips.get());
+            assertTrue(volt.handler.messages.get() - setupMessages < 100);
+        }
+        finally {
+            if (volt != null) {
+                volt.shutdown();
+            }
+        }
+    }
+
     @Test
     public void testQueueMixed() throws Exception {
 
@@ -820,6 +882,59 @@ public class TestDistributer extends TestCase {
        }
     }
 
+    @Test
+    public void testClientAsyncFuture() throws Exception {
+        MockVolt volt = null;
+
+        try {
+            // create a fake server and connect to it.
+            volt = new MockVolt(21212);
+            volt.start();
+
+            final Client clt = ClientFactory.createClient();
+            clt.createConnection("localhost");
+
+            // chain a dependent call onto the first response without blocking
+            final ProcedureFuture first = clt.callProcedureAsync("Foo", new Integer(1));
+            final AtomicReference<ProcedureFuture> second = new AtomicReference<ProcedureFuture>();
+            final CountDownLatch chained = new CountDownLatch(1);
+            first.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    second.set(clt.callProcedureAsync("Bar", new Integer(2)));
+                    chained.countDown();
+                }
+            }, new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    command.run();
+                }
+            });
+            assertTrue(chained.await(10, TimeUnit.SECONDS));
+            assertEquals(ClientResponse.SUCCESS, second.get().get(10, TimeUnit.SECONDS).getStatus());
+            assertTrue(first.isDone());
+            assertEquals(ClientResponse.SUCCESS, first.get().getStatus());
+
+            // a failed response fails the future with a ProcCallException
+            volt.handler.sendProcTimeout.set(true);
+            try {
+                clt.callProcedureAsync("Foo", new Integer(3)).get(10, TimeUnit.SECONDS);
+                fail();
+            }
+            catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof ProcCallException);
+                assertEquals(ClientResponse.CONNECTION_TIMEOUT,
+                        ((ProcCallException) e.getCause()).getClientResponse().getStatus());
+            }
+            clt.close();
+        }
+        finally {
+            if (volt != null) {
+                volt.shutdown();
+            }
+        }
+    }
+
     @Test
     public void testClientBlockedOnMaxOutstanding() throws Exception {
         // create a fake server and connect to it.
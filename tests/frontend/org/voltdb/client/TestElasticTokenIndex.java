@@ -0,0 +1,155 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.voltcore.utils.Bits;
+import org.voltdb.ElasticHashinator;
+
+public class TestElasticTokenIndex extends TestCase {
+
+    private static long allocate(TreeMap<Integer, Integer> tokens) {
+        long ptr = Bits.unsafe.allocateMemory(8 * tokens.size());
+        int ii = 0;
+        for (Map.Entry<Integer, Integer> e : tokens.entrySet()) {
+            Bits.unsafe.putInt(ptr + (ii * 8), e.getKey());
+            Bits.unsafe.putInt(ptr + (ii * 8) + 4, e.getValue());
+            ii++;
+        }
+        return ptr;
+    }
+
+    private static int expected(TreeMap<Integer, Integer> tokens, int hash) {
+        Map.Entry<Integer, Integer> e = tokens.floorEntry(hash);
+        return e == null ? tokens.lastEntry().getValue() : e.getValue();
+    }
+
+    private static void check(TreeMap<Integer, Integer> tokens, Random r) {
+        long ptr = allocate(tokens);
+        try {
+            ElasticTokenIndex index = new ElasticTokenIndex(ptr, tokens.size());
+            for (int token : tokens.keySet()) {
+                for (int delta = -1; delta <= 1; delta++) {
+                    assertEquals(expected(tokens, token + delta), index.partitionForToken(token + delta));
+                }
+            }
+            for (int hash : new int[] { Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1 }) {
+                assertEquals(expected(tokens, hash), index.partitionForToken(hash));
+            }
+            for (int ii = 0; ii < 100000; ii++) {
+                int hash = r.nextInt();
+                assertEquals(expected(tokens, hash), index.partitionForToken(hash));
+            }
+        } finally {
+            Bits.unsafe.freeMemory(ptr);
+        }
+    }
+
+    public void testMatchesRing() {
+        Random r = new Random(42);
+        for (int count : new int[] { 1, 2, 7, 256, 1000, 16384, 70000 }) {
+            TreeMap<Integer, Integer> tokens = new TreeMap<Integer, Integer>();
+            while (tokens.size() < count) {
+                tokens.put(r.nextInt(), tokens.size() % 13);
+            }
+            check(tokens, r);
+            // rings made by the hashinator always start at Integer.MIN_VALUE
+            tokens.put(Integer.MIN_VALUE, 99);
+            check(tokens, r);
+        }
+    }
+
+    public void testClusteredTokens() {
+        Random r = new Random(7);
+        TreeMap<Integer, Integer> tokens = new TreeMap<Integer, Integer>();
+        for (int ii = 0; ii < 5000; ii++) {
+            tokens.put(1000 + ii, ii % 5);
+        }
+        tokens.put(Integer.MIN_VALUE, 6);
+        check(tokens, r);
+    }
+
+    /*
+     * Compare the index against the binary search it replaces. Only reports the
+     * timings since they depend too much on the machine to assert on.
+     */
+    public void testLookupBenchmark() {
+        byte[] config = ElasticHashinator.getConfigureBytes(12, ElasticHashinator.DEFAULT_TOTAL_TOKENS);
+        TreeMap<Integer, Integer> tokens =
+                new TreeMap<Integer, Integer>(new ElasticHashinator(config, false).getTokens());
+        long ptr = allocate(tokens);
+        try {
+            ElasticTokenIndex index = new ElasticTokenIndex(ptr, tokens.size());
+            int[] hashes = new int[1 << 20];
+            Random r = new Random(0);
+            for (int ii = 0; ii < hashes.length; ii++) {
+                hashes[ii] = r.nextInt();
+            }
+
+            long binaryNanos = Long.MAX_VALUE;
+            long indexNanos = Long.MAX_VALUE;
+            long sink = 0;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                for (int hash : hashes) {
+                    sink += binarySearch(ptr, tokens.size(), hash);
+                }
+                binaryNanos = Math.min(binaryNanos, System.nanoTime() - start);
+                start = System.nanoTime();
+                for (int hash : hashes) {
+                    sink -= index.partitionForToken(hash);
+                }
+                indexNanos = Math.min(indexNanos, System.nanoTime() - start);
+            }
+            assertEquals(0, sink);
+            System.out.printf("%d tokens: binary search %.1f ns/lookup, token index %.1f ns/lookup\n",
+                    tokens.size(), (double) binaryNanos / hashes.length, (double) indexNanos / hashes.length);
+        } finally {
+            Bits.unsafe.freeMemory(ptr);
+        }
+    }
+
+    // the search ElasticHashinator and HashinatorLite use without the index
+    private static int binarySearch(long tokens, int tokenCount, int hash) {
+        int min = 0;
+        int max = tokenCount - 1;
+        while (min <= max) {
+            int mid = (min + max) >>> 1;
+            int midval = Bits.unsafe.getInt(tokens + (8 * mid));
+            if (midval < hash) {
+                min = mid + 1;
+            } else if (midval > hash) {
+                max = mid - 1;
+            } else {
+                return Bits.unsafe.getInt(tokens + (8 * mid) + 4);
+            }
+        }
+        return Bits.unsafe.getInt(tokens + (min - 1) * 8 + 4);
+    }
+}
@@ -24,23 +24,33 @@
 package org.voltdb.compiler;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.voltcore.messaging.HostMessenger;
 import org.voltcore.messaging.LocalObjectMessage;
+import org.voltdb.AuthSystem;
+import org.voltdb.ClientInterface.ExplainMode;
+import org.voltdb.client.BatchTimeoutOverrideType;
 import org.voltdb.compiler.AsyncCompilerWork.AsyncCompilerWorkCompletionHandler;
 import org.voltdb.licensetool.LicenseApi;
 import org.voltdb.utils.MiscUtils;
@@ -91,15 +101,16 @@ public class TestAsyncCompilerAgent {
         m_agent.m_mailbox = spy(m_agent.m_mailbox);
 
         /*
-         * send max + 2 messages to the agent. The first one will be executed
-         * immediately so it doesn't consume queue capacity, the next max number
-         * of messages will use up all the capacity, the last one will be
-         * rejected.
+         * send max + threads + 1 messages to the agent. The first one on each
+         * planner thread will be executed immediately so it doesn't consume
+         * queue capacity, the next max number of messages will use up all the
+         * capacity, the last one will be rejected.
          */
+        final int requestCount = AsyncCompilerAgent.MAX_QUEUE_DEPTH + m_agent.m_plannerThreads + 1;
         final AtomicInteger completedRequests = new AtomicInteger();
         final AtomicReference<AsyncCompilerResult> result = new AtomicReference<AsyncCompilerResult>();
         final long threadId = Thread.currentThread().getId();
-        for (int i = 0; i < AsyncCompilerAgent.MAX_QUEUE_DEPTH + 2; ++i) {
+        for (int i = 0; i < requestCount; ++i) {
             AsyncCompilerWorkCompletionHandler handler = new AsyncCompilerWorkCompletionHandler() {
                 @Override
                 public void onCompletion(AsyncCompilerResult compilerResult) {
@@ -127,10 +138,80 @@ public class TestAsyncCompilerAgent {
         assertNotNull(result.get().errorMsg);
 
         // let all requests return
-        blockingAnswer.flag.release(AsyncCompilerAgent.MAX_QUEUE_DEPTH + 5);
+        blockingAnswer.flag.release(requestCount + 3);
 
         // check if all previous requests finish
         m_agent.shutdown();
-        assertEquals(AsyncCompilerAgent.MAX_QUEUE_DEPTH + 2, completedRequests.get());
+        assertEquals(requestCount, completedRequests.get());
+    }
+
+    /**
+     * Work from one connection may be planned concurrently, but the results
+     * must be handed back in the order the work arrived.
+     */
+    @Test
+    public void testCompletionOrderPerConnection() throws InterruptedException {
+        Assume.assumeTrue(m_agent.m_plannerThreads > 1);
+
+        // the first statement finishes planning only after the second has
+        final CountDownLatch secondPlanned = new CountDownLatch(1);
+        doAnswer(new Answer<AsyncCompilerResult>() {
+            @Override
+            public AsyncCompilerResult answer(InvocationOnMock invocation) throws Throwable {
+                AdHocPlannerWork work = (AdHocPlannerWork)invocation.getArguments()[0];
+                if (work.sqlBatchText.equals("select * from a")) {
+                    assertTrue(secondPlanned.await(60, TimeUnit.SECONDS));
+                }
+                else {
+                    secondPlanned.countDown();
+                }
+                return new AsyncCompilerResult();
+            }
+        }).when(m_agent).compileAdHocPlan(any(AdHocPlannerWork.class));
+
+        m_agent.createMailbox(mock(HostMessenger.class), 100);
+
+        final List<Integer> completionOrder = new ArrayList<Integer>();
+        final CountDownLatch done = new CountDownLatch(2);
+        String[] sql = { "select * from a", "select * from b" };
+        for (int i = 0; i < sql.length; ++i) {
+            final int index = i;
+            AsyncCompilerWorkCompletionHandler handler = new AsyncCompilerWorkCompletionHandler() {
+                @Override
+                public void onCompletion(AsyncCompilerResult compilerResult) {
+                    synchronized (completionOrder) {
+                        completionOrder.add(index);
+                    }
+                    done.countDown();
+                }
+            };
+            AdHocPlannerWork work = AdHocPlannerWork.makeStoredProcAdHocPlannerWork(100, sql[i],
+                                                                                    null, false, null,
+                                                                                    handler);
+            LocalObjectMessage msg = new LocalObjectMessage(work);
+            msg.m_sourceHSId = 100;
+            m_agent.m_mailbox.deliver(msg);
+        }
+
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        synchronized (completionOrder) {
+            assertEquals(0, completionOrder.get(0).intValue());
+            assertEquals(1, completionOrder.get(1).intValue());
+        }
+        assertEquals(0, m_agent.m_sequencer.pendingConnections());
+    }
+
+    @Test
+    public void testDDLBatchDetection() {
+        assertTrue(AsyncCompilerAgent.isDDLBatch(makeWork("-- comment", "create table t (a int);")));
+        assertFalse(AsyncCompilerAgent.isDDLBatch(makeWork("-- comment", "insert into t values (1);")));
+        assertFalse(AsyncCompilerAgent.isDDLBatch(makeWork("")));
+    }
+
+    private static AdHocPlannerWork makeWork(String... stmts) {
+        return new AdHocPlannerWork(100, 0, 0, false, null, "", stmts, null, null,
+                ExplainMode.NONE, true, null, "@AdHoc", BatchTimeoutOverrideType.NO_TIMEOUT,
+                false, true, mock(AsyncCompilerWorkCompletionHandler.class),
+                new AuthSystem.AuthDisabledUser());
     }
 }
@@ -0,0 +1,116 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.dtxn;
+
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.dtxn.TransactionStageStats.Stage;
+
+import junit.framework.TestCase;
+
+public class TestTransactionStageStats extends TestCase {
+
+    private static VoltTable poll(TransactionStageStats stats, boolean interval) {
+        VoltTable table = new VoltTable(stats.getColumnSchema().toArray(new ColumnInfo[0]));
+        for (Object[] row : stats.getStatsRows(interval, System.currentTimeMillis())) {
+            table.addRow(row);
+        }
+        assertEquals(Stage.values().length, table.getRowCount());
+        return table;
+    }
+
+    private static long column(VoltTable table, Stage stage, String name) {
+        table.resetRowPosition();
+        while (table.advanceRow()) {
+            if (table.getString("STAGE").equals(stage.name())) {
+                return table.getLong(name);
+            }
+        }
+        fail("No row for " + stage);
+        return -1;
+    }
+
+    public void testIntervalAndCumulative() {
+        TransactionStageStats stats = new TransactionStageStats();
+        final long before = column(poll(stats, false), Stage.EE_FRAGMENTS, "INVOCATIONS");
+
+        // prime the interval baseline
+        poll(stats, true);
+
+        final long start = System.nanoTime() - 5000 * 1000L;
+        for (int i = 0; i < 10; i++) {
+            TransactionStageStats.recordSince(Stage.EE_FRAGMENTS, start);
+        }
+
+        VoltTable table = poll(stats, true);
+        assertEquals(10, column(table, Stage.EE_FRAGMENTS, "INVOCATIONS"));
+        assertTrue(column(table, Stage.EE_FRAGMENTS, "P50") >= 4900);
+        assertTrue(column(table, Stage.EE_FRAGMENTS, "MAX") >= column(table, Stage.EE_FRAGMENTS, "P99"));
+
+        // a second interval poll with nothing recorded in between is empty
+        table = poll(stats, true);
+        assertEquals(0, column(table, Stage.EE_FRAGMENTS, "INVOCATIONS"));
+        assertEquals(0, column(table, Stage.EE_FRAGMENTS, "MAX"));
+
+        // cumulative polls keep everything
+        assertEquals(before + 10, column(poll(stats, false), Stage.EE_FRAGMENTS, "INVOCATIONS"));
+    }
+
+    public void testRecordClampsOutOfRangeValues() {
+        TransactionStageStats stats = new TransactionStageStats();
+        poll(stats, true);
+        // a start time in the future and one far in the past must both be recordable
+        TransactionStageStats.recordSince(Stage.RESPONSE_WRITE, System.nanoTime() + 1000000000L);
+        TransactionStageStats.recordSince(Stage.RESPONSE_WRITE, System.nanoTime() - Long.MAX_VALUE / 2);
+        assertEquals(2, column(poll(stats, true), Stage.RESPONSE_WRITE, "INVOCATIONS"));
+    }
+
+    public void testMergesThreadsIncludingExitedOnes() throws InterruptedException {
+        TransactionStageStats stats = new TransactionStageStats();
+        poll(stats, true);
+
+        final int threads = 4;
+        final int perThread = 1000;
+        Thread[] recorders = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            recorders[t] = new Thread() {
+                @Override
+                public void run() {
+                    final long start = System.nanoTime();
+                    for (int i = 0; i < perThread; i++) {
+                        TransactionStageStats.recordSince(Stage.SP_SCHEDULE, start);
+                    }
+                }
+            };
+            recorders[t].start();
+        }
+        for (Thread t : recorders) {
+            t.join();
+        }
+        // the recorders have exited, their counts are kept
+        assertEquals(threads * perThread, column(poll(stats, true), Stage.SP_SCHEDULE, "INVOCATIONS"));
+        TransactionStageStats.recordSince(Stage.SP_SCHEDULE, System.nanoTime());
+        assertEquals(1, column(poll(stats, true), Stage.SP_SCHEDULE, "INVOCATIONS"));
+    }
+}
@@ -0,0 +1,143 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.export;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.voltcore.utils.CoreUtils;
+
+public class TestExportTaskLane extends TestCase {
+
+    private ExecutorService m_workers;
+
+    @Override
+    public void setUp() {
+        m_workers = CoreUtils.getListeningExecutorService("Test Export Worker", 1);
+    }
+
+    @Override
+    public void tearDown() throws InterruptedException {
+        m_workers.shutdown();
+        m_workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private static Runnable record(final List<String> log, final String entry) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                log.add(entry);
+            }
+        };
+    }
+
+    public void testLanesAreSerialAndTakeTurns() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        ExportTaskLane a = new ExportTaskLane("a", m_workers);
+        ExportTaskLane b = new ExportTaskLane("b", m_workers);
+
+        // hold the only worker so both lanes queue up behind it
+        m_workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        int tasks = ExportTaskLane.TASKS_PER_TURN * 3;
+        for (int ii = 0; ii < tasks; ii++) {
+            a.execute(record(log, "a" + ii));
+            b.execute(record(log, "b" + ii));
+        }
+        assertEquals(tasks, a.getQueueDepth());
+        Thread.sleep(5);
+        assertTrue(a.getLagNanos() > 0);
+        blocked.countDown();
+
+        a.shutdown();
+        b.shutdown();
+        assertTrue(a.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(b.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(tasks, a.getCompletedTasks());
+        assertEquals(0, a.getQueueDepth());
+        assertEquals(0, a.getLagNanos());
+
+        // each lane ran in order, and neither lane ran more than a turn's worth in a row
+        int nextA = 0, nextB = 0, run = 0;
+        char last = ' ';
+        for (String entry : log) {
+            char lane = entry.charAt(0);
+            int index = Integer.parseInt(entry.substring(1));
+            if (lane == 'a') {
+                assertEquals(nextA++, index);
+            } else {
+                assertEquals(nextB++, index);
+            }
+            run = lane == last ? run + 1 : 1;
+            last = lane;
+            assertTrue(run <= ExportTaskLane.TASKS_PER_TURN);
+        }
+        assertEquals(tasks, nextA);
+        assertEquals(tasks, nextB);
+    }
+
+    public void testShutdownRunsQueuedTasksAndRejectsNewOnes() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        ExportTaskLane lane = new ExportTaskLane("lane", m_workers);
+        lane.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        lane.submit(record(log, "queued"));
+        lane.shutdown();
+        assertTrue(lane.isShutdown());
+        assertFalse(lane.isTerminated());
+        try {
+            lane.execute(record(log, "late"));
+            fail("Lane accepted a task after shutdown");
+        } catch (RejectedExecutionException expected) {}
+
+        blocked.countDown();
+        assertTrue(lane.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("queued"), log);
+    }
+}
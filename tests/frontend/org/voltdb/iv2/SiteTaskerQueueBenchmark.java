@@ -0,0 +1,143 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedTransferQueue;
+
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.MpscChunkedQueue;
+
+import com.sun.japex.JapexDriverBase;
+import com.sun.japex.TestCase;
+
+/**
+ * Japex drivers comparing the site tasker queue implementations: the
+ * LinkedTransferQueue SiteTaskerQueue used to wrap, taken one task at a time,
+ * against MpscChunkedQueue drained in batches the way Site now does. Each run
+ * has "producers" threads offer "tasks" tasks apiece while the calling thread
+ * consumes all of them.
+ */
+public abstract class SiteTaskerQueueBenchmark extends JapexDriverBase {
+
+    static final int BATCH_SIZE = 64;
+
+    private ExecutorService m_producers;
+    private int m_producerCount;
+    private int m_tasksPerProducer;
+    private CyclicBarrier m_barrier;
+    private final SiteTasker m_task = new SiteTasker.SiteTaskerRunnable() {
+        @Override
+        void run() {}
+    };
+
+    abstract void offer(SiteTasker task);
+
+    /** Consume at least one task, blocking if needed. Returns the number consumed. */
+    abstract int consume() throws InterruptedException;
+
+    @Override
+    public void prepare(TestCase testCase) {
+        m_producerCount = testCase.getIntParam("producers");
+        m_tasksPerProducer = testCase.getIntParam("tasks");
+        m_barrier = new CyclicBarrier(m_producerCount + 1);
+        m_producers = Executors.newFixedThreadPool(m_producerCount,
+                CoreUtils.getThreadFactory("Queue benchmark producer"));
+    }
+
+    @Override
+    public void warmup(TestCase testCase) {
+        run(testCase);
+    }
+
+    @Override
+    public void run(TestCase testCase) {
+        for (int p = 0; p < m_producerCount; p++) {
+            m_producers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        m_barrier.await();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    for (int i = 0; i < m_tasksPerProducer; i++) {
+                        offer(m_task);
+                    }
+                }
+            });
+        }
+        try {
+            m_barrier.await();
+            int remaining = m_producerCount * m_tasksPerProducer;
+            while (remaining > 0) {
+                remaining -= consume();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void finish(TestCase testCase) {
+        m_producers.shutdownNow();
+    }
+
+    public static class LinkedTransferQueueDriver extends SiteTaskerQueueBenchmark {
+        private final LinkedTransferQueue<SiteTasker> m_queue = new LinkedTransferQueue<SiteTasker>();
+
+        @Override
+        void offer(SiteTasker task) {
+            m_queue.offer(task);
+        }
+
+        @Override
+        int consume() throws InterruptedException {
+            CoreUtils.queueSpinTake(m_queue);
+            return 1;
+        }
+    }
+
+    public static class MpscChunkedQueueDriver extends SiteTaskerQueueBenchmark {
+        private final MpscChunkedQueue<SiteTasker> m_queue = new MpscChunkedQueue<SiteTasker>();
+        private final List<SiteTasker> m_batch = new ArrayList<SiteTasker>(BATCH_SIZE);
+
+        @Override
+        void offer(SiteTasker task) {
+            m_queue.offer(task);
+        }
+
+        @Override
+        int consume() throws InterruptedException {
+            m_batch.add(m_queue.take());
+            int count = 1 + m_queue.drainTo(m_batch, BATCH_SIZE - 1);
+            m_batch.clear();
+            return count;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jdbc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+
+/**
+ * Checks how JDBC4Statement.executeBatch pipelines the statements of a batch,
+ * against a client connection that answers asynchronously and out of order.
+ */
+public class TestJDBCBatchPipelining {
+
+    // Stands in for the server: keeps the statements it is sent and answers
+    // them from another thread, the most recent first.
+    static class FakeServer implements Answer<Boolean>, Runnable {
+        final LinkedBlockingQueue<Object[]> m_pending = new LinkedBlockingQueue<Object[]>();
+        final List<Integer> m_received = Collections.synchronizedList(new ArrayList<Integer>());
+        final Set<Integer> m_failing = new HashSet<Integer>();
+        int m_rejected = -1;
+        int m_outstanding = 0;
+        int m_maxOutstanding = 0;
+        volatile boolean m_stopped = false;
+
+        @Override
+        public Boolean answer(InvocationOnMock invocation) throws Throwable {
+            Object[] args = invocation.getArguments();
+            assertEquals("@AdHoc", args[1]);
+            int id = idOf((String) args[4]);
+            if (id == m_rejected) {
+                return false;
+            }
+            synchronized (this) {
+                m_outstanding++;
+                m_maxOutstanding = Math.max(m_maxOutstanding, m_outstanding);
+            }
+            m_received.add(id);
+            m_pending.add(new Object[] {id, args[0]});
+            return true;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!m_stopped) {
+                    Object[] first = m_pending.poll(10, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    // give the batch a chance to fill its window
+                    Thread.sleep(20);
+                    List<Object[]> answering = new ArrayList<Object[]>();
+                    answering.add(first);
+                    m_pending.drainTo(answering);
+                    Collections.reverse(answering);
+                    for (Object[] pending : answering) {
+                        int id = (Integer) pending[0];
+                        synchronized (this) {
+                            m_outstanding--;
+                        }
+                        ((ProcedureCallback) pending[1]).clientCallback(response(id, m_failing.contains(id)));
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    static int idOf(String sql) {
+        // the statement comes back from the parser with a terminating semicolon
+        return Integer.parseInt(sql.substring(sql.lastIndexOf(' ') + 1).replace(";", ""));
+    }
+
+    static int updateCountOf(int id) {
+        return id % 3 + 1;
+    }
+
+    static ClientResponse response(int id, boolean failed) {
+        if (failed) {
+            return new ClientResponseImpl(ClientResponse.GRACEFUL_FAILURE, new VoltTable[0],
+                                          "constraint violation for " + id);
+        }
+        VoltTable count = new VoltTable(new VoltTable.ColumnInfo("modified_tuples", VoltType.BIGINT));
+        count.addRow(updateCountOf(id));
+        return new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] {count}, null);
+    }
+
+    FakeServer m_server;
+    Thread m_responder;
+
+    @Before
+    public void setUp() {
+        m_server = new FakeServer();
+        m_responder = new Thread(m_server);
+        m_responder.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_server.m_stopped = true;
+        m_responder.join();
+    }
+
+    private Statement batchOf(Properties props, int statements) throws Exception {
+        JDBC4ClientConnection client = mock(JDBC4ClientConnection.class);
+        doAnswer(m_server).when(client).executeAsyncWithTimeout(any(ProcedureCallback.class), anyString(),
+                anyLong(), any(TimeUnit.class), anyVararg());
+        Statement stmt = new JDBC4Connection(client, props).createStatement();
+        for (int i = 0; i < statements; i++) {
+            stmt.addBatch("DELETE FROM T WHERE ID = " + i);
+        }
+        return stmt;
+    }
+
+    private static Properties maxInFlight(int statements) {
+        Properties props = new Properties();
+        props.setProperty(JDBC4Connection.BATCH_MAX_INFLIGHT, Integer.toString(statements));
+        return props;
+    }
+
+    @Test
+    public void testOneStatementAtATimeByDefault() throws Exception {
+        Statement stmt = batchOf(new Properties(), 10);
+        int[] counts = stmt.executeBatch();
+
+        assertEquals(1, m_server.m_maxOutstanding);
+        int total = 0;
+        for (int i = 0; i < 10; i++) {
+            assertEquals(updateCountOf(i), counts[i]);
+            total += counts[i];
+        }
+        assertEquals(total, stmt.getUpdateCount());
+    }
+
+    @Test
+    public void testPipelinedWithinWindow() throws Exception {
+        Statement stmt = batchOf(maxInFlight(8), 50);
+        int[] counts = stmt.executeBatch();
+
+        // several statements were waiting at once, never more than allowed
+        assertEquals(8, m_server.m_maxOutstanding);
+        assertEquals(50, m_server.m_received.size());
+        // the counts follow the order of the batch, not of the responses
+        assertEquals(50, counts.length);
+        int total = 0;
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, m_server.m_received.get(i).intValue());
+            assertEquals(updateCountOf(i), counts[i]);
+            total += counts[i];
+        }
+        assertEquals(total, stmt.getUpdateCount());
+
+        // the batch is cleared either way
+        assertEquals(0, stmt.executeBatch().length);
+    }
+
+    @Test
+    public void testFailureStopsTheBatch() throws Exception {
+        m_server.m_failing.add(3);
+        Statement stmt = batchOf(new Properties(), 10);
+        try {
+            stmt.executeBatch();
+            fail("Batch with a failed statement succeeded");
+        } catch (BatchUpdateException e) {
+            assertArrayEquals(new int[] {updateCountOf(0), updateCountOf(1), updateCountOf(2),
+                                         Statement.EXECUTE_FAILED},
+                              e.getUpdateCounts());
+            assertEquals(SQLError.GENERAL_ERROR, ((SQLException) e.getCause()).getSQLState());
+        }
+        // nothing after the failed statement was sent
+        assertEquals(4, m_server.m_received.size());
+        // the update count is the one of the last statement that succeeded
+        assertEquals(updateCountOf(2), stmt.getUpdateCount());
+    }
+
+    @Test
+    public void testFailureInPipelinedBatch() throws Exception {
+        m_server.m_failing.add(5);
+        Statement stmt = batchOf(maxInFlight(4), 40);
+        try {
+            stmt.executeBatch();
+            fail("Batch with a failed statement succeeded");
+        } catch (BatchUpdateException e) {
+            int[] counts = e.getUpdateCounts();
+            // there is a count for every statement that was sent, including those in
+            // flight when the failure came back, and no more
+            assertEquals(m_server.m_received.size(), counts.length);
+            assertTrue(counts.length > 5);
+            assertTrue(counts.length < 40);
+            for (int i = 0; i < counts.length; i++) {
+                assertEquals(i == 5 ? Statement.EXECUTE_FAILED : updateCountOf(i), counts[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testStatementThatCantBeSent() throws Exception {
+        m_server.m_rejected = 2;
+        Statement stmt = batchOf(maxInFlight(4), 10);
+        try {
+            stmt.executeBatch();
+            fail("Batch with a statement that couldn't be sent succeeded");
+        } catch (BatchUpdateException e) {
+            assertArrayEquals(new int[] {updateCountOf(0), updateCountOf(1), Statement.EXECUTE_FAILED},
+                              e.getUpdateCounts());
+            assertEquals(SQLError.CONNECTION_FAILURE, ((SQLException) e.getCause()).getSQLState());
+        }
+        assertEquals(2, m_server.m_received.size());
+    }
+}
@@ -23,6 +23,7 @@
 
 package org.voltdb.jdbc;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -30,6 +31,7 @@ import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.Date;
@@ -41,6 +43,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.Properties;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -711,6 +714,59 @@ public class TestJDBCQueries {
 
     }
 
+    @Test
+    public void testQueryBatchPipelinedWithBatchWindow() throws Exception
+    {
+        // independent single partition inserts, coalesced per server by the client
+        Properties props = new Properties();
+        props.setProperty("batchwindowmicros", "500");
+        props.setProperty(JDBC4Connection.BATCH_MAX_INFLIGHT, "50");
+        myconn = DriverManager.getConnection("jdbc:voltdb://localhost:21212", props);
+        try {
+            PreparedStatement pStmt = myconn.prepareStatement("insert into votes values(?, 'MA', ?)");
+            for (int i = 0; i < 1000; i++) {
+                pStmt.setLong(1, 6175550000L + i);
+                pStmt.setInt(2, i % 6);
+                pStmt.addBatch();
+            }
+            int[] resultCodes = pStmt.executeBatch();
+            assertEquals(1000, resultCodes.length);
+            for (int resultCode : resultCodes) {
+                assertEquals(1, resultCode);
+            }
+            assertEquals(1000, pStmt.getUpdateCount());
+
+            ResultSet rs = myconn.createStatement().executeQuery("select count(*) from votes");
+            assertTrue(rs.next());
+            assertEquals(1000, rs.getLong(1));
+
+            // with the default of one statement at a time, a failed statement stops the batch
+            // and only the statements before it are applied
+            myconn.close();
+            myconn = DriverManager.getConnection("jdbc:voltdb://localhost:21212", new Properties());
+            Statement batch = myconn.createStatement();
+            batch.addBatch("insert into contestants values(1, 'first')");
+            batch.addBatch("insert into contestants values(1, 'again')");
+            batch.addBatch("insert into contestants values(2, 'second')");
+            try {
+                batch.executeBatch();
+                fail("Batch with a constraint violation succeeded");
+            }
+            catch (BatchUpdateException e) {
+                assertArrayEquals(new int[] {1, Statement.EXECUTE_FAILED}, e.getUpdateCounts());
+            }
+            rs = myconn.createStatement().executeQuery("select count(*) from contestants");
+            assertTrue(rs.next());
+            assertEquals(1, rs.getLong(1));
+        }
+        finally {
+            myconn.createStatement().execute("delete from votes");
+            myconn.createStatement().execute("delete from contestants");
+            myconn.close();
+            myconn = null;
+        }
+    }
+
     @Test
     public void testParameterizedQueries() throws Exception
     {
@@ -0,0 +1,261 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.messaging;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.ElasticHashinator;
+import org.voltdb.ParameterSet;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.types.TimestampType;
+
+import com.sun.japex.JapexDriverBase;
+import com.sun.japex.TestCase;
+
+/**
+ * Japex driver timing the per-call serialization paths shared by the client
+ * and the server: parameter sets, tables, invocations, responses, the fast
+ * (de)serializers and the elastic hashinator partition lookup. Each test case
+ * in microbenchmark-config.xml names one operation; japex writes the timings
+ * for all of them to report.xml under the configured reports directory.
+ */
+public class SerializationBenchmark extends JapexDriverBase {
+
+    static final String PARAMS_FLATTEN = "ParameterSet.flattenToBuffer";
+    static final String PARAMS_FROM_BUFFER = "ParameterSet.fromByteBuffer";
+    static final String TABLE_CONSTRUCT = "VoltTable.addRow";
+    static final String TABLE_FLATTEN = "VoltTable.flattenToBuffer";
+    static final String FS_WRITE = "FastSerializer.write";
+    static final String FDS_READ = "FastDeserializer.read";
+    static final String INVOCATION_FLATTEN = "StoredProcedureInvocation.flattenToBuffer";
+    static final String INVOCATION_INIT = "StoredProcedureInvocation.initFromBuffer";
+    static final String RESPONSE_FLATTEN = "ClientResponseImpl.flattenToBuffer";
+    static final String RESPONSE_INIT = "ClientResponseImpl.initFromBuffer";
+    static final String HASHINATOR_LOOKUP = "ElasticHashinator.getHashedPartitionForParameter";
+
+    static final VoltTable.ColumnInfo[] COLUMNS = new VoltTable.ColumnInfo[] {
+        new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+        new VoltTable.ColumnInfo("NAME", VoltType.STRING),
+        new VoltTable.ColumnInfo("BALANCE", VoltType.FLOAT),
+        new VoltTable.ColumnInfo("AMOUNT", VoltType.DECIMAL),
+        new VoltTable.ColumnInfo("UPDATED", VoltType.TIMESTAMP)
+    };
+
+    // defaults used when a test case doesn't set "rows" or "partitions"
+    static final int DEFAULT_ROWS = 1000;
+    static final int DEFAULT_PARTITIONS = 12;
+    static final int HASH_KEYS = 1024;
+
+    private String m_op;
+    private int m_rows;
+    private ParameterSet m_params;
+    private VoltTable m_table;
+    private StoredProcedureInvocation m_invocation;
+    private ClientResponseImpl m_response;
+    private FastSerializer m_fs;
+    private byte[] m_serialized;
+    private ByteBuffer m_buf;
+    private ElasticHashinator m_hashinator;
+    private long[] m_keys;
+
+    // consumed by every operation so the JIT can't discard the work being timed
+    private long m_sink;
+
+    static Object[] sampleParameters() {
+        return new Object[] {
+            42L,
+            "a moderately sized string parameter",
+            3.14159,
+            new BigDecimal("12345.678900000000"),
+            new TimestampType(1234567890000L),
+            new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 },
+            new long[] { 1, 2, 3, 4, 5, 6, 7, 8 }
+        };
+    }
+
+    static VoltTable sampleTable(int rows) {
+        VoltTable table = new VoltTable(COLUMNS);
+        for (int i = 0; i < rows; i++) {
+            table.addRow(i, "row name " + i, i * 1.5,
+                         new BigDecimal(i).setScale(12), new TimestampType(1234567890000L + i));
+        }
+        return table;
+    }
+
+    @Override
+    public void prepare(TestCase testCase) {
+        m_op = testCase.getName();
+        m_rows = testCase.hasParam("rows") ? testCase.getIntParam("rows") : DEFAULT_ROWS;
+        try {
+            m_params = ParameterSet.fromArrayNoCopy(sampleParameters());
+            m_table = sampleTable(m_rows);
+
+            m_invocation = new StoredProcedureInvocation();
+            m_invocation.setProcName("BenchmarkProcedure");
+            m_invocation.setClientHandle(1);
+            m_invocation.setParams(sampleParameters());
+
+            m_response = new ClientResponseImpl(ClientResponse.SUCCESS,
+                                                new VoltTable[] { m_table }, "", 1);
+
+            m_fs = new FastSerializer();
+
+            if (PARAMS_FLATTEN.equals(m_op) || PARAMS_FROM_BUFFER.equals(m_op)) {
+                m_buf = ByteBuffer.allocate(m_params.getSerializedSize());
+                m_params.flattenToBuffer(m_buf);
+            }
+            else if (TABLE_FLATTEN.equals(m_op)) {
+                m_buf = ByteBuffer.allocate(m_table.getSerializedSize());
+            }
+            else if (FS_WRITE.equals(m_op) || FDS_READ.equals(m_op)) {
+                writeRecord(m_fs);
+                m_serialized = m_fs.getBytes();
+            }
+            else if (INVOCATION_FLATTEN.equals(m_op) || INVOCATION_INIT.equals(m_op)) {
+                m_buf = ByteBuffer.allocate(m_invocation.getSerializedSize());
+                m_invocation.flattenToBuffer(m_buf);
+            }
+            else if (RESPONSE_FLATTEN.equals(m_op) || RESPONSE_INIT.equals(m_op)) {
+                m_buf = ByteBuffer.allocate(m_response.getSerializedSize());
+                m_response.flattenToBuffer(m_buf);
+            }
+            else if (HASHINATOR_LOOKUP.equals(m_op)) {
+                int partitions = testCase.hasParam("partitions") ?
+                        testCase.getIntParam("partitions") : DEFAULT_PARTITIONS;
+                m_hashinator = new ElasticHashinator(
+                        ElasticHashinator.getConfigureBytes(partitions,
+                                                            ElasticHashinator.DEFAULT_TOTAL_TOKENS),
+                        false);
+                m_keys = new long[HASH_KEYS];
+                for (int i = 0; i < HASH_KEYS; i++) {
+                    m_keys[i] = i * 7919L;
+                }
+            }
+            else if (!TABLE_CONSTRUCT.equals(m_op)) {
+                throw new IllegalArgumentException("Unknown serialization benchmark: " + m_op);
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void warmup(TestCase testCase) {
+        run(testCase);
+    }
+
+    @Override
+    public void run(TestCase testCase) {
+        try {
+            if (PARAMS_FLATTEN.equals(m_op)) {
+                m_buf.clear();
+                m_params.flattenToBuffer(m_buf);
+                m_sink += m_buf.position();
+            }
+            else if (PARAMS_FROM_BUFFER.equals(m_op)) {
+                m_buf.flip();
+                m_sink += ParameterSet.fromByteBuffer(m_buf).size();
+                m_buf.position(m_buf.limit());
+            }
+            else if (TABLE_CONSTRUCT.equals(m_op)) {
+                m_sink += sampleTable(m_rows).getRowCount();
+            }
+            else if (TABLE_FLATTEN.equals(m_op)) {
+                m_buf.clear();
+                m_table.flattenToBuffer(m_buf);
+                m_sink += m_buf.position();
+            }
+            else if (FS_WRITE.equals(m_op)) {
+                m_fs.clear();
+                writeRecord(m_fs);
+                m_sink += m_fs.size();
+            }
+            else if (FDS_READ.equals(m_op)) {
+                m_sink += readRecord(new FastDeserializer(m_serialized));
+            }
+            else if (INVOCATION_FLATTEN.equals(m_op)) {
+                m_buf.clear();
+                m_invocation.flattenToBuffer(m_buf);
+                m_sink += m_buf.position();
+            }
+            else if (INVOCATION_INIT.equals(m_op)) {
+                m_buf.flip();
+                StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+                invocation.initFromBuffer(m_buf);
+                // parameters are deserialized lazily, include them in the timing
+                m_sink += invocation.getParams().size();
+                m_buf.position(m_buf.limit());
+            }
+            else if (RESPONSE_FLATTEN.equals(m_op)) {
+                m_buf.clear();
+                m_response.flattenToBuffer(m_buf);
+                m_sink += m_buf.position();
+            }
+            else if (RESPONSE_INIT.equals(m_op)) {
+                m_buf.flip();
+                ClientResponseImpl response = new ClientResponseImpl();
+                response.initFromBuffer(m_buf);
+                m_sink += response.getResults()[0].getRowCount();
+                m_buf.position(m_buf.limit());
+            }
+            else if (HASHINATOR_LOOKUP.equals(m_op)) {
+                for (long key : m_keys) {
+                    m_sink += m_hashinator.getHashedPartitionForParameter(VoltType.BIGINT, key);
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void writeRecord(FastSerializer fs) throws IOException {
+        for (int i = 0; i < 16; i++) {
+            fs.writeLong(i);
+            fs.writeInt(i);
+            fs.writeDouble(i * 0.5);
+            fs.writeString("record string " + (i & 3));
+            fs.writeVarbinary(new byte[] { 1, 2, 3, 4 });
+        }
+    }
+
+    private static long readRecord(FastDeserializer fds) throws IOException {
+        long sum = 0;
+        for (int i = 0; i < 16; i++) {
+            sum += fds.readLong();
+            sum += fds.readInt();
+            sum += (long) fds.readDouble();
+            sum += fds.readString().length();
+            sum += fds.readVarbinary().length;
+        }
+        return sum;
+    }
+}
@@ -25,12 +25,18 @@ package org.voltdb.planner;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.voltdb.CatalogContext;
 import org.voltdb.benchmark.tpcc.TPCCProjectBuilder;
 import org.voltdb.catalog.Catalog;
+import org.voltdb.common.Constants;
 import org.voltdb.compiler.AdHocPlannedStatement;
+import org.voltdb.compiler.DatabaseEstimates;
 import org.voltdb.compiler.PlannerTool;
+import org.voltdb.compiler.PlannerToolPool;
 import org.voltdb.compiler.VoltProjectBuilder;
 import org.voltdb.settings.ClusterSettings;
 import org.voltdb.settings.DbSettings;
@@ -136,6 +142,85 @@ public class TestPlannerTool extends TestCase {
         System.out.println(result);
     }
 
+    public void testConcurrentPlanning() throws Exception {
+        TPCCProjectBuilder builder = new TPCCProjectBuilder();
+        builder.addAllDefaults();
+        final File jar = new File("tpcc-concurrent-oop.jar");
+        jar.deleteOnExit();
+        builder.compile("tpcc-concurrent-oop.jar");
+
+        byte[] bytes = MiscUtils.fileToBytes(jar);
+        String serializedCatalog = CatalogUtil.getSerializedCatalogStringFromJar(CatalogUtil.loadAndUpgradeCatalogFromJar(bytes).getFirst());
+        Catalog catalog = new Catalog();
+        catalog.execute(serializedCatalog);
+        DbSettings settings = new DbSettings(ClusterSettings.create().asSupplier(),PathSettings.create());
+        final CatalogContext context = new CatalogContext(0, 0, catalog, settings, bytes, null, new byte[] {}, 0);
+
+        final String[] queries = {
+                "select * from warehouse where w_id = %d;",
+                "select d_name from district where d_w_id = %d and d_id = 3 order by d_name;",
+                "select count(*) from customer where c_w_id = %d;",
+                "select o_id, ol_amount from orders, order_line where o_id = ol_o_id and o_w_id = ol_w_id and o_w_id = %d;",
+                "select s_i_id from stock where s_quantity < %d order by s_i_id limit 10;",
+                "select h_c_id, sum(h_amount) from history where h_w_id = %d group by h_c_id;",
+                "select i_name from item where i_id in (select i_id from item where i_price < %d);",
+        };
+
+        // Plan every statement serially against a separate cache to get the expected plans.
+        final PlannerTool reference = new PlannerTool(context.cluster, context.database, new byte[] { 1, 2, 3 });
+        final int iterations = 20;
+        final String[][] expected = new String[queries.length][iterations];
+        for (int q = 0; q < queries.length; ++q) {
+            for (int i = 0; i < iterations; ++i) {
+                AdHocPlannedStatement plan = reference.planSqlForTest(String.format(queries[q], i));
+                expected[q][i] = new String(plan.core.aggregatorFragment, "UTF-8");
+            }
+        }
+
+        // Then plan them all again from several threads sharing one pool and one cache.
+        final int threads = 4;
+        final PlannerToolPool pool = new PlannerToolPool(context.m_ptool, context.cluster, context.database,
+                                                         context.getCatalogHash(), threads);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] planners = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            final int offset = t;
+            planners[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int n = 0; n < queries.length * iterations; ++n) {
+                            int q = (n + offset) % queries.length;
+                            int i = (n / queries.length + offset) % iterations;
+                            PlannerTool ptool = pool.acquire();
+                            try {
+                                AdHocPlannedStatement plan = ptool.planSqlForTest(String.format(queries[q], i));
+                                assertEquals(expected[q][i], new String(plan.core.aggregatorFragment, "UTF-8"));
+                            }
+                            finally {
+                                pool.release(ptool);
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            planners[t].start();
+        }
+        start.countDown();
+        for (Thread planner : planners) {
+            planner.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(pool.getCreatedCount() <= threads);
+    }
+
     public void testBadDDL() throws IOException
     {
         // semicolons in in-lined comments are bad
@@ -168,4 +253,112 @@ public class TestPlannerTool extends TestCase {
         // would return a Stream Closed error
         m_pt.planSqlForTest("select * from A;");
     }
+
+    public void testAnalyzedEstimatesPickIndex() throws Exception
+    {
+        VoltProjectBuilder builder = new VoltProjectBuilder();
+        builder.addLiteralSchema("create table t(a bigint not null, b bigint not null);" +
+                                 "create index t_a on t(a);" +
+                                 "create index t_b on t(b);");
+        final File jar = new File("testanalyze-oop.jar");
+        jar.deleteOnExit();
+        builder.compile("testanalyze-oop.jar");
+        byte[] bytes = MiscUtils.fileToBytes(new File("testanalyze-oop.jar"));
+        String serializedCatalog = CatalogUtil.getSerializedCatalogStringFromJar(CatalogUtil.loadAndUpgradeCatalogFromJar(bytes).getFirst());
+        Catalog c = new Catalog();
+        c.execute(serializedCatalog);
+        DbSettings settings = new DbSettings(ClusterSettings.create().asSupplier(), PathSettings.create());
+        CatalogContext context = new CatalogContext(0, 0, c, settings, bytes, null, new byte[] {}, 0);
+
+        m_pt = new PlannerTool(context.cluster, context.database, context.getCatalogHash());
+        final String sql = "select * from t where a = 1 and b = 2;";
+        try {
+            // A has few distinct values, so B is the selective index
+            PlannerTool.setAnalyzedEstimates(DatabaseEstimates.fromJSONString(
+                    "{\"tables\":{\"T\":{\"tuples\":100000,\"columns\":{" +
+                    "\"A\":{\"distinct\":2,\"histogram\":[]}," +
+                    "\"B\":{\"distinct\":50000,\"histogram\":[]}}}}}"));
+            assertTrue(targetIndexOf(m_pt.planSqlForTest(sql)).contains("T_B"));
+
+            // the other way around, and the cached plan must not be reused
+            PlannerTool.setAnalyzedEstimates(DatabaseEstimates.fromJSONString(
+                    "{\"tables\":{\"T\":{\"tuples\":100000,\"columns\":{" +
+                    "\"A\":{\"distinct\":50000,\"histogram\":[]}," +
+                    "\"B\":{\"distinct\":2,\"histogram\":[]}}}}}"));
+            assertTrue(targetIndexOf(m_pt.planSqlForTest(sql)).contains("T_A"));
+
+            // default procedure plans are matched across sites by hash and ignore the estimates
+            String defaultProcPlan = m_pt.planSqlCore(sql, StatementPartitioning.forceSP())
+                    .rootPlanGraph.toExplainPlanString();
+            PlannerTool.setAnalyzedEstimates(null);
+            assertEquals(m_pt.planSqlCore(sql, StatementPartitioning.forceSP())
+                    .rootPlanGraph.toExplainPlanString(), defaultProcPlan);
+            PlannerTool.setAnalyzedEstimates(DatabaseEstimates.fromJSONString(
+                    "{\"tables\":{\"T\":{\"tuples\":100000,\"columns\":{" +
+                    "\"A\":{\"distinct\":50000,\"histogram\":[]}," +
+                    "\"B\":{\"distinct\":2,\"histogram\":[]}}}}}"));
+
+            // the estimates survive the trip through ZooKeeper
+            DatabaseEstimates roundTrip = DatabaseEstimates.fromJSONString(
+                    PlannerTool.getAnalyzedEstimates().toJSONString());
+            assertEquals(100000, roundTrip.getEstimatesForTable("T").maxTuples);
+            assertEquals(0.5, roundTrip.getEstimatesForTable("T").equalitySelectivity("B"), 0.0);
+        }
+        finally {
+            PlannerTool.setAnalyzedEstimates(null);
+        }
+    }
+
+    private static String targetIndexOf(AdHocPlannedStatement result) {
+        String plan = new String(result.core.aggregatorFragment, Constants.UTF8ENCODING);
+        int start = plan.indexOf("\"TARGET_INDEX_NAME\"");
+        assertTrue(plan, start >= 0);
+        return plan.substring(start, plan.indexOf(',', start));
+    }
+
+    public void testHistogramRangeSelectivity()
+    {
+        DatabaseEstimates.TableEstimates table = new DatabaseEstimates.TableEstimates();
+        DatabaseEstimates.ColumnEstimates column = new DatabaseEstimates.ColumnEstimates();
+        column.histogram = new double[] { 0, 10, 20, 100, 1000 };
+        table.columnEstimates.put("C", column);
+
+        assertEquals(1.0, table.rangeSelectivity("C", -5.0, true), 0.0);
+        assertEquals(0.0, table.rangeSelectivity("C", 5000.0, true), 0.0);
+        assertEquals(0.5, table.rangeSelectivity("C", 20.0, true), 1e-9);
+        assertEquals(0.875, table.rangeSelectivity("C", 5.0, true), 1e-9);
+        assertEquals(0.125, table.rangeSelectivity("C", 5.0, false), 1e-9);
+        // nothing to go by
+        assertEquals(DatabaseEstimates.DEFAULT_RANGE_SELECTIVITY, table.rangeSelectivity("C", null, true), 0.0);
+        assertEquals(DatabaseEstimates.DEFAULT_RANGE_SELECTIVITY, table.rangeSelectivity("D", 5.0, true), 0.0);
+    }
+
+    public void testMergePartitionHistograms()
+    {
+        // two partitions of 100 evenly spread values, 0-99 and 100-199
+        double[] merged = DatabaseEstimates.ColumnEstimates.mergeHistograms(
+                Arrays.asList(new double[] { 0, 25, 50, 75, 100 }, new double[] { 100, 125, 150, 175, 200 }),
+                Arrays.asList(100L, 100L), 4);
+        assertEquals(5, merged.length);
+        assertEquals(0.0, merged[0], 0.0);
+        assertEquals(50.0, merged[1], 1e-9);
+        assertEquals(100.0, merged[2], 1e-9);
+        assertEquals(150.0, merged[3], 1e-9);
+        assertEquals(200.0, merged[4], 0.0);
+
+        // the larger partition counts for more
+        merged = DatabaseEstimates.ColumnEstimates.mergeHistograms(
+                Arrays.asList(new double[] { 0, 10 }, new double[] { 10, 20 }),
+                Arrays.asList(300L, 100L), 2);
+        assertEquals(3, merged.length);
+        assertEquals(20.0 / 3, merged[1], 1e-9);
+
+        // partitions without values are left out
+        merged = DatabaseEstimates.ColumnEstimates.mergeHistograms(
+                Arrays.asList(new double[0], new double[] { 5, 5 }),
+                Arrays.asList(0L, 1L), 10);
+        assertTrue(Arrays.equals(new double[] { 5, 5 }, merged));
+        assertEquals(0, DatabaseEstimates.ColumnEstimates.mergeHistograms(
+                Arrays.asList(new double[0]), Arrays.asList(0L), 10).length);
+    }
 }
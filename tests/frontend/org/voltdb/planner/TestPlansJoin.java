@@ -33,6 +33,7 @@ import org.voltdb.plannodes.AbstractJoinPlanNode;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractScanPlanNode;
 import org.voltdb.plannodes.AggregatePlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.NestLoopIndexPlanNode;
 import org.voltdb.plannodes.NestLoopPlanNode;
@@ -79,7 +80,7 @@ public class TestPlansJoin extends PlannerTestCase {
         // SELECT * with ON clause should return all columns from all tables
         AbstractPlanNode pn = compile("SELECT * FROM R1 JOIN R2 ON R1.C " + joinOp + " R2.C");
         AbstractPlanNode n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
+        assertTrue(n instanceof HashJoinPlanNode);
         //assertEquals(JoinType.INNER, nlj.getJoinType());
         for (int ii = 0; ii < 2; ii++) {
             assertTrue(n.getChild(ii) instanceof SeqScanPlanNode);
@@ -88,22 +89,22 @@ public class TestPlansJoin extends PlannerTestCase {
 
         // SELECT * with USING clause should contain only one column for each column from the USING expression
         pn = compile("SELECT * FROM R1 JOIN R2 USING(C)");
-        assertTrue(pn.getChild(0).getChild(0) instanceof NestLoopPlanNode);
+        assertTrue(pn.getChild(0).getChild(0) instanceof HashJoinPlanNode);
         assertEquals(4, pn.getOutputSchema().getColumns().size());
 
         pn = compile("SELECT R1.A,R1.C,D FROM R1 JOIN R2 ON R1.C " + joinOp + " R2.C");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
+        assertTrue(n instanceof HashJoinPlanNode);
         assertEquals(3, pn.getOutputSchema().getColumns().size());
 
         pn = compile("SELECT R1.A,C,R1.D FROM R1 JOIN R2 USING(C)");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
+        assertTrue(n instanceof HashJoinPlanNode);
         assertEquals(3, pn.getOutputSchema().getColumns().size());
 
         pn = compile("SELECT R1.A, R2.C, R1.D FROM R1 JOIN R2 ON R1.C " + joinOp + " R2.C");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
+        assertTrue(n instanceof HashJoinPlanNode);
         assertEquals(3, pn.getOutputSchema().getColumns().size());
         assertTrue("R1".equalsIgnoreCase(pn.getOutputSchema().getColumns().get(0).getTableName()));
         assertTrue("R2".equalsIgnoreCase(pn.getOutputSchema().getColumns().get(1).getTableName()));
@@ -112,7 +113,7 @@ public class TestPlansJoin extends PlannerTestCase {
         pn = compile("SELECT R1.A, C, R1.D FROM R1 JOIN R2 USING(C)");
         n = pn.getChild(0).getChild(0);
         String table = pn.getOutputSchema().getColumns().get(1).getTableName();
-        assertTrue(n instanceof NestLoopPlanNode);
+        assertTrue(n instanceof HashJoinPlanNode);
         assertEquals(3, pn.getOutputSchema().getColumns().size());
         assertTrue(pn.getOutputSchema().getColumns().get(0).getTableName().equalsIgnoreCase("R1"));
         assertTrue("R2".equalsIgnoreCase(table) || "R1".equalsIgnoreCase(table));
@@ -136,27 +137,27 @@ public class TestPlansJoin extends PlannerTestCase {
     private void perJoinOpTestBasicThreeTableInnerJoin(JoinOp joinOp) {
         AbstractPlanNode pn = compile("SELECT * FROM R1 JOIN R2 ON R1.C " + joinOp + " R2.C JOIN R3 ON R3.C " + joinOp + " R2.C");
         AbstractPlanNode n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        assertTrue(n.getChild(0) instanceof NestLoopPlanNode);
+        assertTrue(n instanceof HashJoinPlanNode);
+        assertTrue(n.getChild(0) instanceof HashJoinPlanNode);
         assertTrue(n.getChild(1) instanceof SeqScanPlanNode);
         assertEquals(7, pn.getOutputSchema().getColumns().size());
 
         pn = compile("SELECT R1.C, R2.C R3.C FROM R1 INNER JOIN R2 ON R1.C " + joinOp + " R2.C INNER JOIN R3 ON R3.C " + joinOp + " R2.C");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        assertTrue(n.getChild(0) instanceof NestLoopPlanNode);
+        assertTrue(n instanceof HashJoinPlanNode);
+        assertTrue(n.getChild(0) instanceof HashJoinPlanNode);
         assertTrue(n.getChild(1) instanceof SeqScanPlanNode);
 
         pn = compile("SELECT C FROM R1 INNER JOIN R2 USING (C) INNER JOIN R3 USING(C)");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        assertTrue(n.getChild(0) instanceof NestLoopPlanNode);
+        assertTrue(n instanceof HashJoinPlanNode);
+        assertTrue(n.getChild(0) instanceof HashJoinPlanNode);
         assertTrue(n.getChild(1) instanceof SeqScanPlanNode);
         assertEquals(1, pn.getOutputSchema().getColumns().size());
 
         pn = compile("SELECT C FROM R1 INNER JOIN R2 USING (C), R3_NOC WHERE R1.A " + joinOp + " R3_NOC.A");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
+        assertTrue(n instanceof HashJoinPlanNode);
         if (joinOp == JoinOp.EQUAL) { // weaken test for now
             assertTrue(n.getChild(0) instanceof NestLoopIndexPlanNode);
         }
@@ -287,12 +288,12 @@ public class TestPlansJoin extends PlannerTestCase {
 
         pn = compile("SELECT * FROM R1 JOIN R2 ON R1.A " + joinOp + " R2.A JOIN R3 ON R1.C " + joinOp + " R3.C WHERE R1.A > 0");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        p = ((NestLoopPlanNode) n).getJoinPredicate();
+        assertTrue(n instanceof HashJoinPlanNode);
+        p = ((HashJoinPlanNode) n).getJoinPredicate();
         assertEquals(joinOp.toOperator(), p.getExpressionType());
         n = n.getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        NestLoopPlanNode nlj = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        AbstractJoinPlanNode nlj = (AbstractJoinPlanNode) n;
         assertEquals(joinOp.toOperator(), nlj.getJoinPredicate().getExpressionType());
         n = n.getChild(0);
         assertTrue(n instanceof AbstractScanPlanNode);
@@ -305,7 +306,7 @@ public class TestPlansJoin extends PlannerTestCase {
         AbstractPlanNode pn = compile("SELECT max(A) FROM R1 JOIN R2 USING(A)");
         pn = pn.getChild(0);
         assertNotNull(AggregatePlanNode.getInlineAggregationNode(pn));
-        assertTrue(pn instanceof NestLoopPlanNode);
+        assertTrue(pn instanceof HashJoinPlanNode);
         NodeSchema ns = pn.getOutputSchema();
         for (SchemaColumn sc : ns.getColumns()) {
             AbstractExpression e = sc.getExpression();
@@ -316,7 +317,7 @@ public class TestPlansJoin extends PlannerTestCase {
 
         pn = compile("SELECT distinct(A) FROM R1 JOIN R2 USING(A)");
         pn = pn.getChild(0);
-        assertTrue(pn instanceof NestLoopPlanNode);
+        assertTrue(pn instanceof HashJoinPlanNode);
         ns = pn.getOutputSchema();
         for (SchemaColumn sc : ns.getColumns()) {
             AbstractExpression e = sc.getExpression();
@@ -348,14 +349,14 @@ public class TestPlansJoin extends PlannerTestCase {
         List<AbstractPlanNode> apl;
         AbstractPlanNode node;
         SeqScanPlanNode seqScan;
-        NestLoopPlanNode nlj;
+        AbstractJoinPlanNode nlj;
 
         apl = compileToFragments("SELECT * FROM P1 LABEL JOIN R2 USING(A) WHERE A > 0 AND R2.C >= 5");
         pn = apl.get(1);
         node = pn.getChild(0);
-        assertTrue(node instanceof NestLoopPlanNode);
+        assertTrue(node instanceof HashJoinPlanNode);
         assertEquals(ExpressionType.COMPARE_EQUAL,
-                     ((NestLoopPlanNode)node).getJoinPredicate().getExpressionType());
+                     ((HashJoinPlanNode)node).getJoinPredicate().getExpressionType());
         assertTrue(node.getChild(0) instanceof SeqScanPlanNode);
         seqScan = (SeqScanPlanNode)node.getChild(0);
         assertEquals(ExpressionType.CONJUNCTION_AND, seqScan.getPredicate().getExpressionType());
@@ -367,8 +368,8 @@ public class TestPlansJoin extends PlannerTestCase {
         apl = compileToFragments("SELECT * FROM P1 LABEL LEFT JOIN R2 USING(A) WHERE A > 0");
         pn = apl.get(1);
         node = pn.getChild(0);
-        assertTrue(node instanceof NestLoopPlanNode);
-        nlj = (NestLoopPlanNode) node;
+        assertTrue(node instanceof HashJoinPlanNode);
+        nlj = (AbstractJoinPlanNode) node;
         assertTrue(JoinType.LEFT == nlj.getJoinType());
         assertEquals(ExpressionType.COMPARE_EQUAL, nlj.getJoinPredicate().getExpressionType());
         seqScan = (SeqScanPlanNode)node.getChild(0);
@@ -384,8 +385,8 @@ public class TestPlansJoin extends PlannerTestCase {
         assertEquals("P1", sc.getTableName());
         pn = apl.get(1);
         node = pn.getChild(0);
-        assertTrue(node instanceof NestLoopPlanNode);
-        nlj = (NestLoopPlanNode) node;
+        assertTrue(node instanceof HashJoinPlanNode);
+        nlj = (AbstractJoinPlanNode) node;
         assertTrue(JoinType.LEFT == nlj.getJoinType());
         assertEquals(ExpressionType.COMPARE_EQUAL, nlj.getJoinPredicate().getExpressionType());
         seqScan = (SeqScanPlanNode)node.getChild(0);
@@ -582,8 +583,8 @@ public class TestPlansJoin extends PlannerTestCase {
 
         pn = compile("SELECT * FROM R3 JOIN R2 ON R3.A " + joinOp + " R2.A JOIN R1 ON R2.A " + joinOp + " R1.A WHERE R3.C > 0 AND R2.C >= 5");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        p = ((NestLoopPlanNode) n).getJoinPredicate();
+        assertTrue(n instanceof HashJoinPlanNode);
+        p = ((HashJoinPlanNode) n).getJoinPredicate();
         assertEquals(ExpressionType.COMPARE_EQUAL, p.getExpressionType());
         assertEquals(ExpressionType.VALUE_TUPLE, p.getLeft().getExpressionType());
         assertEquals(ExpressionType.VALUE_TUPLE, p.getRight().getExpressionType());
@@ -677,16 +678,16 @@ public class TestPlansJoin extends PlannerTestCase {
         // Test multi column condition on non index columns
         AbstractPlanNode pn = compile("SELECT A, C FROM R2 JOIN R1 USING(A, C)");
         AbstractPlanNode n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        NestLoopPlanNode nlj = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        AbstractJoinPlanNode nlj = (AbstractJoinPlanNode) n;
         AbstractExpression pred = nlj.getJoinPredicate();
         assertNotNull(pred);
         assertEquals(ExpressionType.CONJUNCTION_AND, pred.getExpressionType());
 
         pn = compile("SELECT R1.A, R2.A FROM R2 JOIN R1 ON R1.A " + joinOp + " R2.A AND R1.C " + joinOp + " R2.C");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        nlj = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        nlj = (AbstractJoinPlanNode) n;
         pred = nlj.getJoinPredicate();
         assertNotNull(pred);
         assertEquals(ExpressionType.CONJUNCTION_AND, pred.getExpressionType());
@@ -774,8 +775,8 @@ public class TestPlansJoin extends PlannerTestCase {
         // SELECT * with ON clause should return all columns from all tables
         AbstractPlanNode pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.C " + joinOp + " R2.C");
         AbstractPlanNode n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        NestLoopPlanNode nl = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        AbstractJoinPlanNode nl = (AbstractJoinPlanNode) n;
         assertEquals(JoinType.LEFT, nl.getJoinType());
         assertEquals(2, nl.getChildCount());
         AbstractPlanNode c0 = nl.getChild(0);
@@ -787,8 +788,8 @@ public class TestPlansJoin extends PlannerTestCase {
 
         pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.C " + joinOp + " R2.C AND R1.A = 5");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        nl = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        nl = (AbstractJoinPlanNode) n;
         assertEquals(JoinType.LEFT, nl.getJoinType());
         assertEquals(2, nl.getChildCount());
         c0 = nl.getChild(0);
@@ -809,8 +810,8 @@ public class TestPlansJoin extends PlannerTestCase {
         // SELECT * FROM R1 RIGHT JOIN R2 ON R1.C " + joinOp + " R2.C => SELECT * FROM R2 LEFT JOIN R1 ON R1.C " + joinOp + " R2.C
         AbstractPlanNode pn = compile("SELECT * FROM R1 RIGHT JOIN R2 ON R1.C " + joinOp + " R2.C");
         AbstractPlanNode n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        NestLoopPlanNode nl = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        AbstractJoinPlanNode nl = (AbstractJoinPlanNode) n;
         assertEquals(JoinType.LEFT, nl.getJoinType());
         assertEquals(2, nl.getChildCount());
         AbstractPlanNode c0 = nl.getChild(0);
@@ -823,8 +824,8 @@ public class TestPlansJoin extends PlannerTestCase {
         // Same but with distributed table
         pn = compile("SELECT * FROM P1 RIGHT JOIN R2 ON P1.C " + joinOp + " R2.C");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        nl = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        nl = (AbstractJoinPlanNode) n;
         assertEquals(JoinType.LEFT, nl.getJoinType());
         assertEquals(2, nl.getChildCount());
         c0 = nl.getChild(0);
@@ -845,8 +846,8 @@ public class TestPlansJoin extends PlannerTestCase {
         // R1.C " + joinOp + " R2.C Inner-Outer join Expr stays at the NLJ as Join predicate
         AbstractPlanNode pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.C " + joinOp + " R2.C");
         AbstractPlanNode n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        NestLoopPlanNode nl = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        AbstractJoinPlanNode nl = (AbstractJoinPlanNode) n;
         assertEquals(joinOp.toOperator(), nl.getJoinPredicate().getExpressionType());
         assertNull(nl.getWherePredicate());
         assertEquals(2, nl.getChildCount());
@@ -860,8 +861,8 @@ public class TestPlansJoin extends PlannerTestCase {
         // R2.A < 0 Inner Join Expr is pushed down to the inner SeqScan node
         pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.C " + joinOp + " R2.C AND R1.A > 0 AND R2.A < 0");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        nl = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        nl = (AbstractJoinPlanNode) n;
         assertNotNull(nl.getPreJoinPredicate());
         AbstractExpression p = nl.getPreJoinPredicate();
         assertEquals(ExpressionType.COMPARE_GREATERTHAN, p.getExpressionType());
@@ -881,8 +882,8 @@ public class TestPlansJoin extends PlannerTestCase {
         // (R1.A > 0 OR R2.A < 0) Inner-Outer join Expr stays at the NLJ as Join predicate
         pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.C " + joinOp + " R2.C AND (R1.A > 0 OR R2.A < 0)");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        nl = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        nl = (AbstractJoinPlanNode) n;
         p = nl.getJoinPredicate();
         assertEquals(ExpressionType.CONJUNCTION_AND, p.getExpressionType());
         if (ExpressionType.CONJUNCTION_OR == p.getLeft().getExpressionType()) {
@@ -903,8 +904,8 @@ public class TestPlansJoin extends PlannerTestCase {
         // (R1.C > R2.C OR R2.C IS NULL) Inner-Outer Where stays at the the NLJ as post join (where) predicate
         pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.C " + joinOp + " R2.C WHERE R1.A > 0 AND R2.A IS NULL AND (R1.C > R2.C OR R2.C IS NULL)");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        nl = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        nl = (AbstractJoinPlanNode) n;
         assertEquals(JoinType.LEFT, nl.getJoinType());
         assertNotNull(nl.getJoinPredicate());
         p = nl.getJoinPredicate();
@@ -925,8 +926,8 @@ public class TestPlansJoin extends PlannerTestCase {
         // R3.C < 0 non-index Outer where expr pushed down to IndexScanPlanNode as a predicate
         pn = compile("SELECT * FROM R3 LEFT JOIN R2 ON R3.A " + joinOp + " R2.A WHERE R3.A > 3 AND R3.C < 0");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        nl = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        nl = (AbstractJoinPlanNode) n;
         assertEquals(JoinType.LEFT, nl.getJoinType());
         AbstractPlanNode outerScan = n.getChild(0);
         assertTrue(outerScan instanceof IndexScanPlanNode);
@@ -940,8 +941,8 @@ public class TestPlansJoin extends PlannerTestCase {
         // NLJ is simplified to be INNER
         pn = compile("SELECT * FROM R2 LEFT JOIN R3 ON R3.C " + joinOp + " R2.C WHERE R3.A > 3");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        nl = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        nl = (AbstractJoinPlanNode) n;
         assertEquals(JoinType.INNER, nl.getJoinType());
         outerScan = n.getChild(1);
         assertTrue(outerScan instanceof IndexScanPlanNode);
@@ -973,7 +974,7 @@ public class TestPlansJoin extends PlannerTestCase {
         lpn = compileToFragments("SELECT * FROM P1 LEFT JOIN R2 ON P1.C " + joinOp + " R2.C");
         assertEquals(2, lpn.size());
         n = lpn.get(1).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
+        assertTrue(n instanceof HashJoinPlanNode);
         assertEquals(2, n.getChildCount());
         assertTrue(n.getChild(0) instanceof SeqScanPlanNode);
         assertTrue(n.getChild(1) instanceof SeqScanPlanNode);
@@ -981,8 +982,8 @@ public class TestPlansJoin extends PlannerTestCase {
         // Distributed Inner table
         pn = compile("SELECT * FROM R2 LEFT JOIN P1 ON P1.C " + joinOp + " R2.C");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        NestLoopPlanNode nl = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        AbstractJoinPlanNode nl = (AbstractJoinPlanNode) n;
         assertEquals(2, nl.getChildCount());
         assertTrue(nl.getChild(0) instanceof SeqScanPlanNode);
         assertTrue(nl.getChild(1) instanceof ReceivePlanNode);
@@ -991,7 +992,7 @@ public class TestPlansJoin extends PlannerTestCase {
         lpn = compileToFragments("SELECT * FROM P1 LEFT JOIN P4 ON P1.A " + joinOp + " P4.A");
         assertEquals(2, lpn.size());
         n = lpn.get(1).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
+        assertTrue(n instanceof HashJoinPlanNode);
         assertEquals(2, n.getChildCount());
         assertTrue(n.getChild(0) instanceof SeqScanPlanNode);
         assertTrue(n.getChild(1) instanceof SeqScanPlanNode);
@@ -1012,8 +1013,8 @@ public class TestPlansJoin extends PlannerTestCase {
         // so index can't be used
         AbstractPlanNode pn = compile("SELECT * FROM R3 LEFT JOIN R2 ON R3.A " + joinOp + " R2.C");
         AbstractPlanNode n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        NestLoopPlanNode nl = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        AbstractJoinPlanNode nl = (AbstractJoinPlanNode) n;
         assertEquals(JoinType.LEFT, nl.getJoinType());
         assertEquals(2, nl.getChildCount());
         AbstractPlanNode c0 = nl.getChild(0);
@@ -1026,8 +1027,8 @@ public class TestPlansJoin extends PlannerTestCase {
         // R3 is indexed but it's the outer table so index can't be used
         pn = compile("SELECT * FROM R2 RIGHT JOIN R3 ON R3.A " + joinOp + " R2.C");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        nl = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        nl = (AbstractJoinPlanNode) n;
         assertEquals(JoinType.LEFT, nl.getJoinType());
         assertEquals(2, nl.getChildCount());
         c0 = nl.getChild(0);
@@ -1091,8 +1092,8 @@ public class TestPlansJoin extends PlannerTestCase {
         // R2.A < 6 Outer Join Expr is a pre-join predicate for NLJ
         pn = compile("SELECT * FROM R2 LEFT JOIN R3 ON R3.C " + joinOp + " R2.A AND R3.A > 0 AND R3.C != 0 AND R2.A < 6");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        NestLoopPlanNode nlj = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        AbstractJoinPlanNode nlj = (AbstractJoinPlanNode) n;
         assertEquals(JoinType.LEFT, nlj.getJoinType());
         assertNotNull(nlj.getPreJoinPredicate());
         p = nlj.getPreJoinPredicate();
@@ -1148,7 +1149,7 @@ public class TestPlansJoin extends PlannerTestCase {
         lpn = compileToFragments("SELECT * FROM P1 LEFT JOIN R2 ON P1.C " + joinOp + " R2.C");
         assertEquals(2, lpn.size());
         n = lpn.get(1).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
+        assertTrue(n instanceof HashJoinPlanNode);
         assertEquals(2, n.getChildCount());
         assertTrue(n.getChild(0) instanceof SeqScanPlanNode);
         assertTrue(n.getChild(1) instanceof SeqScanPlanNode);
@@ -1156,8 +1157,8 @@ public class TestPlansJoin extends PlannerTestCase {
         // Distributed Inner table
         pn = compile("SELECT * FROM R2 LEFT JOIN P1 ON P1.C " + joinOp + " R2.C");
         n = pn.getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        NestLoopPlanNode nl = (NestLoopPlanNode) n;
+        assertTrue(n instanceof HashJoinPlanNode);
+        AbstractJoinPlanNode nl = (AbstractJoinPlanNode) n;
         assertEquals(2, nl.getChildCount());
         assertTrue(nl.getChild(0) instanceof SeqScanPlanNode);
         assertTrue(nl.getChild(1) instanceof ReceivePlanNode);
@@ -1166,7 +1167,7 @@ public class TestPlansJoin extends PlannerTestCase {
         lpn = compileToFragments("SELECT * FROM P1 LEFT JOIN P4 ON P1.A " + joinOp + " P4.A");
         assertEquals(2, lpn.size());
         n = lpn.get(1).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
+        assertTrue(n instanceof HashJoinPlanNode);
         assertEquals(2, n.getChildCount());
         assertTrue(n.getChild(0) instanceof SeqScanPlanNode);
         assertTrue(n.getChild(1) instanceof SeqScanPlanNode);
@@ -1203,10 +1204,10 @@ public class TestPlansJoin extends PlannerTestCase {
         lpn = compileToFragments("SELECT * FROM R3 LEFT JOIN P2 ON R3.A " + joinOp + " P2.A AND P2.A < 0 AND P2.E > 3 WHERE P2.A IS NULL");
         assertEquals(2, lpn.size());
         n = lpn.get(0).getChild(0).getChild(0);
-        assertTrue(n instanceof NestLoopPlanNode);
-        assertEquals(JoinType.LEFT, ((NestLoopPlanNode) n).getJoinType());
-        assertNotNull(((NestLoopPlanNode) n).getJoinPredicate());
-        assertNotNull(((NestLoopPlanNode) n).getWherePredicate());
+        assertTrue(n instanceof HashJoinPlanNode);
+        assertEquals(JoinType.LEFT, ((HashJoinPlanNode) n).getJoinType());
+        assertNotNull(((HashJoinPlanNode) n).getJoinPredicate());
+        assertNotNull(((HashJoinPlanNode) n).getWherePredicate());
         AbstractPlanNode c = n.getChild(0);
         assertTrue(c instanceof SeqScanPlanNode);
         c = n.getChild(1);
@@ -1266,23 +1267,23 @@ public class TestPlansJoin extends PlannerTestCase {
 
        pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.C " + joinOp + " R2.C WHERE R2.C IS NOT NULL");
        n = pn.getChild(0).getChild(0);
-       assertTrue(n instanceof NestLoopPlanNode);
-       assertEquals(((NestLoopPlanNode) n).getJoinType(), JoinType.INNER);
+       assertTrue(n instanceof HashJoinPlanNode);
+       assertEquals(((HashJoinPlanNode) n).getJoinType(), JoinType.INNER);
 
        pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.C " + joinOp + " R2.C WHERE R2.C > 0");
        n = pn.getChild(0).getChild(0);
-       assertTrue(n instanceof NestLoopPlanNode);
-       assertEquals(((NestLoopPlanNode) n).getJoinType(), JoinType.INNER);
+       assertTrue(n instanceof HashJoinPlanNode);
+       assertEquals(((HashJoinPlanNode) n).getJoinType(), JoinType.INNER);
 
        pn = compile("SELECT * FROM R1 RIGHT JOIN R2 ON R1.C " + joinOp + " R2.C WHERE R1.C > 0");
        n = pn.getChild(0).getChild(0);
-       assertTrue(n instanceof NestLoopPlanNode);
-       assertEquals(((NestLoopPlanNode) n).getJoinType(), JoinType.INNER);
+       assertTrue(n instanceof HashJoinPlanNode);
+       assertEquals(((HashJoinPlanNode) n).getJoinType(), JoinType.INNER);
 
        pn = compile("SELECT * FROM R1 LEFT JOIN R3 ON R1.C " + joinOp + " R3.C WHERE R3.A > 0");
        n = pn.getChild(0).getChild(0);
-       assertTrue(n instanceof NestLoopPlanNode);
-       assertEquals(((NestLoopPlanNode) n).getJoinType(), JoinType.INNER);
+       assertTrue(n instanceof HashJoinPlanNode);
+       assertEquals(((HashJoinPlanNode) n).getJoinType(), JoinType.INNER);
 
        pn = compile("SELECT * FROM R1 LEFT JOIN R3 ON R1.C " + joinOp + " R3.A WHERE R3.A > 0");
        n = pn.getChild(0).getChild(0);
@@ -1293,23 +1294,23 @@ public class TestPlansJoin extends PlannerTestCase {
 
        pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.C " + joinOp + " R2.C WHERE ABS(R2.C) <  10");
        n = pn.getChild(0).getChild(0);
-       assertTrue(n instanceof NestLoopPlanNode);
-       assertEquals(((NestLoopPlanNode) n).getJoinType(), JoinType.INNER);
+       assertTrue(n instanceof HashJoinPlanNode);
+       assertEquals(((HashJoinPlanNode) n).getJoinType(), JoinType.INNER);
 
        pn = compile("SELECT * FROM R1 RIGHT JOIN R2 ON R1.C " + joinOp + " R2.C WHERE ABS(R1.C) <  10");
        n = pn.getChild(0).getChild(0);
-       assertTrue(n instanceof NestLoopPlanNode);
-       assertEquals(((NestLoopPlanNode) n).getJoinType(), JoinType.INNER);
+       assertTrue(n instanceof HashJoinPlanNode);
+       assertEquals(((HashJoinPlanNode) n).getJoinType(), JoinType.INNER);
 
        pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.C " + joinOp + " R2.C WHERE ABS(R1.C) <  10");
        n = pn.getChild(0).getChild(0);
-       assertTrue(n instanceof NestLoopPlanNode);
-       assertEquals(((NestLoopPlanNode) n).getJoinType(), JoinType.LEFT);
+       assertTrue(n instanceof HashJoinPlanNode);
+       assertEquals(((HashJoinPlanNode) n).getJoinType(), JoinType.LEFT);
 
        pn = compile("SELECT * FROM R1 RIGHT JOIN R2 ON R1.C " + joinOp + " R2.C WHERE ABS(R2.C) <  10");
        n = pn.getChild(0).getChild(0);
-       assertTrue(n instanceof NestLoopPlanNode);
-       assertEquals(((NestLoopPlanNode) n).getJoinType(), JoinType.LEFT);
+       assertTrue(n instanceof HashJoinPlanNode);
+       assertEquals(((HashJoinPlanNode) n).getJoinType(), JoinType.LEFT);
 
        pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.C " + joinOp + " R2.C WHERE ABS(R2.C) <  10 AND R1.C = 3");
        n = pn.getChild(0).getChild(0);
@@ -1318,33 +1319,33 @@ public class TestPlansJoin extends PlannerTestCase {
 
        pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.C " + joinOp + " R2.C WHERE ABS(R2.C) <  10 OR R2.C IS NOT NULL");
        n = pn.getChild(0).getChild(0);
-       assertTrue(n instanceof NestLoopPlanNode);
-       assertEquals(((NestLoopPlanNode) n).getJoinType(), JoinType.INNER);
+       assertTrue(n instanceof HashJoinPlanNode);
+       assertEquals(((HashJoinPlanNode) n).getJoinType(), JoinType.INNER);
 
        pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.C " + joinOp + " R2.C WHERE ABS(R1.C) <  10 AND R1.C > 3");
        n = pn.getChild(0).getChild(0);
-       assertTrue(n instanceof NestLoopPlanNode);
-       assertEquals(((NestLoopPlanNode) n).getJoinType(), JoinType.LEFT);
+       assertTrue(n instanceof HashJoinPlanNode);
+       assertEquals(((HashJoinPlanNode) n).getJoinType(), JoinType.LEFT);
 
        pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.C " + joinOp + " R2.C WHERE ABS(R1.C) <  10 OR R2.C IS NOT NULL");
        n = pn.getChild(0).getChild(0);
-       assertTrue(n instanceof NestLoopPlanNode);
-       assertEquals(((NestLoopPlanNode) n).getJoinType(), JoinType.LEFT);
+       assertTrue(n instanceof HashJoinPlanNode);
+       assertEquals(((HashJoinPlanNode) n).getJoinType(), JoinType.LEFT);
 
        // Test with seqscan with different filers.
        pn = compile("SELECT R2.A, R1.* FROM R1 LEFT OUTER JOIN R2 ON R2.A " + joinOp + " R1.A WHERE R2.A > 3");
        //* enable for debug */ System.out.println(pn.toExplainPlanString());
        n = pn.getChild(0).getChild(0);
-       assertTrue(n instanceof NestLoopPlanNode);
-       assertEquals(((NestLoopPlanNode) n).getJoinType(), JoinType.INNER);
-       ex = ((NestLoopPlanNode) n).getWherePredicate();
+       assertTrue(n instanceof HashJoinPlanNode);
+       assertEquals(((HashJoinPlanNode) n).getJoinType(), JoinType.INNER);
+       ex = ((HashJoinPlanNode) n).getWherePredicate();
        assertEquals(ex, null);
 
        pn = compile("SELECT R2.A, R1.* FROM R1 LEFT OUTER JOIN R2 ON R2.A " + joinOp + " R1.A WHERE R2.A IS NULL");
        n = pn.getChild(0).getChild(0);
-       assertTrue(n instanceof NestLoopPlanNode);
-       assertEquals(((NestLoopPlanNode) n).getJoinType(), JoinType.LEFT);
-       ex = ((NestLoopPlanNode) n).getWherePredicate();
+       assertTrue(n instanceof HashJoinPlanNode);
+       assertEquals(((HashJoinPlanNode) n).getJoinType(), JoinType.LEFT);
+       ex = ((HashJoinPlanNode) n).getWherePredicate();
        assertEquals(ex instanceof OperatorExpression, true);
 
        pn = compile("SELECT b.A, a.* FROM R1 a LEFT OUTER JOIN R4 b ON b.A = a.A AND b.C = a.C AND a.D = b.D WHERE b.A IS NULL");
@@ -1481,8 +1482,8 @@ public class TestPlansJoin extends PlannerTestCase {
 
         // WHERE
         pn = pn.getChild(0);
-        assertEquals(PlanNodeType.NESTLOOP, pn.getPlanNodeType());
-        AbstractExpression f = ((NestLoopPlanNode)pn).getWherePredicate();
+        assertEquals(PlanNodeType.HASHJOIN, pn.getPlanNodeType());
+        AbstractExpression f = ((HashJoinPlanNode)pn).getWherePredicate();
         assertNotNull(f);
         assertEquals(ExpressionType.OPERATOR_CASE_WHEN, f.getLeft().getExpressionType());
 
@@ -1557,28 +1558,28 @@ public class TestPlansJoin extends PlannerTestCase {
         // R1 is an outer node - has one filter
         pn = compile("SELECT * FROM R2 JOIN R1 USING (C) WHERE R1.A > 0");
         pn = pn.getChild(0).getChild(0);
-        assertEquals(PlanNodeType.NESTLOOP, pn.getPlanNodeType());
+        assertEquals(PlanNodeType.HASHJOIN, pn.getPlanNodeType());
         sn = (AbstractScanPlanNode) pn.getChild(0);
         assertEquals("R1", sn.getTargetTableName());
 
         // R2 is an outer node - R2.A = 3 filter is discounter more than R1.A > 0
         pn = compile("SELECT * FROM R1 JOIN R2 USING (C) WHERE R1.A > 0 AND R2.A = 3");
         pn = pn.getChild(0).getChild(0);
-        assertEquals(PlanNodeType.NESTLOOP, pn.getPlanNodeType());
+        assertEquals(PlanNodeType.HASHJOIN, pn.getPlanNodeType());
         sn = (AbstractScanPlanNode) pn.getChild(0);
         assertEquals("R2", sn.getTargetTableName());
 
         // R2 is an outer node - R2.A = 3 filter is discounter more than two non-EQ filters
         pn = compile("SELECT * FROM R1 JOIN R2 USING (C) WHERE R1.A > 0 AND R1.A < 3 AND R2.A = 3");
         pn = pn.getChild(0).getChild(0);
-        assertEquals(PlanNodeType.NESTLOOP, pn.getPlanNodeType());
+        assertEquals(PlanNodeType.HASHJOIN, pn.getPlanNodeType());
         sn = (AbstractScanPlanNode) pn.getChild(0);
         assertEquals("R2", sn.getTargetTableName());
 
         // R1 is an outer node - EQ + non-EQ overweight EQ
         pn = compile("SELECT * FROM R1 JOIN R2 USING (C) WHERE R1.A = 0 AND R1.D < 3 AND R2.A = 3");
         pn = pn.getChild(0).getChild(0);
-        assertEquals(PlanNodeType.NESTLOOP, pn.getPlanNodeType());
+        assertEquals(PlanNodeType.HASHJOIN, pn.getPlanNodeType());
         sn = (AbstractScanPlanNode) pn.getChild(0);
         assertEquals("R1", sn.getTargetTableName());
 
@@ -1615,6 +1616,74 @@ public class TestPlansJoin extends PlannerTestCase {
 
     }
 
+    public void testHashJoin() {
+        for (JoinOp joinOp : JoinOp.JOIN_OPS) {
+            perJoinOpTestHashJoin(joinOp);
+        }
+    }
+
+    private void perJoinOpTestHashJoin(JoinOp joinOp) {
+        // An equi-join with no index on the inner join key hashes the inner side
+        // on every usable equality, pairing each inner key with its outer key.
+        AbstractPlanNode pn = compile("SELECT * FROM R1 JOIN R2 ON R1.A " + joinOp + " R2.A AND R1.C " + joinOp + " R2.C");
+        AbstractPlanNode n = pn.getChild(0).getChild(0);
+        assertTrue(n instanceof HashJoinPlanNode);
+        HashJoinPlanNode hj = (HashJoinPlanNode) n;
+        assertEquals(JoinType.INNER, hj.getJoinType());
+        assertEquals(2, hj.getOuterHashExpressions().size());
+        assertEquals(2, hj.getInnerHashExpressions().size());
+        String outerTable = ((SeqScanPlanNode) hj.getChild(0)).getTargetTableAlias();
+        String innerTable = ((SeqScanPlanNode) hj.getChild(1)).getTargetTableAlias();
+        for (int ii = 0; ii < 2; ii++) {
+            TupleValueExpression outerTVE = (TupleValueExpression) hj.getOuterHashExpressions().get(ii);
+            TupleValueExpression innerTVE = (TupleValueExpression) hj.getInnerHashExpressions().get(ii);
+            assertEquals(outerTable, outerTVE.getTableAlias());
+            assertEquals(innerTable, innerTVE.getTableAlias());
+            assertEquals(outerTVE.getColumnName(), innerTVE.getColumnName());
+            // Only IS NOT DISTINCT FROM lets NULL keys match
+            assertEquals(joinOp == JoinOp.NOT_DISTINCT, hj.getNullSafeHashKeys().get(ii).booleanValue());
+        }
+        // The full join condition is still checked on each hash match
+        assertEquals(ExpressionType.CONJUNCTION_AND, hj.getJoinPredicate().getExpressionType());
+
+        // Only the equality is used as a hash key
+        pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.A " + joinOp + " R2.A AND R1.C > R2.C");
+        n = pn.getChild(0).getChild(0);
+        assertTrue(n instanceof HashJoinPlanNode);
+        hj = (HashJoinPlanNode) n;
+        assertEquals(JoinType.LEFT, hj.getJoinType());
+        assertEquals(1, hj.getOuterHashExpressions().size());
+        assertTrue(pn.toExplainPlanString().contains("HASH LEFT JOIN"));
+
+        // Inner join filters can supply the hash keys
+        pn = compile("SELECT * FROM R1, R2 WHERE R1.A " + joinOp + " R2.A");
+        n = pn.getChild(0).getChild(0);
+        assertTrue(n instanceof HashJoinPlanNode);
+
+        // Without an equality there is nothing to hash on
+        pn = compile("SELECT * FROM R1 JOIN R2 ON R1.A > R2.A");
+        n = pn.getChild(0).getChild(0);
+        assertTrue(n instanceof NestLoopPlanNode);
+        pn = compile("SELECT * FROM R1, R2");
+        n = pn.getChild(0).getChild(0);
+        assertTrue(n instanceof NestLoopPlanNode);
+
+        // An index on the inner join key is still preferred
+        pn = compile("SELECT * FROM R1 JOIN R3 ON R1.C = R3.A");
+        n = pn.getChild(0).getChild(0);
+        assertTrue(n instanceof NestLoopIndexPlanNode);
+    }
+
+    public void testHashJoinMemory() {
+        // Hashing a table fits in the default temp table limit, but hashing the
+        // estimated result of a join doesn't, so the outer join loops over it instead.
+        AbstractPlanNode pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.A = R2.A RIGHT JOIN R3 ON R3.C = R1.C");
+        AbstractPlanNode n = pn.getChild(0).getChild(0);
+        assertTrue(n instanceof NestLoopPlanNode);
+        assertEquals(JoinType.LEFT, ((NestLoopPlanNode) n).getJoinType());
+        assertTrue(n.getChild(1) instanceof HashJoinPlanNode);
+    }
+
     public void testExplainHighlights() {
         // These tests of critical aspects of join-related @Explain output were
         // migrated from the regression suite where they really did not belong.
@@ -1635,7 +1704,7 @@ public class TestPlansJoin extends PlannerTestCase {
                 assertTrue(explained.contains("NESTLOOP INDEX FULL JOIN"));
             }
             else {
-                assertTrue(explained.contains("NEST LOOP FULL JOIN"));
+                assertTrue(explained.contains("HASH FULL JOIN"));
             }
             sql = "SELECT R1.A, R1.C, R3.A, R3.C " +
                     "FROM R1 FULL JOIN R3 " +
@@ -1647,7 +1716,7 @@ public class TestPlansJoin extends PlannerTestCase {
                 assertTrue(explained.contains("NESTLOOP INDEX FULL JOIN"));
             }
             else {
-                assertTrue(explained.contains("NEST LOOP FULL JOIN"));
+                assertTrue(explained.contains("HASH FULL JOIN"));
             }
             sql = "SELECT LHS.A, LHS.C, RHS.A, RHS.C " +
                     "FROM R3 LHS FULL JOIN R3 RHS " +
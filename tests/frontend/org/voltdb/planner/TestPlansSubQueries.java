@@ -38,6 +38,7 @@ import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractScanPlanNode;
 import org.voltdb.plannodes.AggregatePlanNode;
 import org.voltdb.plannodes.HashAggregatePlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.MergeReceivePlanNode;
 import org.voltdb.plannodes.NestLoopIndexPlanNode;
@@ -358,7 +359,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = pn.getChild(0);
         assertTrue(pn instanceof ProjectionPlanNode);
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
+        assertTrue(nlpn instanceof HashJoinPlanNode);
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "T1", "A");
         pn = pn.getChild(0);
@@ -409,7 +410,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
 //        pn = pn.getChild(0);
 //        assertTrue(pn instanceof ProjectionPlanNode);
 //        nlpn = pn.getChild(0);
-//        assertTrue(nlpn instanceof NestLoopPlanNode);
+//        assertTrue(nlpn instanceof HashJoinPlanNode);
 //        pn = nlpn.getChild(0);
 //        checkSeqScanSubSelects(pn, "T1", "A");
 //        pn = pn.getChild(0);
@@ -431,7 +432,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         assertTrue(pn instanceof SendPlanNode);
         //* enable to debug */ System.out.println(pn.toExplainPlanString());
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
+        assertTrue(nlpn instanceof HashJoinPlanNode);
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "T1", "A");
         pn = pn.getChild(0);
@@ -454,7 +455,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         assertTrue(pn instanceof SendPlanNode);
 
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
+        assertTrue(nlpn instanceof HashJoinPlanNode);
 
         pn = nlpn.getChild(1);
         checkSeqScan(pn, "T1", "A");
@@ -740,7 +741,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = planNodes.get(0).getChild(0);
         assertTrue(pn instanceof ProjectionPlanNode);
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
+        assertTrue(nlpn instanceof HashJoinPlanNode);
         pn = nlpn.getChild(1);
         checkSeqScan(pn, "R1");
         pn = nlpn.getChild(0);
@@ -1383,15 +1384,19 @@ public class TestPlansSubQueries extends PlannerTestCase {
         }
     }
 
-    private void checkPushedDownJoins(int nestLoopCount, String joinQuery) {
+    private void checkPushedDownJoins(int joinCount, String joinQuery) {
         List<AbstractPlanNode> planNodes = compileToFragments(joinQuery);
         assertEquals(2, planNodes.size());
         //* enable to debug */ System.out.println(planNodes.get(0).toExplainPlanString());
         checkJoinNode(planNodes.get(0), PlanNodeType.NESTLOOP, 0);
+        checkJoinNode(planNodes.get(0), PlanNodeType.HASHJOIN, 0);
         checkJoinNode(planNodes.get(0), PlanNodeType.NESTLOOPINDEX, 0);
-        // Join on distributed node
+        // Join on distributed node -- by whichever join the costing picks
         //* enable to debug */ System.out.println(planNodes.get(1).toExplainPlanString());
-        checkJoinNode(planNodes.get(1), PlanNodeType.NESTLOOP, nestLoopCount);
+        assertEquals(joinCount,
+                planNodes.get(1).findAllNodesOfType(PlanNodeType.NESTLOOP).size() +
+                planNodes.get(1).findAllNodesOfType(PlanNodeType.HASHJOIN).size() +
+                planNodes.get(1).findAllNodesOfType(PlanNodeType.NESTLOOPINDEX).size());
     }
 
     public void testPartitionedLimitOffset() {
@@ -1637,7 +1642,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = planNodes.get(1).getChild(0);
         // this join can be pushed down.
         //* enable to debug */ System.out.println(pn.toExplainPlanString());
-        assertTrue(pn.toExplainPlanString().contains("LOOP INNER JOIN"));
+        assertTrue(pn.toExplainPlanString().contains("HASH INNER JOIN"));
         pn = pn.getChild(0);
         // This is a trivial subquery result scan.
         assertTrue(pn instanceof SeqScanPlanNode);
@@ -1709,7 +1714,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
 
         assertTrue(planNodes.get(1).toExplainPlanString().contains("AGGREGATION"));
         assertTrue(planNodes.get(1).toExplainPlanString().contains("INDEX INNER JOIN"));
-        assertTrue(planNodes.get(1).toExplainPlanString().contains("LOOP INNER JOIN"));
+        assertTrue(planNodes.get(1).toExplainPlanString().contains("HASH INNER JOIN"));
 
         // Distinct without GROUP BY
         String sql1, sql2;
@@ -1740,7 +1745,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
 
         assertTrue(planNodes.get(1).toExplainPlanString().contains("AGGREGATION"));
         assertTrue(planNodes.get(1).toExplainPlanString().contains("INDEX INNER JOIN"));
-        assertTrue(planNodes.get(1).toExplainPlanString().contains("LOOP INNER JOIN"));
+        assertTrue(planNodes.get(1).toExplainPlanString().contains("HASH INNER JOIN"));
 
         failToCompile(
                 "SELECT * FROM (SELECT DISTINCT A FROM P1 GROUP BY A, C) T1, P2 " +
@@ -1821,7 +1826,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         assertTrue(pn instanceof ProjectionPlanNode);
 
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
+        assertTrue(nlpn instanceof HashJoinPlanNode);
         assertEquals(2, nlpn.getChildCount());
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "T1",  "A");
@@ -1840,7 +1845,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         assertTrue(pn instanceof ProjectionPlanNode);
 
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
+        assertTrue(nlpn instanceof HashJoinPlanNode);
         assertEquals(2, nlpn.getChildCount());
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "T1",  "A");
@@ -1864,8 +1869,8 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = planNodes.get(0).getChild(0);
         assertTrue(pn instanceof ProjectionPlanNode);
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
-        assertEquals(JoinType.LEFT, ((NestLoopPlanNode) nlpn).getJoinType());
+        assertTrue(nlpn instanceof HashJoinPlanNode);
+        assertEquals(JoinType.LEFT, ((HashJoinPlanNode) nlpn).getJoinType());
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "R1", "A", "C");
         pn = nlpn.getChild(1);
@@ -1881,8 +1886,8 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = planNodes.get(0).getChild(0);
         assertTrue(pn instanceof ProjectionPlanNode);
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
-        assertEquals(JoinType.LEFT, ((NestLoopPlanNode) nlpn).getJoinType());
+        assertTrue(nlpn instanceof HashJoinPlanNode);
+        assertEquals(JoinType.LEFT, ((HashJoinPlanNode) nlpn).getJoinType());
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "R1", "A", "C");
         pn = nlpn.getChild(1);
@@ -1932,8 +1937,8 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = planNodes.get(1);
         assertTrue(pn instanceof SendPlanNode);
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
-        assertEquals(JoinType.LEFT, ((NestLoopPlanNode) nlpn).getJoinType());
+        assertTrue(nlpn instanceof HashJoinPlanNode);
+        assertEquals(JoinType.LEFT, ((HashJoinPlanNode) nlpn).getJoinType());
 
         pn = nlpn.getChild(0);
         checkPrimaryKeyIndexScan(pn, "P1");
@@ -2005,8 +2010,8 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = planNodes.get(1);
         assertTrue(pn instanceof SendPlanNode);
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
-        assertEquals(JoinType.INNER, ((NestLoopPlanNode) nlpn).getJoinType());
+        assertTrue(nlpn instanceof HashJoinPlanNode);
+        assertEquals(JoinType.INNER, ((HashJoinPlanNode) nlpn).getJoinType());
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "R1", "A", "C");
         pn = nlpn.getChild(1);
@@ -2028,8 +2033,8 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = planNodes.get(1);
         assertTrue(pn instanceof SendPlanNode);
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
-        assertEquals(JoinType.INNER, ((NestLoopPlanNode) nlpn).getJoinType());
+        assertTrue(nlpn instanceof HashJoinPlanNode);
+        assertEquals(JoinType.INNER, ((HashJoinPlanNode) nlpn).getJoinType());
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "T1", "A");
         pn = pn.getChild(0);
@@ -2052,7 +2057,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = pn.getChild(0);
         assertTrue(pn instanceof ProjectionPlanNode);
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
+        assertTrue(nlpn instanceof HashJoinPlanNode);
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "T1", "A");
         pn = pn.getChild(0);
@@ -0,0 +1,246 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.rejoin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.voltcore.messaging.Mailbox;
+import org.voltcore.messaging.VoltMessage;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.Pair;
+import org.voltdb.SnapshotSiteProcessor;
+import org.voltdb.messaging.VoltDbMessageFactory;
+import org.voltdb.rejoin.StreamSnapshotBase.DefaultMessageFactory;
+import org.voltdb.rejoin.StreamSnapshotDataTarget.SendWork;
+import org.voltdb.rejoin.StreamSnapshotDataTarget.SnapshotSender;
+import org.voltdb.utils.CompressionService;
+import org.voltdb.utils.FixedDBBPool;
+
+import com.google_voltpatches.common.util.concurrent.Futures;
+import com.google_voltpatches.common.util.concurrent.SettableFuture;
+
+public class TestStreamSnapshotSender {
+
+    private static final long TARGET_ID = 7;
+    private static final long DEST_HSID = 11;
+
+    private static byte[] block(int index, int length) {
+        byte[] data = new byte[length];
+        for (int ii = 0; ii < length; ii++) {
+            data[ii] = (byte) (index + ii % 13);
+        }
+        return data;
+    }
+
+    private static SendWork work(byte[] data) {
+        return new SendWork(TARGET_ID, DEST_HSID, DBBPool.wrapBB(ByteBuffer.wrap(data)),
+                            SettableFuture.<Boolean>create());
+    }
+
+    /**
+     * Serialize a message the way the network layer does and read it back on the
+     * receiving side.
+     */
+    private static RejoinDataMessage overTheWire(VoltMessage message) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(message.getSerializedSize());
+        message.flattenToBuffer(buf);
+        buf.flip();
+        return (RejoinDataMessage) new VoltDbMessageFactory().createMessageFromBuffer(buf, DEST_HSID);
+    }
+
+    private static byte[] decompress(RejoinDataMessage message) throws IOException {
+        ByteBuffer data = message.getData();
+        assertTrue(data.isDirect());
+        ByteBuffer out = ByteBuffer.allocateDirect(CompressionService.uncompressedLength(data));
+        CompressionService.decompressBuffer(data, out);
+        byte[] bytes = new byte[out.remaining()];
+        out.get(bytes);
+        return bytes;
+    }
+
+    // A mailbox that puts every message sent through serialization, as a remote one would
+    private static Mailbox recordingMailbox(final List<RejoinDataMessage> received) {
+        Mailbox mb = mock(Mailbox.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                assertEquals(DEST_HSID, invocation.getArguments()[0]);
+                received.add(overTheWire((VoltMessage) invocation.getArguments()[1]));
+                return null;
+            }
+        }).when(mb).send(anyLong(), any(VoltMessage.class));
+        return mb;
+    }
+
+    @Test
+    public void testSendsInOrderWithCompressionWindow() throws Exception {
+        final List<RejoinDataMessage> received = new ArrayList<RejoinDataMessage>();
+        SnapshotSender sender = new SnapshotSender(recordingMailbox(received));
+        sender.registerDataTarget(TARGET_ID);
+
+        // large blocks first, so later ones would finish compressing before them
+        final int blocks = SnapshotSender.COMPRESSION_WINDOW * 4;
+        List<byte[]> sent = new ArrayList<byte[]>();
+        List<SendWork> works = new ArrayList<SendWork>();
+        for (int ii = 0; ii < blocks; ii++) {
+            byte[] data = block(ii, (blocks - ii) * 64 * 1024);
+            sent.add(data);
+            works.add(work(data));
+            sender.offer(works.get(ii));
+        }
+        sender.offer(new SendWork());
+        sender.run();
+
+        assertNull(sender.m_lastException);
+        assertEquals(blocks, received.size());
+        for (int ii = 0; ii < blocks; ii++) {
+            assertArrayEquals(sent.get(ii), decompress(received.get(ii)));
+            received.get(ii).discard();
+            assertTrue(works.get(ii).m_future.isDone());
+            // the compressed block went with the message, only the block itself waits for the ack
+            assertNull(works.get(ii).m_compressed);
+            works.get(ii).discard();
+        }
+        assertEquals(blocks, sender.m_worksSent.get(TARGET_ID).get());
+    }
+
+    @Test
+    public void testCompressionFailure() throws Exception {
+        final List<RejoinDataMessage> received = new ArrayList<RejoinDataMessage>();
+        Mailbox mb = recordingMailbox(received);
+
+        SendWork failed = new SendWork(TARGET_ID, DEST_HSID, DBBPool.wrapBB(ByteBuffer.wrap(block(0, 1024))),
+                                       SettableFuture.<Boolean>create()) {
+            @Override
+            void startCompression() {
+                m_compression = Futures.immediateFailedFuture(new IOException("compression failed"));
+            }
+        };
+        failed.startCompression();
+        try {
+            failed.doWork(mb, new DefaultMessageFactory());
+            fail("Block that failed to compress was sent");
+        } catch (IOException expected) {}
+        verify(mb, never()).send(anyLong(), any(VoltMessage.class));
+        // whoever waits for the block to go out is released
+        assertTrue(failed.m_future.isDone());
+        failed.discard();
+
+        // the sender reports the failure and goes on with the other blocks
+        SnapshotSender sender = new SnapshotSender(mb);
+        sender.registerDataTarget(TARGET_ID);
+        SendWork failedAgain = new SendWork(TARGET_ID, DEST_HSID, DBBPool.wrapBB(ByteBuffer.wrap(block(1, 1024))),
+                                            SettableFuture.<Boolean>create()) {
+            @Override
+            void startCompression() {
+                m_compression = Futures.immediateFailedFuture(new IOException("compression failed"));
+            }
+        };
+        byte[] data = block(2, 1024);
+        SendWork good = work(data);
+        sender.offer(failedAgain);
+        sender.offer(good);
+        sender.offer(new SendWork());
+        sender.run();
+
+        assertTrue(sender.m_lastException instanceof IOException);
+        assertEquals(1, received.size());
+        assertArrayEquals(data, decompress(received.get(0)));
+        received.get(0).discard();
+        failedAgain.discard();
+        good.discard();
+    }
+
+    @Test
+    public void testPooledBufferReceivePath() throws Exception {
+        final byte[] data = block(3, 256 * 1024);
+        final AtomicInteger released = new AtomicInteger();
+        final BBContainer pooled = CompressionService.compressBufferToPooled(ByteBuffer.wrap(data));
+        BBContainer compressed = new BBContainer(pooled.b()) {
+            @Override
+            public void discard() {
+                checkDoubleFree();
+                released.incrementAndGet();
+                pooled.discard();
+            }
+        };
+
+        // the sender's message gives its buffer back once it is serialized, not before
+        VoltMessage message = new DefaultMessageFactory().makeDataMessage(TARGET_ID, compressed);
+        assertEquals(0, released.get());
+        RejoinDataMessage remote = overTheWire(message);
+        assertEquals(1, released.get());
+        message = null;
+
+        // the receiver decompresses from the message's pooled buffer into a block of the site's pool
+        Mailbox mb = mock(Mailbox.class);
+        when(mb.recvBlocking()).thenReturn(remote, (VoltMessage) null);
+        BlockingQueue<BBContainer> blocks = new LinkedBlockingQueue<BBContainer>();
+        blocks.add(DBBPool.allocateDirect(SnapshotSiteProcessor.m_snapshotBufferLength));
+        BlockingQueue<BBContainer> compressionBuffers = new LinkedBlockingQueue<BBContainer>();
+        BBContainer compressionBuffer = DBBPool.allocateDirect(SnapshotSiteProcessor.m_snapshotBufferCompressedLen);
+        compressionBuffers.add(compressionBuffer);
+        FixedDBBPool bufferPool = mock(FixedDBBPool.class);
+        when(bufferPool.getQueue(SnapshotSiteProcessor.m_snapshotBufferLength)).thenReturn(blocks);
+        when(bufferPool.getQueue(SnapshotSiteProcessor.m_snapshotBufferCompressedLen)).thenReturn(compressionBuffers);
+        StreamSnapshotDataReceiver receiver = new StreamSnapshotDataReceiver(mb, bufferPool);
+        receiver.run();
+
+        Pair<Long, Pair<Long, BBContainer>> result = receiver.poll();
+        assertEquals(DEST_HSID, result.getFirst().longValue());
+        assertEquals(TARGET_ID, result.getSecond().getFirst().longValue());
+        ByteBuffer block = result.getSecond().getSecond().b();
+        byte[] bytes = new byte[block.remaining()];
+        block.get(bytes);
+        assertArrayEquals(data, bytes);
+        result.getSecond().getSecond().discard();
+        assertNull(receiver.poll());
+        // no staging copy was needed
+        assertEquals(1, compressionBuffers.size());
+        compressionBuffer.discard();
+    }
+}
@@ -0,0 +1,163 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.compiler.DatabaseEstimates.ColumnEstimates;
+import org.voltdb.compiler.DatabaseEstimates.TableEstimates;
+
+public class TestAnalyze extends TestCase {
+
+    private static VoltTable partitionStats() {
+        return new VoltTable(
+                new ColumnInfo("PARTITION_ID", VoltType.INTEGER),
+                new ColumnInfo("TABLE_NAME", VoltType.STRING),
+                new ColumnInfo("COLUMN_NAME", VoltType.STRING),
+                new ColumnInfo("STAT", VoltType.STRING),
+                new ColumnInfo("VALUE_COUNT", VoltType.BIGINT),
+                new ColumnInfo("DISTINCT_COUNT", VoltType.BIGINT),
+                new ColumnInfo("HISTOGRAM", VoltType.STRING));
+    }
+
+    public void testMergePartitionStatistics() throws Exception {
+        VoltTable stats = partitionStats();
+        stats.addRow(0, "T", "", Analyze.STAT_ROWS, 100, 0, "");
+        stats.addRow(0, "T", "A", Analyze.STAT_VALUES, 100, 40, "[0,50,100]");
+        stats.addRow(1, "T", "", Analyze.STAT_ROWS, 300, 0, "");
+        stats.addRow(1, "T", "A", Analyze.STAT_VALUES, 300, 60, "[100,150,200]");
+        // a replica of partition 1 reports the same, it must not be counted twice
+        stats.addRow(1, "T", "", Analyze.STAT_ROWS, 300, 0, "");
+        stats.addRow(1, "T", "A", Analyze.STAT_VALUES, 300, 60, "[100,150,200]");
+        // an empty table
+        stats.addRow(0, "E", "", Analyze.STAT_ROWS, 0, 0, "");
+        stats.addRow(0, "E", "B", Analyze.STAT_VALUES, 0, 0, "");
+        stats.addRow(1, "E", "", Analyze.STAT_ROWS, 0, 0, "");
+        stats.addRow(1, "E", "B", Analyze.STAT_VALUES, 0, 0, "");
+
+        Map<String, Long> rowCounts = new TreeMap<String, Long>();
+        Map<String, TableEstimates> merged = Analyze.mergePartitionStatistics(stats, rowCounts);
+
+        assertEquals(400L, rowCounts.get("T").longValue());
+        TableEstimates table = merged.get("T");
+        assertTrue(table.analyzed);
+        assertEquals(300, table.maxTuples);
+        assertEquals(100, table.minTuples);
+        ColumnEstimates column = table.columnEstimates.get("A");
+        assertEquals(50, column.distinctValues);
+        assertEquals(Analyze.HISTOGRAM_BUCKETS + 1, column.histogram.length);
+        assertEquals(0.0, column.histogram[0], 0.0);
+        assertEquals(200.0, column.histogram[column.histogram.length - 1], 0.0);
+        // a quarter of the values are in partition 0, spread over 0-100
+        assertEquals(0.8, column.fractionAtOrAbove(80.0), 1e-9);
+
+        assertEquals(0L, rowCounts.get("E").longValue());
+        assertEquals(0, merged.get("E").maxTuples);
+        assertTrue(merged.get("E").columnEstimates.isEmpty());
+    }
+
+    public void testMergeIncompleteColumn() throws Exception {
+        VoltTable stats = partitionStats();
+        stats.addRow(0, "T", "", Analyze.STAT_ROWS, 100, 0, "");
+        stats.addRow(0, "T", "A", Analyze.STAT_VALUES, 100, 40, "[0,50,100]");
+        // partition 1 has too many values to read them all
+        stats.addRow(1, "T", "", Analyze.STAT_ROWS, 300, 0, "");
+        stats.addRow(1, "T", "A", Analyze.STAT_VALUES, 300, 60, null);
+
+        Map<String, TableEstimates> merged =
+                Analyze.mergePartitionStatistics(stats, new TreeMap<String, Long>());
+        ColumnEstimates column = merged.get("T").columnEstimates.get("A");
+        assertEquals(50, column.distinctValues);
+        assertEquals(0, column.histogram.length);
+    }
+
+    private static VoltTable valuesPage(VoltType type) {
+        return new VoltTable(new ColumnInfo("A", type), new ColumnInfo("C2", VoltType.BIGINT));
+    }
+
+    public void testColumnScan() {
+        // values 0 to 2 * PAGE_SIZE - 1, value v appearing v % 3 + 1 times
+        Analyze.ColumnScan scan = new Analyze.ColumnScan();
+        long nonNull = 0;
+        for (int page = 0; page < 2; page++) {
+            VoltTable values = valuesPage(VoltType.BIGINT);
+            for (int ii = 0; ii < Analyze.PAGE_SIZE; ii++) {
+                long value = page * Analyze.PAGE_SIZE + ii;
+                values.addRow(value, value % 3 + 1);
+                nonNull += value % 3 + 1;
+            }
+            assertTrue(scan.addPage(values));
+            assertEquals((long) (page + 1) * Analyze.PAGE_SIZE - 1, scan.lastValue());
+        }
+        VoltTable last = valuesPage(VoltType.BIGINT);
+        last.addRow((long) 2 * Analyze.PAGE_SIZE, 1L);
+        nonNull++;
+        assertFalse(scan.addPage(last));
+        assertTrue(scan.isComplete());
+        assertEquals(nonNull, scan.nonNullValues());
+        assertEquals(2L * Analyze.PAGE_SIZE + 1, scan.distinctValues(nonNull + 10));
+
+        double[] histogram = scan.histogram();
+        assertEquals(Analyze.HISTOGRAM_BUCKETS + 1, histogram.length);
+        assertEquals(0.0, histogram[0], 0.0);
+        assertEquals(2.0 * Analyze.PAGE_SIZE, histogram[Analyze.HISTOGRAM_BUCKETS], 0.0);
+        // the counts are spread evenly, so the middle bound is about the middle value
+        assertEquals(Analyze.PAGE_SIZE, histogram[Analyze.HISTOGRAM_BUCKETS / 2], 2.0);
+    }
+
+    public void testColumnScanStrings() {
+        Analyze.ColumnScan scan = new Analyze.ColumnScan();
+        VoltTable values = valuesPage(VoltType.STRING);
+        values.addRow("a", 2L);
+        values.addRow("b", 3L);
+        assertFalse(scan.addPage(values));
+        assertEquals(2, scan.distinctValues(5));
+        assertEquals(5, scan.nonNullValues());
+        assertEquals(0, scan.histogram().length);
+    }
+
+    public void testColumnScanGivesUp() {
+        Analyze.ColumnScan scan = new Analyze.ColumnScan();
+        boolean more = true;
+        long value = 0;
+        while (more) {
+            VoltTable values = valuesPage(VoltType.INTEGER);
+            for (int ii = 0; ii < Analyze.PAGE_SIZE; ii++) {
+                values.addRow(value++, 1L);
+            }
+            more = scan.addPage(values);
+        }
+        assertEquals((long) Analyze.MAX_PAGES * Analyze.PAGE_SIZE, value);
+        assertFalse(scan.isComplete());
+        assertEquals(0, scan.histogram().length);
+        // a quarter of the rows were read, so there are about four times the values
+        assertEquals(4 * value, scan.distinctValues(4 * value));
+    }
+}
@@ -0,0 +1,212 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTableRow;
+import org.voltdb.VoltType;
+import org.voltdb.sysprocs.saverestore.IncrementalSnapshotChain.Deltas;
+import org.voltdb.sysprocs.saverestore.IncrementalSnapshotChain.TableDeltas;
+
+public class TestIncrementalSnapshotChain extends TestCase {
+
+    private File m_dir;
+
+    @Override
+    public void setUp() throws IOException {
+        m_dir = File.createTempFile("incremental", "");
+        m_dir.delete();
+        m_dir.mkdir();
+    }
+
+    @Override
+    public void tearDown() {
+        for (File f : m_dir.listFiles()) {
+            f.delete();
+        }
+        m_dir.delete();
+    }
+
+    private static VoltTable rows(Object[]... rows) {
+        VoltTable t = new VoltTable(new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+                                    new VoltTable.ColumnInfo("VAL", VoltType.STRING));
+        for (Object[] row : rows) {
+            t.addRow(row);
+        }
+        return t;
+    }
+
+    private static VoltTable keys(long... ids) {
+        VoltTable t = new VoltTable(new VoltTable.ColumnInfo("ID", VoltType.BIGINT));
+        for (long id : ids) {
+            t.addRow(id);
+        }
+        return t;
+    }
+
+    private static IncrementalSnapshotChain.Source source(final VoltTable rows, final VoltTable deletedKeys) {
+        return new IncrementalSnapshotChain.Source() {
+            boolean m_done = false;
+
+            @Override
+            public VoltTable nextChunk() {
+                if (m_done) {
+                    return null;
+                }
+                m_done = true;
+                return rows;
+            }
+
+            @Override
+            public VoltTable deletedKeys() {
+                return deletedKeys;
+            }
+        };
+    }
+
+    private static Map<Long, String> merge(IncrementalSnapshotChain.Source... sources) throws IOException {
+        final Map<Long, String> result = new TreeMap<Long, String>();
+        IncrementalSnapshotChain.merge(Arrays.asList(sources), new int[] { 0 },
+                new IncrementalSnapshotChain.RowConsumer() {
+                    @Override
+                    public void accept(VoltTableRow row) {
+                        assertNull(result.put(row.getLong(0), row.getString(1)));
+                    }
+                });
+        return result;
+    }
+
+    public void testMergeNewestRowWins() throws IOException {
+        Map<Long, String> merged = merge(
+                source(rows(new Object[] { 2L, "b2" }, new Object[] { 4L, "d" }), keys(3)),
+                source(rows(new Object[] { 1L, "a" }, new Object[] { 3L, "c" }), keys()),
+                source(rows(new Object[] { 1L, "a0" }, new Object[] { 2L, "b" }, new Object[] { 3L, "c0" }), null));
+
+        Map<Long, String> expected = new TreeMap<Long, String>();
+        expected.put(1L, "a");
+        expected.put(2L, "b2");
+        expected.put(4L, "d");
+        assertEquals(expected, merged);
+    }
+
+    public void testMergeStopsAtFullSource() throws IOException {
+        Map<Long, String> merged = merge(
+                source(rows(new Object[] { 1L, "a" }), null),
+                source(rows(new Object[] { 2L, "b" }), null));
+        assertEquals(1, merged.size());
+        assertEquals("a", merged.get(1L));
+    }
+
+    public void testDeltasRoundTrip() throws IOException {
+        Deltas deltas = new Deltas("base");
+        TableDeltas table = new TableDeltas("T", false, new int[] { 0 });
+        table.partitions.put(0, keys(5, 6));
+        table.partitions.put(1, null);
+        deltas.tables.put("T", table);
+        File file = new File(m_dir, IncrementalSnapshotChain.constructDeltasFilenameForNonce("next", 0));
+        IncrementalSnapshotChain.writeDeltas(file, deltas);
+
+        Deltas read = IncrementalSnapshotChain.readDeltas(file);
+        assertEquals("base", read.baseNonce);
+        TableDeltas readTable = read.tables.get("T");
+        assertFalse(readTable.isReplicated);
+        assertTrue(Arrays.equals(new int[] { 0 }, readTable.pkColumns));
+        assertNull(readTable.partitions.get(1));
+        assertEquals(keys(5, 6), readTable.partitions.get(0));
+        assertTrue(read.hasDeltas());
+    }
+
+    private void writeSnapshot(String nonce, Deltas deltas, boolean finished) throws IOException {
+        IncrementalSnapshotChain.writeDeltas(
+                new File(m_dir, IncrementalSnapshotChain.constructDeltasFilenameForNonce(nonce, 0)), deltas);
+        if (finished) {
+            new File(m_dir, SnapshotUtil.constructCompletionFilenameForNonce(nonce, 0)).createNewFile();
+        }
+    }
+
+    private static Deltas deltas(String base, VoltTable deletedKeys) {
+        Deltas deltas = new Deltas(base);
+        TableDeltas table = new TableDeltas("T", false, new int[] { 0 });
+        table.partitions.put(0, deletedKeys);
+        deltas.tables.put("T", table);
+        return deltas;
+    }
+
+    public void testResolveChain() throws IOException {
+        writeSnapshot("s1", deltas(null, null), true);
+        writeSnapshot("s2", deltas("s1", keys()), true);
+        writeSnapshot("s3", deltas("s2", keys(1)), true);
+
+        List<String> nonces = new ArrayList<String>();
+        for (Map.Entry<String, Deltas> link : IncrementalSnapshotChain.resolve(m_dir, "s3", 0)) {
+            nonces.add(link.getKey());
+        }
+        assertEquals(Arrays.asList("s3", "s2", "s1"), nonces);
+        IncrementalSnapshotChain.checkChains(m_dir, "s3");
+        assertTrue(IncrementalSnapshotChain.resolve(m_dir, "other", 0).isEmpty());
+    }
+
+    public void testResolveRejectsBrokenChain() throws IOException {
+        writeSnapshot("s1", deltas(null, null), false);
+        writeSnapshot("s2", deltas("s1", keys()), true);
+        writeSnapshot("s3", null, true);
+        try {
+            IncrementalSnapshotChain.checkChains(m_dir, "s2");
+            fail("Base snapshot that did not finish was accepted");
+        } catch (IOException expected) {}
+        try {
+            IncrementalSnapshotChain.checkChains(m_dir, "s3");
+            fail("Deltas that were never completed were accepted");
+        } catch (IOException expected) {}
+    }
+
+    public void testOnlyFullSnapshotsAreRestorable() throws IOException {
+        writeSnapshot("s1", deltas(null, null), true);
+        writeSnapshot("s2", deltas("s1", keys()), true);
+        writeSnapshot("s3", deltas("s2", null), true);
+        writeSnapshot("s4", null, true);
+
+        IncrementalSnapshotChain.checkRestorable(m_dir, "s1");
+        IncrementalSnapshotChain.checkRestorable(m_dir, "s3");
+        IncrementalSnapshotChain.checkRestorable(m_dir, "other");
+        try {
+            IncrementalSnapshotChain.checkRestorable(m_dir, "s2");
+            fail("Snapshot with a table saved as a delta was restorable");
+        } catch (IOException expected) {}
+        try {
+            IncrementalSnapshotChain.checkRestorable(m_dir, "s4");
+            fail("Snapshot whose deltas were never completed was restorable");
+        } catch (IOException expected) {}
+    }
+}
@@ -0,0 +1,350 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop_voltpatches.util.PureJavaCrc32;
+import org.apache.hadoop_voltpatches.util.PureJavaCrc32C;
+import org.json_voltpatches.JSONArray;
+import org.json_voltpatches.JSONObject;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.utils.CompressionService;
+
+/**
+ * Reads version 2 save files written by the test through TableSaveFile, whose
+ * chunks are validated and decompressed on the shared decode pool.
+ */
+public class TestTableSaveFile extends TestCase {
+
+    private static final int PARTITION_COUNT = 3;
+    private static final byte[] TABLE_HEADER = new byte[] { 0, 0, 0, 4, 1, 2, 3, 4 };
+    private static final int PAYLOAD_BYTES = 4096;
+
+    private enum Corruption { NONE, BAD_CRC, BAD_DATA }
+
+    private static class Chunk {
+        final int index;
+        final int partitionId;
+        final Corruption corruption;
+
+        Chunk(int index, int partitionId, Corruption corruption) {
+            this.index = index;
+            this.partitionId = partitionId;
+            this.corruption = corruption;
+        }
+    }
+
+    private File m_dir;
+    private final List<TableSaveFile> m_openFiles = new ArrayList<TableSaveFile>();
+
+    @Override
+    public void setUp() throws IOException {
+        m_dir = File.createTempFile("tablesavefile", "");
+        m_dir.delete();
+        m_dir.mkdir();
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        for (TableSaveFile saveFile : m_openFiles) {
+            saveFile.close();
+        }
+        for (File f : m_dir.listFiles()) {
+            f.delete();
+        }
+        m_dir.delete();
+    }
+
+    private static List<Chunk> chunks(int count) {
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        for (int i = 0; i < count; i++) {
+            chunks.add(new Chunk(i, i % PARTITION_COUNT, Corruption.NONE));
+        }
+        return chunks;
+    }
+
+    private static byte[] payload(int index) {
+        ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_BYTES);
+        payload.putInt(index);
+        while (payload.hasRemaining()) {
+            payload.put((byte)index);
+        }
+        return payload.array();
+    }
+
+    private static int bufferCRC32C(byte[] bytes) {
+        BBContainer cont = DBBPool.allocateDirect(bytes.length);
+        try {
+            cont.b().put(bytes);
+            cont.b().flip();
+            return DBBPool.getBufferCRC32C(cont.b(), 0, bytes.length);
+        } finally {
+            cont.discard();
+        }
+    }
+
+    /**
+     * Write a completed, compressed, version 2 save file with the given chunks
+     * and return the total number of compressed chunk bytes.
+     */
+    private long writeSaveFile(File file, List<Chunk> chunks) throws Exception {
+        JSONArray partitionIds = new JSONArray();
+        for (int i = 0; i < PARTITION_COUNT; i++) {
+            partitionIds.put(i);
+        }
+        JSONObject json = new JSONObject();
+        json.put("txnId", 1L);
+        json.put("timestamp", 1L);
+        json.put("hostId", 0);
+        json.put("hostname", "localhost");
+        json.put("clusterName", "cluster");
+        json.put("databaseName", "database");
+        json.put("tableName", "T");
+        json.put("isReplicated", false);
+        json.put("isCompressed", true);
+        json.put("checksumType", "CRC32C");
+        json.put("partitionIds", partitionIds);
+        json.put("numPartitions", PARTITION_COUNT);
+        byte[] jsonBytes = json.toString().getBytes("UTF-8");
+
+        ByteBuffer header = ByteBuffer.allocate(1 + 16 + 4 + jsonBytes.length);
+        header.put((byte)1);
+        header.putInt(0).putInt(0).putInt(0).putInt(2);
+        header.putInt(jsonBytes.length);
+        header.put(jsonBytes);
+
+        ByteBuffer preamble = ByteBuffer.allocate(8 + header.capacity() + 4 + TABLE_HEADER.length);
+        preamble.putInt(0); // CRC placeholder
+        preamble.putInt(header.capacity());
+        preamble.put(header.array());
+        preamble.putInt(TABLE_HEADER.length);
+        preamble.put(TABLE_HEADER);
+        PureJavaCrc32 crc = new PureJavaCrc32();
+        crc.update(preamble.array(), 4, preamble.capacity() - 4);
+        preamble.putInt(0, (int)crc.getValue());
+
+        long chunkBytes = 0;
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(preamble.array());
+            for (Chunk chunk : chunks) {
+                byte[] compressed = CompressionService.compressBytes(payload(chunk.index));
+                if (chunk.corruption == Corruption.BAD_DATA) {
+                    // A valid checksum over data that doesn't decompress
+                    Arrays.fill(compressed, (byte)0xFF);
+                }
+                ByteBuffer chunkHeader = ByteBuffer.allocate(16);
+                chunkHeader.putInt(compressed.length);
+                chunkHeader.putInt(chunk.partitionId);
+                PureJavaCrc32C partitionIdCRC = new PureJavaCrc32C();
+                partitionIdCRC.update(chunkHeader.array(), 0, 8);
+                chunkHeader.putInt((int)partitionIdCRC.getValue());
+                int dataCRC = bufferCRC32C(compressed);
+                if (chunk.corruption == Corruption.BAD_CRC) {
+                    dataCRC = ~dataCRC;
+                }
+                chunkHeader.putInt(dataCRC);
+                fos.write(chunkHeader.array());
+                fos.write(compressed);
+                chunkBytes += compressed.length;
+            }
+        } finally {
+            fos.close();
+        }
+        return chunkBytes;
+    }
+
+    private TableSaveFile open(File file, int readAhead, Integer[] relevantPartitionIds,
+                               boolean continueOnCorruptedChunk) throws IOException {
+        TableSaveFile saveFile = new TableSaveFile(new FileInputStream(file), readAhead,
+                                                   relevantPartitionIds, continueOnCorruptedChunk);
+        m_openFiles.add(saveFile);
+        return saveFile;
+    }
+
+    /**
+     * Drain the file and return the chunk index found in each chunk's payload,
+     * keyed by the index and mapped to the chunk's partition.
+     */
+    private static Map<Integer, Integer> readAll(TableSaveFile saveFile) throws IOException {
+        Map<Integer, Integer> seen = new HashMap<Integer, Integer>();
+        while (saveFile.hasMoreChunks()) {
+            TableSaveFile.Container c = (TableSaveFile.Container)saveFile.getNextChunk();
+            if (c == null) {
+                continue;
+            }
+            try {
+                ByteBuffer b = c.b();
+                assertEquals(0, b.position());
+                assertEquals(TABLE_HEADER.length + 4 + PAYLOAD_BYTES, b.limit());
+                int index = b.getInt(TABLE_HEADER.length + 4);
+                assertNull("chunk " + index + " returned twice", seen.put(index, c.partitionId));
+                assertEquals((byte)index, b.get(b.limit() - 1));
+            } finally {
+                c.discard();
+            }
+        }
+        return seen;
+    }
+
+    public void testEveryChunkReturnedOnce() throws Exception {
+        File file = new File(m_dir, "ordering.vpt");
+        writeSaveFile(file, chunks(64));
+
+        // Chunks may come back out of file order, but each exactly once
+        // and tagged with the partition it was written for
+        Map<Integer, Integer> seen = readAll(open(file, 4, null, false));
+        assertEquals(64, seen.size());
+        for (Map.Entry<Integer, Integer> e : seen.entrySet()) {
+            assertEquals(e.getKey() % PARTITION_COUNT, e.getValue().intValue());
+        }
+    }
+
+    public void testIrrelevantPartitionsSkipped() throws Exception {
+        File file = new File(m_dir, "relevant.vpt");
+        writeSaveFile(file, chunks(30));
+
+        Map<Integer, Integer> seen = readAll(open(file, 2, new Integer[] { 1 }, false));
+        assertEquals(10, seen.size());
+        for (int partitionId : seen.values()) {
+            assertEquals(1, partitionId);
+        }
+    }
+
+    public void testCRCMismatchFailsRead() throws Exception {
+        File file = new File(m_dir, "badcrc.vpt");
+        List<Chunk> chunks = chunks(12);
+        chunks.set(5, new Chunk(5, 2, Corruption.BAD_CRC));
+        writeSaveFile(file, chunks);
+
+        TableSaveFile saveFile = open(file, 4, null, false);
+        try {
+            readAll(saveFile);
+            fail("Expected the corrupt chunk to fail the read");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("CRC mismatch"));
+        }
+        assertEquals(new HashSet<Integer>(Arrays.asList(2)), saveFile.getCorruptedPartitionIds());
+    }
+
+    public void testCRCMismatchSkippedWhenContinuing() throws Exception {
+        File file = new File(m_dir, "badcrccontinue.vpt");
+        List<Chunk> chunks = chunks(12);
+        chunks.set(5, new Chunk(5, 2, Corruption.BAD_CRC));
+        writeSaveFile(file, chunks);
+
+        TableSaveFile saveFile = open(file, 4, null, true);
+        Map<Integer, Integer> seen = readAll(saveFile);
+        assertEquals(11, seen.size());
+        assertFalse(seen.containsKey(5));
+        assertEquals(new HashSet<Integer>(Arrays.asList(2)), saveFile.getCorruptedPartitionIds());
+    }
+
+    public void testUndecodableChunkCorruptsAllPartitions() throws Exception {
+        File file = new File(m_dir, "baddata.vpt");
+        List<Chunk> chunks = chunks(9);
+        chunks.set(4, new Chunk(4, 1, Corruption.BAD_DATA));
+        writeSaveFile(file, chunks);
+
+        TableSaveFile saveFile = open(file, 4, null, true);
+        Map<Integer, Integer> seen = readAll(saveFile);
+        assertEquals(8, seen.size());
+        assertFalse(seen.containsKey(4));
+        Set<Integer> all = new HashSet<Integer>(Arrays.asList(0, 1, 2));
+        assertEquals(all, saveFile.getCorruptedPartitionIds());
+    }
+
+    public void testCloseWithDecodesInFlight() throws Exception {
+        File file = new File(m_dir, "close.vpt");
+        writeSaveFile(file, chunks(256));
+
+        for (int attempt = 0; attempt < 10; attempt++) {
+            TableSaveFile saveFile = new TableSaveFile(new FileInputStream(file), 16, null, false);
+            // Starts the reader, which keeps the decode pool busy with read ahead
+            BBContainer first = saveFile.getNextChunk();
+            assertNotNull(first);
+            // Close waits for in flight decodes before freeing their buffers
+            saveFile.close();
+            assertEquals(0, TableSaveFile.getDecodeQueueDepth());
+            first.discard();
+        }
+    }
+
+    private static VoltTable statsRow(SnapshotRestoreStats stats) {
+        VoltTable table = new VoltTable(stats.getColumnSchema().toArray(new ColumnInfo[0]));
+        for (Object[] row : stats.getStatsRows(true, System.currentTimeMillis())) {
+            table.addRow(row);
+        }
+        assertEquals(1, table.getRowCount());
+        table.advanceRow();
+        return table;
+    }
+
+    public void testSnapshotRestoreStats() throws Exception {
+        File file = new File(m_dir, "stats.vpt");
+        List<Chunk> chunks = chunks(20);
+        chunks.set(7, new Chunk(7, 1, Corruption.BAD_CRC));
+        final long chunkBytes = writeSaveFile(file, chunks);
+
+        SnapshotRestoreStats stats = new SnapshotRestoreStats();
+        // The first interval poll sets the baseline
+        statsRow(stats);
+
+        TableSaveFile saveFile = open(file, 4, null, true);
+        assertEquals(1, statsRow(stats).getLong("OPEN_FILES"));
+        readAll(saveFile);
+        saveFile.close();
+
+        VoltTable row = statsRow(stats);
+        assertEquals(0, row.getLong("OPEN_FILES"));
+        assertEquals(1, row.getLong("FILES_READ"));
+        assertEquals(chunkBytes, row.getLong("BYTES_READ"));
+        assertEquals(19, row.getLong("CHUNKS_DECODED"));
+        assertEquals(19 * PAYLOAD_BYTES, row.getLong("BYTES_DECOMPRESSED"));
+        assertEquals(1, row.getLong("CORRUPT_CHUNKS"));
+        assertEquals(TableSaveFile.getDecodeThreadCount(), row.getLong("DECODE_THREADS"));
+
+        // Nothing more happened since the last interval
+        row = statsRow(stats);
+        assertEquals(0, row.getLong("FILES_READ"));
+        assertEquals(0, row.getLong("CHUNKS_DECODED"));
+    }
+}
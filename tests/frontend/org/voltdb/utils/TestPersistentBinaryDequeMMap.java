@@ -0,0 +1,89 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.utils.BinaryDeque.BinaryDequeReader;
+
+/**
+ * Runs all of the PersistentBinaryDeque tests against memory mapped segments.
+ */
+public class TestPersistentBinaryDequeMMap extends TestPersistentBinaryDeque {
+
+    @BeforeClass
+    public static void enableMmap() {
+        System.setProperty("PBD_USE_MMAP", "true");
+    }
+
+    @AfterClass
+    public static void disableMmap() {
+        System.clearProperty("PBD_USE_MMAP");
+    }
+
+    @Test
+    public void testZeroCopyPollOutlivesSegment() throws Exception {
+        System.out.println("Running testZeroCopyPollOutlivesSegment");
+        final String nonce = "pbd_mmap_nonce";
+        PersistentBinaryDeque pbd = new PersistentBinaryDeque(nonce, TEST_DIR, new VoltLogger("EXPORT"));
+        try {
+            pbd.offer(DBBPool.wrapBB(getFilledBuffer(1)), false);
+            pbd.offer(DBBPool.wrapBB(getFilledBuffer(2)), true);
+            pbd.sync();
+            pbd.close();
+
+            // The unused part of the mapping is cut off when the write segment is closed
+            final File segment = new File(TEST_DIR, nonce + ".0.pbd");
+            assertTrue(segment.length() < PBDSegment.CHUNK_SIZE);
+
+            pbd = new PersistentBinaryDeque(nonce, TEST_DIR, new VoltLogger("EXPORT"));
+            BinaryDequeReader reader = pbd.openForRead("mmap");
+            BBContainer uncompressed = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            assertTrue(uncompressed.b().isReadOnly());
+            BBContainer compressed = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            assertNull(reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY));
+
+            // Slices stay readable after the deque and its segments have been closed
+            pbd.close();
+            ByteBuffer expected = getFilledBuffer(1);
+            assertEquals(expected, uncompressed.b());
+            expected = getFilledBuffer(2);
+            assertEquals(expected, compressed.b());
+            uncompressed.discard();
+            compressed.discard();
+        } finally {
+            pbd.close();
+        }
+    }
+}
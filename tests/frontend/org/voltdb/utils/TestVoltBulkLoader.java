@@ -1046,6 +1046,226 @@ public class TestVoltBulkLoader extends TestCase {
                 "BLAH", myData2, myBatchSize2, expectedFailures2, false);
     }
 
+    // Rows of two loaders sharing a table end up in the same batches, each loader must
+    // still be credited with exactly the rows it inserted.
+    public void testCompletedRowCountsPerLoader() throws Exception {
+        String mySchema =
+                "create table BLAH (" +
+                "clm_integer integer not null, " +
+                "clm_string varchar(20) default null, " +
+                "primary key (clm_integer)" +
+                "); ";
+        try {
+            startServer(mySchema, true);
+            TestFailureCallback testCallback1 = new TestFailureCallback();
+            TestFailureCallback testCallback2 = new TestFailureCallback();
+            VoltBulkLoader bulkLoader1 = client1.getNewBulkLoader("BLAH", 10, testCallback1);
+            VoltBulkLoader bulkLoader2 = client1.getNewBulkLoader("BLAH", 10, testCallback2);
+
+            // two rows from the first loader for every row from the second
+            for (int i = 0; i < 300; i++) {
+                if (i % 3 == 2) {
+                    bulkLoader2.insertRow(i, i, "second");
+                }
+                else {
+                    bulkLoader1.insertRow(i, i, "first");
+                }
+            }
+            bulkLoader1.drain();
+            bulkLoader2.drain();
+            assertEquals(0, bulkLoader1.getOutstandingRowCount());
+            assertEquals(200, bulkLoader1.getCompletedRowCount());
+            assertEquals(0, bulkLoader2.getOutstandingRowCount());
+            assertEquals(100, bulkLoader2.getCompletedRowCount());
+
+            bulkLoader1.close();
+            bulkLoader2.close();
+            assertEquals(200, bulkLoader1.getCompletedRowCount());
+            assertEquals(100, bulkLoader2.getCompletedRowCount());
+            assertTrue(testCallback1.failureRows.isEmpty());
+            assertTrue(testCallback2.failureRows.isEmpty());
+            assertEquals(300, client1.callProcedure("@AdHoc", "SELECT COUNT(*) FROM BLAH;")
+                    .getResults()[0].asScalarLong());
+        }
+        finally {
+            stopServer();
+        }
+    }
+
+    // A batch with a constraint violation is retried a row at a time, failures are reported
+    // to the loader that inserted the row, with the values as they were converted for the table.
+    public void testFailedBatchRetry() throws Exception {
+        String mySchema =
+                "create table BLAH (" +
+                "clm_integer integer not null, " +
+                "clm_string varchar(20) default null, " +
+                "primary key (clm_integer)" +
+                "); ";
+        try {
+            startServer(mySchema, true);
+            for (int key : new int[] {7, 43, 77}) {
+                client1.callProcedure("BLAH.insert", key, "existing");
+            }
+
+            final ArrayList<Integer> failureRows1 = new ArrayList<Integer>();
+            final ArrayList<Object[]> failureFields1 = new ArrayList<Object[]>();
+            BulkLoaderFailureCallBack callback1 = new BulkLoaderFailureCallBack() {
+                @Override
+                public void failureCallback(Object rowHandle, Object[] fieldList, ClientResponse response) {
+                    synchronized (failureRows1) {
+                        failureRows1.add((Integer) rowHandle);
+                        failureFields1.add(fieldList);
+                    }
+                }
+            };
+            TestFailureCallback testCallback2 = new TestFailureCallback();
+            VoltBulkLoader bulkLoader1 = client1.getNewBulkLoader("BLAH", 20, callback1);
+            VoltBulkLoader bulkLoader2 = client1.getNewBulkLoader("BLAH", 20, testCallback2);
+
+            // the first loader passes its keys as strings and hits all of the existing rows
+            for (int i = 0; i < 100; i++) {
+                if (i % 2 == 0) {
+                    bulkLoader2.insertRow(i, i + 1000, "second");
+                }
+                else {
+                    bulkLoader1.insertRow(i, String.valueOf(i), "first");
+                }
+            }
+            bulkLoader1.close();
+            bulkLoader2.close();
+
+            assertEquals(50, bulkLoader1.getCompletedRowCount());
+            assertEquals(50, bulkLoader2.getCompletedRowCount());
+            assertTrue(testCallback2.failureRows.isEmpty());
+            Collections.sort(failureRows1);
+            assertEquals(Arrays.asList(7, 43, 77), failureRows1);
+            for (Object[] fields : failureFields1) {
+                assertEquals(2, fields.length);
+                assertTrue(fields[0] instanceof Integer);
+                assertTrue(failureRows1.contains(fields[0]));
+                assertEquals("first", fields[1]);
+            }
+            // the existing rows and every row of the failed batches that didn't collide with one
+            assertEquals(100, client1.callProcedure("@AdHoc", "SELECT COUNT(*) FROM BLAH;")
+                    .getResults()[0].asScalarLong());
+        }
+        finally {
+            stopServer();
+        }
+    }
+
+    public void testPartitionStatistics() throws Exception {
+        String mySchema =
+                "create table BLAH (" +
+                "clm_integer integer not null, " +
+                "clm_string varchar(20) default null, " +
+                "primary key (clm_integer)" +
+                "); " +
+                "create table BLAH_MP (" +
+                "clm_integer integer not null, " +
+                "clm_string varchar(20) default null" +
+                "); ";
+        try {
+            startServer(mySchema, true);
+            client1.callProcedure("BLAH.insert", 13, "existing");
+
+            TestFailureCallback testCallback = new TestFailureCallback();
+            VoltBulkLoader bulkLoader = client1.getNewBulkLoader("BLAH", 10, testCallback);
+            VoltTable stats = bulkLoader.getPartitionStatistics();
+            assertEquals(2, stats.getRowCount());
+            while (stats.advanceRow()) {
+                assertEquals(0, stats.getLong("ROWS_LOADED"));
+                assertEquals(0.0, stats.getDouble("ROWS_PER_SECOND"), 0.0);
+                assertEquals(0, stats.getLong("BATCHES"));
+                assertEquals(0, stats.getLong("OUTSTANDING_BATCHES"));
+                assertEquals(0.0, stats.getDouble("AVG_FLUSH_LATENCY_MS"), 0.0);
+            }
+
+            for (int i = 0; i < 95; i++) {
+                bulkLoader.insertRow(i, i, "row");
+            }
+            bulkLoader.drain();
+            assertEquals(Arrays.asList(13), testCallback.failureRows);
+
+            stats = bulkLoader.getPartitionStatistics();
+            System.out.println("Statistics for BLAH:\n" + stats);
+            assertEquals(2, stats.getRowCount());
+            long rowsLoaded = 0;
+            long batches = 0;
+            while (stats.advanceRow()) {
+                assertEquals(stats.getActiveRowIndex(), stats.getLong("PARTITION_ID"));
+                assertEquals(0, stats.getLong("OUTSTANDING_BATCHES"));
+                assertTrue(stats.getLong("ROWS_LOADED") > 0);
+                assertTrue(stats.getDouble("ROWS_PER_SECOND") > 0.0);
+                assertTrue(stats.getDouble("AVG_FLUSH_LATENCY_MS") > 0.0);
+                assertTrue(stats.getDouble("MAX_FLUSH_LATENCY_MS") >= stats.getDouble("AVG_FLUSH_LATENCY_MS"));
+                rowsLoaded += stats.getLong("ROWS_LOADED");
+                batches += stats.getLong("BATCHES");
+            }
+            // the row that failed is not counted as loaded
+            assertEquals(94, rowsLoaded);
+            assertTrue(batches >= 10);
+            bulkLoader.close();
+
+            // a replicated table is loaded through a single multi-partition processor
+            VoltBulkLoader mpLoader = client1.getNewBulkLoader("BLAH_MP", 10, new TestFailureCallback());
+            for (int i = 0; i < 25; i++) {
+                mpLoader.insertRow(i, i, "row");
+            }
+            mpLoader.drain();
+            stats = mpLoader.getPartitionStatistics();
+            assertEquals(1, stats.getRowCount());
+            stats.advanceRow();
+            assertEquals(2, stats.getLong("PARTITION_ID"));
+            assertEquals(25, stats.getLong("ROWS_LOADED"));
+            assertEquals(3, stats.getLong("BATCHES"));
+            assertEquals(0, stats.getLong("OUTSTANDING_BATCHES"));
+            mpLoader.close();
+        }
+        finally {
+            stopServer();
+        }
+    }
+
+    private void startServer(String my_schema, boolean partitioned) throws Exception {
+        pathToCatalog = Configuration.getPathToCatalogForTest("vbl.jar");
+        pathToDeployment = Configuration.getPathToCatalogForTest("vbl.xml");
+        builder = new VoltProjectBuilder();
+
+        builder.addLiteralSchema(my_schema);
+        if (partitioned) {
+            builder.addPartitionInfo("BLAH", "clm_integer");
+        }
+        boolean success = builder.compile(pathToCatalog, 2, 1, 0);
+        assertTrue(success);
+        MiscUtils.copyFile(builder.getPathToDeployment(), pathToDeployment);
+        config = new VoltDB.Configuration();
+        config.m_pathToCatalog = pathToCatalog;
+        config.m_pathToDeployment = pathToDeployment;
+        localServer = new ServerThread(config);
+        client1 = null;
+
+        localServer.start();
+        localServer.waitForInitialization();
+
+        client1 = ClientFactory.createClient();
+        client1.createConnection("localhost");
+        prepare();
+    }
+
+    private void stopServer() throws Exception {
+        if (client1 != null) client1.close();
+        client1 = null;
+
+        if (localServer != null) {
+            localServer.shutdown();
+            localServer.join();
+        }
+        localServer = null;
+
+        System.gc();
+    }
+
     public void test_Interface(String my_schema, Object[][] my_data,
             int my_batchSize, ArrayList<Integer> expectedFailList, int flushInterval) throws Exception {
         test_Interface(my_schema, my_data,